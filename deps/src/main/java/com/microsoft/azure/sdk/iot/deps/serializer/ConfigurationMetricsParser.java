@@ -20,7 +20,7 @@ public class ConfigurationMetricsParser
     @SerializedName(QUERIES_NAME)
     private Map<String, String> queries;
 
-    private transient static Gson gson = new Gson();
+    private transient static Gson gson = GsonProvider.getGson();
 
     /**
      * Empty constructor: Used only to keep GSON happy.
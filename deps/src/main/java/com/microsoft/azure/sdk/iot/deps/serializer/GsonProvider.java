@@ -0,0 +1,94 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.deps.serializer;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Shared Gson instances, one for each configuration used by the serializers.
+ *
+ * <p> Gson instances are immutable and thread safe, and cache the type adapters they create, so building them once
+ *     and sharing them avoids creating a new Gson and its reflective type adapters on every serialization.
+ */
+public final class GsonProvider
+{
+    private static final Gson GSON = new GsonBuilder().create();
+    private static final Gson GSON_WITHOUT_HTML_ESCAPING = new GsonBuilder().disableHtmlEscaping().create();
+    private static final Gson GSON_SERIALIZING_NULLS = new GsonBuilder().serializeNulls().create();
+    private static final Gson GSON_SERIALIZING_NULLS_WITHOUT_HTML_ESCAPING = new GsonBuilder().disableHtmlEscaping().serializeNulls().create();
+    private static final Gson GSON_EXPOSED_ONLY = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+    private static final Gson GSON_EXPOSED_ONLY_WITHOUT_HTML_ESCAPING = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().disableHtmlEscaping().create();
+
+    private GsonProvider()
+    {
+    }
+
+    /**
+     * Getter for the Gson with the default configuration.
+     *
+     * @return The shared {@code Gson}.
+     */
+    public static Gson getGson()
+    {
+        /* Codes_SRS_GSON_PROVIDER_41_001: [The getGson shall return the same Gson with the default configuration on every call.] */
+        return GSON;
+    }
+
+    /**
+     * Getter for the Gson that does not escape HTML characters.
+     *
+     * @return The shared {@code Gson}.
+     */
+    public static Gson getGsonWithoutHtmlEscaping()
+    {
+        /* Codes_SRS_GSON_PROVIDER_41_002: [The getGsonWithoutHtmlEscaping shall return the same Gson that does not escape HTML characters on every call.] */
+        return GSON_WITHOUT_HTML_ESCAPING;
+    }
+
+    /**
+     * Getter for the Gson that serializes null fields.
+     *
+     * @return The shared {@code Gson}.
+     */
+    public static Gson getGsonSerializingNulls()
+    {
+        /* Codes_SRS_GSON_PROVIDER_41_003: [The getGsonSerializingNulls shall return the same Gson that serializes null fields on every call.] */
+        return GSON_SERIALIZING_NULLS;
+    }
+
+    /**
+     * Getter for the Gson that serializes null fields and does not escape HTML characters.
+     *
+     * @return The shared {@code Gson}.
+     */
+    public static Gson getGsonSerializingNullsWithoutHtmlEscaping()
+    {
+        /* Codes_SRS_GSON_PROVIDER_41_004: [The getGsonSerializingNullsWithoutHtmlEscaping shall return the same Gson that serializes null fields and does not escape HTML characters on every call.] */
+        return GSON_SERIALIZING_NULLS_WITHOUT_HTML_ESCAPING;
+    }
+
+    /**
+     * Getter for the Gson that only handles the fields with the {@code Expose} annotation.
+     *
+     * @return The shared {@code Gson}.
+     */
+    public static Gson getGsonExposedOnly()
+    {
+        /* Codes_SRS_GSON_PROVIDER_41_005: [The getGsonExposedOnly shall return the same Gson that only handles the exposed fields on every call.] */
+        return GSON_EXPOSED_ONLY;
+    }
+
+    /**
+     * Getter for the Gson that only handles the fields with the {@code Expose} annotation, and does not escape HTML
+     * characters.
+     *
+     * @return The shared {@code Gson}.
+     */
+    public static Gson getGsonExposedOnlyWithoutHtmlEscaping()
+    {
+        /* Codes_SRS_GSON_PROVIDER_41_006: [The getGsonExposedOnlyWithoutHtmlEscaping shall return the same Gson that only handles the exposed fields and does not escape HTML characters on every call.] */
+        return GSON_EXPOSED_ONLY_WITHOUT_HTML_ESCAPING;
+    }
+}
@@ -362,7 +362,7 @@ public class MethodParser
             }
             catch (JsonSyntaxException e)
             {
-                return new Gson().toJsonTree(payload);
+                return GsonProvider.getGson().toJsonTree(payload);
             }
         }
     }
@@ -0,0 +1,186 @@
+/*
+ *  Copyright (c) Microsoft. All rights reserved.
+ *  Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package com.microsoft.azure.sdk.iot.deps.serializer;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over the items of a query response page. Unlike {@link QueryResponseParser}, the page is not parsed up
+ * front: each item is read from the UTF-8 bytes of the page, straight into its target type, when the caller asks for it.
+ *
+ * @param <T> the type the items are read into.
+ */
+public final class QueryResponseReader<T> implements Iterator<T>
+{
+    /**
+     * Reads a single item of a query response page into its target type.
+     *
+     * @param <T> the type the item is read into.
+     */
+    public interface ItemReader<T>
+    {
+        /**
+         * Reads the item the reader is positioned on, and nothing after it.
+         *
+         * @param reader the reader positioned at the start of the item.
+         * @return the item.
+         * @throws IOException if the item could not be read.
+         */
+        T read(JsonReader reader) throws IOException;
+    }
+
+    /**
+     * Item reader that returns each item as a json string, in the same format as {@link QueryResponseParser#getJsonItems()}.
+     */
+    public static final ItemReader<String> JSON_STRING_ITEM_READER = new ItemReader<String>()
+    {
+        private final Gson gson = GsonProvider.getGsonWithoutHtmlEscaping();
+
+        @Override
+        public String read(JsonReader reader)
+        {
+            return gson.toJson(new JsonParser().parse(reader));
+        }
+    };
+
+    private final JsonReader reader;
+    private final ItemReader<T> itemReader;
+    private boolean isEndOfArray = false;
+
+    /**
+     * CONSTRUCTOR
+     * Create an instance of the QueryResponseReader over the provided query response page.
+     *
+     * @param json the UTF-8 bytes of the query response page, which shall be a json array.
+     * @param itemReader the reader for the items of the array.
+     * @throws IllegalArgumentException if any of the parameters is null, or if the json is empty or not an array.
+     */
+    public QueryResponseReader(byte[] json, ItemReader<T> itemReader) throws IllegalArgumentException
+    {
+        //Codes_SRS_QUERY_RESPONSE_READER_41_001: [If the provided json is null or empty, or the itemReader is null, the constructor shall throw IllegalArgumentException.]
+        if (json == null || json.length == 0)
+        {
+            throw new IllegalArgumentException("parameter is null or empty");
+        }
+
+        if (itemReader == null)
+        {
+            throw new IllegalArgumentException("itemReader cannot be null");
+        }
+
+        this.itemReader = itemReader;
+        this.reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8));
+
+        try
+        {
+            //Codes_SRS_QUERY_RESPONSE_READER_41_002: [The constructor shall only read the start of the json array, and throw IllegalArgumentException if the json does not start with an array.]
+            this.reader.beginArray();
+        }
+        catch (IOException | IllegalStateException e)
+        {
+            throw new IllegalArgumentException("Malformed json:" + e);
+        }
+    }
+
+    /**
+     * @return true if the page holds another item.
+     * @throws IllegalArgumentException if the rest of the page is not valid json.
+     */
+    @Override
+    public boolean hasNext() throws IllegalArgumentException
+    {
+        if (this.isEndOfArray)
+        {
+            return false;
+        }
+
+        try
+        {
+            //Codes_SRS_QUERY_RESPONSE_READER_41_003: [The hasNext shall return true if the array holds another item, and false once its end was read.]
+            if (this.reader.peek() == JsonToken.END_ARRAY)
+            {
+                this.reader.endArray();
+                this.reader.close();
+                this.isEndOfArray = true;
+                return false;
+            }
+
+            return true;
+        }
+        catch (IOException | IllegalStateException e)
+        {
+            //Codes_SRS_QUERY_RESPONSE_READER_41_005: [If the json is malformed, the hasNext and next shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("Malformed json:" + e);
+        }
+    }
+
+    /**
+     * @return the next item of the page, read with the item reader.
+     * @throws NoSuchElementException if the page holds no further item.
+     * @throws IllegalArgumentException if the item is not valid json, or could not be read into its target type.
+     */
+    @Override
+    public T next() throws NoSuchElementException, IllegalArgumentException
+    {
+        return this.next(this.itemReader);
+    }
+
+    /**
+     * Reads the next item of the page with another reader than the one this iterator was created with.
+     *
+     * @param itemReader the reader for this item.
+     * @param <R> the type the item is read into.
+     * @return the next item of the page, read with the provided item reader.
+     * @throws NoSuchElementException if the page holds no further item.
+     * @throws IllegalArgumentException if the itemReader is null, or the item is not valid json, or could not be read into its target type.
+     */
+    public <R> R next(ItemReader<R> itemReader) throws NoSuchElementException, IllegalArgumentException
+    {
+        if (itemReader == null)
+        {
+            //Codes_SRS_QUERY_RESPONSE_READER_41_006: [If the provided itemReader is null, the next shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("itemReader cannot be null");
+        }
+
+        if (!this.hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        try
+        {
+            //Codes_SRS_QUERY_RESPONSE_READER_41_004: [The next shall read the next item with the itemReader and return it.]
+            return itemReader.read(this.reader);
+        }
+        catch (IOException | IllegalStateException | JsonParseException e)
+        {
+            //Codes_SRS_QUERY_RESPONSE_READER_41_005: [If the json is malformed, the hasNext and next shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("Malformed json:" + e);
+        }
+    }
+
+    /**
+     * Not supported, the items of a query response page cannot be removed.
+     *
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException("remove");
+    }
+}
@@ -4,8 +4,11 @@
 package com.microsoft.azure.sdk.iot.deps.serializer;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -28,6 +31,10 @@ public class TwinParser
 
     private static final int MAX_MAP_LEVEL = 5;
 
+    private static final Gson gson = GsonProvider.getGsonWithoutHtmlEscaping();
+    private static final TypeAdapter<Object> VALUE_ADAPTER = gson.getAdapter(Object.class);
+    private static final TypeAdapter<JsonElement> ELEMENT_ADAPTER = gson.getAdapter(JsonElement.class);
+
     protected TwinTags tags = null;
     protected TwinProperties properties = new TwinProperties();
     protected RegisterManagerParser manager = new RegisterManagerParser();
@@ -152,7 +159,7 @@ public class TwinParser
     public JsonElement toJsonElement()
     {
         /* Codes_SRS_TWINPARSER_21_017: [The toJsonElement shall return a JsonElement with information in the TwinParser using json format.] */
-        Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+        Gson gson = GsonProvider.getGsonWithoutHtmlEscaping();
         JsonObject twinJson = gson.toJsonTree(manager).getAsJsonObject();
 
         /* Codes_SRS_TWINPARSER_21_018: [The toJsonElement shall not include null fields.] */
@@ -219,7 +226,7 @@ public class TwinParser
         validateMap(reportedPropertyMap);
         validateMap(tagsMap);
 
-        Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+        Gson gson = GsonProvider.getGsonWithoutHtmlEscaping();
         jsonTwin = gson.toJsonTree(manager).getAsJsonObject();
 
         /* Codes_SRS_TWINPARSER_21_075: [If Tags is not enable and `tagsMap` is not null, the updateTwin shall throw IOException.] */
@@ -614,27 +621,19 @@ public class TwinParser
             throw new IllegalArgumentException("Null json");
         }
 
-        /* Codes_SRS_TWINPARSER_21_043: [If the provided json is not valid, the updateTwin shall throws IllegalArgumentException.] */
-        validateJson(json);
-
         /* Codes_SRS_TWINPARSER_21_071: [If the provided json is empty, the updateTwin shall not change the collection and not call the OnDesiredCallback or the OnReportedCallback.] */
         if(!json.isEmpty())
         {
-            Gson gson = new GsonBuilder().disableInnerClassSerialization().disableHtmlEscaping().create();
-            Map<String, Object> jsonTree;
-            try
-            {
-                /* Codes_SRS_TWINPARSER_21_097: [If the provided json have any duplicated `properties` or `tags`, the updateTwin shall throw IllegalArgumentException.] */
-                /* Codes_SRS_TWINPARSER_21_098: [If the provided json is properties only and contains duplicated `desired` or `reported`, the updateTwin shall throws IllegalArgumentException.] */
-                /* Codes_SRS_TWINPARSER_21_094: [If the provided json have any duplicated `key`, the updateTwin shall use the content of the last one in the String.] */
-                jsonTree = (Map<String, Object>) gson.fromJson(json, HashMap.class);
-                manager = gson.fromJson(json, RegisterManagerParser.class);
-            }
-            catch (JsonSyntaxException e)
-            {
-                /* Codes_SRS_TWINPARSER_21_043: [If the provided json is not valid, the updateTwin shall throws IllegalArgumentException.] */
-                throw new IllegalArgumentException("Malformed Json: " + e);
-            }
+            Map<String, Object> jsonTree = new HashMap<>();
+            JsonObject managerJson = new JsonObject();
+
+            /* Codes_SRS_TWINPARSER_21_043: [If the provided json is not valid, the updateTwin shall throws IllegalArgumentException.] */
+            /* Codes_SRS_TWINPARSER_21_097: [If the provided json have any duplicated `properties` or `tags`, the updateTwin shall throw IllegalArgumentException.] */
+            /* Codes_SRS_TWINPARSER_21_098: [If the provided json is properties only and contains duplicated `desired` or `reported`, the updateTwin shall throws IllegalArgumentException.] */
+            /* Codes_SRS_TWINPARSER_21_094: [If the provided json have any duplicated `key`, the updateTwin shall use the content of the last one in the String.] */
+            readTwinJson(json, jsonTree, managerJson);
+            validateJson(jsonTree);
+            manager = gson.fromJson(managerJson, RegisterManagerParser.class);
 
             boolean propertiesLevel = false;
             for (Map.Entry<String, Object> entry : jsonTree.entrySet())
@@ -1002,19 +1001,48 @@ public class TwinParser
         return this.manager.lastActivityTime;
     }
 
-    private void validateJson(String json) throws IllegalArgumentException
+    private static void readTwinJson(String json, Map<String, Object> jsonTree, JsonObject managerJson) throws IllegalArgumentException
     {
-        Map<String, Object> map;
+        // The twin is walked once, the properties and tags become the maps that update the collection, and the
+        // remaining fields feed the device manager, so the json is not parsed again for each of them.
         try
         {
-            Gson gson = new GsonBuilder().disableInnerClassSerialization().disableHtmlEscaping().create();
-            map = (Map<String, Object>) gson.fromJson(json, HashMap.class);
+            JsonReader reader = new JsonReader(new StringReader(json));
+            reader.setLenient(true);
+            reader.beginObject();
+            while (reader.hasNext())
+            {
+                String name = reader.nextName();
+                if (name.equals(PROPERTIES_TAG) || name.equals(TAGS_TAG) || name.equals(DESIRED_TAG) || name.equals(REPORTED_TAG))
+                {
+                    if (jsonTree.containsKey(name))
+                    {
+                        throw new IllegalArgumentException("Malformed Json: duplicate key " + name);
+                    }
+
+                    jsonTree.put(name, VALUE_ADAPTER.read(reader));
+                }
+                else
+                {
+                    // A duplicated device manager field keeps the last value, as the manager parser itself would.
+                    managerJson.add(name, ELEMENT_ADAPTER.read(reader));
+                }
+            }
+            reader.endObject();
+
+            if (reader.peek() != JsonToken.END_DOCUMENT)
+            {
+                throw new IllegalArgumentException("Malformed Json: document was not fully consumed");
+            }
         }
-        catch (Exception e)
+        catch (IOException | IllegalStateException | JsonParseException e)
         {
             throw new IllegalArgumentException("Malformed Json: " + e);
         }
+    }
 
+    private void validateJson(Map<String, Object> map) throws IllegalArgumentException
+    {
         if(map != null)
         {
             boolean propertiesLevel = false;
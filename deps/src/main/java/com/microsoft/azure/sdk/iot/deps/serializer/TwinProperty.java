@@ -4,7 +4,6 @@
 package com.microsoft.azure.sdk.iot.deps.serializer;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.internal.LinkedTreeMap;
 
@@ -33,6 +32,8 @@ public class TwinProperty
     private static final int MAX_PROPERTY_LEVEL = 5;
     private static final int MAX_METADATA_LEVEL = MAX_PROPERTY_LEVEL + 2;
 
+    private static final Gson gson = GsonProvider.getGson();
+
     private Object lock = new Object();
 
     private class Property
@@ -361,7 +362,6 @@ public class TwinProperty
         {
             /* Codes_SRS_TWINPARSER_21_095: [If the provided json have any duplicated `key`, the updateReportedProperty shall throws IllegalArgumentException.] */
             /* Codes_SRS_TWINPARSER_21_096: [If the provided json have any duplicated `key`, the updateDesiredProperty shall throws IllegalArgumentException.] */
-            Gson gson = new GsonBuilder().create();
             newValues = (Map<String, Object>) gson.fromJson(json, Map.class);
         }
         catch (Exception e)
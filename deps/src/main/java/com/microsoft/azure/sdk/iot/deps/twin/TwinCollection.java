@@ -5,6 +5,7 @@ package com.microsoft.azure.sdk.iot.deps.twin;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.annotations.JsonAdapter;
 import com.microsoft.azure.sdk.iot.deps.serializer.ParserUtility;
 import com.microsoft.azure.sdk.iot.deps.util.Tools;
 
@@ -93,6 +94,7 @@ import java.util.Map;
  * @see <a href="https://docs.microsoft.com/en-us/azure/iot-hub/iot-hub-devguide-device-twins">Understand and use device twins in IoT Hub</a>
  * @see <a href="https://docs.microsoft.com/en-us/rest/api/iothub/devicetwinapi">Device Twin Api</a>
  */
+@JsonAdapter(TwinCollectionTypeAdapterFactory.class)
 public class TwinCollection extends HashMap<String, Object>
 {
     // By definition, Twin maps cannot contain more than 5 levels.
@@ -319,6 +321,19 @@ public class TwinCollection extends HashMap<String, Object>
         return last;
     }
 
+    /**
+     * Add a single new entry in the TwinCollection as is, without converting or validating it.
+     *
+     * <p> Used by the deserializer, which builds the inner collections and validates the collection itself.
+     *
+     * @param key the {@code String} that represent the key of the new entry.
+     * @param value the {@code Object} that represents the value of the new entry.
+     */
+    final void putWithoutValidation(String key, Object value)
+    {
+        super.put(key, value);
+    }
+
     /**
      * Internal Constructor from raw map.
      *
@@ -0,0 +1,155 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.deps.twin;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.microsoft.azure.sdk.iot.deps.serializer.ParserUtility;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gson factory of the {@link TwinCollection} adapter.
+ *
+ * <p> The adapter reads the JSON straight into the collection and its inner collections, and validates each
+ *     collection once when it is complete. The result is the same raw collection, including the `$version` and
+ *     `$metadata`, that Gson would build by calling {@link TwinCollection#put(String, Object)} for every entry,
+ *     which validates the whole collection again on each call. Collections are written as Gson writes any Map.
+ */
+final class TwinCollectionTypeAdapterFactory implements TypeAdapterFactory
+{
+    // By definition, Twin maps cannot contain more than 5 levels.
+    private static final int MAX_TWIN_LEVEL = 6;
+
+    private static final String VERSION_TAG = "$version";
+    private static final String METADATA_TAG = "$metadata";
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type)
+    {
+        if (type.getRawType() != TwinCollection.class)
+        {
+            return null;
+        }
+
+        return (TypeAdapter<T>) new TwinCollectionTypeAdapter(gson.getDelegateAdapter(this, (TypeToken<TwinCollection>) type), gson.getAdapter(Object.class));
+    }
+
+    private static final class TwinCollectionTypeAdapter extends TypeAdapter<TwinCollection>
+    {
+        private final TypeAdapter<TwinCollection> mapAdapter;
+        private final TypeAdapter<Object> valueAdapter;
+
+        private TwinCollectionTypeAdapter(TypeAdapter<TwinCollection> mapAdapter, TypeAdapter<Object> valueAdapter)
+        {
+            this.mapAdapter = mapAdapter;
+            this.valueAdapter = valueAdapter;
+        }
+
+        @Override
+        public void write(JsonWriter out, TwinCollection collection) throws IOException
+        {
+            /* SRS_TWIN_COLLECTION_TYPE_ADAPTER_41_001: [The adapter shall write the collection as Gson writes any Map.] */
+            this.mapAdapter.write(out, collection);
+        }
+
+        @Override
+        public TwinCollection read(JsonReader in) throws IOException
+        {
+            JsonToken token = in.peek();
+            if (token != JsonToken.BEGIN_OBJECT)
+            {
+                /* SRS_TWIN_COLLECTION_TYPE_ADAPTER_41_002: [If the JSON is not an object, the adapter shall read it as Gson reads any Map.] */
+                return this.mapAdapter.read(in);
+            }
+
+            /* SRS_TWIN_COLLECTION_TYPE_ADAPTER_41_003: [The adapter shall read every inner object as an inner TwinCollection, and every other value as Gson reads it into an Object.] */
+            /* SRS_TWIN_COLLECTION_TYPE_ADAPTER_41_004: [If the outer object contains a duplicated key, the adapter shall throw JsonSyntaxException.] */
+            /* SRS_TWIN_COLLECTION_TYPE_ADAPTER_41_005: [If an inner object contains a duplicated key, the adapter shall keep the last value.] */
+            /* SRS_TWIN_COLLECTION_TYPE_ADAPTER_41_006: [The adapter shall throw IllegalArgumentException if the collection contains an invalid key or more than 5 levels.] */
+            return this.readCollection(in, true);
+        }
+
+        private TwinCollection readCollection(JsonReader in, boolean outer) throws IOException
+        {
+            TwinCollection collection = new TwinCollection();
+            List<String> keys = new ArrayList<>();
+
+            in.beginObject();
+            while (in.hasNext())
+            {
+                String key = in.nextName();
+                Object value;
+                if (in.peek() == JsonToken.BEGIN_OBJECT)
+                {
+                    value = this.readCollection(in, false);
+                }
+                else
+                {
+                    value = this.valueAdapter.read(in);
+                }
+
+                if (collection.containsKey(key))
+                {
+                    if (outer && collection.get(key) != null)
+                    {
+                        throw new JsonSyntaxException("duplicate key: " + key);
+                    }
+                }
+                else
+                {
+                    keys.add(key);
+                }
+                collection.putWithoutValidation(key, value);
+            }
+            in.endObject();
+
+            validate(collection, keys);
+            return collection;
+        }
+    }
+
+    private static void validate(TwinCollection collection, List<String> keys)
+    {
+        // Putting entries one by one validates the collection after each entry that is not $version or $metadata,
+        // so the entries after the last of those were never validated, and still are not.
+        int lastValidated = -1;
+        for (int i = 0; i < keys.size(); i++)
+        {
+            String key = keys.get(i);
+            if (key == null || key.isEmpty())
+            {
+                throw new IllegalArgumentException("Key cannot be null or empty");
+            }
+            if (!key.equals(VERSION_TAG) && !key.equals(METADATA_TAG))
+            {
+                lastValidated = i;
+            }
+        }
+
+        if (lastValidated == keys.size() - 1)
+        {
+            ParserUtility.validateMap(collection, MAX_TWIN_LEVEL, true);
+        }
+        else if (lastValidated >= 0)
+        {
+            TwinCollection validated = new TwinCollection();
+            for (int i = 0; i <= lastValidated; i++)
+            {
+                validated.putWithoutValidation(keys.get(i), collection.get(keys.get(i)));
+            }
+            ParserUtility.validateMap(validated, MAX_TWIN_LEVEL, true);
+        }
+    }
+}
@@ -4,14 +4,18 @@
 package com.microsoft.azure.sdk.iot.deps.twin;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.microsoft.azure.sdk.iot.deps.serializer.GsonProvider;
+import com.microsoft.azure.sdk.iot.deps.util.StreamTools;
 import com.microsoft.azure.sdk.iot.deps.util.Tools;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 
 /**
@@ -182,7 +186,7 @@ public class TwinState extends RegisterManager
         /* SRS_TWIN_STATE_21_002: [The toJsonElement shall return a JsonElement with the information in this class in a JSON format.] */
         /* SRS_TWIN_STATE_21_003: [If the tags is null, the toJsonElement shall not include the `tags` in the final JSON.] */
         /* SRS_TWIN_STATE_21_004: [If the property is null, the toJsonElement shall not include the `properties` in the final JSON.] */
-        Gson gson = new GsonBuilder().disableHtmlEscaping().serializeNulls().create();
+        Gson gson = GsonProvider.getGsonSerializingNullsWithoutHtmlEscaping();
         JsonElement json = gson.toJsonTree(this).getAsJsonObject();
 
         //since null values are lost when building the json tree, need to manually re-add properties as reported properties
@@ -257,7 +261,7 @@ public class TwinState extends RegisterManager
     public String toString()
     {
         /* SRS_TWIN_STATE_21_008: [The toString shall return a String with the information in this class in a pretty print JSON.] */
-        Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().setPrettyPrinting().disableHtmlEscaping().create();
+        Gson gson = GsonProvider.getGsonExposedOnlyWithoutHtmlEscaping();
         JsonObject jsonObject = gson.toJsonTree(this).getAsJsonObject();
 
         /* SRS_TWIN_STATE_21_009: [If the tags is null, the JSON shall not include the `tags`.] */
@@ -293,9 +297,71 @@ public class TwinState extends RegisterManager
 
         /* SRS_TWIN_STATE_21_012: [The factory shall throw JsonSyntaxException if the JSON is invalid.] */
         /* SRS_TWIN_STATE_21_013: [The factory shall deserialize the provided JSON for the twin class and subclasses.] */
-        Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().disableHtmlEscaping().create();
+        Gson gson = GsonProvider.getGsonExposedOnlyWithoutHtmlEscaping();
         TwinState result = gson.fromJson(json, TwinState.class);
 
+        return reorganizeCollections(result);
+    }
+
+    /**
+     * Factory
+     *
+     * <p> Create a new instance of the TwinState deserializing the UTF-8 JSON with the full Twin information as it
+     *     is read from the provided stream, without first copying it into a {@code String}. The stream is not closed.
+     *
+     * @param stream the {@code InputStream} with the JSON received from the service. It cannot be {@code null}.
+     * @return The new instance of the {@code TwinState}.
+     * @throws IOException if the stream could not be read or does not hold a valid JSON.
+     */
+    public static TwinState createFromTwinJson(InputStream stream) throws IOException
+    {
+        /* SRS_TWIN_STATE_41_003: [The factory shall throw IllegalArgumentException if the stream is null or holds no JSON.] */
+        if(stream == null)
+        {
+            throw new IllegalArgumentException("stream is null");
+        }
+
+        /* SRS_TWIN_STATE_41_004: [The factory shall deserialize the JSON as it is read from the stream, for the twin class and subclasses, and throw IOException if it is invalid.] */
+        TwinState result = StreamTools.readJson(stream, GsonProvider.getGsonExposedOnlyWithoutHtmlEscaping(), TwinState.class);
+        if(result == null)
+        {
+            throw new IllegalArgumentException("JSON with result is null or empty");
+        }
+
+        return reorganizeCollections(result);
+    }
+
+    /**
+     * Factory
+     *
+     * <p> Create a new instance of the TwinState reading the JSON with the full Twin information straight from
+     *     the provided reader, for example while iterating over a query response, without first copying it into
+     *     a {@code String}.
+     *
+     * @param reader the {@code JsonReader} positioned at the start of the JSON received from the service. It cannot be {@code null}.
+     * @return The new instance of the {@code TwinState}.
+     */
+    public static TwinState createFromTwinJson(JsonReader reader)
+    {
+        /* SRS_TWIN_STATE_41_001: [The factory shall throw IllegalArgumentException if the reader is null or positioned on a JSON null.] */
+        if(reader == null)
+        {
+            throw new IllegalArgumentException("reader is null");
+        }
+
+        /* SRS_TWIN_STATE_41_002: [The factory shall deserialize only the JSON object the reader is positioned on, for the twin class and subclasses.] */
+        Gson gson = GsonProvider.getGsonExposedOnlyWithoutHtmlEscaping();
+        TwinState result = gson.fromJson(reader, TwinState.class);
+        if(result == null)
+        {
+            throw new IllegalArgumentException("JSON with result is null");
+        }
+
+        return reorganizeCollections(result);
+    }
+
+    private static TwinState reorganizeCollections(TwinState result)
+    {
         /*
          * During the deserialization process, the GSON will convert both tags and
          * properties to a raw Map, which will includes the $version and $metadata
@@ -329,7 +395,7 @@ public class TwinState extends RegisterManager
 
         /* SRS_TWIN_STATE_21_015: [The factory shall throw JsonSyntaxException if the JSON is invalid.] */
         /* SRS_TWIN_STATE_21_016: [The factory shall deserialize the provided JSON for the Twin class and subclasses.] */
-        Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().disableHtmlEscaping().create();
+        Gson gson = GsonProvider.getGsonExposedOnlyWithoutHtmlEscaping();
         TwinCollection result = gson.fromJson(json, TwinCollection.class);
 
         return new TwinState(null, result, null);
@@ -353,7 +419,7 @@ public class TwinState extends RegisterManager
 
         /* SRS_TWIN_STATE_21_018: [The factory shall throw JsonSyntaxException if the JSON is invalid.] */
         /* SRS_TWIN_STATE_21_019: [The factory shall deserialize the provided JSON for the Twin class and subclasses.] */
-        Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().disableHtmlEscaping().create();
+        Gson gson = GsonProvider.getGsonExposedOnlyWithoutHtmlEscaping();
         TwinCollection result = gson.fromJson(json, TwinCollection.class);
 
         return new TwinState(null, null, result);
@@ -377,7 +443,7 @@ public class TwinState extends RegisterManager
 
         /* SRS_TWIN_STATE_21_021: [The factory shall throw JsonSyntaxException if the JSON is invalid.] */
         /* SRS_TWIN_STATE_21_022: [The factory shall deserialize the provided JSON for the Twin class and subclasses.] */
-        Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().disableHtmlEscaping().create();
+        Gson gson = GsonProvider.getGsonExposedOnlyWithoutHtmlEscaping();
         TwinProperties result = gson.fromJson(json, TwinProperties.class);
 
         return new TwinState(null, result.getDesired(), result.getReported());
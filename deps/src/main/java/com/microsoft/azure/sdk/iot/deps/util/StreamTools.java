@@ -0,0 +1,126 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.deps.util;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Collection of static helper functions to read response bodies from streams in bulk.
+ */
+public final class StreamTools
+{
+    /**
+     * The size of the chunks read from a stream when its length is not known up front.
+     */
+    public static final int CHUNK_SIZE_IN_BYTES = 8 * 1024;
+
+    /**
+     * The largest advertised length that is trusted to pre-size the returned array. Anything above this is read in
+     * chunks, so that a bogus Content-Length cannot make us allocate more than the stream actually holds.
+     */
+    public static final int MAX_PRESIZED_LENGTH_IN_BYTES = 64 * 1024 * 1024;
+
+    private StreamTools()
+    {
+    }
+
+    /**
+     * Reads the stream until it is empty, without closing it.
+     *
+     * @param stream the stream to read from.
+     * @param expectedLength the number of bytes the stream is expected to hold, for example the Content-Length of an
+     *                       HTTP response, or a negative number if it is not known.
+     * @return the content of the stream.
+     * @throws IOException if the stream could not be read from.
+     */
+    public static byte[] readAllBytes(InputStream stream, long expectedLength) throws IOException
+    {
+        if (stream == null)
+        {
+            // Codes_SRS_STREAMTOOLS_41_001: [If the stream is null, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("stream cannot be null");
+        }
+
+        // Codes_SRS_STREAMTOOLS_41_002: [If the expected length is known and no larger than MAX_PRESIZED_LENGTH_IN_BYTES, this function shall read the stream straight into an array of that length.]
+        // Codes_SRS_STREAMTOOLS_41_003: [Otherwise, this function shall read the stream in chunks of CHUNK_SIZE_IN_BYTES into an array that grows as needed.]
+        boolean isPresized = expectedLength >= 0 && expectedLength <= MAX_PRESIZED_LENGTH_IN_BYTES;
+        byte[] buffer = new byte[isPresized ? (int) expectedLength : CHUNK_SIZE_IN_BYTES];
+        int length = 0;
+        while (true)
+        {
+            if (length == buffer.length)
+            {
+                if (isPresized)
+                {
+                    // The stream is usually exhausted here, so probe it with a single byte before growing the buffer.
+                    int nextByte = stream.read();
+                    if (nextByte < 0)
+                    {
+                        return buffer;
+                    }
+
+                    // Codes_SRS_STREAMTOOLS_41_004: [If the stream holds more bytes than expected, this function shall keep reading until the stream is empty.]
+                    isPresized = false;
+                    buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, buffer.length + CHUNK_SIZE_IN_BYTES));
+                    buffer[length++] = (byte) nextByte;
+                }
+                else
+                {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+
+            int bytesRead = stream.read(buffer, length, buffer.length - length);
+            if (bytesRead < 0)
+            {
+                break;
+            }
+
+            length += bytesRead;
+        }
+
+        // Codes_SRS_STREAMTOOLS_41_005: [This function shall return an array holding exactly the bytes read from the stream.]
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Deserializes the UTF-8 JSON held by the stream directly into the provided type, without first copying the stream
+     * into an array or a string. The stream is not closed.
+     *
+     * @param stream the stream to read from.
+     * @param gson the Gson instance to deserialize with.
+     * @param type the type to deserialize into.
+     * @param <T> the type to deserialize into.
+     * @return the deserialized object, or null if the stream is empty.
+     * @throws IOException if the stream could not be read from or does not hold valid JSON for the provided type.
+     */
+    public static <T> T readJson(InputStream stream, Gson gson, Type type) throws IOException
+    {
+        if (stream == null || gson == null || type == null)
+        {
+            // Codes_SRS_STREAMTOOLS_41_006: [If any of the parameters is null, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("stream, gson and type cannot be null");
+        }
+
+        Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
+        try
+        {
+            // Codes_SRS_STREAMTOOLS_41_007: [This function shall deserialize the stream content with the provided Gson instance as it is read.]
+            return gson.fromJson(reader, type);
+        }
+        catch (RuntimeException e)
+        {
+            // Codes_SRS_STREAMTOOLS_41_008: [If the stream could not be read or parsed, this function shall throw an IOException.]
+            throw new IOException("Could not deserialize the stream content", e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.deps.serializer;
+
+import com.google.gson.Gson;
+import com.google.gson.annotations.Expose;
+import com.microsoft.azure.sdk.iot.deps.serializer.GsonProvider;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the shared Gson instances.
+ * 100% methods, 100% lines covered
+ */
+public class GsonProviderTest
+{
+    private static class Sample
+    {
+        @Expose
+        private String exposed = "<a>";
+        private String notExposed = null;
+    }
+
+    /* Tests_SRS_GSON_PROVIDER_41_001: [The getGson shall return the same Gson with the default configuration on every call.] */
+    @Test
+    public void getGsonReturnsSharedDefaultGson()
+    {
+        // act
+        Gson gson = GsonProvider.getGson();
+
+        // assert
+        assertSame(gson, GsonProvider.getGson());
+        assertTrue(gson.htmlSafe());
+        assertFalse(gson.serializeNulls());
+    }
+
+    /* Tests_SRS_GSON_PROVIDER_41_002: [The getGsonWithoutHtmlEscaping shall return the same Gson that does not escape HTML characters on every call.] */
+    @Test
+    public void getGsonWithoutHtmlEscapingReturnsSharedGson()
+    {
+        // act
+        Gson gson = GsonProvider.getGsonWithoutHtmlEscaping();
+
+        // assert
+        assertSame(gson, GsonProvider.getGsonWithoutHtmlEscaping());
+        assertFalse(gson.htmlSafe());
+        assertFalse(gson.serializeNulls());
+    }
+
+    /* Tests_SRS_GSON_PROVIDER_41_003: [The getGsonSerializingNulls shall return the same Gson that serializes null fields on every call.] */
+    @Test
+    public void getGsonSerializingNullsReturnsSharedGson()
+    {
+        // act
+        Gson gson = GsonProvider.getGsonSerializingNulls();
+
+        // assert
+        assertSame(gson, GsonProvider.getGsonSerializingNulls());
+        assertTrue(gson.htmlSafe());
+        assertTrue(gson.serializeNulls());
+    }
+
+    /* Tests_SRS_GSON_PROVIDER_41_004: [The getGsonSerializingNullsWithoutHtmlEscaping shall return the same Gson that serializes null fields and does not escape HTML characters on every call.] */
+    @Test
+    public void getGsonSerializingNullsWithoutHtmlEscapingReturnsSharedGson()
+    {
+        // act
+        Gson gson = GsonProvider.getGsonSerializingNullsWithoutHtmlEscaping();
+
+        // assert
+        assertSame(gson, GsonProvider.getGsonSerializingNullsWithoutHtmlEscaping());
+        assertFalse(gson.htmlSafe());
+        assertTrue(gson.serializeNulls());
+    }
+
+    /* Tests_SRS_GSON_PROVIDER_41_005: [The getGsonExposedOnly shall return the same Gson that only handles the exposed fields on every call.] */
+    @Test
+    public void getGsonExposedOnlyReturnsSharedGson()
+    {
+        // act
+        Gson gson = GsonProvider.getGsonExposedOnly();
+
+        // assert
+        assertSame(gson, GsonProvider.getGsonExposedOnly());
+        assertEquals("{\"exposed\":\"\\u003ca\\u003e\"}", gson.toJson(new Sample()));
+    }
+
+    /* Tests_SRS_GSON_PROVIDER_41_006: [The getGsonExposedOnlyWithoutHtmlEscaping shall return the same Gson that only handles the exposed fields and does not escape HTML characters on every call.] */
+    @Test
+    public void getGsonExposedOnlyWithoutHtmlEscapingReturnsSharedGson()
+    {
+        // act
+        Gson gson = GsonProvider.getGsonExposedOnlyWithoutHtmlEscaping();
+
+        // assert
+        assertSame(gson, GsonProvider.getGsonExposedOnlyWithoutHtmlEscaping());
+        assertEquals("{\"exposed\":\"<a>\"}", gson.toJson(new Sample()));
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ *  Copyright (c) Microsoft. All rights reserved.
+ *  Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package tests.unit.com.microsoft.azure.sdk.iot.deps.serializer;
+
+import com.google.gson.stream.JsonReader;
+import com.microsoft.azure.sdk.iot.deps.serializer.QueryResponseParser;
+import com.microsoft.azure.sdk.iot.deps.serializer.QueryResponseReader;
+import com.microsoft.azure.sdk.iot.deps.twin.TwinState;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.*;
+
+/*
+    Unit tests for QueryResponseReader
+ */
+public class QueryResponseReaderTest
+{
+    private static final String TWIN_JSON_A =
+            "{\"deviceId\":\"devA\",\"etag\":\"etagA\",\"version\":3," +
+            "\"tags\":{\"building\":\"43\"}," +
+            "\"properties\":{\"desired\":{\"sendFrequency\":\"5m\",\"$version\":1},\"reported\":{\"status\":\"ok\",\"$version\":2}}}";
+    private static final String TWIN_JSON_B = "{\"deviceId\":\"devB\",\"text\":\"<välue>\"}";
+    private static final String TWIN_PAGE = "[" + TWIN_JSON_A + ", " + TWIN_JSON_B + "]";
+
+    private static final QueryResponseReader.ItemReader<TwinState> TWIN_ITEM_READER = new QueryResponseReader.ItemReader<TwinState>()
+    {
+        @Override
+        public TwinState read(JsonReader reader)
+        {
+            return TwinState.createFromTwinJson(reader);
+        }
+    };
+
+    private static byte[] utf8(String json)
+    {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_41_001: [If the provided json is null or empty, or the itemReader is null, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNullJson()
+    {
+        new QueryResponseReader<>(null, QueryResponseReader.JSON_STRING_ITEM_READER);
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_41_001: [If the provided json is null or empty, or the itemReader is null, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNullItemReader()
+    {
+        new QueryResponseReader<String>(utf8(TWIN_PAGE), null);
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_41_002: [The constructor shall only read the start of the json array, and throw IllegalArgumentException if the json does not start with an array.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnJsonThatIsNotAnArray()
+    {
+        new QueryResponseReader<>(utf8(TWIN_JSON_A), QueryResponseReader.JSON_STRING_ITEM_READER);
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_41_003: [The hasNext shall return true if the array holds another item, and false once its end was read.]
+    //Tests_SRS_QUERY_RESPONSE_READER_41_004: [The next shall read the next item with the itemReader and return it.]
+    @Test
+    public void jsonStringItemsMatchQueryResponseParser()
+    {
+        //arrange
+        List<String> expected = new QueryResponseParser(TWIN_PAGE).getJsonItems();
+
+        //act
+        QueryResponseReader<String> reader = new QueryResponseReader<>(utf8(TWIN_PAGE), QueryResponseReader.JSON_STRING_ITEM_READER);
+        List<String> actual = new ArrayList<>();
+        while (reader.hasNext())
+        {
+            actual.add(reader.next());
+        }
+
+        //assert
+        assertEquals(expected, actual);
+        assertFalse(reader.hasNext());
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_41_004: [The next shall read the next item with the itemReader and return it.]
+    @Test
+    public void twinItemsAreReadIntoTwinState()
+    {
+        //act
+        QueryResponseReader<TwinState> reader = new QueryResponseReader<>(utf8(TWIN_PAGE), TWIN_ITEM_READER);
+        TwinState first = reader.next();
+        TwinState second = reader.next();
+
+        //assert
+        assertEquals("devA", first.getDeviceId());
+        assertEquals("etagA", first.getETag());
+        assertEquals(3, (int) first.getVersion());
+        assertEquals("43", first.getTags().get("building"));
+        assertEquals("5m", first.getDesiredProperty().get("sendFrequency"));
+        assertEquals(1, (int) first.getDesiredProperty().getVersion());
+        assertEquals("ok", first.getReportedProperty().get("status"));
+        assertEquals("devB", second.getDeviceId());
+        assertFalse(reader.hasNext());
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_41_004: [The next shall read the next item with the itemReader and return it.]
+    @Test
+    public void nextReadsItemWithProvidedItemReader()
+    {
+        //arrange
+        QueryResponseReader<String> reader = new QueryResponseReader<>(utf8(TWIN_PAGE), QueryResponseReader.JSON_STRING_ITEM_READER);
+
+        //act
+        TwinState first = reader.next(TWIN_ITEM_READER);
+        String second = reader.next();
+
+        //assert
+        assertEquals("devA", first.getDeviceId());
+        assertEquals(new QueryResponseParser(TWIN_PAGE).getJsonItems().get(1), second);
+        assertFalse(reader.hasNext());
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_41_006: [If the provided itemReader is null, the next shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void nextThrowsOnNullItemReader()
+    {
+        //arrange
+        QueryResponseReader<String> reader = new QueryResponseReader<>(utf8(TWIN_PAGE), QueryResponseReader.JSON_STRING_ITEM_READER);
+
+        //act
+        reader.next((QueryResponseReader.ItemReader<TwinState>) null);
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_41_003: [The hasNext shall return true if the array holds another item, and false once its end was read.]
+    @Test
+    public void emptyArrayHasNoItems()
+    {
+        //act
+        QueryResponseReader<String> reader = new QueryResponseReader<>(utf8("[]"), QueryResponseReader.JSON_STRING_ITEM_READER);
+
+        //assert
+        assertFalse(reader.hasNext());
+    }
+
+    @Test (expected = NoSuchElementException.class)
+    public void nextThrowsAfterLastItem()
+    {
+        //arrange
+        QueryResponseReader<String> reader = new QueryResponseReader<>(utf8("[{}]"), QueryResponseReader.JSON_STRING_ITEM_READER);
+        reader.next();
+
+        //act
+        reader.next();
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_41_005: [If the json is malformed, the hasNext and next shall throw IllegalArgumentException.]
+    @Test
+    public void malformedItemIsOnlyReportedWhenReached()
+    {
+        //arrange
+        QueryResponseReader<String> reader = new QueryResponseReader<>(utf8("[{\"a\":1}, {\"b\":]"), QueryResponseReader.JSON_STRING_ITEM_READER);
+
+        //act
+        String first = reader.next();
+
+        //assert
+        assertEquals("{\"a\":1}", first);
+        try
+        {
+            reader.next();
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected)
+        {
+            // expected
+        }
+    }
+}
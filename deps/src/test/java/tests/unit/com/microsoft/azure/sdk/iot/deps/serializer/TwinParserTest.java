@@ -0,0 +1,264 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.deps.serializer;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.microsoft.azure.sdk.iot.deps.serializer.RegisterManagerParser;
+import com.microsoft.azure.sdk.iot.deps.serializer.TwinConnectionState;
+import com.microsoft.azure.sdk.iot.deps.serializer.TwinParser;
+import com.microsoft.azure.sdk.iot.deps.serializer.TwinStatus;
+import mockit.Deencapsulation;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/*
+    Unit tests for TwinParser.updateTwin(String)
+ */
+public class TwinParserTest
+{
+    private static final String FULL_TWIN_JSON =
+            "{" +
+                "\"deviceId\":\"validDeviceId\"," +
+                "\"generationId\":\"validGenerationId\"," +
+                "\"version\":3," +
+                "\"status\":\"enabled\"," +
+                "\"statusReason\":\"validStatusReason\"," +
+                "\"statusUpdatedTime\":\"2016-06-01T21:22:41+00:00\"," +
+                "\"connectionState\":\"connected\"," +
+                "\"connectionStateUpdatedTime\":\"2016-06-01T21:22:42+00:00\"," +
+                "\"lastActivityTime\":\"2016-06-01T21:22:43+00:00\"," +
+                "\"etag\":\"validEtag\"," +
+                "\"tags\":{\"tag1\":{\"key1\":\"value1\"},\"tag2\":\"value2\"}," +
+                "\"properties\":{" +
+                    "\"desired\":{\"key1\":\"value1\",\"key2\":1234.0,\"$version\":4}," +
+                    "\"reported\":{\"key3\":\"value3\",\"$version\":5}" +
+                "}" +
+            "}";
+
+    private static final String[] MANAGER_FIELDS =
+    {
+        "deviceId", "generationId", "eTag", "version", "status", "statusReason",
+        "statusUpdatedTime", "connectionState", "connectionStateUpdatedTime", "lastActivityTime"
+    };
+
+    //Tests_SRS_TWINPARSER_21_039: [The updateTwin shall fill the fields the properties in the Twin class with the keys and values provided in the json string.]
+    @Test
+    public void updateTwinFillsPropertiesTagsAndManager() throws IOException
+    {
+        //arrange
+        TwinParser twinParser = new TwinParser();
+        twinParser.enableTags();
+
+        //act
+        twinParser.updateTwin(FULL_TWIN_JSON);
+
+        //assert
+        Map<String, Object> desired = twinParser.getDesiredPropertyMap();
+        assertEquals(2, desired.size());
+        assertEquals("value1", desired.get("key1"));
+        assertEquals(1234.0, desired.get("key2"));
+        assertEquals(4, (int) twinParser.getDesiredPropertyVersion());
+        Map<String, Object> reported = twinParser.getReportedPropertyMap();
+        assertEquals(1, reported.size());
+        assertEquals("value3", reported.get("key3"));
+        assertEquals(5, (int) twinParser.getReportedPropertyVersion());
+        Map<String, Object> tags = twinParser.getTagsMap();
+        assertEquals("value2", tags.get("tag2"));
+        assertEquals("value1", ((Map<String, Object>) tags.get("tag1")).get("key1"));
+
+        assertEquals("validDeviceId", twinParser.getDeviceId());
+        assertEquals("validGenerationId", twinParser.getGenerationId());
+        assertEquals("validEtag", twinParser.getETag());
+        assertEquals(3, (int) twinParser.getVersion());
+        assertEquals(TwinStatus.enabled, twinParser.getStatus());
+        assertEquals("validStatusReason", twinParser.getStatusReason());
+        assertEquals("2016-06-01T21:22:41+00:00", twinParser.getStatusUpdatedTime());
+        assertEquals(TwinConnectionState.connected, twinParser.getConnectionState());
+        assertEquals("2016-06-01T21:22:42+00:00", twinParser.getConnectionStateUpdatedTime());
+        assertEquals("2016-06-01T21:22:43+00:00", twinParser.getLastActivityTime());
+    }
+
+    //Tests_SRS_TWINPARSER_21_039: [The updateTwin shall fill the fields the properties in the Twin class with the keys and values provided in the json string.]
+    @Test
+    public void updateTwinFillsManagerAsParsingTheWholeJson()
+    {
+        //arrange
+        Gson gson = new GsonBuilder().disableInnerClassSerialization().disableHtmlEscaping().create();
+        RegisterManagerParser expectedManager = gson.fromJson(FULL_TWIN_JSON, RegisterManagerParser.class);
+        TwinParser twinParser = new TwinParser();
+
+        //act
+        twinParser.updateTwin(FULL_TWIN_JSON);
+
+        //assert
+        RegisterManagerParser actualManager = Deencapsulation.getField(twinParser, "manager");
+        for (String field : MANAGER_FIELDS)
+        {
+            Object expected = Deencapsulation.getField(expectedManager, field);
+            assertNotNull(field, expected);
+            assertEquals(field, expected, Deencapsulation.getField(actualManager, field));
+        }
+    }
+
+    //Tests_SRS_TWINPARSER_21_094: [If the provided json have any duplicated `key`, the updateTwin shall use the content of the last one in the String.]
+    @Test
+    public void updateTwinUsesLastValueOfDuplicatedManagerKey()
+    {
+        //arrange
+        final String json =
+                "{\"deviceId\":\"firstDeviceId\",\"etag\":\"firstEtag\"," +
+                "\"properties\":{\"desired\":{\"key1\":\"value1\"}}," +
+                "\"deviceId\":\"lastDeviceId\",\"etag\":\"lastEtag\"}";
+        TwinParser twinParser = new TwinParser();
+
+        //act
+        twinParser.updateTwin(json);
+
+        //assert
+        assertEquals("lastDeviceId", twinParser.getDeviceId());
+        assertEquals("lastEtag", twinParser.getETag());
+        assertEquals("value1", twinParser.getDesiredPropertyMap().get("key1"));
+    }
+
+    //Tests_SRS_TWINPARSER_21_094: [If the provided json have any duplicated `key`, the updateTwin shall use the content of the last one in the String.]
+    @Test
+    public void updateTwinUsesLastValueOfDuplicatedPropertyKey()
+    {
+        //arrange
+        final String json = "{\"properties\":{\"desired\":{\"key1\":\"firstValue\",\"key1\":\"lastValue\"}}}";
+        TwinParser twinParser = new TwinParser();
+
+        //act
+        twinParser.updateTwin(json);
+
+        //assert
+        assertEquals("lastValue", twinParser.getDesiredPropertyMap().get("key1"));
+    }
+
+    //Tests_SRS_TWINPARSER_21_097: [If the provided json have any duplicated `properties` or `tags`, the updateTwin shall throw IllegalArgumentException.]
+    @Test
+    public void updateTwinThrowsOnDuplicatedProperties()
+    {
+        //arrange
+        final String json =
+                "{\"properties\":{\"desired\":{\"key1\":\"value1\"}}," +
+                "\"properties\":{\"desired\":{\"key2\":\"value2\"}}}";
+        TwinParser twinParser = new TwinParser();
+
+        //act
+        try
+        {
+            twinParser.updateTwin(json);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected)
+        {
+            //assert
+            assertTrue(twinParser.getDesiredPropertyMap() == null || twinParser.getDesiredPropertyMap().isEmpty());
+        }
+    }
+
+    //Tests_SRS_TWINPARSER_21_097: [If the provided json have any duplicated `properties` or `tags`, the updateTwin shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void updateTwinThrowsOnDuplicatedTags()
+    {
+        //arrange
+        final String json = "{\"tags\":{\"tag1\":\"value1\"},\"tags\":{\"tag2\":\"value2\"}}";
+        TwinParser twinParser = new TwinParser();
+        twinParser.enableTags();
+
+        //act
+        twinParser.updateTwin(json);
+    }
+
+    //Tests_SRS_TWINPARSER_21_098: [If the provided json is properties only and contains duplicated `desired` or `reported`, the updateTwin shall throws IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void updateTwinThrowsOnDuplicatedDesired()
+    {
+        //arrange
+        final String json = "{\"desired\":{\"key1\":\"value1\"},\"desired\":{\"key2\":\"value2\"}}";
+        TwinParser twinParser = new TwinParser();
+
+        //act
+        twinParser.updateTwin(json);
+    }
+
+    //Tests_SRS_TWINPARSER_21_098: [If the provided json is properties only and contains duplicated `desired` or `reported`, the updateTwin shall throws IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void updateTwinThrowsOnDuplicatedReported()
+    {
+        //arrange
+        final String json = "{\"reported\":{\"key1\":\"value1\"},\"reported\":{\"key2\":\"value2\"}}";
+        TwinParser twinParser = new TwinParser();
+
+        //act
+        twinParser.updateTwin(json);
+    }
+
+    //Tests_SRS_TWINPARSER_21_043: [If the provided json is not valid, the updateTwin shall throws IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void updateTwinThrowsOnTrailingContent()
+    {
+        //arrange
+        final String json = "{\"properties\":{\"desired\":{\"key1\":\"value1\"}}} {\"deviceId\":\"validDeviceId\"}";
+        TwinParser twinParser = new TwinParser();
+
+        //act
+        twinParser.updateTwin(json);
+    }
+
+    //Tests_SRS_TWINPARSER_21_043: [If the provided json is not valid, the updateTwin shall throws IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void updateTwinThrowsOnArray()
+    {
+        //arrange
+        TwinParser twinParser = new TwinParser();
+
+        //act
+        twinParser.updateTwin("[{\"properties\":{\"desired\":{\"key1\":\"value1\"}}}]");
+    }
+
+    //Tests_SRS_TWINPARSER_21_043: [If the provided json is not valid, the updateTwin shall throws IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void updateTwinThrowsOnPrimitive()
+    {
+        //arrange
+        TwinParser twinParser = new TwinParser();
+
+        //act
+        twinParser.updateTwin("\"properties\"");
+    }
+
+    //Tests_SRS_TWINPARSER_21_043: [If the provided json is not valid, the updateTwin shall throws IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void updateTwinThrowsOnUnterminatedObject()
+    {
+        //arrange
+        TwinParser twinParser = new TwinParser();
+
+        //act
+        twinParser.updateTwin("{\"properties\":{\"desired\":{\"key1\":\"value1\"}}");
+    }
+
+    //Tests_SRS_TWINPARSER_21_039: [The updateTwin shall fill the fields the properties in the Twin class with the keys and values provided in the json string.]
+    @Test
+    public void updateTwinAcceptsLenientJson()
+    {
+        //arrange
+        final String json = "{deviceId:'validDeviceId', properties:{desired:{key1:'value1'}}}";
+        TwinParser twinParser = new TwinParser();
+
+        //act
+        twinParser.updateTwin(json);
+
+        //assert
+        assertEquals("validDeviceId", twinParser.getDeviceId());
+        assertEquals("value1", twinParser.getDesiredPropertyMap().get("key1"));
+    }
+}
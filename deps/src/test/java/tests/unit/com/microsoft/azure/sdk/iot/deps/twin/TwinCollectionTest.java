@@ -6,6 +6,7 @@ package tests.unit.com.microsoft.azure.sdk.iot.deps.twin;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonSyntaxException;
 import com.microsoft.azure.sdk.iot.deps.serializer.ParserUtility;
 import com.microsoft.azure.sdk.iot.deps.twin.TwinCollection;
 import mockit.Deencapsulation;
@@ -1131,4 +1132,89 @@ public class TwinCollectionTest
         // act - assert
         Helpers.assertJson(twinCollection.toString(), JSON_FULL_SAMPLE);
     }
+
+    /* SRS_TWIN_COLLECTION_TYPE_ADAPTER_41_003: [The adapter shall read every inner object as an inner TwinCollection, and every other value as Gson reads it into an Object.] */
+    @Test
+    public void gsonReadsInnerObjectsAsTwinCollections()
+    {
+        // arrange
+        Gson gson = new Gson();
+
+        // act
+        TwinCollection twinCollection = gson.fromJson(JSON_SAMPLE, TwinCollection.class);
+
+        // assert
+        assertEquals(VALID_VALUE_NAME, twinCollection.get(VALID_KEY_NAME));
+        TwinCollection maxSpeed = (TwinCollection)twinCollection.get("MaxSpeed");
+        assertEquals(500.0, maxSpeed.get("Value"));
+        assertTrue(maxSpeed.get("Inner1") instanceof TwinCollection);
+        assertEquals(PROPERTIES_SAMPLE, twinCollection);
+    }
+
+    /* SRS_TWIN_COLLECTION_TYPE_ADAPTER_41_003: [The adapter shall read every inner object as an inner TwinCollection, and every other value as Gson reads it into an Object.] */
+    @Test
+    public void gsonReadsVersionAndMetadataAsRawEntries()
+    {
+        // arrange
+        Gson gson = new Gson();
+
+        // act
+        TwinCollection rawMap = gson.fromJson(JSON_FULL_SAMPLE, TwinCollection.class);
+        TwinCollection twinCollection = Deencapsulation.invoke(TwinCollection.class, "createFromRawCollection", rawMap);
+
+        // assert
+        assertTrue(rawMap.containsKey("$version"));
+        assertTrue(rawMap.containsKey("$metadata"));
+        assertEquals(VERSION, twinCollection.getVersionFinal());
+        Helpers.assertJson(twinCollection.toString(), JSON_FULL_SAMPLE);
+    }
+
+    /* SRS_TWIN_COLLECTION_TYPE_ADAPTER_41_004: [If the outer object contains a duplicated key, the adapter shall throw JsonSyntaxException.] */
+    @Test (expected = JsonSyntaxException.class)
+    public void gsonThrowsOnDuplicatedOuterKey()
+    {
+        // act
+        new Gson().fromJson("{\"Brand\":\"NiceCar\", \"Brand\":\"OtherCar\"}", TwinCollection.class);
+    }
+
+    /* SRS_TWIN_COLLECTION_TYPE_ADAPTER_41_005: [If an inner object contains a duplicated key, the adapter shall keep the last value.] */
+    @Test
+    public void gsonKeepsLastValueOfDuplicatedInnerKey()
+    {
+        // act
+        TwinCollection twinCollection = new Gson().fromJson("{\"MaxSpeed\":{\"Value\":500, \"Value\":300}}", TwinCollection.class);
+
+        // assert
+        assertEquals(300.0, ((TwinCollection)twinCollection.get("MaxSpeed")).get("Value"));
+    }
+
+    /* SRS_TWIN_COLLECTION_TYPE_ADAPTER_41_006: [The adapter shall throw IllegalArgumentException if the collection contains an invalid key or more than 5 levels.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void gsonThrowsOnTooManyLevels()
+    {
+        // act
+        new Gson().fromJson("{\"one\":{\"two\":{\"three\":{\"four\":{\"five\":{\"six\":{\"seven\":1}}}}}}}", TwinCollection.class);
+    }
+
+    /* SRS_TWIN_COLLECTION_TYPE_ADAPTER_41_006: [The adapter shall throw IllegalArgumentException if the collection contains an invalid key or more than 5 levels.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void gsonThrowsOnInvalidKey()
+    {
+        // act
+        new Gson().fromJson("{\"Max Speed\":500}", TwinCollection.class);
+    }
+
+    /* SRS_TWIN_COLLECTION_TYPE_ADAPTER_41_001: [The adapter shall write the collection as Gson writes any Map.] */
+    @Test
+    public void gsonWritesCollectionAsMap()
+    {
+        // arrange
+        TwinCollection twinCollection = new TwinCollection(PROPERTIES_SAMPLE);
+
+        // act
+        String json = new Gson().toJson(twinCollection);
+
+        // assert
+        Helpers.assertJson(json, JSON_SAMPLE);
+    }
 }
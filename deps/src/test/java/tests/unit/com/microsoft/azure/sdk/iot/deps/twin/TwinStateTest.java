@@ -5,6 +5,7 @@ package tests.unit.com.microsoft.azure.sdk.iot.deps.twin;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
 import com.microsoft.azure.sdk.iot.deps.twin.TwinCollection;
 import com.microsoft.azure.sdk.iot.deps.twin.TwinConnectionState;
 import com.microsoft.azure.sdk.iot.deps.twin.TwinProperties;
@@ -13,6 +14,12 @@ import mockit.Deencapsulation;
 import org.junit.Test;
 import tests.unit.com.microsoft.azure.sdk.iot.deps.Helpers;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.Assert.*;
 
 /**
@@ -367,6 +374,98 @@ public class TwinStateTest
         // assert
     }
 
+    /* SRS_TWIN_STATE_41_001: [The factory shall throw IllegalArgumentException if the reader is null or positioned on a JSON null.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void createFromTwinJsonThrowsOnNullReader()
+    {
+        // arrange
+        final JsonReader reader = null;
+
+        // act
+        TwinState.createFromTwinJson(reader);
+    }
+
+    /* SRS_TWIN_STATE_41_002: [The factory shall deserialize only the JSON object the reader is positioned on, for the twin class and subclasses.] */
+    @Test
+    public void createFromTwinJsonReaderMatchesString() throws Exception
+    {
+        // arrange
+        final String json =
+                "{" +
+                    "\"deviceId\":\"validDeviceId\"," +
+                    "\"etag\":\"validEtag\"," +
+                    "\"version\":3," +
+                    "\"tags\":{\"tag1\":{\"key1\":\"value1\"}}," +
+                    "\"properties\":{" +
+                        "\"desired\":{\"prop1\":\"value1\",\"$version\":4}," +
+                        "\"reported\":{\"prop2\":10,\"$version\":5}" +
+                    "}" +
+                "}";
+        JsonReader reader = new JsonReader(new StringReader("[" + json + ",{}]"));
+        reader.beginArray();
+
+        // act
+        TwinState result = TwinState.createFromTwinJson(reader);
+
+        // assert
+        assertEquals(TwinState.createFromTwinJson(json).toString(), result.toString());
+        assertEquals("validEtag", result.getETag());
+        assertEquals(4, (int) result.getDesiredProperty().getVersion());
+        assertTrue(reader.hasNext());
+    }
+
+    /* SRS_TWIN_STATE_41_003: [The factory shall throw IllegalArgumentException if the stream is null or holds no JSON.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void createFromTwinJsonThrowsOnNullStream() throws IOException
+    {
+        // arrange
+        final InputStream stream = null;
+
+        // act
+        TwinState.createFromTwinJson(stream);
+    }
+
+    /* SRS_TWIN_STATE_41_003: [The factory shall throw IllegalArgumentException if the stream is null or holds no JSON.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void createFromTwinJsonThrowsOnEmptyStream() throws IOException
+    {
+        // act
+        TwinState.createFromTwinJson(new ByteArrayInputStream(new byte[0]));
+    }
+
+    /* SRS_TWIN_STATE_41_004: [The factory shall deserialize the JSON as it is read from the stream, for the twin class and subclasses, and throw IOException if it is invalid.] */
+    @Test
+    public void createFromTwinJsonStreamMatchesString() throws IOException
+    {
+        // arrange
+        final String json =
+                "{" +
+                    "\"deviceId\":\"validDeviceId\"," +
+                    "\"etag\":\"validEtag\"," +
+                    "\"tags\":{\"tag1\":\"välue1\"}," +
+                    "\"properties\":{" +
+                        "\"desired\":{\"prop1\":\"value1\",\"$version\":4}," +
+                        "\"reported\":{\"prop2\":10,\"$version\":5}" +
+                    "}" +
+                "}";
+
+        // act
+        TwinState result = TwinState.createFromTwinJson(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        // assert
+        assertEquals(TwinState.createFromTwinJson(json).toString(), result.toString());
+        assertEquals("välue1", result.getTags().get("tag1"));
+        assertEquals(5, (int) result.getReportedProperty().getVersion());
+    }
+
+    /* SRS_TWIN_STATE_41_004: [The factory shall deserialize the JSON as it is read from the stream, for the twin class and subclasses, and throw IOException if it is invalid.] */
+    @Test (expected = IOException.class)
+    public void createFromTwinJsonThrowsOnInvalidStream() throws IOException
+    {
+        // act
+        TwinState.createFromTwinJson(new ByteArrayInputStream("{\"deviceId\":".getBytes(StandardCharsets.UTF_8)));
+    }
+
     /* SRS_TWIN_STATE_21_012: [The factory shall throw JsonSyntaxException if the JSON is invalid.] */
     @Test (expected = JsonSyntaxException.class)
     public void createFromTwinJsonThrowsOnInvalidJSON()
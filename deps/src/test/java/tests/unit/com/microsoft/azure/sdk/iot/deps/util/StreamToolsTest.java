@@ -0,0 +1,141 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.deps.util;
+
+import com.google.gson.Gson;
+import com.microsoft.azure.sdk.iot.deps.util.StreamTools;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for StreamTools
+ */
+public class StreamToolsTest
+{
+    private static byte[] buildPayload(int length)
+    {
+        byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            payload[i] = (byte) i;
+        }
+
+        return payload;
+    }
+
+    // Returns at most a few bytes per read, like a socket stream that has not received the whole body yet
+    private static InputStream trickle(byte[] payload)
+    {
+        return new FilterInputStream(new ByteArrayInputStream(payload))
+        {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+    }
+
+    // Tests_SRS_STREAMTOOLS_41_001: [If the stream is null, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void readAllBytesThrowsForNullStream() throws IOException
+    {
+        StreamTools.readAllBytes(null, -1);
+    }
+
+    // Tests_SRS_STREAMTOOLS_41_002: [If the expected length is known and no larger than MAX_PRESIZED_LENGTH_IN_BYTES, this function shall read the stream straight into an array of that length.]
+    // Tests_SRS_STREAMTOOLS_41_005: [This function shall return an array holding exactly the bytes read from the stream.]
+    @Test
+    public void readAllBytesReadsStreamOfExpectedLength() throws IOException
+    {
+        // Arrange
+        byte[] payload = buildPayload(1000);
+
+        // Act
+        byte[] result = StreamTools.readAllBytes(trickle(payload), payload.length);
+
+        // Assert
+        assertArrayEquals(payload, result);
+    }
+
+    // Tests_SRS_STREAMTOOLS_41_003: [Otherwise, this function shall read the stream in chunks of CHUNK_SIZE_IN_BYTES into an array that grows as needed.]
+    // Tests_SRS_STREAMTOOLS_41_005: [This function shall return an array holding exactly the bytes read from the stream.]
+    @Test
+    public void readAllBytesReadsStreamOfUnknownLength() throws IOException
+    {
+        // Arrange
+        byte[] payload = buildPayload(3 * StreamTools.CHUNK_SIZE_IN_BYTES + 5);
+
+        // Act
+        byte[] result = StreamTools.readAllBytes(new ByteArrayInputStream(payload), -1);
+
+        // Assert
+        assertArrayEquals(payload, result);
+    }
+
+    // Tests_SRS_STREAMTOOLS_41_005: [This function shall return an array holding exactly the bytes read from the stream.]
+    @Test
+    public void readAllBytesReadsStreamShorterThanExpected() throws IOException
+    {
+        // Arrange
+        byte[] payload = buildPayload(10);
+
+        // Act
+        byte[] result = StreamTools.readAllBytes(new ByteArrayInputStream(payload), 100);
+
+        // Assert
+        assertArrayEquals(payload, result);
+    }
+
+    // Tests_SRS_STREAMTOOLS_41_004: [If the stream holds more bytes than expected, this function shall keep reading until the stream is empty.]
+    @Test
+    public void readAllBytesReadsStreamLongerThanExpected() throws IOException
+    {
+        // Arrange
+        byte[] payload = buildPayload(StreamTools.CHUNK_SIZE_IN_BYTES + 1);
+
+        // Act
+        byte[] result = StreamTools.readAllBytes(trickle(payload), 0);
+
+        // Assert
+        assertArrayEquals(payload, result);
+    }
+
+    // Tests_SRS_STREAMTOOLS_41_006: [If any of the parameters is null, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void readJsonThrowsForNullGson() throws IOException
+    {
+        StreamTools.readJson(new ByteArrayInputStream(new byte[0]), null, Map.class);
+    }
+
+    // Tests_SRS_STREAMTOOLS_41_007: [This function shall deserialize the stream content with the provided Gson instance as it is read.]
+    @Test
+    public void readJsonDeserializesStream() throws IOException
+    {
+        // Arrange
+        byte[] json = "{\"key\":\"välue\"}".getBytes(StandardCharsets.UTF_8);
+
+        // Act
+        Map result = StreamTools.readJson(trickle(json), new Gson(), Map.class);
+
+        // Assert
+        assertEquals("välue", result.get("key"));
+    }
+
+    // Tests_SRS_STREAMTOOLS_41_008: [If the stream could not be read or parsed, this function shall throw an IOException.]
+    @Test (expected = IOException.class)
+    public void readJsonThrowsForInvalidJson() throws IOException
+    {
+        StreamTools.readJson(new ByteArrayInputStream("{\"key\":".getBytes(StandardCharsets.UTF_8)), new Gson(), Map.class);
+    }
+}
@@ -18,6 +18,8 @@ import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * <p>
@@ -453,6 +455,49 @@ public final class DeviceClient extends InternalClient implements Closeable
         this.fileUpload.uploadToBlobAsync(destinationBlobName, inputStream, streamLength, callback, callbackContext);
     }
 
+    /**
+     * Asynchronously upload a file to the IoT Hub.
+     *
+     * The content of the file is uploaded in blocks read into a few reused buffers, so the memory used by the upload
+     * does not grow with the size of the file. If compress is true, the file is stored gzip compressed, compressing
+     * it as it is uploaded, with a gzip content encoding.
+     *
+     * NOTE: IotHub does not currently support CA signed devices using file upload. Please use SAS based authentication or
+     * self signed certificates.
+     *
+     * @param destinationBlobName is a string with the name of the file in the storage.
+     * @param file is the file to upload in the blob.
+     * @param compress is true to store the file gzip compressed.
+     * @param callback the callback to be invoked when a file is uploaded.
+     * @param callbackContext a context to be passed to the callback. Can be {@code null}.
+     *
+     * @throws IllegalArgumentException if the provided blob name is {@code null}, empty or not valid, if the file is
+     *          {@code null} or not a regular file, or if the callback is {@code null}.
+     * @throws IOException if the client cannot create a instance of the FileUpload or the transport.
+     */
+    public void uploadToBlobAsync(String destinationBlobName, Path file, boolean compress,
+                                  IotHubEventCallback callback, Object callbackContext) throws IllegalArgumentException, IOException
+    {
+        if (callback == null)
+        {
+            throw new IllegalArgumentException("Callback is null");
+        }
+
+        if (file == null || !Files.isRegularFile(file))
+        {
+            throw new IllegalArgumentException("The file cannot be null and must be a regular file.");
+        }
+
+        ParserUtility.validateBlobName(destinationBlobName);
+
+        if (this.fileUpload == null)
+        {
+            this.fileUpload = new FileUpload(this.config);
+        }
+
+        this.fileUpload.uploadToBlobAsync(destinationBlobName, file, compress, callback, callbackContext);
+    }
+
     /**
      * Retrieves the twin's latest desired properties
      * @throws IOException if the iothub cannot be reached
@@ -557,6 +602,10 @@ public final class DeviceClient extends InternalClient implements Closeable
      *         option will restart the transport with the updated expiry time, and
      *         will use that expiry time length for all subsequently generated sas tokens.
      *         The value is expected to be of type {@code long}.
+     *      - <b>SetEventDrivenSend</b> - this option is applicable for HTTP/
+     *         AMQP/MQTT and can only be set while the client is closed. If true, queued
+     *         messages are sent by a dedicated thread as soon as they are queued instead
+     *         of every send interval. The value is expected to be of type {@code boolean}.
      *
      * @param optionName the option name to modify
      * @param value an object of the appropriate type for the option's value
@@ -654,6 +703,14 @@ public final class DeviceClient extends InternalClient implements Closeable
                     return;
                 }
             }
+            case SET_EVENT_DRIVEN_SEND:
+            {
+                if (this.ioTHubConnectionType == IoTHubConnectionType.USE_TRANSPORTCLIENT)
+                {
+                    throw new IllegalStateException("Setting event driven send is not supported for single client if using TransportClient.");
+                }
+                break;
+            }
             default:
             {
                 throw new IllegalArgumentException("optionName is unknown = " + optionName);
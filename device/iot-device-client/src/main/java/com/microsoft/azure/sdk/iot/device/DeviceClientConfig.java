@@ -6,6 +6,7 @@ package com.microsoft.azure.sdk.iot.device;
 import com.microsoft.azure.sdk.iot.device.DeviceTwin.Pair;
 import com.microsoft.azure.sdk.iot.device.auth.*;
 import com.microsoft.azure.sdk.iot.device.transport.ExponentialBackoffWithJitter;
+import com.microsoft.azure.sdk.iot.device.transport.MessageSpool;
 import com.microsoft.azure.sdk.iot.device.transport.RetryPolicy;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProvider;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProviderSymmetricKey;
@@ -14,6 +15,7 @@ import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProviderX509;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.net.ssl.SSLContext;
+import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
@@ -32,6 +34,11 @@ public final class DeviceClientConfig
 
     private static final long DEFAULT_OPERATION_TIMEOUT = 4 * 60 * 1000; //4 minutes
 
+    private static final long DEFAULT_OUTBOUND_QUEUE_BLOCK_TIMEOUT_MILLIS = 10 * 1000;
+
+    /** The default size of each message spool segment file. */
+    public static final int DEFAULT_MESSAGE_SPOOL_SEGMENT_SIZE_IN_BYTES = 16 * 1024 * 1024;
+
     private boolean useWebsocket;
     private ProxySettings proxySettings;
 
@@ -74,6 +81,33 @@ public final class DeviceClientConfig
     // Codes_SRS_DEVICECLIENTCONFIG_28_001: [The class shall have ExponentialBackOff as the default retryPolicy.]
     private RetryPolicy retryPolicy = new ExponentialBackoffWithJitter();
 
+    // Codes_SRS_DEVICECLIENTCONFIG_41_001: [The class shall have an unbounded outbound queue with the REJECT overflow
+    // policy by default.]
+    private int maxOutboundQueueMessages = 0;
+    private long maxOutboundQueueBytes = 0;
+    private OutboundQueueOverflowPolicy outboundQueueOverflowPolicy = OutboundQueueOverflowPolicy.REJECT;
+    private long outboundQueueBlockTimeoutMillis = DEFAULT_OUTBOUND_QUEUE_BLOCK_TIMEOUT_MILLIS;
+
+    private File messageSpoolDirectory;
+    private int messageSpoolSegmentSizeInBytes = DEFAULT_MESSAGE_SPOOL_SEGMENT_SIZE_IN_BYTES;
+
+    // Codes_SRS_DEVICECLIENTCONFIG_41_014: [The class shall not batch HTTPS telemetry by default.]
+    private int httpsBatchMaxMessages = 1;
+    private long httpsBatchLingerMillis = 0;
+
+    private static final int DEFAULT_MQTT_MAX_IN_FLIGHT_MESSAGES = 10;
+    private int mqttMaxInFlightMessages = DEFAULT_MQTT_MAX_IN_FLIGHT_MESSAGES;
+
+    // Codes_SRS_DEVICECLIENTCONFIG_41_022: [The class shall not batch AMQPS telemetry by default.]
+    private int amqpBatchMaxMessages = 1;
+
+    // Codes_SRS_DEVICECLIENTCONFIG_41_026: [The class shall flush queued reported properties every second, or as soon
+    // as 100 of them are queued, by default.]
+    private static final long DEFAULT_REPORTED_PROPERTIES_FLUSH_INTERVAL_MILLIS = 1000;
+    private static final int DEFAULT_REPORTED_PROPERTIES_MAX_PER_PATCH = 100;
+    private long reportedPropertiesFlushIntervalMillis = DEFAULT_REPORTED_PROPERTIES_FLUSH_INTERVAL_MILLIS;
+    private int reportedPropertiesMaxPerPatch = DEFAULT_REPORTED_PROPERTIES_MAX_PER_PATCH;
+
     /**
      * Constructor
      *
@@ -288,6 +322,305 @@ public final class DeviceClientConfig
         return this.retryPolicy;
     }
 
+    /**
+     * Setter for the limits of the outbound queue. Messages count against these limits from the time they are queued
+     * until their callback is queued, so memory stays bounded while the client is disconnected.
+     *
+     * @param maxMessages the maximum number of messages in the outbound queue, or 0 for no limit
+     * @param maxBytes the maximum number of body bytes in the outbound queue, or 0 for no limit
+     * @throws IllegalArgumentException if either limit is negative
+     */
+    public void setOutboundQueueLimits(int maxMessages, long maxBytes) throws IllegalArgumentException
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_002: [This function shall throw IllegalArgumentException if either limit is negative.]
+        if (maxMessages < 0 || maxBytes < 0)
+        {
+            throw new IllegalArgumentException("Outbound queue limits cannot be negative.");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_41_003: [This function shall save the provided limits.]
+        this.maxOutboundQueueMessages = maxMessages;
+        this.maxOutboundQueueBytes = maxBytes;
+    }
+
+    /**
+     * Getter for the maximum number of messages in the outbound queue
+     *
+     * @return the maximum number of messages in the outbound queue, or 0 if there is no limit
+     */
+    public int getMaxOutboundQueueMessages()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_004: [This function shall return the saved maximum number of messages.]
+        return this.maxOutboundQueueMessages;
+    }
+
+    /**
+     * Getter for the maximum number of body bytes in the outbound queue
+     *
+     * @return the maximum number of body bytes in the outbound queue, or 0 if there is no limit
+     */
+    public long getMaxOutboundQueueBytes()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_005: [This function shall return the saved maximum number of bytes.]
+        return this.maxOutboundQueueBytes;
+    }
+
+    /**
+     * Setter for what happens to a new message when the outbound queue is full
+     *
+     * @param overflowPolicy the overflow policy
+     * @param blockTimeoutMillis how long a sending thread may block for room in the queue. Only used by the
+     *                           {@link OutboundQueueOverflowPolicy#BLOCK} policy
+     * @throws IllegalArgumentException if overflowPolicy is null or blockTimeoutMillis is negative
+     */
+    public void setOutboundQueueOverflowPolicy(OutboundQueueOverflowPolicy overflowPolicy, long blockTimeoutMillis) throws IllegalArgumentException
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_006: [This function shall throw IllegalArgumentException if overflowPolicy
+        // is null or blockTimeoutMillis is negative.]
+        if (overflowPolicy == null)
+        {
+            throw new IllegalArgumentException("Outbound queue overflow policy cannot be null.");
+        }
+
+        if (blockTimeoutMillis < 0)
+        {
+            throw new IllegalArgumentException("Outbound queue block timeout cannot be negative.");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_41_007: [This function shall save the provided overflow policy and block timeout.]
+        this.outboundQueueOverflowPolicy = overflowPolicy;
+        this.outboundQueueBlockTimeoutMillis = blockTimeoutMillis;
+    }
+
+    /**
+     * Getter for the outbound queue overflow policy
+     *
+     * @return the outbound queue overflow policy
+     */
+    public OutboundQueueOverflowPolicy getOutboundQueueOverflowPolicy()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_008: [This function shall return the saved overflow policy.]
+        return this.outboundQueueOverflowPolicy;
+    }
+
+    /**
+     * Getter for how long a sending thread may block for room in the outbound queue
+     *
+     * @return the block timeout, in milliseconds
+     */
+    public long getOutboundQueueBlockTimeoutMillis()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_009: [This function shall return the saved block timeout.]
+        return this.outboundQueueBlockTimeoutMillis;
+    }
+
+    /**
+     * Setter for the directory that telemetry is spooled to before it is sent. Spooled telemetry that was not
+     * acknowledged by the service is sent again the next time the client is opened, even after the process restarts.
+     *
+     * @param directory the directory to keep the spool segment files in, or null to not spool telemetry
+     * @param segmentSizeInBytes the size of each spool segment file. No message may be larger than a segment
+     * @throws IllegalArgumentException if segmentSizeInBytes is smaller than {@link MessageSpool#MIN_SEGMENT_SIZE_IN_BYTES}
+     */
+    public void setMessageSpool(File directory, int segmentSizeInBytes) throws IllegalArgumentException
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_010: [This function shall throw IllegalArgumentException if segmentSizeInBytes
+        // is smaller than the minimum spool segment size.]
+        if (segmentSizeInBytes < MessageSpool.MIN_SEGMENT_SIZE_IN_BYTES)
+        {
+            throw new IllegalArgumentException("Message spool segment size cannot be smaller than " + MessageSpool.MIN_SEGMENT_SIZE_IN_BYTES + " bytes.");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_41_011: [This function shall save the provided directory and segment size.]
+        this.messageSpoolDirectory = directory;
+        this.messageSpoolSegmentSizeInBytes = segmentSizeInBytes;
+    }
+
+    /**
+     * Getter for the directory that telemetry is spooled to
+     *
+     * @return the spool directory, or null if telemetry is not spooled
+     */
+    public File getMessageSpoolDirectory()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_012: [This function shall return the saved spool directory.]
+        return this.messageSpoolDirectory;
+    }
+
+    /**
+     * Getter for the size of each spool segment file
+     *
+     * @return the spool segment size, in bytes
+     */
+    public int getMessageSpoolSegmentSizeInBytes()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_013: [This function shall return the saved spool segment size.]
+        return this.messageSpoolSegmentSizeInBytes;
+    }
+
+    /**
+     * Setter for how telemetry is batched when using HTTPS. Telemetry waiting to be sent is posted to the service in
+     * batches of up to maxMessagesPerBatch messages, as long as each batch fits in a single service-bound message.
+     *
+     * @param maxMessagesPerBatch the maximum number of messages in each batch, or 1 to send each message on its own
+     * @param lingerMillis how long a message may wait for more messages to fill its batch before the batch is sent
+     *                     anyway, or 0 to send whatever is waiting right away
+     * @throws IllegalArgumentException if maxMessagesPerBatch is smaller than 1 or lingerMillis is negative
+     */
+    public void setHttpsBatching(int maxMessagesPerBatch, long lingerMillis) throws IllegalArgumentException
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_015: [This function shall throw IllegalArgumentException if
+        // maxMessagesPerBatch is smaller than 1 or lingerMillis is negative.]
+        if (maxMessagesPerBatch < 1)
+        {
+            throw new IllegalArgumentException("HTTPS batches must allow at least one message.");
+        }
+
+        if (lingerMillis < 0)
+        {
+            throw new IllegalArgumentException("HTTPS batch linger time cannot be negative.");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_41_016: [This function shall save the provided batch size and linger time.]
+        this.httpsBatchMaxMessages = maxMessagesPerBatch;
+        this.httpsBatchLingerMillis = lingerMillis;
+    }
+
+    /**
+     * Getter for the maximum number of messages in each HTTPS telemetry batch
+     *
+     * @return the maximum number of messages in each batch, or 1 if telemetry is not batched
+     */
+    public int getHttpsBatchMaxMessages()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_017: [This function shall return the saved batch size.]
+        return this.httpsBatchMaxMessages;
+    }
+
+    /**
+     * Getter for how long a message may wait for more messages to fill its HTTPS batch
+     *
+     * @return the linger time, in milliseconds
+     */
+    public long getHttpsBatchLingerMillis()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_018: [This function shall return the saved linger time.]
+        return this.httpsBatchLingerMillis;
+    }
+
+    /**
+     * Setter for the number of messages that may wait for their acknowledgement at the same time when using MQTT.
+     * Messages sent while that many messages are waiting are only published once an acknowledgement arrives.
+     *
+     * @param maxInFlightMessages the maximum number of messages in flight
+     * @throws IllegalArgumentException if maxInFlightMessages is smaller than 1
+     */
+    public void setMqttMaxInFlightMessages(int maxInFlightMessages) throws IllegalArgumentException
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_019: [This function shall throw IllegalArgumentException if
+        // maxInFlightMessages is smaller than 1.]
+        if (maxInFlightMessages < 1)
+        {
+            throw new IllegalArgumentException("At least one MQTT message must be allowed in flight.");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_41_020: [This function shall save the provided maximum number of messages in flight.]
+        this.mqttMaxInFlightMessages = maxInFlightMessages;
+    }
+
+    /**
+     * Getter for the number of messages that may wait for their acknowledgement at the same time when using MQTT
+     *
+     * @return the maximum number of messages in flight, 10 unless set otherwise
+     */
+    public int getMqttMaxInFlightMessages()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_021: [This function shall return the saved maximum number of messages in flight.]
+        return this.mqttMaxInFlightMessages;
+    }
+
+    /**
+     * Setter for the maximum number of telemetry messages that are sent together in a single batched message when
+     * using AMQPS.
+     *
+     * @param maxMessagesPerBatch the maximum number of messages in each batch, or 1 to send each message on its own
+     * @throws IllegalArgumentException if maxMessagesPerBatch is smaller than 1
+     */
+    public void setAmqpBatchMaxMessages(int maxMessagesPerBatch) throws IllegalArgumentException
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_023: [This function shall throw IllegalArgumentException if
+        // maxMessagesPerBatch is smaller than 1.]
+        if (maxMessagesPerBatch < 1)
+        {
+            throw new IllegalArgumentException("An AMQP batch must hold at least one message.");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_41_024: [This function shall save the provided batch size.]
+        this.amqpBatchMaxMessages = maxMessagesPerBatch;
+    }
+
+    /**
+     * Getter for the maximum number of telemetry messages that are sent together in a single batched message when
+     * using AMQPS
+     *
+     * @return the maximum number of messages in each batch, 1 unless set otherwise
+     */
+    public int getAmqpBatchMaxMessages()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_025: [This function shall return the saved batch size.]
+        return this.amqpBatchMaxMessages;
+    }
+
+    /**
+     * Setter for how queued reported properties are coalesced into a single twin patch. The queued properties are sent
+     * once flushIntervalMillis have passed since the first of them was queued, or as soon as maxPropertiesPerPatch
+     * different properties are queued, whichever comes first.
+     *
+     * @param flushIntervalMillis the longest time, in milliseconds, a queued property waits before being sent
+     * @param maxPropertiesPerPatch the maximum number of different properties in each patch
+     * @throws IllegalArgumentException if flushIntervalMillis or maxPropertiesPerPatch is smaller than 1
+     */
+    public void setReportedPropertiesCoalescing(long flushIntervalMillis, int maxPropertiesPerPatch) throws IllegalArgumentException
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_027: [This function shall throw IllegalArgumentException if
+        // flushIntervalMillis or maxPropertiesPerPatch is smaller than 1.]
+        if (flushIntervalMillis < 1)
+        {
+            throw new IllegalArgumentException("The reported properties flush interval must be at least one millisecond.");
+        }
+
+        if (maxPropertiesPerPatch < 1)
+        {
+            throw new IllegalArgumentException("A reported properties patch must hold at least one property.");
+        }
+
+        // Codes_SRS_DEVICECLIENTCONFIG_41_028: [This function shall save the provided flush interval and patch size.]
+        this.reportedPropertiesFlushIntervalMillis = flushIntervalMillis;
+        this.reportedPropertiesMaxPerPatch = maxPropertiesPerPatch;
+    }
+
+    /**
+     * Getter for the longest time a queued reported property waits before being sent
+     *
+     * @return the flush interval in milliseconds, 1000 unless set otherwise
+     */
+    public long getReportedPropertiesFlushIntervalMillis()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_029: [This function shall return the saved flush interval.]
+        return this.reportedPropertiesFlushIntervalMillis;
+    }
+
+    /**
+     * Getter for the maximum number of different reported properties sent in a single twin patch
+     *
+     * @return the maximum number of properties in each patch, 100 unless set otherwise
+     */
+    public int getReportedPropertiesMaxPerPatch()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_41_030: [This function shall return the saved patch size.]
+        return this.reportedPropertiesMaxPerPatch;
+    }
+
     /**
      * Getter for SasTokenAuthentication
      *
@@ -78,6 +78,7 @@ public final class DeviceIO
 
     private long sendPeriodInMilliseconds;
     private long receivePeriodInMilliseconds;
+    private boolean eventDrivenSend;
 
     private IotHubTransport transport;
     private DeviceClientConfig config;
@@ -187,16 +188,27 @@ public final class DeviceIO
      */
     private void commonOpenSetup()
     {
-        this.sendTask = new IotHubSendTask(this.transport);
         this.receiveTask = new IotHubReceiveTask(this.transport);
 
         this.taskScheduler = Executors.newScheduledThreadPool(2);
-        // the scheduler waits until each execution is finished before
-        // scheduling the next one, so executions of a given task
-        // will never overlap.
-        /* Codes_SRS_DEVICE_IO_21_013: [The open shall schedule send tasks to run every SEND_PERIOD_MILLIS milliseconds.] */
-        this.taskScheduler.scheduleAtFixedRate(this.sendTask, 0,
-                sendPeriodInMilliseconds, TimeUnit.MILLISECONDS);
+        if (this.eventDrivenSend)
+        {
+            /* Codes_SRS_DEVICE_IO_41_001: [If event driven send is enabled, the open shall run a single event driven send task on its own thread instead of scheduling send tasks.] */
+            this.sendTask = new IotHubSendTask(this.transport, true);
+            this.taskScheduler.submit(this.sendTask);
+        }
+        else
+        {
+            this.sendTask = new IotHubSendTask(this.transport);
+
+            // the scheduler waits until each execution is finished before
+            // scheduling the next one, so executions of a given task
+            // will never overlap.
+            /* Codes_SRS_DEVICE_IO_21_013: [The open shall schedule send tasks to run every SEND_PERIOD_MILLIS milliseconds.] */
+            this.taskScheduler.scheduleAtFixedRate(this.sendTask, 0,
+                    sendPeriodInMilliseconds, TimeUnit.MILLISECONDS);
+        }
+
         /* Codes_SRS_DEVICE_IO_21_014: [The open shall schedule receive tasks to run every receivePeriodInMilliseconds milliseconds.] */
         this.taskScheduler.scheduleAtFixedRate(this.receiveTask, 0,
                 receivePeriodInMilliseconds, TimeUnit.MILLISECONDS);
@@ -219,7 +231,15 @@ public final class DeviceIO
         /* Codes_SRS_DEVICE_IO_21_018: [The close shall cancel all recurring tasks.] */
         if (taskScheduler != null)
         {
-            this.taskScheduler.shutdown();
+            if (this.eventDrivenSend)
+            {
+                /* Codes_SRS_DEVICE_IO_41_002: [If event driven send is enabled, the close shall interrupt the event driven send task.] */
+                this.taskScheduler.shutdownNow();
+            }
+            else
+            {
+                this.taskScheduler.shutdown();
+            }
         }
 
         /* Codes_SRS_DEVICE_IO_21_019: [The close shall close the transport.] */
@@ -264,31 +284,36 @@ public final class DeviceIO
      * @throws IllegalArgumentException if the message provided is {@code null}.
      * @throws IllegalStateException if the client has not been opened yet or is already closed.
      */
-    public synchronized void sendEventAsync(Message message,
+    public void sendEventAsync(Message message,
                                IotHubEventCallback callback,
                                Object callbackContext,
                                String deviceId)
     {
-        /* Codes_SRS_DEVICE_IO_21_024: [If the client is closed, the sendEventAsync shall throw an IllegalStateException.] */
-        if (this.state == IotHubClientState.CLOSED)
+        synchronized (this)
         {
-            throw new IllegalStateException(
-                    "Cannot send event from "
-                            + "an IoT Hub client that is closed.");
-        }
+            /* Codes_SRS_DEVICE_IO_21_024: [If the client is closed, the sendEventAsync shall throw an IllegalStateException.] */
+            if (this.state == IotHubClientState.CLOSED)
+            {
+                throw new IllegalStateException(
+                        "Cannot send event from "
+                                + "an IoT Hub client that is closed.");
+            }
 
-        /* Codes_SRS_DEVICE_IO_21_023: [If the message given is null, the sendEventAsync shall throw an IllegalArgumentException.] */
-        if (message == null)
-        {
-            throw new IllegalArgumentException("Cannot send message 'null'.");
-        }
+            /* Codes_SRS_DEVICE_IO_21_023: [If the message given is null, the sendEventAsync shall throw an IllegalArgumentException.] */
+            if (message == null)
+            {
+                throw new IllegalArgumentException("Cannot send message 'null'.");
+            }
 
-        // Codes_SRS_DEVICE_IO_12_001: [The function shall set the deviceId on the message if the deviceId parameter is not null.]
-        if (deviceId != null)
-        {
-            message.setConnectionDeviceId(deviceId);
+            // Codes_SRS_DEVICE_IO_12_001: [The function shall set the deviceId on the message if the deviceId parameter is not null.]
+            if (deviceId != null)
+            {
+                message.setConnectionDeviceId(deviceId);
+            }
         }
 
+        // The transport may block here while the outbound queue is full, so the monitor of this object is not held
+        // and other senders are not held up behind this one.
         /* Codes_SRS_DEVICE_IO_21_022: [The sendEventAsync shall add the message, with its associated callback and callback context, to the transport.] */
         transport.addMessage(message, callback, callbackContext);
     }
@@ -366,7 +391,8 @@ public final class DeviceIO
         this.sendPeriodInMilliseconds = newIntervalInMilliseconds;
 
         /* Codes_SRS_DEVICE_IO_21_034: [If the task scheduler already exists, the setSendPeriodInMilliseconds shall change the `scheduleAtFixedRate` for the sendTask to the new value.] */
-        if(this.taskScheduler != null)
+        /* Codes_SRS_DEVICE_IO_41_003: [If event driven send is enabled, the setSendPeriodInMilliseconds shall only store the new send period.] */
+        if(this.taskScheduler != null && !this.eventDrivenSend)
         {
             /* Codes_SRS_DEVICE_IO_21_035: [If the `sendTask` is null, the setSendPeriodInMilliseconds shall throw IOException.] */
             if(this.sendTask == null)
@@ -379,6 +405,36 @@ public final class DeviceIO
         }
     }
 
+    /**
+     * Getter for the event driven send mode.
+     *
+     * @return a boolean true if messages are sent as soon as they are queued, or false if the queue is polled
+     * every send period.
+     */
+    public boolean isEventDrivenSend()
+    {
+        return this.eventDrivenSend;
+    }
+
+    /**
+     * Setter for the event driven send mode. When enabled, a dedicated thread waits for messages to be queued and
+     * sends them immediately, instead of polling the queue every send period.
+     *
+     * @param eventDrivenSend true to send messages as soon as they are queued, false to poll the queue every send period.
+     * @throws IllegalStateException if the client is already open.
+     */
+    public void setEventDrivenSend(boolean eventDrivenSend)
+    {
+        /* Codes_SRS_DEVICE_IO_41_004: [If the client is open, the setEventDrivenSend shall throw IllegalStateException.] */
+        if (this.state == IotHubClientState.OPEN)
+        {
+            throw new IllegalStateException("event driven send can only be changed while the client is closed");
+        }
+
+        /* Codes_SRS_DEVICE_IO_41_005: [The setEventDrivenSend shall store the new send mode.] */
+        this.eventDrivenSend = eventDrivenSend;
+    }
+
     /**
      * Getter for the transport protocol.
      *
@@ -411,6 +467,27 @@ public final class DeviceIO
         return this.transport.isEmpty();
     }
 
+    /**
+     * Getter for the number of messages in the transport outbound queue, from the time they are sent until their
+     * callback is queued.
+     * @return the number of messages in the outbound queue.
+     */
+    public int getOutboundQueueDepth()
+    {
+        /* Codes_SRS_DEVICE_IO_41_006: [The getOutboundQueueDepth shall return the transport outbound queue depth.] */
+        return this.transport.getOutboundQueueDepth();
+    }
+
+    /**
+     * Getter for the total size of the message bodies in the transport outbound queue.
+     * @return the number of message body bytes in the outbound queue.
+     */
+    public long getOutboundQueueSizeInBytes()
+    {
+        /* Codes_SRS_DEVICE_IO_41_007: [The getOutboundQueueSizeInBytes shall return the transport outbound queue size in bytes.] */
+        return this.transport.getOutboundQueueSizeInBytes();
+    }
+
     /**
      * Registers a callback with the configured transport to be executed whenever the connection to the device is lost or established.
      *
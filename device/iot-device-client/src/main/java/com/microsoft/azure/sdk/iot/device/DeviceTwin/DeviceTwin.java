@@ -11,11 +11,19 @@ import com.microsoft.azure.sdk.iot.device.transport.IotHubTransportMessage;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import static com.microsoft.azure.sdk.iot.device.IotHubMessageResult.ABANDON;
 import static com.microsoft.azure.sdk.iot.device.IotHubMessageResult.COMPLETE;
@@ -49,6 +57,35 @@ public class DeviceTwin
     private ConcurrentSkipListMap<String, Pair<PropertyCallBack<String, Object>, Object>> onDesiredPropertyChangeMap;
     private ConcurrentSkipListMap<String, Pair<TwinPropertyCallBack, Object>> onDesiredTwinPropertyChangeMap;
 
+    /*
+        Reported properties queued to be sent together in the next patch, and the patches waiting for their response,
+        by request id and by correlation id
+     */
+    private final Map<String, QueuedReportedProperty> queuedReportedProperties = new LinkedHashMap<>();
+    private final Map<String, ReportedPropertiesPatch> reportedPropertiesPatchesInFlight = new ConcurrentHashMap<>();
+    private ScheduledExecutorService reportedPropertiesFlushScheduler;
+    private ScheduledFuture<?> reportedPropertiesFlush;
+
+    private static final class QueuedReportedProperty
+    {
+        private Object value;
+        private final List<Pair<IotHubEventCallback, Object>> callbacks = new ArrayList<>();
+    }
+
+    private static final class ReportedPropertiesPatch
+    {
+        private final String requestId;
+        private final String correlationId;
+        private final List<Pair<IotHubEventCallback, Object>> callbacks;
+
+        private ReportedPropertiesPatch(String requestId, String correlationId, List<Pair<IotHubEventCallback, Object>> callbacks)
+        {
+            this.requestId = requestId;
+            this.correlationId = correlationId;
+            this.callbacks = callbacks;
+        }
+    }
+
     /*
         Callback invoked when a response to device twin operation is issued by iothub
      */
@@ -121,6 +158,15 @@ public class DeviceTwin
                          */
                         log.trace("Executing twin status callback for device operation twin update reported properties response with status " + iotHubStatus);
                         deviceTwinStatusCallback.execute(iotHubStatus, deviceTwinStatusCallbackContext);
+
+                        /*
+                         **Codes_SRS_DEVICETWIN_41_007: [**If the response is for a patch of queued reported properties, the callback of every property in that patch shall be triggered with the status.**]**
+                         */
+                        ReportedPropertiesPatch patch = findReportedPropertiesPatch(dtMessage);
+                        if (patch != null)
+                        {
+                            completeReportedPropertiesPatch(patch, iotHubStatus);
+                        }
                         break;
                     }
                     case DEVICE_OPERATION_TWIN_SUBSCRIBE_DESIRED_PROPERTIES_RESPONSE:
@@ -234,6 +280,14 @@ public class DeviceTwin
                 if((responseStatus != IotHubStatusCode.OK) && (responseStatus != IotHubStatusCode.OK_EMPTY))
                 {
                     deviceTwinStatusCallback.execute(responseStatus, deviceTwinStatusCallbackContext);
+
+                    /*
+                     **Codes_SRS_DEVICETWIN_41_008: [**If a patch of queued reported properties could not be delivered, the callback of every property in that patch shall be triggered with the delivery status.**]**
+                     */
+                    if (callbackContext instanceof ReportedPropertiesPatch)
+                    {
+                        completeReportedPropertiesPatch((ReportedPropertiesPatch) callbackContext, responseStatus);
+                    }
                 }
             }
         }
@@ -356,6 +410,173 @@ public class DeviceTwin
             return;
         }
 
+        /*
+         **Codes_SRS_DEVICETWIN_25_015: [**This method shall send the message to the lower transport layers by calling sendEventAsync.**]**
+         */
+        IotHubTransportMessage updateReportedPropertiesRequest = createUpdateReportedPropertiesRequest(serializedReportedProperties, version);
+        this.deviceIO.sendEventAsync(updateReportedPropertiesRequest, new deviceTwinRequestMessageCallback(), null, this.config.getDeviceId());
+
+    }
+
+    /**
+     * Queues a reported property to be sent in a single patch together with the other queued properties. A property
+     * queued again before the patch is sent keeps only its last value. The patch is sent once the flush interval
+     * of the config has passed since the first property was queued, or as soon as the maximum number of properties
+     * per patch is queued.
+     *
+     * @param property the reported property to send. Cannot be {@code null}.
+     * @param callback the callback to be triggered with the status of the patch that sends the property. Can be {@code null}.
+     * @param callbackContext the context to be passed to the callback. Can be {@code null}.
+     * @throws IllegalArgumentException if the property is {@code null} or cannot be reported.
+     */
+    public synchronized void queueReportedProperty(Property property, IotHubEventCallback callback, Object callbackContext) throws IllegalArgumentException
+    {
+        if (property == null)
+        {
+            /*
+             **Codes_SRS_DEVICETWIN_41_001: [**The method shall throw IllegalArgumentException if the property is null.**]**
+             */
+            throw new IllegalArgumentException("Reported property cannot be null");
+        }
+
+        /*
+         **Codes_SRS_DEVICETWIN_41_002: [**The method shall throw IllegalArgumentException if the property cannot be serialized in a TwinCollection.**]**
+         */
+        new TwinCollection().putFinal(property.getKey(), property.getValue());
+
+        /*
+         **Codes_SRS_DEVICETWIN_41_003: [**If the property is already queued, the method shall replace its value and keep the callbacks of both.**]**
+         */
+        QueuedReportedProperty queuedProperty = this.queuedReportedProperties.get(property.getKey());
+        if (queuedProperty == null)
+        {
+            queuedProperty = new QueuedReportedProperty();
+            this.queuedReportedProperties.put(property.getKey(), queuedProperty);
+        }
+        queuedProperty.value = property.getValue();
+        if (callback != null)
+        {
+            queuedProperty.callbacks.add(new Pair<>(callback, callbackContext));
+        }
+
+        if (this.queuedReportedProperties.size() >= this.config.getReportedPropertiesMaxPerPatch())
+        {
+            /*
+             **Codes_SRS_DEVICETWIN_41_004: [**If the maximum number of properties per patch is queued, the method shall send the queued properties.**]**
+             */
+            this.flushReportedProperties();
+        }
+        else if (this.reportedPropertiesFlush == null)
+        {
+            /*
+             **Codes_SRS_DEVICETWIN_41_005: [**Otherwise, if no patch is scheduled yet, the method shall schedule the queued properties to be sent once the flush interval has passed.**]**
+             */
+            if (this.reportedPropertiesFlushScheduler == null)
+            {
+                this.reportedPropertiesFlushScheduler = Executors.newSingleThreadScheduledExecutor();
+            }
+
+            this.reportedPropertiesFlush = this.reportedPropertiesFlushScheduler.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    flushReportedProperties();
+                }
+            }, this.config.getReportedPropertiesFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends all the queued reported properties in a single patch, without waiting for the flush interval.
+     */
+    public synchronized void flushReportedProperties()
+    {
+        if (this.reportedPropertiesFlush != null)
+        {
+            this.reportedPropertiesFlush.cancel(false);
+            this.reportedPropertiesFlush = null;
+        }
+
+        if (this.queuedReportedProperties.isEmpty())
+        {
+            return;
+        }
+
+        TwinCollection reportedPropertiesMap = new TwinCollection();
+        List<Pair<IotHubEventCallback, Object>> callbacks = new ArrayList<>();
+        for (Map.Entry<String, QueuedReportedProperty> queuedProperty : this.queuedReportedProperties.entrySet())
+        {
+            reportedPropertiesMap.putFinal(queuedProperty.getKey(), queuedProperty.getValue().value);
+            callbacks.addAll(queuedProperty.getValue().callbacks);
+        }
+        this.queuedReportedProperties.clear();
+
+        /*
+         **Codes_SRS_DEVICETWIN_41_006: [**The method shall send all the queued properties in a single update reported properties request by calling sendEventAsync.**]**
+         */
+        IotHubTransportMessage updateReportedPropertiesRequest = createUpdateReportedPropertiesRequest(reportedPropertiesMap.toJsonElement().toString(), null);
+        ReportedPropertiesPatch patch = new ReportedPropertiesPatch(updateReportedPropertiesRequest.getRequestId(), updateReportedPropertiesRequest.getCorrelationId(), callbacks);
+        if (!callbacks.isEmpty())
+        {
+            this.reportedPropertiesPatchesInFlight.put(patch.requestId, patch);
+            if (patch.correlationId != null)
+            {
+                this.reportedPropertiesPatchesInFlight.put(patch.correlationId, patch);
+            }
+        }
+
+        try
+        {
+            this.deviceIO.sendEventAsync(updateReportedPropertiesRequest, new deviceTwinRequestMessageCallback(), patch, this.config.getDeviceId());
+        }
+        catch (IllegalArgumentException | IllegalStateException e)
+        {
+            /*
+             **Codes_SRS_DEVICETWIN_41_009: [**If the patch cannot be sent, the callback of every property in that patch shall be triggered with ERROR.**]**
+             */
+            log.warn("Failed to send the queued reported properties", e);
+            completeReportedPropertiesPatch(patch, IotHubStatusCode.ERROR);
+        }
+    }
+
+    /**
+     * Stops sending queued reported properties. The callback of every property still queued, or sent in a patch
+     * still waiting for its response, is triggered with MESSAGE_CANCELLED_ONCLOSE.
+     */
+    public synchronized void close()
+    {
+        if (this.reportedPropertiesFlushScheduler != null)
+        {
+            this.reportedPropertiesFlushScheduler.shutdownNow();
+            this.reportedPropertiesFlushScheduler = null;
+            this.reportedPropertiesFlush = null;
+        }
+
+        /*
+         **Codes_SRS_DEVICETWIN_41_010: [**The method shall trigger the callback of every property still queued with MESSAGE_CANCELLED_ONCLOSE, and drop the queued properties.**]**
+         */
+        for (QueuedReportedProperty queuedProperty : this.queuedReportedProperties.values())
+        {
+            for (Pair<IotHubEventCallback, Object> callback : queuedProperty.callbacks)
+            {
+                callback.getKey().execute(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, callback.getValue());
+            }
+        }
+        this.queuedReportedProperties.clear();
+
+        /*
+         **Codes_SRS_DEVICETWIN_41_011: [**The method shall trigger the callback of every property in a patch still waiting for its response with MESSAGE_CANCELLED_ONCLOSE, once per patch, and drop the patches.**]**
+         */
+        for (ReportedPropertiesPatch patch : new ArrayList<>(this.reportedPropertiesPatchesInFlight.values()))
+        {
+            completeReportedPropertiesPatch(patch, IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE);
+        }
+        this.reportedPropertiesPatchesInFlight.clear();
+    }
+
+    private IotHubTransportMessage createUpdateReportedPropertiesRequest(String serializedReportedProperties, Integer version)
+    {
         /*
          **Codes_SRS_DEVICETWIN_25_012: [**The method shall create a device twin message with the serialized payload if not null to be sent IotHub and shall include the connection device id of the sending device.**]**
          */
@@ -380,11 +601,40 @@ public class DeviceTwin
          */
         updateReportedPropertiesRequest.setDeviceOperationType(DeviceOperations.DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST);
 
-        /*
-         **Codes_SRS_DEVICETWIN_25_015: [**This method shall send the message to the lower transport layers by calling sendEventAsync.**]**
-         */
-        this.deviceIO.sendEventAsync(updateReportedPropertiesRequest, new deviceTwinRequestMessageCallback(), null, this.config.getDeviceId());
+        return updateReportedPropertiesRequest;
+    }
+
+    private ReportedPropertiesPatch findReportedPropertiesPatch(IotHubTransportMessage response)
+    {
+        // MQTT responses carry the request id of the request, AMQP responses carry its correlation id
+        ReportedPropertiesPatch patch = null;
+        if (response.getRequestId() != null)
+        {
+            patch = this.reportedPropertiesPatchesInFlight.get(response.getRequestId());
+        }
+        if (patch == null && response.getCorrelationId() != null)
+        {
+            patch = this.reportedPropertiesPatchesInFlight.get(response.getCorrelationId());
+        }
+        return patch;
+    }
 
+    private void completeReportedPropertiesPatch(ReportedPropertiesPatch patch, IotHubStatusCode status)
+    {
+        // Only the first completion of a patch, by its response or by a failed delivery, triggers the callbacks
+        boolean inFlight = this.reportedPropertiesPatchesInFlight.remove(patch.requestId) == patch;
+        if (patch.correlationId != null)
+        {
+            this.reportedPropertiesPatchesInFlight.remove(patch.correlationId);
+        }
+
+        if (inFlight)
+        {
+            for (Pair<IotHubEventCallback, Object> callback : patch.callbacks)
+            {
+                callback.getKey().execute(status, callback.getValue());
+            }
+        }
     }
 
     public void subscribeDesiredPropertiesNotification(Map<Property, Pair<PropertyCallBack<String, Object>, Object>> onDesiredPropertyChange)
@@ -13,6 +13,7 @@ import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProvider;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.net.ssl.SSLContext;
+import java.io.File;
 import java.io.IOError;
 import java.io.IOException;
 import java.net.URISyntaxException;
@@ -29,6 +30,7 @@ public class InternalClient
     static final String SET_CERTIFICATE_PATH = "SetCertificatePath";
 	static final String SET_CERTIFICATE_AUTHORITY = "SetCertificateAuthority";
     static final String SET_SAS_TOKEN_EXPIRY_TIME = "SetSASTokenExpiryTime";
+    static final String SET_EVENT_DRIVEN_SEND = "SetEventDrivenSend";
 
     DeviceClientConfig config;
     DeviceIO deviceIO;
@@ -135,6 +137,12 @@ public class InternalClient
 
     public void close() throws IOException
     {
+        if (this.twin != null)
+        {
+            //Codes_SRS_INTERNALCLIENT_41_014: [The close shall send the queued reported properties before waiting for the deviceIO to be empty.]
+            this.twin.flushReportedProperties();
+        }
+
         while (!this.deviceIO.isEmpty())
         {
             // Don't do anything, can be infinite.
@@ -142,12 +150,23 @@ public class InternalClient
 
         //Codes_SRS_INTERNALCLIENT_21_042: [The closeNow shall closeNow the deviceIO connection.]
         this.deviceIO.close();
+        this.closeTwin();
     }
 
     public void closeNow() throws IOException
     {
         //Codes_SRS_INTERNALCLIENT_21_008: [The closeNow shall closeNow the deviceIO connection.]
         this.deviceIO.close();
+        this.closeTwin();
+    }
+
+    private void closeTwin()
+    {
+        if (this.twin != null)
+        {
+            //Codes_SRS_INTERNALCLIENT_41_015: [The close and closeNow shall stop sending the queued reported properties of the twin.]
+            this.twin.close();
+        }
     }
 
     /**
@@ -284,6 +303,58 @@ public class InternalClient
         this.twin.updateReportedProperties(reportedProperties, version);
     }
 
+    /**
+     * Queues a reported property to be sent together with the other queued properties in a single twin patch, instead
+     * of in a request of its own. A property queued again before the patch is sent keeps only its last value, and the
+     * callback of every queuing of it is triggered with the status of the patch. See
+     * {@link #setReportedPropertiesCoalescing(long, int)} for when the patch is sent.
+     *
+     * @param reportedProperty the reported property to send. Cannot be {@code null}.
+     * @param callback the callback to be triggered with the status of the patch. Can be {@code null}.
+     * @param callbackContext the context to be passed to the callback. Can be {@code null}.
+     *
+     * @throws IOException if called when client is not opened or called before starting twin.
+     * @throws IllegalArgumentException if reportedProperty is null or cannot be reported.
+     */
+    public void queueReportedProperty(Property reportedProperty, IotHubEventCallback callback, Object callbackContext) throws IOException, IllegalArgumentException
+    {
+        if (this.twin == null)
+        {
+            //Codes_SRS_INTERNALCLIENT_41_016: [If the client has not started twin before calling this method, the function shall throw an IOException.]
+            throw new IOException("Start twin before using it");
+        }
+
+        if (!this.deviceIO.isOpen())
+        {
+            //Codes_SRS_INTERNALCLIENT_41_017: [If the client has not been open, the function shall throw an IOException.]
+            throw new IOException("Open the client connection before using it.");
+        }
+
+        if (reportedProperty == null)
+        {
+            //Codes_SRS_INTERNALCLIENT_41_018: [If the reportedProperty is null, the function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("Reported property cannot be null.");
+        }
+
+        //Codes_SRS_INTERNALCLIENT_41_019: [This method shall queue the reported property by calling queueReportedProperty on the twin object.]
+        this.twin.queueReportedProperty(reportedProperty, callback, callbackContext);
+    }
+
+    /**
+     * Sets when the reported properties queued by {@link #queueReportedProperty(Property, IotHubEventCallback, Object)}
+     * are sent. They are sent in a single patch once flushIntervalMillis have passed since the first of them was
+     * queued, or as soon as maxPropertiesPerPatch different properties are queued, whichever comes first.
+     *
+     * @param flushIntervalMillis the longest time, in milliseconds, a queued property waits before being sent, 1000 unless set otherwise
+     * @param maxPropertiesPerPatch the maximum number of different properties in each patch, 100 unless set otherwise
+     * @throws IllegalArgumentException if flushIntervalMillis or maxPropertiesPerPatch is smaller than 1
+     */
+    public void setReportedPropertiesCoalescing(long flushIntervalMillis, int maxPropertiesPerPatch) throws IllegalArgumentException
+    {
+        //Codes_SRS_INTERNALCLIENT_41_020: [The function shall set the device config's reported properties coalescing.]
+        this.config.setReportedPropertiesCoalescing(flushIntervalMillis, maxPropertiesPerPatch);
+    }
+
     /**
      * Registers a callback to be executed when the connection status of the device changes. The callback will be fired
      * with a status and a reason why the device's status changed. When the callback is fired, the provided context will
@@ -327,6 +398,158 @@ public class InternalClient
         this.config.setOperationTimeout(timeout);
     }
 
+    /**
+     * Limits how many messages, and how many message body bytes, may be waiting to be sent or waiting for a response
+     * at once. Once a limit is reached, the overflow policy set with
+     * {@link #setOutboundQueueOverflowPolicy(OutboundQueueOverflowPolicy, long)} decides what happens to new messages.
+     * Only telemetry counts against the limits, so twin and method messages are never rejected or dropped by them.
+     * @param maxMessages the maximum number of messages in the outbound queue, or 0 for no limit
+     * @param maxBytes the maximum number of message body bytes in the outbound queue, or 0 for no limit
+     * @throws IllegalArgumentException if either limit is negative
+     */
+    public void setOutboundQueueLimits(int maxMessages, long maxBytes) throws IllegalArgumentException
+    {
+        // Codes_SRS_INTERNALCLIENT_41_001: [The function shall set the device config's outbound queue limits.]
+        this.config.setOutboundQueueLimits(maxMessages, maxBytes);
+    }
+
+    /**
+     * Sets what happens to a new message when the outbound queue is full. Messages rejected or dropped because of the
+     * outbound queue limits have their callback invoked with {@link IotHubStatusCode#OUTBOUND_QUEUE_FULL}.
+     * @param overflowPolicy the overflow policy
+     * @param blockTimeoutMillis how long sendEventAsync may block for room in the queue when the overflow policy is
+     *                           {@link OutboundQueueOverflowPolicy#BLOCK}
+     * @throws IllegalArgumentException if overflowPolicy is null or blockTimeoutMillis is negative
+     */
+    public void setOutboundQueueOverflowPolicy(OutboundQueueOverflowPolicy overflowPolicy, long blockTimeoutMillis) throws IllegalArgumentException
+    {
+        // Codes_SRS_INTERNALCLIENT_41_002: [The function shall set the device config's outbound queue overflow policy.]
+        this.config.setOutboundQueueOverflowPolicy(overflowPolicy, blockTimeoutMillis);
+    }
+
+    /**
+     * Spools telemetry to the provided directory before it is sent, using segment files of
+     * {@link DeviceClientConfig#DEFAULT_MESSAGE_SPOOL_SEGMENT_SIZE_IN_BYTES} bytes. Telemetry that was not acknowledged
+     * by the service when the client was closed, or when the process stopped, is sent again once the client is opened.
+     * Telemetry sent again after a restart has no callback, and telemetry that was in flight when the client closed
+     * may be sent more than once.
+     * @param directory the directory to keep the spool in, or null to not spool telemetry
+     * @throws IllegalStateException if the client is open
+     */
+    public void setMessageSpoolDirectory(File directory) throws IllegalStateException
+    {
+        this.setMessageSpoolDirectory(directory, DeviceClientConfig.DEFAULT_MESSAGE_SPOOL_SEGMENT_SIZE_IN_BYTES);
+    }
+
+    /**
+     * Spools telemetry to the provided directory before it is sent. See {@link #setMessageSpoolDirectory(File)}.
+     * @param directory the directory to keep the spool in, or null to not spool telemetry
+     * @param segmentSizeInBytes the size of each spool segment file. No message may be larger than a segment
+     * @throws IllegalStateException if the client is open
+     * @throws IllegalArgumentException if segmentSizeInBytes is too small
+     */
+    public void setMessageSpoolDirectory(File directory, int segmentSizeInBytes) throws IllegalStateException, IllegalArgumentException
+    {
+        if (this.deviceIO.isOpen())
+        {
+            // Codes_SRS_INTERNALCLIENT_41_005: [If the client is open, this function shall throw an IllegalStateException.]
+            throw new IllegalStateException("Cannot set the message spool after the client was opened");
+        }
+
+        // Codes_SRS_INTERNALCLIENT_41_006: [The function shall set the device config's message spool.]
+        this.config.setMessageSpool(directory, segmentSizeInBytes);
+    }
+
+    /**
+     * Posts telemetry to the service in batches when using HTTPS, so that several messages share a single request.
+     * A batch is sent once it holds maxMessagesPerBatch messages, once it would no longer fit in a single service-bound
+     * message, or once its oldest message has waited lingerMillis. The status of each batch is reported to the
+     * callback of every message in it.
+     * @param maxMessagesPerBatch the maximum number of messages in each batch, or 1 to send each message on its own
+     * @param lingerMillis how long a message may wait for more messages to fill its batch
+     * @throws IllegalArgumentException if maxMessagesPerBatch is smaller than 1 or lingerMillis is negative
+     * @throws UnsupportedOperationException if the client does not use HTTPS
+     */
+    public void setHttpsBatching(int maxMessagesPerBatch, long lingerMillis) throws IllegalArgumentException, UnsupportedOperationException
+    {
+        if (this.deviceIO.getProtocol() != HTTPS)
+        {
+            // Codes_SRS_INTERNALCLIENT_41_007: [If the client does not use HTTPS, this function shall throw an UnsupportedOperationException.]
+            throw new UnsupportedOperationException("Telemetry can only be batched when using the HTTPS protocol");
+        }
+
+        // Codes_SRS_INTERNALCLIENT_41_008: [The function shall set the device config's HTTPS batching.]
+        this.config.setHttpsBatching(maxMessagesPerBatch, lingerMillis);
+    }
+
+    /**
+     * Sends telemetry to the service in batches when using AMQPS, so that the telemetry queued for a device is packed
+     * into a single batched message instead of being sent one message at a time. A batch holds at most
+     * maxMessagesPerBatch messages and no more than fits in a single service-bound message. The status of each batch
+     * is reported to the callback of every message in it.
+     * @param maxMessagesPerBatch the maximum number of messages in each batch, or 1 to send each message on its own
+     * @throws IllegalArgumentException if maxMessagesPerBatch is smaller than 1
+     * @throws UnsupportedOperationException if the client does not use AMQPS or AMQPS_WS
+     */
+    public void setAmqpBatching(int maxMessagesPerBatch) throws IllegalArgumentException, UnsupportedOperationException
+    {
+        if (this.deviceIO.getProtocol() != AMQPS && this.deviceIO.getProtocol() != AMQPS_WS)
+        {
+            // Codes_SRS_INTERNALCLIENT_41_012: [If the client does not use AMQPS or AMQPS_WS, this function shall throw an UnsupportedOperationException.]
+            throw new UnsupportedOperationException("Telemetry can only be sent in AMQP batches when using the AMQPS protocol");
+        }
+
+        // Codes_SRS_INTERNALCLIENT_41_013: [The function shall set the device config's AMQP batching.]
+        this.config.setAmqpBatchMaxMessages(maxMessagesPerBatch);
+    }
+
+    /**
+     * Sets how many messages may wait for their acknowledgement at the same time when using MQTT. A larger window
+     * lets more messages be sent per round trip to the service. Takes effect the next time the client is opened.
+     * @param maxInFlightMessages the maximum number of messages in flight, 10 unless set otherwise
+     * @throws IllegalArgumentException if maxInFlightMessages is smaller than 1
+     * @throws UnsupportedOperationException if the client does not use MQTT or MQTT_WS
+     * @throws IllegalStateException if the client is open
+     */
+    public void setMqttMaxInFlightMessages(int maxInFlightMessages) throws IllegalArgumentException, UnsupportedOperationException, IllegalStateException
+    {
+        if (this.deviceIO.getProtocol() != MQTT && this.deviceIO.getProtocol() != MQTT_WS)
+        {
+            // Codes_SRS_INTERNALCLIENT_41_009: [If the client does not use MQTT or MQTT_WS, this function shall throw an UnsupportedOperationException.]
+            throw new UnsupportedOperationException("The number of messages in flight can only be set when using the MQTT protocol");
+        }
+
+        if (this.deviceIO.isOpen())
+        {
+            // Codes_SRS_INTERNALCLIENT_41_010: [If the client is open, this function shall throw an IllegalStateException.]
+            throw new IllegalStateException("Cannot set the number of messages in flight after the client was opened");
+        }
+
+        // Codes_SRS_INTERNALCLIENT_41_011: [The function shall set the device config's maximum number of MQTT messages in flight.]
+        this.config.setMqttMaxInFlightMessages(maxInFlightMessages);
+    }
+
+    /**
+     * Getter for the number of messages that were sent with sendEventAsync and have not had their callback queued yet
+     * @return the number of messages in the outbound queue
+     */
+    public int getOutboundQueueDepth()
+    {
+        // Codes_SRS_INTERNALCLIENT_41_003: [The function shall return the outbound queue depth of its device IO instance.]
+        return this.deviceIO.getOutboundQueueDepth();
+    }
+
+    /**
+     * Getter for the total size of the message bodies that were sent with sendEventAsync and have not had their
+     * callback queued yet
+     * @return the number of message body bytes in the outbound queue
+     */
+    public long getOutboundQueueSizeInBytes()
+    {
+        // Codes_SRS_INTERNALCLIENT_41_004: [The function shall return the outbound queue size in bytes of its device IO instance.]
+        return this.deviceIO.getOutboundQueueSizeInBytes();
+    }
+
     public ProductInfo getProductInfo()
     {
         // Codes_SRS_INTERNALCLIENT_34_071: [This function shall return the product info saved in config.]
@@ -363,6 +586,10 @@ public class InternalClient
      *         option will restart the transport with the updated expiry time, and
      *         will use that expiry time length for all subsequently generated sas tokens.
      *         The value is expected to be of type {@code long}.
+     *      - <b>SetEventDrivenSend</b> - this option is applicable for HTTP/
+     *         AMQP/MQTT and can only be set while the client is closed. If true, queued
+     *         messages are sent by a dedicated thread as soon as they are queued instead
+     *         of every send interval. The value is expected to be of type {@code boolean}.
      *
      * @param optionName the option name to modify
      * @param value an object of the appropriate type for the option's value
@@ -453,6 +680,16 @@ public class InternalClient
                     setOption_SetSASTokenExpiryTime(value);
                     break;
                 }
+                case SET_EVENT_DRIVEN_SEND:
+                {
+                    if (this.deviceIO.isOpen())
+                    {
+                        throw new IllegalStateException("setOption " + SET_EVENT_DRIVEN_SEND + " only works when the transport is closed");
+                    }
+
+                    setOption_SetEventDrivenSend(value);
+                    break;
+                }
                 default:
                 {
                     throw new IllegalArgumentException("optionName is unknown = " + optionName);
@@ -684,6 +921,21 @@ public class InternalClient
         }
     }
 
+    void setOption_SetEventDrivenSend(Object value)
+    {
+        if (value != null)
+        {
+            if (value instanceof Boolean)
+            {
+                this.deviceIO.setEventDrivenSend((boolean) value);
+            }
+            else
+            {
+                throw new IllegalArgumentException("value is not boolean = " + value);
+            }
+        }
+    }
+
     void setOption_SetMinimumPollingInterval(Object value)
     {
         if (value != null)
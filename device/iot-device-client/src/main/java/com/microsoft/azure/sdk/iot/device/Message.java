@@ -427,6 +427,16 @@ public class Message
         log.trace("The message with messageid {} has expiry time in {} milliseconds and the message will expire on {}", this.getMessageId(), timeOut, new Date(this.expiryTime));
     }
 
+    /**
+     * Getter for the expiryTime property
+     * @return the number of milliseconds since epoch at which this message expires, or 0 if it never expires
+     */
+    public long getExpiryTime()
+    {
+        // Codes_SRS_MESSAGE_41_001: [The function shall return the saved expiryTime.]
+        return this.expiryTime;
+    }
+
     /**
      * Setter for the expiryTime property using absolute time
      * @param absoluteTimeout The time out for the message, in milliseconds.
@@ -0,0 +1,28 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+/**
+ * What a client does with a new outgoing message when its outbound queue has reached the limits set in
+ * {@link DeviceClientConfig#setOutboundQueueLimits(int, long)}.
+ */
+public enum OutboundQueueOverflowPolicy
+{
+    /**
+     * Block the sending thread until there is room in the queue. If there is still no room once the block timeout
+     * elapses, the message is rejected with {@link IotHubStatusCode#OUTBOUND_QUEUE_FULL}.
+     */
+    BLOCK,
+
+    /**
+     * Reject the new message right away. Its callback is invoked with {@link IotHubStatusCode#OUTBOUND_QUEUE_FULL}.
+     */
+    REJECT,
+
+    /**
+     * Drop the oldest messages that are still waiting to be sent until there is room for the new message. The
+     * callbacks of the dropped messages are invoked with {@link IotHubStatusCode#OUTBOUND_QUEUE_FULL}.
+     */
+    DROP_OLDEST
+}
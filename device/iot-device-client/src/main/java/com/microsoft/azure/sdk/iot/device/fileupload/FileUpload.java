@@ -11,6 +11,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.Queue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
@@ -130,6 +131,56 @@ public final class FileUpload
         newUpload.setTask(taskScheduler.submit(fileUploadTask));
     }
 
+    /**
+     * Upload a file to the IoT Hub.
+     *
+     * <p>
+     *     Like the upload of a stream, this returns once the upload is scheduled, and the callback is called with the
+     *     upload status once the upload completed. The file is opened when the upload starts, and its content is
+     *     uploaded in blocks read from the file, or gzip compressed as it is read if requested.
+     * </p>
+     *
+     * @param blobName is the name of the file in the container.
+     * @param file is the file to upload.
+     * @param compress is true to store the file gzip compressed.
+     * @param statusCallback is the callback to notify that the upload is completed (with status).
+     * @param statusCallbackContext is the context of the callback, allowing multiple uploads in parallel.
+     * @throws IllegalArgumentException if one of the parameters is invalid.
+     *              blobName is {@code null} or empty,
+     *              file is {@code null},
+     *              statusCallback is {@code null}
+     */
+    public synchronized void uploadToBlobAsync(
+            String blobName, Path file, boolean compress,
+            IotHubEventCallback statusCallback, Object statusCallbackContext)
+            throws IllegalArgumentException
+    {
+        /* Codes_SRS_FILEUPLOAD_41_001: [If the `blobName` is null or empty, the uploadToBlobAsync shall throw IllegalArgumentException.] */
+        if((blobName == null) || blobName.isEmpty())
+        {
+            throw new IllegalArgumentException("blobName is null or empty");
+        }
+
+        /* Codes_SRS_FILEUPLOAD_41_002: [If the `file` is null, the uploadToBlobAsync shall throw IllegalArgumentException.] */
+        if(file == null)
+        {
+            throw new IllegalArgumentException("file is null");
+        }
+
+        /* Codes_SRS_FILEUPLOAD_41_003: [If the `userCallback` is null, the uploadToBlobAsync shall throw IllegalArgumentException.] */
+        if(statusCallback == null)
+        {
+            throw new IllegalArgumentException("statusCallback is null");
+        }
+
+        FileUploadInProgress newUpload = new FileUploadInProgress(statusCallback, statusCallbackContext);
+        fileUploadInProgressesSet.add(newUpload);
+
+        /* Codes_SRS_FILEUPLOAD_41_004: [The uploadToBlobAsync shall schedule a `FileUploadTask` that uploads the `file` to the blob in `blobName`.] */
+        FileUploadTask fileUploadTask = new FileUploadTask(blobName, file, compress, httpsTransportManager, fileUploadStatusCallBack, newUpload);
+        newUpload.setTask(taskScheduler.submit(fileUploadTask));
+    }
+
     private final class FileUploadStatusCallBack implements IotHubEventCallback
     {
         @Override
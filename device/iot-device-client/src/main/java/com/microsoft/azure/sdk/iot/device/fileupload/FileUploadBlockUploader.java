@@ -0,0 +1,510 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.fileupload;
+
+import com.microsoft.azure.sdk.iot.deps.util.Base64;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlockEntry;
+import com.microsoft.azure.storage.blob.BlockListingFilter;
+import com.microsoft.azure.storage.blob.BlockSearchMode;
+import com.microsoft.azure.storage.blob.CloudBlockBlob;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Uploads a stream to a block blob in fixed size blocks, several blocks at a time, and commits the block list once
+ * every block was uploaded.
+ *
+ * <p>
+ *     Blocks are named after their position in the stream and a digest of their content. When an upload fails part
+ *     way and the same stream is uploaded to the same blob again, the blocks found in the uncommitted block list of
+ *     the blob are not uploaded a second time, while the blocks of a different stream never match them. Each block
+ *     request is retried by the retry policy of the storage client.
+ * </p>
+ * <p>
+ *     Blocks of a stream are read into a fixed set of reused buffers, so the heap used by an upload does not depend
+ *     on the size of what is uploaded. Blocks of a file are mapped one at a time and uploaded straight from the
+ *     mapping, with no more blocks mapped than are uploading at the same time.
+ * </p>
+ */
+@Slf4j
+final class FileUploadBlockUploader
+{
+    static final int DEFAULT_BLOCK_SIZE_IN_BYTES = 4 * 1024 * 1024;
+    static final int DEFAULT_MAX_BLOCKS_IN_FLIGHT = 4;
+
+    private static final String THREAD_NAME = "azure-iot-sdk-FileUploadBlockUploader";
+    private static final String BLOCK_DIGEST_ALGORITHM = "SHA-256";
+    private static final int BLOCK_DIGEST_LENGTH_IN_BYTES = 24;
+
+    private final CloudBlockBlob blob;
+    private final int blockSizeInBytes;
+    private final int maxBlocksInFlight;
+
+    /**
+     * Constructor
+     *
+     * @param blob is the blob to upload to. Cannot be {@code null}.
+     * @param blockSizeInBytes is the size of every block but the last. Must be positive.
+     * @param maxBlocksInFlight is the number of blocks that may be uploading at the same time. Must be positive.
+     * @throws IllegalArgumentException if one of the parameters is not valid.
+     */
+    FileUploadBlockUploader(CloudBlockBlob blob, int blockSizeInBytes, int maxBlocksInFlight) throws IllegalArgumentException
+    {
+        /* Codes_SRS_FILEUPLOADBLOCKUPLOADER_41_001: [If the `blob` is null, the constructor shall throw IllegalArgumentException.] */
+        if (blob == null)
+        {
+            throw new IllegalArgumentException("blob is null");
+        }
+
+        /* Codes_SRS_FILEUPLOADBLOCKUPLOADER_41_002: [If the `blockSizeInBytes` or the `maxBlocksInFlight` is not positive, the constructor shall throw IllegalArgumentException.] */
+        if (blockSizeInBytes < 1 || maxBlocksInFlight < 1)
+        {
+            throw new IllegalArgumentException("blockSizeInBytes and maxBlocksInFlight must be positive");
+        }
+
+        this.blob = blob;
+        this.blockSizeInBytes = blockSizeInBytes;
+        this.maxBlocksInFlight = maxBlocksInFlight;
+    }
+
+    /**
+     * Uploads the first streamLength bytes of the stream to the blob and commits them as its content.
+     *
+     * @param inputStream is the stream to upload. It is read from the calling thread only.
+     * @param streamLength is the number of bytes to upload.
+     * @throws StorageException if a block could not be uploaded, or if the block list could not be committed.
+     * @throws IOException if the stream could not be read, or if it ends before streamLength bytes were read.
+     */
+    void upload(InputStream inputStream, long streamLength) throws StorageException, IOException
+    {
+        this.uploadStream(inputStream, streamLength);
+    }
+
+    /**
+     * Uploads the stream up to its end to the blob and commits it as its content, for streams whose length is only
+     * known once they were read, such as compressed streams.
+     *
+     * @param inputStream is the stream to upload. It is read from the calling thread only.
+     * @throws StorageException if a block could not be uploaded, or if the block list could not be committed.
+     * @throws IOException if the stream could not be read.
+     */
+    void uploadToEnd(InputStream inputStream) throws StorageException, IOException
+    {
+        this.uploadStream(inputStream, -1);
+    }
+
+    /**
+     * Uploads the content of the file to the blob and commits it as its content.
+     *
+     * @param fileChannel is the file to upload, open for reading. Its blocks are mapped from the start of the file,
+     *                    whatever the position of the channel.
+     * @throws StorageException if a block could not be uploaded, or if the block list could not be committed.
+     * @throws IOException if the file could not be read.
+     */
+    void upload(FileChannel fileChannel) throws StorageException, IOException
+    {
+        long fileLength = fileChannel.size();
+        int threadCount = this.threadCount((fileLength + this.blockSizeInBytes - 1) / this.blockSizeInBytes);
+
+        Map<String, Long> uploadedBlocks = this.getUploadedBlocks();
+        List<BlockEntry> blockList = new ArrayList<>();
+        List<Future<Void>> pendingBlocks = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try
+        {
+            long offset = 0;
+            for (int blockIndex = 0; offset < fileLength; blockIndex++)
+            {
+                // A block is only mapped once there is room for it, so no more blocks are mapped than are uploading
+                /* Codes_SRS_FILEUPLOADBLOCKUPLOADER_41_005: [The upload shall upload at most `maxBlocksInFlight` blocks at the same time.] */
+                /* Codes_SRS_FILEUPLOADBLOCKUPLOADER_41_006: [If a block failed to upload, the upload shall throw its exception without committing the block list.] */
+                awaitBlocks(pendingBlocks, threadCount - 1);
+
+                /* Codes_SRS_FILEUPLOADBLOCKUPLOADER_41_008: [The upload of a file shall map each block of it from the start of the file when there is room to upload it, and upload the block from its mapping.] */
+                int blockLength = (int) Math.min(this.blockSizeInBytes, fileLength - offset);
+                ByteBuffer block = fileChannel.map(FileChannel.MapMode.READ_ONLY, offset, blockLength);
+
+                BlockEntry blockEntry = new BlockEntry(null, BlockSearchMode.LATEST);
+                blockList.add(blockEntry);
+
+                // The mapping is only referenced by its block upload, so it can be released as soon as that is done
+                pendingBlocks.add(executor.submit(new BlockUpload(blockEntry, blockIndex, block, null, uploadedBlocks)));
+                offset += blockLength;
+            }
+
+            awaitBlocks(pendingBlocks, 0);
+        }
+        finally
+        {
+            // A failed upload must not leave blocks of it uploading after it returned
+            executor.shutdownNow();
+            awaitTermination(executor);
+        }
+
+        /* Codes_SRS_FILEUPLOADBLOCKUPLOADER_41_007: [Once every block was uploaded, the upload shall commit the block list in the order of the stream.] */
+        this.blob.commitBlockList(blockList);
+    }
+
+    private void uploadStream(InputStream inputStream, long streamLength) throws StorageException, IOException
+    {
+        boolean toEnd = streamLength < 0;
+        long blockCount = toEnd ? this.maxBlocksInFlight : (streamLength + this.blockSizeInBytes - 1) / this.blockSizeInBytes;
+        int bufferCount = this.threadCount(blockCount);
+
+        Map<String, Long> uploadedBlocks = this.getUploadedBlocks();
+        List<BlockEntry> blockList = new ArrayList<>();
+        List<Future<Void>> pendingBlocks = new ArrayList<>();
+
+        // Every buffer is either waiting here or held by a block upload, which bounds the memory of the upload
+        BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++)
+        {
+            freeBuffers.add(new byte[this.blockSizeInBytes]);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(bufferCount);
+        try
+        {
+            long offset = 0;
+            for (int blockIndex = 0; toEnd || offset < streamLength; blockIndex++)
+            {
+                int blockLength = toEnd ? this.blockSizeInBytes : (int) Math.min(this.blockSizeInBytes, streamLength - offset);
+                byte[] buffer = takeBuffer(freeBuffers);
+
+                /* Codes_SRS_FILEUPLOADBLOCKUPLOADER_41_003: [The upload shall read the stream in blocks of `blockSizeInBytes`, the last block holding the rest of the stream.] */
+                int readLength = readFully(inputStream, buffer, blockLength);
+                if (readLength < blockLength && !toEnd)
+                {
+                    freeBuffers.add(buffer);
+                    throw new IOException("The stream ended before the expected number of bytes were read");
+                }
+
+                if (readLength == 0)
+                {
+                    freeBuffers.add(buffer);
+                    break;
+                }
+
+                BlockEntry blockEntry = new BlockEntry(null, BlockSearchMode.LATEST);
+                blockList.add(blockEntry);
+
+                /* Codes_SRS_FILEUPLOADBLOCKUPLOADER_41_005: [The upload shall upload at most `maxBlocksInFlight` blocks at the same time.] */
+                pendingBlocks.add(executor.submit(new BlockUpload(blockEntry, blockIndex, ByteBuffer.wrap(buffer, 0, readLength), freeBuffers, uploadedBlocks)));
+                offset += readLength;
+
+                /* Codes_SRS_FILEUPLOADBLOCKUPLOADER_41_006: [If a block failed to upload, the upload shall throw its exception without committing the block list.] */
+                awaitBlocks(pendingBlocks, Integer.MAX_VALUE);
+
+                if (toEnd && readLength < this.blockSizeInBytes)
+                {
+                    break;
+                }
+            }
+
+            awaitBlocks(pendingBlocks, 0);
+        }
+        finally
+        {
+            // A failed upload must not leave blocks of it uploading after it returned
+            executor.shutdownNow();
+            awaitTermination(executor);
+        }
+
+        /* Codes_SRS_FILEUPLOADBLOCKUPLOADER_41_007: [Once every block was uploaded, the upload shall commit the block list in the order of the stream.] */
+        this.blob.commitBlockList(blockList);
+    }
+
+    private int threadCount(long blockCount)
+    {
+        return (int) Math.max(1, Math.min(this.maxBlocksInFlight, blockCount));
+    }
+
+    private Map<String, Long> getUploadedBlocks()
+    {
+        Map<String, Long> uploadedBlocks = new HashMap<>();
+        try
+        {
+            for (BlockEntry block : this.blob.downloadBlockList(BlockListingFilter.UNCOMMITTED, null, null, null))
+            {
+                uploadedBlocks.put(block.getId(), block.getSize());
+            }
+        }
+        catch (StorageException e)
+        {
+            // Most likely the blob does not exist yet. Either way, every block is uploaded.
+            log.debug("Could not list the uncommitted blocks of the blob, uploading every block", e);
+        }
+
+        return uploadedBlocks;
+    }
+
+    /**
+     * Uploads a block under a name made of its position and a digest of its content, unless a block of that name
+     * and length is in the uncommitted block list of the blob already.
+     */
+    private void uploadBlock(BlockEntry blockEntry, int blockIndex, ByteBuffer block, Map<String, Long> uploadedBlocks) throws StorageException, IOException
+    {
+        int blockLength = block.remaining();
+        String blockId = blockId(blockIndex, block);
+        blockEntry.setId(blockId);
+
+        Long uploadedLength = uploadedBlocks.get(blockId);
+        if (uploadedLength != null && uploadedLength == blockLength)
+        {
+            /* Codes_SRS_FILEUPLOADBLOCKUPLOADER_41_004: [If a block of the same name and length is in the uncommitted block list of the blob, the upload shall not upload it again. The name of a block shall hold a digest of its content.] */
+            log.trace("Block {} of the file upload was uploaded before, skipping it", blockIndex);
+            return;
+        }
+
+        this.blob.uploadBlock(blockId, new ByteBufferInputStream(block), blockLength);
+    }
+
+    private static String blockId(int blockIndex, ByteBuffer block) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance(BLOCK_DIGEST_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IOException("Could not compute the digest of a block", e);
+        }
+
+        digest.update(block.duplicate());
+        byte[] hash = digest.digest();
+
+        // Block ids of a blob must all have the same length, of at most 64 bytes before encoding
+        StringBuilder name = new StringBuilder(String.format("%08x", blockIndex));
+        for (int i = 0; i < BLOCK_DIGEST_LENGTH_IN_BYTES; i++)
+        {
+            name.append(String.format("%02x", hash[i]));
+        }
+
+        return Base64.encodeBase64StringLocal(name.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] takeBuffer(BlockingQueue<byte[]> freeBuffers) throws InterruptedIOException
+    {
+        try
+        {
+            return freeBuffers.take();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a block to finish uploading");
+        }
+    }
+
+    private static void awaitTermination(ExecutorService executor)
+    {
+        try
+        {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int readFully(InputStream inputStream, byte[] buffer, int length) throws IOException
+    {
+        int read = 0;
+        while (read < length)
+        {
+            int count = inputStream.read(buffer, read, length - read);
+            if (count < 0)
+            {
+                break;
+            }
+
+            read += count;
+        }
+
+        return read;
+    }
+
+    /**
+     * Throws the exception of any block that failed to upload, and waits for the oldest blocks until no more than
+     * maxPendingBlocks are left uploading.
+     */
+    private static void awaitBlocks(List<Future<Void>> pendingBlocks, int maxPendingBlocks) throws StorageException, IOException
+    {
+        Iterator<Future<Void>> iterator = pendingBlocks.iterator();
+        while (iterator.hasNext())
+        {
+            Future<Void> pendingBlock = iterator.next();
+            if (pendingBlock.isDone())
+            {
+                getBlockResult(pendingBlock);
+                iterator.remove();
+            }
+        }
+
+        while (pendingBlocks.size() > maxPendingBlocks)
+        {
+            getBlockResult(pendingBlocks.remove(0));
+        }
+    }
+
+    private static void getBlockResult(Future<Void> pendingBlock) throws StorageException, IOException
+    {
+        try
+        {
+            pendingBlock.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a block to finish uploading");
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof StorageException)
+            {
+                throw (StorageException) cause;
+            }
+            else if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            else if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IOException("Failed to upload a block", cause);
+        }
+    }
+
+    /**
+     * Stream over a buffer, which supports mark so that the storage client reads the block straight from the buffer
+     * rather than copying it first.
+     */
+    private static final class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length)
+        {
+            if (length == 0)
+            {
+                return 0;
+            }
+
+            if (!this.buffer.hasRemaining())
+            {
+                return -1;
+            }
+
+            int count = Math.min(length, this.buffer.remaining());
+            this.buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long count)
+        {
+            int skipped = (int) Math.max(0, Math.min(count, this.buffer.remaining()));
+            this.buffer.position(this.buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available()
+        {
+            return this.buffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit)
+        {
+            this.buffer.mark();
+        }
+
+        @Override
+        public synchronized void reset()
+        {
+            this.buffer.reset();
+        }
+    }
+
+    /**
+     * Uploads a block, and then gives the buffer it was read into back to the free buffers of the upload, if it was
+     * read into one.
+     */
+    private final class BlockUpload implements Callable<Void>
+    {
+        private final BlockEntry blockEntry;
+        private final int blockIndex;
+        private final ByteBuffer block;
+        private final BlockingQueue<byte[]> freeBuffers;
+        private final Map<String, Long> uploadedBlocks;
+
+        private BlockUpload(BlockEntry blockEntry, int blockIndex, ByteBuffer block, BlockingQueue<byte[]> freeBuffers, Map<String, Long> uploadedBlocks)
+        {
+            this.blockEntry = blockEntry;
+            this.blockIndex = blockIndex;
+            this.block = block;
+            this.freeBuffers = freeBuffers;
+            this.uploadedBlocks = uploadedBlocks;
+        }
+
+        @Override
+        public Void call() throws StorageException, IOException
+        {
+            Thread.currentThread().setName(THREAD_NAME);
+            try
+            {
+                uploadBlock(this.blockEntry, this.blockIndex, this.block, this.uploadedBlocks);
+                return null;
+            }
+            finally
+            {
+                if (this.freeBuffers != null)
+                {
+                    this.freeBuffers.add(this.block.array());
+                }
+            }
+        }
+    }
+}
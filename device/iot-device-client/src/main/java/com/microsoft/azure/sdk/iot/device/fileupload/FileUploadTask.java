@@ -21,8 +21,12 @@ import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Provide means to  asynchronous upload file in the Azure Storage using the IoTHub.
@@ -55,12 +59,16 @@ public final class FileUploadTask implements Runnable
     private static final String HTTPS_URL_STRING = "https://";
     private static final String PATH_SEPARATOR_STRING = "/";
     private static final String UTF_8_STRING = "UTF-8";
+    private static final String GZIP_CONTENT_ENCODING = "gzip";
+    private static final String COMPRESSED_CONTENT_TYPE = "application/octet-stream";
 
     private HttpsTransportManager httpsTransportManager;
 
     private String blobName;
     private InputStream inputStream;
     private long streamLength;
+    private Path file;
+    private boolean compress;
     private IotHubEventCallback userCallback;
     private Object userCallbackContext;
 
@@ -85,12 +93,6 @@ public final class FileUploadTask implements Runnable
     FileUploadTask(String blobName, InputStream inputStream, long streamLength, HttpsTransportManager httpsTransportManager,
                     IotHubEventCallback userCallback, Object userCallbackContext) throws IllegalArgumentException
     {
-        /* Codes_SRS_FILEUPLOADTASK_21_001: [If the `blobName` is null or empty, the constructor shall throw IllegalArgumentException.] */
-        if((blobName == null) || blobName.isEmpty())
-        {
-            throw new IllegalArgumentException("blobName is null or empty");
-        }
-
         /* Codes_SRS_FILEUPLOADTASK_21_002: [If the `inputStream` is null, the constructor shall throw IllegalArgumentException.] */
         if(inputStream == null)
         {
@@ -103,6 +105,51 @@ public final class FileUploadTask implements Runnable
             throw new IllegalArgumentException("streamLength is negative");
         }
 
+        this.validateAndStore(blobName, httpsTransportManager, userCallback, userCallbackContext);
+        this.inputStream = inputStream;
+        this.streamLength = streamLength;
+
+        log.trace("HttpsFileUpload object is created successfully");
+    }
+
+    /**
+     * Constructor for the upload of a file. The file is opened when the upload starts, and read into a bounded set
+     * of buffers as it is uploaded, compressing it first if asked to.
+     *
+     * @param blobName is the destination blob name in the storage. Cannot be {@code null}, or empty.
+     * @param file is the file to store in the blob. Cannot be {@code null}.
+     * @param compress is true to store the file gzip compressed, compressing it as it is uploaded.
+     * @param httpsTransportManager is the https transport to connect to the IoT Hub. Cannot be {@code null}.
+     * @param userCallback is the callback to call when the upload is completed. Cannot be {@code null}.
+     * @param userCallbackContext is the context for the callback. Can be any value.
+     * @throws IllegalArgumentException if one of the parameters is not valid.
+     */
+    FileUploadTask(String blobName, Path file, boolean compress, HttpsTransportManager httpsTransportManager,
+                   IotHubEventCallback userCallback, Object userCallbackContext) throws IllegalArgumentException
+    {
+        /* Codes_SRS_FILEUPLOADTASK_41_002: [If the `file` is null, the constructor shall throw IllegalArgumentException.] */
+        if(file == null)
+        {
+            throw new IllegalArgumentException("file is null");
+        }
+
+        /* Codes_SRS_FILEUPLOADTASK_41_003: [The constructor shall validate and store the other parameters as the stream constructor does.] */
+        this.validateAndStore(blobName, httpsTransportManager, userCallback, userCallbackContext);
+        this.file = file;
+        this.compress = compress;
+
+        log.trace("HttpsFileUpload object is created successfully");
+    }
+
+    private void validateAndStore(String blobName, HttpsTransportManager httpsTransportManager,
+                                  IotHubEventCallback userCallback, Object userCallbackContext) throws IllegalArgumentException
+    {
+        /* Codes_SRS_FILEUPLOADTASK_21_001: [If the `blobName` is null or empty, the constructor shall throw IllegalArgumentException.] */
+        if((blobName == null) || blobName.isEmpty())
+        {
+            throw new IllegalArgumentException("blobName is null or empty");
+        }
+
         /* Codes_SRS_FILEUPLOADTASK_21_004: [If the `httpsTransportManager` is null, the constructor shall throw IllegalArgumentException.] */
         if(httpsTransportManager == null)
         {
@@ -117,13 +164,9 @@ public final class FileUploadTask implements Runnable
 
         /* Codes_SRS_FILEUPLOADTASK_21_006: [The constructor shall store all the provided parameters.] */
         this.blobName = blobName;
-        this.inputStream = inputStream;
-        this.streamLength = streamLength;
         this.userCallback = userCallback;
         this.userCallbackContext = userCallbackContext;
         this.httpsTransportManager = httpsTransportManager;
-
-        log.trace("HttpsFileUpload object is created successfully");
     }
 
     /**
@@ -154,8 +197,21 @@ public final class FileUploadTask implements Runnable
             {
             /* Codes_SRS_FILEUPLOADTASK_21_019: [The run shall create a `CloudBlockBlob` using the `blobUri`.] */
                 CloudBlockBlob blob = new CloudBlockBlob(blobURI);
+                if (file != null)
+                {
+                    uploadFile(blob);
+                }
+                else if (streamLength > FileUploadBlockUploader.DEFAULT_BLOCK_SIZE_IN_BYTES)
+                {
+            /* Codes_SRS_FILEUPLOADTASK_41_001: [If the `streamLength` is larger than a single block, the run shall upload the `inputStream` to the created `CloudBlockBlob` in blocks, several blocks at a time.] */
+                    new FileUploadBlockUploader(blob, FileUploadBlockUploader.DEFAULT_BLOCK_SIZE_IN_BYTES, FileUploadBlockUploader.DEFAULT_MAX_BLOCKS_IN_FLIGHT)
+                            .upload(inputStream, streamLength);
+                }
+                else
+                {
             /* Codes_SRS_FILEUPLOADTASK_21_020: [The run shall upload the `inputStream` with the `streamLength` to the created `CloudBlockBlob`.] */
-                blob.upload(inputStream, streamLength);
+                    blob.upload(inputStream, streamLength);
+                }
             /* Codes_SRS_FILEUPLOADTASK_21_021: [If the upload to blob succeed, the run shall create a notification the IoT Hub with `isSuccess` equals true, `statusCode` equals 0.] */
                 fileUploadStatusParser = new FileUploadStatusParser(correlationId, true, 0, "Succeed to upload to storage.");
                 resultStatus = IotHubStatusCode.OK;
@@ -182,6 +238,28 @@ public final class FileUploadTask implements Runnable
         userCallback.execute(resultStatus, userCallbackContext);
     }
 
+    private void uploadFile(CloudBlockBlob blob) throws StorageException, IOException
+    {
+        FileUploadBlockUploader uploader = new FileUploadBlockUploader(blob, FileUploadBlockUploader.DEFAULT_BLOCK_SIZE_IN_BYTES, FileUploadBlockUploader.DEFAULT_MAX_BLOCKS_IN_FLIGHT);
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            if (compress)
+            {
+                /* Codes_SRS_FILEUPLOADTASK_41_006: [If the file is to be compressed, the run shall set the content encoding of the blob to gzip and its content type to binary data before it is committed.] */
+                blob.getProperties().setContentEncoding(GZIP_CONTENT_ENCODING);
+                blob.getProperties().setContentType(COMPRESSED_CONTENT_TYPE);
+
+                /* Codes_SRS_FILEUPLOADTASK_41_004: [If the file is to be compressed, the run shall upload it gzip compressed, compressing it as it is uploaded.] */
+                uploader.uploadToEnd(new GzipCompressingInputStream(Channels.newInputStream(fileChannel)));
+            }
+            else
+            {
+                /* Codes_SRS_FILEUPLOADTASK_41_005: [If the file is not to be compressed, the run shall upload it in blocks mapped from the file.] */
+                uploader.upload(fileChannel);
+            }
+        }
+    }
+
     private void addBlobInformation(Message responseMessage) throws IllegalArgumentException, URISyntaxException, UnsupportedEncodingException
     {
         /* Codes_SRS_FILEUPLOADTASK_21_015: [If the iothub accepts the request, it shall provide a `responseMessage` with the blob information with a correlationId.] */
@@ -0,0 +1,130 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.fileupload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Stream of the gzip compressed content of another stream. The content is compressed as it is read, so only a small
+ * buffer of the source is held at any time.
+ */
+final class GzipCompressingInputStream extends InputStream
+{
+    // Magic number, deflate method, no flags, no modification time, no extra flags, unknown operating system
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int TRAILER_LENGTH = 8;
+    private static final int SOURCE_BUFFER_SIZE = 8 * 1024;
+
+    private final InputStream source;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] sourceBuffer = new byte[SOURCE_BUFFER_SIZE];
+    private final byte[] singleByte = new byte[1];
+    private final byte[] trailer = new byte[TRAILER_LENGTH];
+
+    private int headerPosition;
+    private int trailerPosition = -1;
+
+    /**
+     * Constructor
+     *
+     * @param source is the stream to compress. Cannot be {@code null}.
+     * @throws IllegalArgumentException if the source is {@code null}.
+     */
+    GzipCompressingInputStream(InputStream source) throws IllegalArgumentException
+    {
+        /* Codes_SRS_GZIPCOMPRESSINGINPUTSTREAM_41_001: [If the `source` is null, the constructor shall throw IllegalArgumentException.] */
+        if (source == null)
+        {
+            throw new IllegalArgumentException("source is null");
+        }
+
+        this.source = source;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        int count = this.read(this.singleByte, 0, 1);
+        return count < 0 ? -1 : this.singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException
+    {
+        if (length == 0)
+        {
+            return 0;
+        }
+
+        if (this.headerPosition < HEADER.length)
+        {
+            /* Codes_SRS_GZIPCOMPRESSINGINPUTSTREAM_41_002: [The stream shall start with a gzip header.] */
+            int count = Math.min(length, HEADER.length - this.headerPosition);
+            System.arraycopy(HEADER, this.headerPosition, bytes, offset, count);
+            this.headerPosition += count;
+            return count;
+        }
+
+        while (!this.deflater.finished())
+        {
+            if (this.deflater.needsInput())
+            {
+                int count = this.source.read(this.sourceBuffer, 0, this.sourceBuffer.length);
+                if (count < 0)
+                {
+                    this.deflater.finish();
+                }
+                else
+                {
+                    this.crc.update(this.sourceBuffer, 0, count);
+                    this.deflater.setInput(this.sourceBuffer, 0, count);
+                }
+            }
+
+            /* Codes_SRS_GZIPCOMPRESSINGINPUTSTREAM_41_003: [The stream shall deflate the source as it is read.] */
+            int count = this.deflater.deflate(bytes, offset, length);
+            if (count > 0)
+            {
+                return count;
+            }
+        }
+
+        if (this.trailerPosition < 0)
+        {
+            /* Codes_SRS_GZIPCOMPRESSINGINPUTSTREAM_41_004: [The stream shall end with the CRC-32 and the length of the source, in little endian order.] */
+            writeIntLittleEndian(this.trailer, 0, this.crc.getValue());
+            writeIntLittleEndian(this.trailer, 4, this.deflater.getBytesRead());
+            this.trailerPosition = 0;
+        }
+
+        if (this.trailerPosition == TRAILER_LENGTH)
+        {
+            return -1;
+        }
+
+        int count = Math.min(length, TRAILER_LENGTH - this.trailerPosition);
+        System.arraycopy(this.trailer, this.trailerPosition, bytes, offset, count);
+        this.trailerPosition += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.deflater.end();
+        this.source.close();
+    }
+
+    private static void writeIntLittleEndian(byte[] bytes, int offset, long value)
+    {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+        bytes[offset + 2] = (byte) (value >> 16);
+        bytes[offset + 3] = (byte) (value >> 24);
+    }
+}
@@ -7,15 +7,35 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * Sends batched messages and invokes callbacks on completed requests. Meant to
- * be used with an executor that continuously calls run().
+ * be used with an executor that continuously calls run(), or, when event driven,
+ * with an executor that calls run() once on a dedicated thread.
  */
 @Slf4j
 public final class IotHubSendTask implements Runnable
 {
     private static final String THREAD_NAME = "azure-iot-sdk-IotHubSendTask";
+
+    // Upper bound on how long an event driven send task sleeps without being signalled, so that expired messages are
+    // still reported while the connection is down
+    private static final long EVENT_DRIVEN_MAX_WAIT_MILLIS = 1000;
+
     private final IotHubTransport transport;
+    private final boolean eventDriven;
 
     public IotHubSendTask(IotHubTransport transport)
+    {
+        this(transport, false);
+    }
+
+    /**
+     * Constructor for a send task.
+     *
+     * @param transport the transport to send messages and invoke callbacks on.
+     * @param eventDriven if {@code true}, run() shall not return until the running thread is interrupted, and shall
+     * send messages as soon as the transport signals that there are messages to send. If {@code false}, each call to
+     * run() shall do a single, bounded send pass.
+     */
+    public IotHubSendTask(IotHubTransport transport, boolean eventDriven)
     {
         if (transport == null)
         {
@@ -24,16 +44,53 @@ public final class IotHubSendTask implements Runnable
 
         // Codes_SRS_IOTHUBSENDTASK_11_001: [The constructor shall save the transport.]
         this.transport = transport;
+        this.eventDriven = eventDriven;
     }
 
     public void run()
     {
         Thread.currentThread().setName(THREAD_NAME);
 
+        if (!this.eventDriven)
+        {
+            this.sendMessagesAndInvokeCallbacks();
+            return;
+        }
+
+        // Codes_SRS_IOTHUBSENDTASK_41_001: [If this task is event driven, the function shall wait for the transport
+        // to signal send work and then send and invoke callbacks, until the running thread is interrupted.]
+        while (!Thread.currentThread().isInterrupted())
+        {
+            try
+            {
+                this.transport.waitForSendWork(EVENT_DRIVEN_MAX_WAIT_MILLIS);
+            }
+            catch (InterruptedException e)
+            {
+                log.trace("Event driven send task was interrupted, stopping");
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            this.sendMessagesAndInvokeCallbacks();
+        }
+    }
+
+    private void sendMessagesAndInvokeCallbacks()
+    {
         try
         {
             // Codes_SRS_IOTHUBSENDTASK_11_002: [The function shall send all messages on the transport queue.]
-            this.transport.sendMessages();
+            if (this.eventDriven)
+            {
+                // Codes_SRS_IOTHUBSENDTASK_41_002: [If this task is event driven, the function shall send messages until
+                // the transport queue is empty or the transport stops sending.]
+                this.transport.sendMessages(Integer.MAX_VALUE);
+            }
+            else
+            {
+                this.transport.sendMessages();
+            }
 
             // Codes_SRS_IOTHUBSENDTASK_11_003: [The function shall invoke all callbacks on the transport's callback queue.]
             this.transport.invokeCallbacks();
@@ -45,4 +102,4 @@ public final class IotHubSendTask implements Runnable
             log.warn("Send task encountered exception while sending messages", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -12,11 +12,14 @@ import com.microsoft.azure.sdk.iot.device.exceptions.*;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsIotHubConnection;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.exceptions.AmqpConnectionThrottledException;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.exceptions.AmqpUnauthorizedAccessException;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsBatchMessage;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsIotHubConnection;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsSingleMessage;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttIotHubConnection;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.exceptions.MqttUnauthorizedException;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -30,6 +33,20 @@ import static java.util.concurrent.TimeUnit.NANOSECONDS;
 public class IotHubTransport implements IotHubListener
 {
     private static final int MAX_MESSAGES_TO_SEND_PER_THREAD = 10;
+
+    // How many spooled messages are read back into the waiting queue ahead of being sent
+    private static final int SPOOL_READ_AHEAD = 100;
+
+    /* Orders packets by the expiry time of their message, and then by the order they were created in. */
+    private static final Comparator<IotHubTransportPacket> EXPIRY_TIME_COMPARATOR = new Comparator<IotHubTransportPacket>()
+    {
+        @Override
+        public int compare(IotHubTransportPacket packet1, IotHubTransportPacket packet2)
+        {
+            int result = Long.compare(packet1.getExpiryTimeMillis(), packet2.getExpiryTimeMillis());
+            return result != 0 ? result : Long.compare(packet1.getSequenceNumber(), packet2.getSequenceNumber());
+        }
+    };
     private volatile IotHubConnectionStatus connectionStatus;
     private IotHubTransportConnection iotHubTransportConnection;
 
@@ -39,6 +56,22 @@ public class IotHubTransport implements IotHubListener
     /* Messages which are sent to the IoT Hub but did not receive ack yet. */
     private final Map<String, IotHubTransportPacket> inProgressPackets = new ConcurrentHashMap<>();
 
+    /* Messages with an expiry time whose callbacks have not been queued yet, soonest expiry first. */
+    private final NavigableSet<IotHubTransportPacket> expiringPackets = new ConcurrentSkipListSet<>(EXPIRY_TIME_COMPARATOR);
+
+    /* Messages that expired while waiting to be sent or retried. They are skipped when dequeued from the waiting queue. */
+    private final Set<IotHubTransportPacket> expiredWaitingPackets = Collections.newSetFromMap(new ConcurrentHashMap<IotHubTransportPacket, Boolean>());
+
+    /* Number of packets in the waiting queue that have not expired, so that isEmpty does not scan the queue. */
+    private int waitingPacketsCount;
+    private final Object waitingPacketsLock = new Object();
+
+    /* Direct method invocations received from the IoT Hub. They are handled before any other received message. */
+    private final Queue<IotHubTransportMessage> receivedMethodMessagesQueue = new ConcurrentLinkedQueue<>();
+
+    /* Twin messages received from the IoT Hub. They are handled before cloud to device messages. */
+    private final Queue<IotHubTransportMessage> receivedTwinMessagesQueue = new ConcurrentLinkedQueue<>();
+
     /* Messages received from the IoT Hub */
     private final Queue<IotHubTransportMessage> receivedMessagesQueue = new ConcurrentLinkedQueue<>();
 
@@ -56,6 +89,22 @@ public class IotHubTransport implements IotHubListener
     //Lock on reading and writing on the inProgressPackets map
     final private Object inProgressMessagesLock = new Object();
 
+    //Lock that an event driven send thread waits on, notified whenever there is new work for the send thread
+    final private ObjectLock sendThreadLock = new ObjectLock();
+
+    //Lock on the outbound queue counts, notified whenever room is made in the outbound queue
+    final private ObjectLock outboundQueueLock = new ObjectLock();
+
+    //Number of messages, and of message body bytes, from the time they are queued until their callback is queued
+    private int outboundQueueDepth;
+    private long outboundQueueSizeInBytes;
+
+    //Spool that telemetry is written to before it is sent, if the config has a spool directory
+    private volatile MessageSpool messageSpool;
+
+    //Callbacks of messages that are in the spool but not yet in the waiting queue, by spool record id
+    private final Map<Long, SpooledMessageCallback> spooledMessageCallbacks = new ConcurrentHashMap<>();
+
     private DeviceClientConfig defaultConfig;
     private Queue<DeviceClientConfig> deviceClientConfigs;
 
@@ -161,7 +210,7 @@ public class IotHubTransport implements IotHubListener
             //Codes_SRS_IOTHUBTRANSPORT_34_009: [If this function is called with a non-null message and a null
             // exception, this function shall add that message to the receivedMessagesQueue.]
             log.info("Message was received from IotHub ({})", message);
-            this.receivedMessagesQueue.add(message);
+            this.addReceivedMessage(message);
         }
         else
         {
@@ -269,6 +318,20 @@ public class IotHubTransport implements IotHubListener
         this.defaultConfig = this.deviceClientConfigs.peek();
         this.taskScheduler = Executors.newScheduledThreadPool(1);
 
+        if (this.messageSpool == null && this.defaultConfig.getMessageSpoolDirectory() != null)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_41_019: [If the config has a message spool directory, this function shall open
+            // the message spool, so that the messages left in it are sent again.]
+            try
+            {
+                this.messageSpool = new MessageSpool(this.defaultConfig.getMessageSpoolDirectory(), this.defaultConfig.getMessageSpoolSegmentSizeInBytes());
+            }
+            catch (IOException e)
+            {
+                throw new TransportException("Could not open the message spool", e);
+            }
+        }
+
         //Codes_SRS_IOTHUBTRANSPORT_34_019: [This function shall open the invoke the method openConnection.]
         openConnection();
 
@@ -299,6 +362,8 @@ public class IotHubTransport implements IotHubListener
         //Codes_SRS_IOTHUBTRANSPORT_34_023: [This function shall invoke all callbacks.]
         this.invokeCallbacks();
 
+        this.closeMessageSpool();
+
         if (this.taskScheduler != null)
         {
             this.taskScheduler.shutdown();
@@ -344,8 +409,58 @@ public class IotHubTransport implements IotHubListener
         //Codes_SRS_IOTHUBTRANSPORT_34_042: [This function shall build a transport packet from the provided message,
         // callback, and context and then add that packet to the waiting queue.]
         IotHubTransportPacket packet = new IotHubTransportPacket(message, callback, callbackContext, null, System.currentTimeMillis());
-        this.waitingPacketsQueue.add(packet);
+        if (takesOutboundQueueSpace(packet) && !this.reserveOutboundQueueSpace(packet))
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_41_011: [If there is no room for the message in the outbound queue, this
+            // function shall not queue the message, and shall add its packet to the callback queue with status
+            // OUTBOUND_QUEUE_FULL.]
+            log.warn("Outbound queue is full, message was not queued ({})", message);
+            packet.setStatus(IotHubStatusCode.OUTBOUND_QUEUE_FULL);
+            this.queueCallbackWithoutReleasingSpace(packet);
+            return;
+        }
+
+        MessageSpool spool = this.messageSpool;
+        if (spool != null && !(message instanceof IotHubTransportMessage))
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_41_020: [If there is a message spool, this function shall append telemetry
+            // messages to the spool instead of the waiting queue.]
+            try
+            {
+                // the callback must be saved before the spooled message can be read back
+                synchronized (spool)
+                {
+                    long recordId = spool.append(message);
+                    this.spooledMessageCallbacks.put(recordId, new SpooledMessageCallback(callback, callbackContext, packet.getSizeInBytes()));
+                }
+            }
+            catch (IOException e)
+            {
+                //Codes_SRS_IOTHUBTRANSPORT_41_021: [If the message cannot be appended to the spool, this function shall
+                // add its packet to the callback queue with status ERROR.]
+                log.error("Message could not be spooled ({})", message, e);
+                packet.setStatus(IotHubStatusCode.ERROR);
+                this.queueCallback(packet);
+                return;
+            }
+
+            log.info("Message was spooled to be sent later ({})", message);
+            this.signalSendThread();
+            return;
+        }
+
+        if (packet.getExpiryTimeMillis() != 0)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_41_005: [If the message has an expiry time, this function shall add the packet
+            // to the expiring packets index.]
+            this.expiringPackets.add(packet);
+        }
+
+        this.addWaitingPacket(packet);
         log.info("Message was queued to be sent later ({})", message);
+
+        //Codes_SRS_IOTHUBTRANSPORT_41_001: [This function shall notify any send thread waiting for send work.]
+        this.signalSendThread();
     }
 
     /**
@@ -355,6 +470,20 @@ public class IotHubTransport implements IotHubListener
      */
     public void sendMessages()
     {
+        this.sendMessages(MAX_MESSAGES_TO_SEND_PER_THREAD);
+    }
+
+    /**
+     * Sends the messages on the transport queue until the queue is empty, the connection is no longer CONNECTED,
+     * or the provided number of messages have been sent. If HTTPS batching is enabled, each batch counts as a single
+     * send, like each message sent on its own, so that batches are only bounded by their configured number of messages
+     * and their size.
+     *
+     * @param maxMessagesToSend the maximum number of messages, or of HTTPS batches, to send in this call
+     */
+    public void sendMessages(int maxMessagesToSend)
+    {
+        readSpooledMessages();
         checkForExpiredMessages();
 
         if (this.connectionStatus == IotHubConnectionStatus.DISCONNECTED
@@ -364,12 +493,30 @@ public class IotHubTransport implements IotHubListener
             return;
         }
 
-        int timeSlice = MAX_MESSAGES_TO_SEND_PER_THREAD;
+        if (this.isHttpsBatchingEnabled())
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_41_026: [If HTTPS batching is enabled, this function shall send the waiting
+            // telemetry in batches.]
+            sendBatchedMessages(maxMessagesToSend);
+            return;
+        }
+
+        int timeSlice = maxMessagesToSend;
 
         while (this.connectionStatus == IotHubConnectionStatus.CONNECTED && timeSlice-- > 0)
         {
-            IotHubTransportPacket packet = waitingPacketsQueue.poll();
-            if (packet != null)
+            IotHubTransportPacket packet = this.pollWaitingPacket();
+            if (packet == null)
+            {
+                break;
+            }
+            else if (this.expiredWaitingPackets.remove(packet))
+            {
+                //Codes_SRS_IOTHUBTRANSPORT_41_006: [This function shall discard dequeued packets that already expired
+                // while waiting, since their callbacks have already been queued.]
+                log.trace("Discarding a dequeued message that expired while waiting to be sent ({})", packet.getMessage());
+            }
+            else
             {
                 Message message = packet.getMessage();
                 log.trace("Dequeued a message from waiting queue to be sent ({})", message);
@@ -384,50 +531,400 @@ public class IotHubTransport implements IotHubListener
         }
     }
 
-    private void checkForExpiredMessages()
+    /**
+     * Sends the waiting telemetry in HTTPS batches until the queue is empty, the connection is no longer CONNECTED,
+     * the provided number of batches and messages sent on their own have been sent, or the remaining messages should linger for more messages
+     * to fill their batch. Messages that cannot be batched are sent on their own.
+     *
+     * @param maxBatchesToSend the maximum number of batches, and of messages sent on their own, to send in this call
+     */
+    private void sendBatchedMessages(int maxBatchesToSend)
     {
-        //Check waiting packets
-        IotHubTransportPacket packet = this.waitingPacketsQueue.poll();
-        Queue<IotHubTransportPacket> packetsToAddBackIntoWaitingPacketsQueue = new LinkedBlockingQueue<>();
-        while (packet != null)
+        int maxMessagesPerBatch = this.defaultConfig.getHttpsBatchMaxMessages();
+        int timeSlice = maxBatchesToSend;
+
+        // The packet that did not fit in the previous batch, which starts the next one
+        IotHubTransportPacket overflowPacket = null;
+
+        while (this.connectionStatus == IotHubConnectionStatus.CONNECTED && (overflowPacket != null || timeSlice > 0))
         {
-            if (packet.getMessage().isExpired())
+            if (overflowPacket == null && this.getRemainingHttpsBatchLingerMillis() > 0)
             {
-                packet.setStatus(IotHubStatusCode.MESSAGE_EXPIRED);
-                this.addToCallbackQueue(packet);
+                //Codes_SRS_IOTHUBTRANSPORT_41_027: [This function shall not send a partial batch until its oldest
+                // message has waited for the configured linger time.]
+                break;
             }
-            else
+
+            HttpsBatchMessage batchMessage = new HttpsBatchMessage();
+            List<IotHubTransportPacket> batchPackets = new ArrayList<>();
+            while (batchPackets.size() < maxMessagesPerBatch)
+            {
+                IotHubTransportPacket packet = overflowPacket;
+                overflowPacket = null;
+                if (packet == null && (timeSlice <= 0 || (packet = this.pollWaitingPacket()) == null))
+                {
+                    break;
+                }
+
+                Message message = packet.getMessage();
+                if (this.expiredWaitingPackets.remove(packet))
+                {
+                    log.trace("Discarding a dequeued message that expired while waiting to be sent ({})", message);
+                }
+                else if (message != null && this.isMessageValid(packet))
+                {
+                    if (message instanceof IotHubTransportMessage)
+                    {
+                        // Only telemetry is batched
+                        sendPacket(packet);
+                        timeSlice--;
+                        continue;
+                    }
+
+                    try
+                    {
+                        //Codes_SRS_IOTHUBTRANSPORT_41_028: [This function shall add each dequeued telemetry message to
+                        // the current batch until the batch holds the configured number of messages, or until the next
+                        // message does not fit in it.]
+                        batchMessage.addMessage(HttpsSingleMessage.parseHttpsMessage(message));
+                        batchPackets.add(packet);
+                    }
+                    catch (IotHubSizeExceededException e)
+                    {
+                        if (batchPackets.isEmpty())
+                        {
+                            //Codes_SRS_IOTHUBTRANSPORT_41_029: [If a message does not fit in an empty batch, this
+                            // function shall send it on its own.]
+                            sendPacket(packet);
+                            timeSlice--;
+                            continue;
+                        }
+
+                        overflowPacket = packet;
+                        break;
+                    }
+                }
+            }
+
+            if (batchPackets.isEmpty())
             {
-                //message not expired, requeue it
-                packetsToAddBackIntoWaitingPacketsQueue.add(packet);
+                if (overflowPacket == null && this.waitingPacketsQueue.isEmpty())
+                {
+                    break;
+                }
+
+                continue;
             }
 
-            packet = this.waitingPacketsQueue.poll();
+            sendBatch(batchMessage, batchPackets);
+            timeSlice--;
         }
 
-        this.waitingPacketsQueue.addAll(packetsToAddBackIntoWaitingPacketsQueue);
+        if (overflowPacket != null)
+        {
+            // The connection was lost before the next batch could be sent
+            this.addWaitingPacket(overflowPacket);
+        }
+    }
 
-        //Check in progress messages
+    /**
+     * Sends a single HTTPS batch over the iotHubTransportConnection. The connection reports the status of each message
+     * in the batch through onMessageSent.
+     *
+     * @param batchMessage the batch to send
+     * @param batchPackets the packets whose messages are in the batch
+     */
+    private void sendBatch(HttpsBatchMessage batchMessage, List<IotHubTransportPacket> batchPackets)
+    {
+        List<Message> messages = new ArrayList<>(batchPackets.size());
         synchronized (this.inProgressMessagesLock)
         {
-            List<String> expiredPacketMessageIds = new ArrayList<>();
-            for (String messageId : this.inProgressPackets.keySet())
+            for (IotHubTransportPacket packet : batchPackets)
             {
-                if (this.inProgressPackets.get(messageId).getMessage().isExpired())
+                messages.add(packet.getMessage());
+                this.inProgressPackets.put(packet.getMessage().getMessageId(), packet);
+            }
+        }
+
+        try
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_41_030: [This function shall send each batch over the saved HTTPS connection,
+            // which reports the status of the batch to every message in it.]
+            log.info("Sending batch of {} messages", messages.size());
+            IotHubStatusCode statusCode = ((HttpsIotHubConnection) this.iotHubTransportConnection).sendMessageBatch(batchMessage, messages);
+            log.trace("Sent batch of {} messages to protocol level, returned status code was {}", messages.size(), statusCode);
+        }
+        catch (TransportException transportException)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_41_031: [If an exception is encountered while sending a batch, this function
+            // shall invoke handleMessageException with each packet in that batch.]
+            log.warn("Encountered exception while sending batch of {} messages", messages.size(), transportException);
+            for (Message message : messages)
+            {
+                IotHubTransportPacket packet;
+                synchronized (this.inProgressMessagesLock)
+                {
+                    packet = this.inProgressPackets.remove(message.getMessageId());
+                }
+
+                if (packet != null)
+                {
+                    this.handleMessageException(packet, transportException);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return if telemetry should be sent in HTTPS batches
+     */
+    private boolean isHttpsBatchingEnabled()
+    {
+        return this.defaultConfig.getHttpsBatchMaxMessages() > 1 && this.iotHubTransportConnection instanceof HttpsIotHubConnection;
+    }
+
+    /**
+     * @return how much longer the waiting messages should wait for more messages to fill their HTTPS batch, in
+     * milliseconds, or 0 if there is no partial batch to wait for
+     */
+    private long getRemainingHttpsBatchLingerMillis()
+    {
+        long lingerMillis = this.defaultConfig.getHttpsBatchLingerMillis();
+        if (lingerMillis == 0 || !this.isHttpsBatchingEnabled())
+        {
+            return 0;
+        }
+
+        int maxMessagesPerBatch = this.defaultConfig.getHttpsBatchMaxMessages();
+        int waitingPacketCount = 0;
+        long waitingSizeInBytes = 0;
+        long oldestStartTimeMillis = Long.MAX_VALUE;
+        for (IotHubTransportPacket packet : this.waitingPacketsQueue)
+        {
+            // Message bodies grow by a third once Base64 encoded in the batch
+            waitingSizeInBytes += packet.getSizeInBytes() * 4 / 3;
+            if (++waitingPacketCount >= maxMessagesPerBatch || waitingSizeInBytes >= HttpsBatchMessage.SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES)
+            {
+                return 0;
+            }
+
+            oldestStartTimeMillis = Math.min(oldestStartTimeMillis, packet.getStartTimeMillis());
+        }
+
+        if (waitingPacketCount == 0)
+        {
+            return 0;
+        }
+
+        return Math.max(0, oldestStartTimeMillis + lingerMillis - System.currentTimeMillis());
+    }
+
+    /**
+     * Reads messages back from the message spool until the waiting queue holds SPOOL_READ_AHEAD packets, so that only
+     * the messages about to be sent are kept in memory. Messages left in the spool by a previous session have no
+     * callback.
+     */
+    private void readSpooledMessages()
+    {
+        MessageSpool spool = this.messageSpool;
+        if (spool == null)
+        {
+            return;
+        }
+
+        int messagesToRead = SPOOL_READ_AHEAD - this.waitingPacketsQueue.size();
+        if (messagesToRead <= 0 || !spool.hasUnreadMessages())
+        {
+            return;
+        }
+
+        //Codes_SRS_IOTHUBTRANSPORT_41_022: [This function shall read spooled messages into the waiting queue in the
+        // order they were spooled, with the callbacks they were added with.]
+        for (MessageSpool.SpooledMessage spooledMessage : spool.read(messagesToRead))
+        {
+            SpooledMessageCallback spooledMessageCallback = this.spooledMessageCallbacks.remove(spooledMessage.getRecordId());
+            IotHubTransportPacket packet = spooledMessageCallback == null
+                    ? new IotHubTransportPacket(spooledMessage.getMessage(), null, null, null, System.currentTimeMillis())
+                    : new IotHubTransportPacket(spooledMessage.getMessage(), spooledMessageCallback.callback, spooledMessageCallback.callbackContext, null, System.currentTimeMillis());
+            packet.setSpoolRecordId(spooledMessage.getRecordId());
+
+            if (spooledMessageCallback == null)
+            {
+                //Codes_SRS_IOTHUBTRANSPORT_41_023: [Messages left in the spool by a previous session shall take room
+                // in the outbound queue regardless of its limits.]
+                synchronized (this.outboundQueueLock)
                 {
-                    expiredPacketMessageIds.add(messageId);
+                    this.outboundQueueDepth++;
+                    this.outboundQueueSizeInBytes += packet.getSizeInBytes();
                 }
             }
 
-            for (String messageId : expiredPacketMessageIds)
+            if (packet.getExpiryTimeMillis() != 0)
+            {
+                this.expiringPackets.add(packet);
+            }
+
+            this.addWaitingPacket(packet);
+        }
+    }
+
+    /**
+     * Invokes the callbacks of the messages that were spooled but not read back with MESSAGE_CANCELLED_ONCLOSE, then
+     * closes the message spool. The messages stay in the spool, to be sent again once this transport is opened.
+     */
+    private void closeMessageSpool()
+    {
+        MessageSpool spool = this.messageSpool;
+        if (spool == null)
+        {
+            return;
+        }
+
+        //Codes_SRS_IOTHUBTRANSPORT_41_024: [This function shall invoke the callbacks of messages that are still in
+        // the spool with status MESSAGE_CANCELLED_ONCLOSE, and leave the messages in the spool.]
+        Iterator<SpooledMessageCallback> spooledMessageCallbacksIterator = this.spooledMessageCallbacks.values().iterator();
+        while (spooledMessageCallbacksIterator.hasNext())
+        {
+            SpooledMessageCallback spooledMessageCallback = spooledMessageCallbacksIterator.next();
+            spooledMessageCallbacksIterator.remove();
+            this.releaseOutboundQueueSpace(spooledMessageCallback.sizeInBytes);
+            if (spooledMessageCallback.callback != null)
+            {
+                spooledMessageCallback.callback.execute(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, spooledMessageCallback.callbackContext);
+            }
+        }
+
+        this.messageSpool = null;
+        spool.close();
+    }
+
+    /**
+     * Completes every packet whose message has expired with MESSAGE_EXPIRED. Only the expired packets are visited, and
+     * the order of the waiting queue is left as it is.
+     */
+    private void checkForExpiredMessages()
+    {
+        //Codes_SRS_IOTHUBTRANSPORT_41_007: [This function shall visit the expiring packets index in order of expiry
+        // time, and stop at the first packet that has not expired.]
+        long currentTimeMillis = System.currentTimeMillis();
+        for (IotHubTransportPacket packet : this.expiringPackets)
+        {
+            if (packet.getExpiryTimeMillis() >= currentTimeMillis)
+            {
+                break;
+            }
+
+            // the packet may have been completed by another thread since it was visited
+            if (this.expiringPackets.remove(packet))
             {
-                IotHubTransportPacket expiredPacket = this.inProgressPackets.remove(messageId);
-                expiredPacket.setStatus(IotHubStatusCode.MESSAGE_EXPIRED);
-                this.addToCallbackQueue(expiredPacket);
+                this.expirePacket(packet);
             }
         }
     }
 
+    /**
+     * Removes an expired packet from wherever it is waiting, and adds it to the callbacks queue with MESSAGE_EXPIRED
+     * @param packet the expired packet. Must already be removed from the expiring packets index
+     */
+    private void expirePacket(IotHubTransportPacket packet)
+    {
+        String messageId = packet.getMessage().getMessageId();
+        synchronized (this.inProgressMessagesLock)
+        {
+            if (messageId != null && this.inProgressPackets.get(messageId) == packet)
+            {
+                //Codes_SRS_IOTHUBTRANSPORT_41_008: [If the expired packet is in progress, this function shall remove it
+                // from the in progress packets.]
+                this.inProgressPackets.remove(messageId);
+            }
+            else
+            {
+                //Codes_SRS_IOTHUBTRANSPORT_41_009: [If the expired packet is not in progress, this function shall mark
+                // it to be discarded once it is dequeued from the waiting queue.]
+                synchronized (this.waitingPacketsLock)
+                {
+                    if (this.expiredWaitingPackets.add(packet) && packet.isWaiting())
+                    {
+                        this.waitingPacketsCount--;
+                    }
+                }
+            }
+        }
+
+        log.warn("Message has expired, adding to callbacks queue with MESSAGE_EXPIRED ({})", packet.getMessage());
+        packet.setStatus(IotHubStatusCode.MESSAGE_EXPIRED);
+        this.queueCallback(packet);
+    }
+
+    /**
+     * Getter for the number of messages that have been queued but have not had their callback queued yet
+     * @return the number of messages in the outbound queue
+     */
+    public int getOutboundQueueDepth()
+    {
+        //Codes_SRS_IOTHUBTRANSPORT_41_017: [This function shall return the number of messages in the outbound queue.]
+        synchronized (this.outboundQueueLock)
+        {
+            return this.outboundQueueDepth;
+        }
+    }
+
+    /**
+     * Getter for the total size of the message bodies that have been queued but have not had their callback queued yet
+     * @return the number of message body bytes in the outbound queue
+     */
+    public long getOutboundQueueSizeInBytes()
+    {
+        //Codes_SRS_IOTHUBTRANSPORT_41_018: [This function shall return the number of message body bytes in the
+        // outbound queue.]
+        synchronized (this.outboundQueueLock)
+        {
+            return this.outboundQueueSizeInBytes;
+        }
+    }
+
+    /**
+     * Blocks the calling thread until there is work for the send thread to do, or until the provided timeout elapses.
+     * The send thread has work to do when there are callbacks to invoke, or when there are messages waiting to be
+     * sent while the connection is CONNECTED.
+     *
+     * @param timeoutMillis the maximum time to wait for send work, in milliseconds
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public void waitForSendWork(long timeoutMillis) throws InterruptedException
+    {
+        synchronized (this.sendThreadLock)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_41_002: [If there is no send work, this function shall wait on the send thread
+            // lock for up to the provided timeout.]
+            if (!this.hasSendWork())
+            {
+                //Codes_SRS_IOTHUBTRANSPORT_41_032: [If the waiting messages are lingering for more messages to fill
+                // their HTTPS batch, this function shall wait no longer than the remaining linger time.]
+                long remainingLingerMillis = this.getRemainingHttpsBatchLingerMillis();
+                this.sendThreadLock.waitLock(remainingLingerMillis > 0 ? Math.min(timeoutMillis, remainingLingerMillis) : timeoutMillis);
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if there are callbacks waiting to be invoked, or if there are messages waiting to be sent
+     * and the connection is CONNECTED.
+     *
+     * @return {@code true} if there is work for the send thread to do, and {@code false} otherwise.
+     */
+    public boolean hasSendWork()
+    {
+        //Codes_SRS_IOTHUBTRANSPORT_41_003: [This function shall return true if the callback queue is not empty, or if
+        // the waiting queue is not empty and the connection status is CONNECTED.]
+        //Codes_SRS_IOTHUBTRANSPORT_41_033: [This function shall not count waiting messages as send work while they are
+        // lingering for more messages to fill their HTTPS batch.]
+        return !this.callbackPacketsQueue.isEmpty()
+                || (this.connectionStatus == IotHubConnectionStatus.CONNECTED
+                        && (!this.waitingPacketsQueue.isEmpty() || this.hasUnreadSpooledMessages())
+                        && this.getRemainingHttpsBatchLingerMillis() == 0);
+    }
+
     /**
      * Invokes the callbacks for all completed requests.
      */
@@ -473,7 +970,7 @@ public class IotHubTransport implements IotHubListener
                 addReceivedMessagesOverHttpToReceivedQueue();
             }
 
-            IotHubTransportMessage receivedMessage = this.receivedMessagesQueue.poll();
+            IotHubTransportMessage receivedMessage = this.pollReceivedMessage();
             if (receivedMessage != null)
             {
                 //Codes_SRS_IOTHUBTRANSPORT_34_048: [If this object's connection status is CONNECTED and there is a
@@ -496,7 +993,70 @@ public class IotHubTransport implements IotHubListener
         {
             //Codes_SRS_IOTHUBTRANSPORT_34_043: [This function return true if and only if there are no packets in the
             // waiting queue, in progress, or in the callbacks queue.]
-            return this.waitingPacketsQueue.isEmpty() && this.inProgressPackets.size() == 0 && this.callbackPacketsQueue.isEmpty();
+            return !this.hasWaitingPackets() && !this.hasUnreadSpooledMessages() && this.inProgressPackets.size() == 0 && this.callbackPacketsQueue.isEmpty();
+        }
+    }
+
+    /**
+     * @return if the message spool has messages that were not read back into the waiting queue yet
+     */
+    private boolean hasUnreadSpooledMessages()
+    {
+        MessageSpool spool = this.messageSpool;
+        return spool != null && spool.hasUnreadMessages();
+    }
+
+    /**
+     * @return if the waiting queue has any packets that have not already expired
+     */
+    private boolean hasWaitingPackets()
+    {
+        synchronized (this.waitingPacketsLock)
+        {
+            return this.waitingPacketsCount > 0;
+        }
+    }
+
+    /**
+     * Adds a packet to the end of the waiting queue, and counts it as waiting unless it already expired
+     * @param packet the packet to add
+     */
+    private void addWaitingPacket(IotHubTransportPacket packet)
+    {
+        synchronized (this.waitingPacketsLock)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_41_034: [This function shall add the packet to the waiting queue, and count it
+            // as waiting unless it already expired.]
+            this.waitingPacketsQueue.add(packet);
+            packet.setWaiting(true);
+            if (!this.expiredWaitingPackets.contains(packet))
+            {
+                this.waitingPacketsCount++;
+            }
+        }
+    }
+
+    /**
+     * Removes the packet at the head of the waiting queue, and no longer counts it as waiting
+     * @return the removed packet, or null if the waiting queue is empty
+     */
+    private IotHubTransportPacket pollWaitingPacket()
+    {
+        synchronized (this.waitingPacketsLock)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_41_035: [This function shall remove the head of the waiting queue, and no longer
+            // count it as waiting unless it already expired.]
+            IotHubTransportPacket packet = this.waitingPacketsQueue.poll();
+            if (packet != null)
+            {
+                packet.setWaiting(false);
+                if (!this.expiredWaitingPackets.contains(packet))
+                {
+                    this.waitingPacketsCount--;
+                }
+            }
+
+            return packet;
         }
     }
 
@@ -546,13 +1106,21 @@ public class IotHubTransport implements IotHubListener
     {
         //Codes_SRS_IOTHUBTRANSPORT_34_021: [This function shall move all waiting messages to the callback queue with
         // status MESSAGE_CANCELLED_ONCLOSE.]
-        IotHubTransportPacket packet = this.waitingPacketsQueue.poll();
+        IotHubTransportPacket packet = this.pollWaitingPacket();
         while (packet != null)
         {
-            packet.setStatus(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE);
-            this.addToCallbackQueue(packet);
+            if (!this.expiredWaitingPackets.remove(packet))
+            {
+                packet.setStatus(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE);
+                this.addToCallbackQueue(packet);
+            }
+
+            packet = this.pollWaitingPacket();
+        }
 
-            packet = this.waitingPacketsQueue.poll();
+        synchronized (this.waitingPacketsLock)
+        {
+            this.expiredWaitingPackets.clear();
         }
 
         synchronized (this.inProgressMessagesLock)
@@ -570,6 +1138,52 @@ public class IotHubTransport implements IotHubListener
         }
     }
 
+    /**
+     * Adds the received message to the queue of its channel, so that direct method invocations and twin messages are
+     * not held back by a backlog of cloud to device messages.
+     * @param receivedMessage the message that was received
+     */
+    private void addReceivedMessage(IotHubTransportMessage receivedMessage)
+    {
+        MessageType messageType = receivedMessage.getMessageType();
+        if (messageType == MessageType.DEVICE_METHODS)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_41_037: [If the received message is a direct method invocation, this function shall add it to the received method messages queue.]
+            this.receivedMethodMessagesQueue.add(receivedMessage);
+        }
+        else if (messageType == MessageType.DEVICE_TWIN)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_41_038: [If the received message is a twin message, this function shall add it to the received twin messages queue.]
+            this.receivedTwinMessagesQueue.add(receivedMessage);
+        }
+        else
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_41_039: [Otherwise, this function shall add the received message to the receivedMessagesQueue.]
+            this.receivedMessagesQueue.add(receivedMessage);
+        }
+    }
+
+    /**
+     * @return the next received message to handle, taking direct method invocations first, then twin messages, and
+     * then every other message, or null if no message was received
+     */
+    private IotHubTransportMessage pollReceivedMessage()
+    {
+        //Codes_SRS_IOTHUBTRANSPORT_41_040: [This function shall return the oldest received method message, if any, else the oldest received twin message, if any, else the oldest message of the receivedMessagesQueue.]
+        IotHubTransportMessage receivedMessage = this.receivedMethodMessagesQueue.poll();
+        if (receivedMessage == null)
+        {
+            receivedMessage = this.receivedTwinMessagesQueue.poll();
+        }
+
+        if (receivedMessage == null)
+        {
+            receivedMessage = this.receivedMessagesQueue.poll();
+        }
+
+        return receivedMessage;
+    }
+
     /**
      * If the provided received message has a saved callback, this function shall execute that callback and send the ack
      * to the service
@@ -600,7 +1214,7 @@ public class IotHubTransport implements IotHubListener
                 //Codes_SRS_IOTHUBTRANSPORT_34_055: [If an exception is thrown while acknowledging the received message,
                 // this function shall add the received message back into the receivedMessagesQueue and then rethrow the exception.]
                 this.log.warn("Sending acknowledgement for received cloud to device message failed, adding it back to the queue ({})", receivedMessage, e);
-                this.receivedMessagesQueue.add(receivedMessage);
+                this.addReceivedMessage(receivedMessage);
                 throw e;
             }
         }
@@ -619,7 +1233,7 @@ public class IotHubTransport implements IotHubListener
         {
             //Codes_SRS_IOTHUBTRANSPORT_34_056: [If the saved http transport connection can receive a message, add it to receivedMessagesQueue.]
             log.info("Message was received from IotHub ({})", transportMessage);
-            this.receivedMessagesQueue.add(transportMessage);
+            this.addReceivedMessage(transportMessage);
         }
     }
 
@@ -723,7 +1337,10 @@ public class IotHubTransport implements IotHubListener
         {
             //Codes_SRS_IOTHUBTRANSPORT_34_057: [This function shall move all packets from inProgressQueue to waiting queue.]
             this.log.trace("Due to disconnection event, clearing active queues, and re-queueing them to waiting queues to be re-processed later upon reconnection");
-            this.waitingPacketsQueue.addAll(inProgressPackets.values());
+            for (IotHubTransportPacket inProgressPacket : inProgressPackets.values())
+            {
+                this.addWaitingPacket(inProgressPacket);
+            }
             inProgressPackets.clear();
         }
 
@@ -846,24 +1463,43 @@ public class IotHubTransport implements IotHubListener
         return null;
     }
 
+    /**
+     * The callback, callback context and body size of a message that was appended to the message spool. The message
+     * itself is only kept in the spool until it is read back to be sent, so this is what stays in memory meanwhile.
+     * The body size is the outbound queue room the message holds, which is released if the transport is closed
+     * before the message is read back.
+     */
+    private static final class SpooledMessageCallback
+    {
+        private final IotHubEventCallback callback;
+        private final Object callbackContext;
+        private final long sizeInBytes;
+
+        private SpooledMessageCallback(IotHubEventCallback callback, Object callbackContext, long sizeInBytes)
+        {
+            this.callback = callback;
+            this.callbackContext = callbackContext;
+            this.sizeInBytes = sizeInBytes;
+        }
+    }
+
     /**
      * Task for adding a packet back to the waiting queue. Used for delaying message retry
      */
     public class MessageRetryRunnable implements Runnable
     {
         final IotHubTransportPacket transportPacket;
-        final Queue<IotHubTransportPacket> waitingPacketsQueue;
 
-        public MessageRetryRunnable(Queue<IotHubTransportPacket> waitingPacketsQueue, IotHubTransportPacket transportPacket)
+        public MessageRetryRunnable(IotHubTransportPacket transportPacket)
         {
-            this.waitingPacketsQueue = waitingPacketsQueue;
             this.transportPacket = transportPacket;
         }
 
         @Override
         public void run()
         {
-            this.waitingPacketsQueue.add(this.transportPacket);
+            addWaitingPacket(this.transportPacket);
+            signalSendThread();
         }
     }
 
@@ -888,7 +1524,7 @@ public class IotHubTransport implements IotHubListener
                     //Codes_SRS_IOTHUBTRANSPORT_34_063: [If the provided transportException is retryable, the packet has not
                     // timed out, and the retry policy allows, this function shall schedule a task to add the provided
                     // packet to the waiting list after the amount of time determined by the retry policy.]
-                    this.taskScheduler.schedule(new MessageRetryRunnable(this.waitingPacketsQueue, packet), (long) retryDecision.getDuration(), MILLISECONDS);
+                    this.taskScheduler.schedule(new MessageRetryRunnable(packet), (long) retryDecision.getDuration(), MILLISECONDS);
                     return;
                 }
                 else
@@ -1059,6 +1695,10 @@ public class IotHubTransport implements IotHubListener
                 //Codes_SRS_IOTHUBTRANSPORT_28_007: [This function shall reset currentReconnectionAttempt and reconnectionAttemptStartTimeMillis if connection status is changed to CONNECTED.]
                 this.currentReconnectionAttempt = 0;
                 this.reconnectionAttemptStartTimeMillis = 0;
+
+                //Codes_SRS_IOTHUBTRANSPORT_41_004: [This function shall notify any send thread waiting for send work
+                // if connection status is changed to CONNECTED.]
+                this.signalSendThread();
             }
         }
     }
@@ -1130,15 +1770,231 @@ public class IotHubTransport implements IotHubListener
     }
 
     /**
-     * Adds the packet to the callback queue if the provided packet has a callback. The packet is ignored otherwise.
+     * Completes the provided packet by adding it to the callback queue if it has a callback. The packet is ignored
+     * otherwise, or if it was already completed because its message expired.
      * @param packet the packet to add
      */
     private void addToCallbackQueue(IotHubTransportPacket packet)
+    {
+        if (packet.getExpiryTimeMillis() != 0 && !this.expiringPackets.remove(packet))
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_41_010: [If the packet has an expiry time but is no longer in the expiring
+            // packets index, its callback has already been queued as expired, so this function shall do nothing.]
+            log.trace("Message already expired, ignoring its completion ({})", packet.getMessage());
+            return;
+        }
+
+        this.queueCallback(packet);
+    }
+
+    /**
+     * Releases the outbound queue space held by the provided packet, then adds the packet to the callback queue if it
+     * has a callback. The packet is ignored otherwise.
+     * @param packet the packet to add
+     */
+    private void queueCallback(IotHubTransportPacket packet)
+    {
+        if (takesOutboundQueueSpace(packet))
+        {
+            this.releaseOutboundQueueSpace(packet.getSizeInBytes());
+        }
+
+        MessageSpool spool = this.messageSpool;
+        if (spool != null && packet.getSpoolRecordId() >= 0 && packet.getStatus() != IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_41_025: [If the packet's message is spooled, and the packet was not cancelled
+            // on close, this function shall acknowledge the message in the spool so it is not sent again.]
+            spool.acknowledge(packet.getSpoolRecordId());
+        }
+
+        this.queueCallbackWithoutReleasingSpace(packet);
+    }
+
+    /**
+     * Adds the packet to the callback queue if the provided packet has a callback. The packet is ignored otherwise.
+     * @param packet the packet to add
+     */
+    private void queueCallbackWithoutReleasingSpace(IotHubTransportPacket packet)
     {
         //Codes_SRS_IOTHUBTRANSPORT_28_002: [This function shall add the packet to the callback queue if it has a callback.]
         if (packet.getCallback() != null)
         {
             this.callbackPacketsQueue.add(packet);
+            this.signalSendThread();
+        }
+    }
+
+    /**
+     * Reserves room in the outbound queue for the provided packet. If the outbound queue is full, the configured
+     * overflow policy decides whether this blocks, drops the oldest waiting packets, or fails right away.
+     * @param packet the packet to reserve room for
+     * @return true if room was reserved for the packet, false if the packet should be rejected
+     */
+    private boolean reserveOutboundQueueSpace(IotHubTransportPacket packet)
+    {
+        int maxMessages = this.defaultConfig.getMaxOutboundQueueMessages();
+        long maxBytes = this.defaultConfig.getMaxOutboundQueueBytes();
+        long packetSize = packet.getSizeInBytes();
+
+        if (maxBytes > 0 && packetSize > maxBytes)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_41_012: [If the message body is larger than the outbound queue byte limit, this
+            // function shall reject it regardless of the overflow policy.]
+            return false;
+        }
+
+        OutboundQueueOverflowPolicy overflowPolicy = this.defaultConfig.getOutboundQueueOverflowPolicy();
+        long blockDeadlineMillis = System.currentTimeMillis() + this.defaultConfig.getOutboundQueueBlockTimeoutMillis();
+
+        synchronized (this.outboundQueueLock)
+        {
+            while ((maxMessages > 0 && this.outboundQueueDepth + 1 > maxMessages)
+                    || (maxBytes > 0 && this.outboundQueueSizeInBytes + packetSize > maxBytes))
+            {
+                if (overflowPolicy == OutboundQueueOverflowPolicy.DROP_OLDEST)
+                {
+                    //Codes_SRS_IOTHUBTRANSPORT_41_013: [If the overflow policy is DROP_OLDEST, this function shall
+                    // drop the oldest waiting packets until there is room, and reject the packet if there are no
+                    // waiting packets left to drop.]
+                    if (!this.dropOldestWaitingPacket())
+                    {
+                        return false;
+                    }
+                }
+                else if (overflowPolicy == OutboundQueueOverflowPolicy.BLOCK)
+                {
+                    //Codes_SRS_IOTHUBTRANSPORT_41_014: [If the overflow policy is BLOCK, this function shall wait for
+                    // room until the block timeout elapses or the transport is closed, and reject the packet if there
+                    // is still no room.]
+                    long remainingMillis = blockDeadlineMillis - System.currentTimeMillis();
+                    if (remainingMillis <= 0 || this.connectionStatus == IotHubConnectionStatus.DISCONNECTED)
+                    {
+                        return false;
+                    }
+
+                    try
+                    {
+                        this.outboundQueueLock.waitLock(remainingMillis);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+                else
+                {
+                    //Codes_SRS_IOTHUBTRANSPORT_41_015: [If the overflow policy is REJECT, this function shall reject
+                    // the packet.]
+                    return false;
+                }
+            }
+
+            this.outboundQueueDepth++;
+            this.outboundQueueSizeInBytes += packetSize;
+            return true;
+        }
+    }
+
+    /**
+     * Removes the oldest telemetry packet from the waiting queue and adds it to the callback queue with
+     * OUTBOUND_QUEUE_FULL. Packets that already expired while waiting are discarded along the way, since they no
+     * longer hold any room.
+     * @return true if a packet was removed from the waiting queue, false if the waiting queue has no telemetry
+     */
+    private boolean dropOldestWaitingPacket()
+    {
+        if (this.waitingPacketsQueue.isEmpty())
+        {
+            this.readSpooledMessages();
+        }
+
+        IotHubTransportPacket oldestPacket = this.removeOldestWaitingTelemetryPacket();
+        while (oldestPacket != null && this.expiredWaitingPackets.remove(oldestPacket))
+        {
+            oldestPacket = this.removeOldestWaitingTelemetryPacket();
+        }
+
+        if (oldestPacket == null)
+        {
+            return false;
+        }
+
+        if (oldestPacket.getExpiryTimeMillis() != 0 && !this.expiringPackets.remove(oldestPacket))
+        {
+            // the packet is expiring right now, and the expiry releases its room
+            return true;
+        }
+
+        log.warn("Outbound queue is full, dropping the oldest waiting message ({})", oldestPacket.getMessage());
+        oldestPacket.setStatus(IotHubStatusCode.OUTBOUND_QUEUE_FULL);
+        this.queueCallback(oldestPacket);
+        return true;
+    }
+
+    /**
+     * Removes the oldest telemetry packet from the waiting queue. Twin and method packets do not hold room in the
+     * outbound queue, so they are left where they are.
+     * @return the removed packet, or null if the waiting queue has no telemetry packet
+     */
+    private IotHubTransportPacket removeOldestWaitingTelemetryPacket()
+    {
+        synchronized (this.waitingPacketsLock)
+        {
+            for (IotHubTransportPacket packet : this.waitingPacketsQueue)
+            {
+                if (takesOutboundQueueSpace(packet) && this.waitingPacketsQueue.remove(packet))
+                {
+                    packet.setWaiting(false);
+                    if (!this.expiredWaitingPackets.contains(packet))
+                    {
+                        this.waitingPacketsCount--;
+                    }
+
+                    return packet;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * @param packet the packet to check
+     * @return if the packet holds room in the outbound queue. Only telemetry does, so that twin and method messages
+     * are never rejected or dropped because of the outbound queue limits.
+     */
+    private static boolean takesOutboundQueueSpace(IotHubTransportPacket packet)
+    {
+        //Codes_SRS_IOTHUBTRANSPORT_41_036: [Only telemetry packets shall hold room in the outbound queue. Twin and
+        // method packets shall be neither rejected nor dropped because of the outbound queue limits.]
+        return !(packet.getMessage() instanceof IotHubTransportMessage);
+    }
+
+    /**
+     * Gives back the outbound queue room held by a message, and wakes up a thread waiting for room
+     * @param sizeInBytes the size of the message body that no longer needs room in the outbound queue
+     */
+    private void releaseOutboundQueueSpace(long sizeInBytes)
+    {
+        //Codes_SRS_IOTHUBTRANSPORT_41_016: [When a packet is completed, this function shall release the room it held
+        // in the outbound queue and notify any thread blocked waiting for room.]
+        synchronized (this.outboundQueueLock)
+        {
+            this.outboundQueueDepth--;
+            this.outboundQueueSizeInBytes -= sizeInBytes;
+            this.outboundQueueLock.notifyLock();
+        }
+    }
+
+    /**
+     * Wakes up the send thread if it is waiting for send work. Only event driven send threads wait for send work.
+     */
+    private void signalSendThread()
+    {
+        synchronized (this.sendThreadLock)
+        {
+            this.sendThreadLock.notifyLock();
         }
     }
 
@@ -8,18 +8,27 @@ import com.microsoft.azure.sdk.iot.device.IotHubResponseCallback;
 import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
 import com.microsoft.azure.sdk.iot.device.Message;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * A packet containing the data needed for an IoT Hub transport to send a
  * message.
  */
 public final class IotHubTransportPacket
 {
+    private static final AtomicLong NEXT_SEQUENCE_NUMBER = new AtomicLong();
+
     private Message message;
     private IotHubEventCallback eventCallback;
     private Object callbackContext;
     private IotHubStatusCode status;
     private final long startTimeMillis;
     private int currentRetryAttempt;
+    private final long sequenceNumber;
+    private final long expiryTimeMillis;
+    private final long sizeInBytes;
+    private long spoolRecordId = -1;
+    private boolean isWaiting;
 
     /**
      * Constructor.
@@ -56,6 +65,16 @@ public final class IotHubTransportPacket
         this.callbackContext = callbackContext;
         this.status = status;
         this.startTimeMillis = startTimeMillis;
+
+        // Codes_SRS_IOTHUBTRANSPORTPACKET_41_001: [The constructor shall save the message's expiry time and assign
+        // this packet a sequence number that is unique and increasing across packets.]
+        this.expiryTimeMillis = message.getExpiryTime();
+        this.sequenceNumber = NEXT_SEQUENCE_NUMBER.getAndIncrement();
+
+        // Codes_SRS_IOTHUBTRANSPORTPACKET_41_004: [The constructor shall save the size of the message body, or 0 if
+        // the message has no body.]
+        byte[] body = message.getBytes();
+        this.sizeInBytes = body == null ? 0 : body.length;
     }
 
     /**
@@ -139,4 +158,74 @@ public final class IotHubTransportPacket
         // Codes_SRS_IOTHUBTRANSPORTPACKET_34_009: [This function shall increment the saved retry attempt count by 1.]
         this.currentRetryAttempt++;
     }
+
+    /**
+     * Getter for the expiry time of the message at the time this packet was created
+     * @return the number of milliseconds since epoch that this packet's message expires, or 0 if it never expires
+     */
+    public long getExpiryTimeMillis()
+    {
+        // Codes_SRS_IOTHUBTRANSPORTPACKET_41_002: [This function shall return the saved expiry time.]
+        return this.expiryTimeMillis;
+    }
+
+    /**
+     * Getter for the sequence number of this packet. Packets created later have larger sequence numbers.
+     * @return the sequence number of this packet
+     */
+    public long getSequenceNumber()
+    {
+        // Codes_SRS_IOTHUBTRANSPORTPACKET_41_003: [This function shall return the saved sequence number.]
+        return this.sequenceNumber;
+    }
+
+    /**
+     * Getter for the size of this packet's message body at the time this packet was created
+     * @return the number of bytes in the message body
+     */
+    public long getSizeInBytes()
+    {
+        // Codes_SRS_IOTHUBTRANSPORTPACKET_41_005: [This function shall return the saved size of the message body.]
+        return this.sizeInBytes;
+    }
+
+    /**
+     * Getter for the id of this packet's message in the message spool
+     * @return the spool record id, or -1 if the message is not spooled
+     */
+    public long getSpoolRecordId()
+    {
+        // Codes_SRS_IOTHUBTRANSPORTPACKET_41_006: [This function shall return the saved spool record id, which is -1 by default.]
+        return this.spoolRecordId;
+    }
+
+    /**
+     * Setter for the id of this packet's message in the message spool
+     * @param spoolRecordId the spool record id
+     */
+    public void setSpoolRecordId(long spoolRecordId)
+    {
+        // Codes_SRS_IOTHUBTRANSPORTPACKET_41_007: [This function shall save the provided spool record id.]
+        this.spoolRecordId = spoolRecordId;
+    }
+
+    /**
+     * Getter for whether this packet is in the waiting queue of its transport. Guarded by the transport.
+     * @return true if the packet is waiting to be sent, false otherwise
+     */
+    boolean isWaiting()
+    {
+        // Codes_SRS_IOTHUBTRANSPORTPACKET_41_008: [This function shall return the saved waiting flag, which is false by default.]
+        return this.isWaiting;
+    }
+
+    /**
+     * Setter for whether this packet is in the waiting queue of its transport. Guarded by the transport.
+     * @param isWaiting true if the packet was added to the waiting queue, false if it was removed from it
+     */
+    void setWaiting(boolean isWaiting)
+    {
+        // Codes_SRS_IOTHUBTRANSPORTPACKET_41_009: [This function shall save the provided waiting flag.]
+        this.isWaiting = isWaiting;
+    }
 }
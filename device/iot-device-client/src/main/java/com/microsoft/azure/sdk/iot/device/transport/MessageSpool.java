@@ -0,0 +1,667 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.MessageProperty;
+import com.microsoft.azure.sdk.iot.device.MessageType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Append only, on disk store of messages that are waiting to be sent. Messages are written to fixed size segment
+ * files through file channels, read back in the order they were appended, and the segment files are deleted
+ * once every message in them has been acknowledged.
+ *
+ * <p>Each record in a segment is laid out as {@code [length][state][crc32][payload]}. The length is written last, so
+ * a record that was only partly written when the process died is not read back. Records stay in the page cache until
+ * their segment is full or the spool is closed, so they survive the process dying but not the operating system
+ * crashing before then.
+ */
+@Slf4j
+public final class MessageSpool implements Closeable
+{
+    public static final int MIN_SEGMENT_SIZE_IN_BYTES = 4 * 1024;
+
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_SUFFIX = ".spool";
+
+    private static final int RECORD_HEADER_SIZE = 4 + 1 + 4;
+    private static final byte RECORD_STATE_PENDING = 1;
+    private static final byte RECORD_STATE_ACKNOWLEDGED = 2;
+
+    private final File directory;
+    private final int segmentSizeInBytes;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    private Segment writeSegment;
+    private long readSegmentNumber;
+    private int readPosition;
+
+    /**
+     * A message read back from the spool, with the id to acknowledge it by once it no longer needs to be sent.
+     */
+    public static final class SpooledMessage
+    {
+        private final long recordId;
+        private final Message message;
+
+        private SpooledMessage(long recordId, Message message)
+        {
+            this.recordId = recordId;
+            this.message = message;
+        }
+
+        public long getRecordId()
+        {
+            return this.recordId;
+        }
+
+        public Message getMessage()
+        {
+            return this.message;
+        }
+    }
+
+    private static final class Segment
+    {
+        private final long number;
+        private final File file;
+        private final FileChannel channel;
+        private final int size;
+        private int endPosition;
+        private int pendingRecords;
+
+        private Segment(long number, File file, FileChannel channel, int size)
+        {
+            this.number = number;
+            this.file = file;
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Opens the spool in the provided directory, creating the directory if it does not exist yet. Messages that were
+     * appended but not acknowledged by a previous spool in the same directory are read back first.
+     *
+     * @param directory the directory to keep the segment files in
+     * @param segmentSizeInBytes the size of each segment file. No message may be larger than a segment
+     * @throws IllegalArgumentException if directory is null or segmentSizeInBytes is smaller than
+     * {@link #MIN_SEGMENT_SIZE_IN_BYTES}
+     * @throws IOException if the directory or its segment files cannot be opened
+     */
+    public MessageSpool(File directory, int segmentSizeInBytes) throws IllegalArgumentException, IOException
+    {
+        if (directory == null)
+        {
+            // Codes_SRS_MESSAGESPOOL_41_001: [If the provided directory is null, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("Spool directory cannot be null");
+        }
+
+        if (segmentSizeInBytes < MIN_SEGMENT_SIZE_IN_BYTES)
+        {
+            // Codes_SRS_MESSAGESPOOL_41_002: [If the provided segment size is smaller than MIN_SEGMENT_SIZE_IN_BYTES, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("Spool segment size cannot be smaller than " + MIN_SEGMENT_SIZE_IN_BYTES + " bytes");
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Could not create spool directory " + directory);
+        }
+
+        this.directory = directory;
+        this.segmentSizeInBytes = segmentSizeInBytes;
+
+        // Codes_SRS_MESSAGESPOOL_41_003: [The constructor shall recover the segments left in the directory in order,
+        // counting the records that were not acknowledged, and ignoring any partly written record at their end.]
+        try
+        {
+            File[] segmentFiles = directory.listFiles();
+            if (segmentFiles != null)
+            {
+                for (File segmentFile : segmentFiles)
+                {
+                    long segmentNumber = parseSegmentNumber(segmentFile);
+                    if (segmentNumber >= 0)
+                    {
+                        this.segments.put(segmentNumber, this.recoverSegment(segmentNumber, segmentFile));
+                    }
+                }
+            }
+
+            if (this.segments.isEmpty())
+            {
+                this.writeSegment = this.createSegment(0);
+            }
+            else
+            {
+                this.writeSegment = this.segments.lastEntry().getValue();
+                for (Segment segment : new ArrayList<>(this.segments.headMap(this.writeSegment.number).values()))
+                {
+                    if (segment.pendingRecords == 0)
+                    {
+                        this.deleteSegment(segment);
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            this.closeSegments();
+            throw e;
+        }
+
+        this.readSegmentNumber = this.segments.firstKey();
+        this.readPosition = 0;
+    }
+
+    /**
+     * Appends the provided message to the end of the spool.
+     *
+     * @param message the message to append
+     * @return the id of the new record, used to acknowledge it
+     * @throws IOException if the message is larger than a segment, or a new segment file cannot be created
+     */
+    public synchronized long append(Message message) throws IOException
+    {
+        byte[] payload = serialize(message);
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        if (recordSize > this.segmentSizeInBytes)
+        {
+            // Codes_SRS_MESSAGESPOOL_41_004: [If the message does not fit in a single segment, this function shall throw an IOException.]
+            throw new IOException("Message of " + payload.length + " bytes does not fit in a spool segment of " + this.segmentSizeInBytes + " bytes");
+        }
+
+        if (this.writeSegment.endPosition + recordSize > this.writeSegment.size)
+        {
+            // Codes_SRS_MESSAGESPOOL_41_005: [If the message does not fit in the current segment, this function shall
+            // flush the current segment to disk and start a new segment.]
+            Segment fullSegment = this.writeSegment;
+            fullSegment.channel.force(false);
+            this.writeSegment = this.createSegment(fullSegment.number + 1);
+            this.deleteIfCompleted(fullSegment);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+
+        // Codes_SRS_MESSAGESPOOL_41_006: [This function shall write the record state, checksum and payload before
+        // the record length, so that a partly written record is never read back.]
+        Segment segment = this.writeSegment;
+        int position = segment.endPosition;
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        record.putInt(payload.length);
+        record.put(RECORD_STATE_PENDING);
+        record.putInt((int) crc.getValue());
+        record.put(payload);
+        record.position(4);
+        writeFully(segment, record, position + 4);
+        record.clear().limit(4);
+        writeFully(segment, record, position);
+
+        segment.endPosition += recordSize;
+        segment.pendingRecords++;
+        return toRecordId(segment.number, position);
+    }
+
+    /**
+     * Reads the next messages that were appended but not read yet, in the order they were appended. Records that were
+     * acknowledged before they were read are skipped.
+     *
+     * @param maxMessages the maximum number of messages to read
+     * @return the messages read, which is empty if there are no unread messages
+     */
+    public synchronized List<SpooledMessage> read(int maxMessages)
+    {
+        List<SpooledMessage> spooledMessages = new ArrayList<>();
+        while (spooledMessages.size() < maxMessages)
+        {
+            Segment segment = this.segments.get(this.readSegmentNumber);
+            if (segment == null || this.readPosition >= segment.endPosition)
+            {
+                Long nextSegmentNumber = this.segments.higherKey(this.readSegmentNumber);
+                if (segment == this.writeSegment || nextSegmentNumber == null)
+                {
+                    break;
+                }
+
+                this.readSegmentNumber = nextSegmentNumber;
+                this.readPosition = 0;
+                if (segment != null)
+                {
+                    this.deleteIfCompleted(segment);
+                }
+
+                continue;
+            }
+
+            int position = this.readPosition;
+            int payloadLength;
+            byte[] payload = null;
+            try
+            {
+                ByteBuffer header = readFully(segment, position, RECORD_HEADER_SIZE);
+                payloadLength = header.getInt(0);
+                if (header.get(4) == RECORD_STATE_PENDING)
+                {
+                    payload = readFully(segment, position + RECORD_HEADER_SIZE, payloadLength).array();
+                }
+            }
+            catch (IOException e)
+            {
+                // the read position is left on this record, so that it is read again on the next call
+                log.error("Could not read from spool segment {}", segment.file, e);
+                break;
+            }
+
+            this.readPosition += RECORD_HEADER_SIZE + payloadLength;
+
+            if (payload != null)
+            {
+                // Codes_SRS_MESSAGESPOOL_41_007: [This function shall return the pending records after the read
+                // position in the order they were appended, and skip acknowledged records.]
+                long recordId = toRecordId(segment.number, position);
+                try
+                {
+                    spooledMessages.add(new SpooledMessage(recordId, deserialize(payload)));
+                }
+                catch (IOException e)
+                {
+                    // Codes_SRS_MESSAGESPOOL_41_008: [If a record cannot be read back as a message, this function
+                    // shall acknowledge the record and skip it.]
+                    log.error("Discarding a spooled message that could not be read back", e);
+                    this.acknowledge(recordId);
+                }
+            }
+        }
+
+        return spooledMessages;
+    }
+
+    /**
+     * @return true if there may be messages that were appended but not read yet
+     */
+    public synchronized boolean hasUnreadMessages()
+    {
+        // Codes_SRS_MESSAGESPOOL_41_009: [This function shall return true if the read position is before the end of
+        // the last segment.]
+        return this.readSegmentNumber < this.writeSegment.number || this.readPosition < this.writeSegment.endPosition;
+    }
+
+    /**
+     * Marks the record with the provided id as acknowledged, so that it is never read back again. Segment files that
+     * only hold acknowledged records, and that were read in full, are deleted.
+     *
+     * @param recordId the id returned by {@link #append(Message)} or {@link SpooledMessage#getRecordId()}
+     */
+    public synchronized void acknowledge(long recordId)
+    {
+        Segment segment = this.segments.get(recordId >>> 32);
+        int position = (int) recordId;
+        if (segment == null)
+        {
+            return;
+        }
+
+        // Codes_SRS_MESSAGESPOOL_41_010: [This function shall mark the record as acknowledged, and delete its segment
+        // once every record in it was acknowledged and the segment is no longer being written or read.]
+        try
+        {
+            if (readFully(segment, position + 4, 1).get(0) != RECORD_STATE_PENDING)
+            {
+                return;
+            }
+
+            ByteBuffer state = ByteBuffer.allocate(1);
+            state.put(0, RECORD_STATE_ACKNOWLEDGED);
+            writeFully(segment, state, position + 4);
+        }
+        catch (IOException e)
+        {
+            // the record stays pending, so at worst the message is sent again once the spool is opened again
+            log.warn("Could not acknowledge a record in spool segment {}", segment.file, e);
+            return;
+        }
+
+        segment.pendingRecords--;
+        this.deleteIfCompleted(segment);
+    }
+
+    /**
+     * Flushes the segment being written to disk and closes the segment files. The spool cannot be used after this.
+     */
+    @Override
+    public synchronized void close()
+    {
+        // Codes_SRS_MESSAGESPOOL_41_011: [This function shall flush the segment being written to disk.]
+        try
+        {
+            this.writeSegment.channel.force(false);
+        }
+        catch (IOException e)
+        {
+            log.warn("Could not flush spool segment {}", this.writeSegment.file, e);
+        }
+
+        // Codes_SRS_MESSAGESPOOL_41_012: [This function shall close the file of every segment.]
+        this.closeSegments();
+    }
+
+    private void deleteIfCompleted(Segment segment)
+    {
+        boolean fullyRead = segment.number < this.readSegmentNumber;
+        if (segment.pendingRecords == 0 && segment != this.writeSegment && fullyRead)
+        {
+            this.deleteSegment(segment);
+        }
+    }
+
+    private void deleteSegment(Segment segment)
+    {
+        this.segments.remove(segment.number);
+        closeSegment(segment);
+        if (!segment.file.delete())
+        {
+            log.warn("Could not delete completed spool segment {}", segment.file);
+        }
+    }
+
+    private void closeSegments()
+    {
+        for (Segment segment : this.segments.values())
+        {
+            closeSegment(segment);
+        }
+    }
+
+    private static void closeSegment(Segment segment)
+    {
+        try
+        {
+            segment.channel.close();
+        }
+        catch (IOException e)
+        {
+            log.warn("Could not close spool segment {}", segment.file, e);
+        }
+    }
+
+    private Segment createSegment(long segmentNumber) throws IOException
+    {
+        File segmentFile = new File(this.directory, String.format("%s%019d%s", SEGMENT_FILE_PREFIX, segmentNumber, SEGMENT_FILE_SUFFIX));
+        RandomAccessFile randomAccessFile = new RandomAccessFile(segmentFile, "rw");
+        try
+        {
+            // the file is created at its full size, so that recovering it finds the size it was created with
+            randomAccessFile.setLength(this.segmentSizeInBytes);
+        }
+        catch (IOException e)
+        {
+            randomAccessFile.close();
+            throw e;
+        }
+
+        Segment segment = new Segment(segmentNumber, segmentFile, randomAccessFile.getChannel(), this.segmentSizeInBytes);
+        this.segments.put(segmentNumber, segment);
+        return segment;
+    }
+
+    private Segment recoverSegment(long segmentNumber, File segmentFile) throws IOException
+    {
+        // segments keep the size they were created with, even if the configured segment size changed since
+        int segmentSize = segmentFile.length() >= MIN_SEGMENT_SIZE_IN_BYTES && segmentFile.length() <= Integer.MAX_VALUE
+                ? (int) segmentFile.length()
+                : this.segmentSizeInBytes;
+        Segment segment = new Segment(segmentNumber, segmentFile, new RandomAccessFile(segmentFile, "rw").getChannel(), segmentSize);
+
+        ByteBuffer contents;
+        try
+        {
+            contents = readFully(segment, 0, segmentSize);
+        }
+        catch (IOException e)
+        {
+            closeSegment(segment);
+            throw e;
+        }
+
+        int position = 0;
+        while (position + RECORD_HEADER_SIZE <= segment.size)
+        {
+            int payloadLength = contents.getInt(position);
+            byte state = contents.get(position + 4);
+            if (payloadLength <= 0
+                    || payloadLength > segment.size - position - RECORD_HEADER_SIZE
+                    || (state != RECORD_STATE_PENDING && state != RECORD_STATE_ACKNOWLEDGED))
+            {
+                break;
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(contents.array(), position + RECORD_HEADER_SIZE, payloadLength);
+            if ((int) crc.getValue() != contents.getInt(position + 5))
+            {
+                break;
+            }
+
+            if (state == RECORD_STATE_PENDING)
+            {
+                segment.pendingRecords++;
+            }
+
+            position += RECORD_HEADER_SIZE + payloadLength;
+        }
+
+        if (position + 4 <= segment.size && contents.getInt(position) != 0)
+        {
+            log.warn("Ignoring a partly written record at the end of spool segment {}", segmentFile);
+            try
+            {
+                writeFully(segment, ByteBuffer.allocate(segment.size - position), position);
+            }
+            catch (IOException e)
+            {
+                closeSegment(segment);
+                throw e;
+            }
+        }
+
+        segment.endPosition = position;
+        return segment;
+    }
+
+    /**
+     * @return the number of the segment kept in the provided file, or -1 if the file is not a spool segment
+     */
+    private static long parseSegmentNumber(File segmentFile)
+    {
+        String fileName = segmentFile.getName();
+        if (!fileName.startsWith(SEGMENT_FILE_PREFIX) || !fileName.endsWith(SEGMENT_FILE_SUFFIX))
+        {
+            return -1;
+        }
+
+        // Codes_SRS_MESSAGESPOOL_41_013: [The constructor shall skip any file in the directory that is named like a
+        // segment but is not one.]
+        long segmentNumber = -1;
+        if (segmentFile.isFile() && fileName.length() > SEGMENT_FILE_PREFIX.length() + SEGMENT_FILE_SUFFIX.length())
+        {
+            try
+            {
+                segmentNumber = Long.parseLong(fileName.substring(SEGMENT_FILE_PREFIX.length(), fileName.length() - SEGMENT_FILE_SUFFIX.length()));
+            }
+            catch (NumberFormatException e)
+            {
+                segmentNumber = -1;
+            }
+        }
+
+        if (segmentNumber < 0)
+        {
+            log.warn("Ignoring {} in the spool directory, as it is not a spool segment", segmentFile);
+        }
+
+        return segmentNumber;
+    }
+
+    private static ByteBuffer readFully(Segment segment, int position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+        {
+            if (segment.channel.read(buffer, position + buffer.position()) < 0)
+            {
+                // anything past the end of the file reads back as zeros, like the rest of an unwritten segment
+                break;
+            }
+        }
+
+        return buffer;
+    }
+
+    private static void writeFully(Segment segment, ByteBuffer buffer, int position) throws IOException
+    {
+        int start = buffer.position();
+        while (buffer.hasRemaining())
+        {
+            segment.channel.write(buffer, position + buffer.position() - start);
+        }
+    }
+
+    private static long toRecordId(long segmentNumber, int position)
+    {
+        return (segmentNumber << 32) | position;
+    }
+
+    private static byte[] serialize(Message message) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+            writeNullableString(out, message.getMessageId());
+            writeNullableString(out, message.getCorrelationId());
+            writeNullableString(out, message.getUserId());
+            writeNullableString(out, message.getConnectionDeviceId());
+            writeNullableString(out, message.getConnectionModuleId());
+            writeNullableString(out, message.getOutputName());
+            writeNullableString(out, message.getMessageType() == null ? null : message.getMessageType().name());
+            out.writeBoolean(message.isSecurityMessage());
+            writeNullableString(out, message.getContentType());
+            writeNullableString(out, message.getContentEncoding());
+            out.writeLong(message.getExpiryTime());
+            out.writeLong(message.getCreationTimeUTC() == null ? -1 : message.getCreationTimeUTC().getTime());
+
+            MessageProperty[] properties = message.getProperties();
+            out.writeInt(properties.length);
+            for (MessageProperty property : properties)
+            {
+                out.writeUTF(property.getName());
+                out.writeUTF(property.getValue());
+            }
+
+            byte[] body = message.getBytes();
+            out.writeInt(body == null ? -1 : body.length);
+            if (body != null)
+            {
+                out.write(body);
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static Message deserialize(byte[] payload) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload)))
+        {
+            String messageId = readNullableString(in);
+            String correlationId = readNullableString(in);
+            String userId = readNullableString(in);
+            String connectionDeviceId = readNullableString(in);
+            String connectionModuleId = readNullableString(in);
+            String outputName = readNullableString(in);
+            String messageType = readNullableString(in);
+            boolean isSecurityMessage = in.readBoolean();
+            String contentType = readNullableString(in);
+            String contentEncoding = readNullableString(in);
+            long expiryTime = in.readLong();
+            long creationTimeUTC = in.readLong();
+
+            Map<String, String> properties = new LinkedHashMap<>();
+            int propertyCount = in.readInt();
+            for (int i = 0; i < propertyCount; i++)
+            {
+                properties.put(in.readUTF(), in.readUTF());
+            }
+
+            int bodyLength = in.readInt();
+            Message message;
+            if (bodyLength < 0)
+            {
+                message = new Message();
+            }
+            else
+            {
+                byte[] body = new byte[bodyLength];
+                in.readFully(body);
+                message = new Message(body);
+            }
+
+            message.setMessageId(messageId);
+            message.setCorrelationId(correlationId);
+            message.setUserId(userId);
+            message.setConnectionDeviceId(connectionDeviceId);
+            message.setConnectionModuleId(connectionModuleId);
+            message.setOutputName(outputName);
+            if (messageType != null)
+            {
+                message.setMessageType(MessageType.valueOf(messageType));
+            }
+
+            if (isSecurityMessage)
+            {
+                message.setAsSecurityMessage();
+            }
+
+            message.setContentType(contentType);
+            message.setContentEncoding(contentEncoding);
+            message.setAbsoluteExpiryTime(expiryTime);
+            if (creationTimeUTC >= 0)
+            {
+                message.setCreationTimeUTC(new Date(creationTimeUTC));
+            }
+
+            for (Map.Entry<String, String> property : properties.entrySet())
+            {
+                message.setProperty(property.getKey(), property.getValue());
+            }
+
+            return message;
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IOException("Spooled message is not valid", e);
+        }
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException
+    {
+        out.writeBoolean(value != null);
+        if (value != null)
+        {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,130 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.message.Message;
+
+import java.nio.BufferOverflowException;
+
+/**
+ * Buffer that outgoing Proton messages are packed into to be sent as a single batched AMQP message. Each message is
+ * encoded, and the encoded message is written as a data section of the batch, which is sent with the
+ * {@link #BATCH_MESSAGE_FORMAT} message format. The buffer is kept between batches, like {@link AmqpsEncodingBuffer}.
+ */
+public final class AmqpsBatchBuffer
+{
+    /**
+     * The message format of a delivery that holds a batch of messages.
+     */
+    public static final int BATCH_MESSAGE_FORMAT = 0x80013700;
+
+    /**
+     * The maximum size of a batch, which is the maximum size of a message sent to IoT Hub.
+     */
+    public static final int MAX_BATCH_SIZE_IN_BYTES = 256 * 1024;
+
+    // Room left for the data section descriptor and length on top of the encoded message
+    private static final int SECTION_OVERHEAD_IN_BYTES = 16;
+
+    private final AmqpsEncodingBuffer messageBuffer = new AmqpsEncodingBuffer();
+    private final Message section = Proton.message();
+    private byte[] buffer = new byte[AmqpsEncodingBuffer.INITIAL_SIZE_IN_BYTES];
+    private int length;
+    private int messageCount;
+
+    /**
+     * Empties the buffer so that a new batch can be packed into it.
+     */
+    public void clear()
+    {
+        // Codes_SRS_AMQPSBATCHBUFFER_41_001: [This function shall empty the batch.]
+        this.length = 0;
+        this.messageCount = 0;
+    }
+
+    /**
+     * Adds the message to the batch, if the batch is empty or if the batch still fits in a single message to IoT Hub
+     * with the message added.
+     *
+     * @param message the message to add.
+     * @return true if the message was added, or false if it does not fit, in which case the batch is left as it was.
+     * @throws IllegalArgumentException if the message is null.
+     */
+    public boolean add(Message message)
+    {
+        if (message == null)
+        {
+            // Codes_SRS_AMQPSBATCHBUFFER_41_002: [If the message is null, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("message cannot be null");
+        }
+
+        int messageLength = this.messageBuffer.encode(message);
+        this.section.setBody(new Data(new Binary(this.messageBuffer.getBuffer(), 0, messageLength)));
+        ensureCapacity(this.length + messageLength + SECTION_OVERHEAD_IN_BYTES);
+
+        int sectionLength;
+        while (true)
+        {
+            try
+            {
+                // Codes_SRS_AMQPSBATCHBUFFER_41_003: [This function shall write the encoded message as a data section after the messages already in the batch.]
+                sectionLength = this.section.encode(this.buffer, this.length, this.buffer.length - this.length);
+                break;
+            }
+            catch (BufferOverflowException e)
+            {
+                ensureCapacity(this.buffer.length * 2);
+            }
+        }
+
+        if (this.messageCount > 0 && this.length + sectionLength > MAX_BATCH_SIZE_IN_BYTES)
+        {
+            // Codes_SRS_AMQPSBATCHBUFFER_41_004: [If the batch is not empty and would no longer fit in a single message to IoT Hub, this function shall leave the batch as it was and return false.]
+            return false;
+        }
+
+        this.length += sectionLength;
+        this.messageCount++;
+        return true;
+    }
+
+    /**
+     * @return the buffer the batch was packed into. Only valid until the batch is cleared.
+     */
+    public byte[] getBuffer()
+    {
+        return this.buffer;
+    }
+
+    /**
+     * @return the number of bytes the batch takes at the start of {@link #getBuffer()}.
+     */
+    public int getLength()
+    {
+        // Codes_SRS_AMQPSBATCHBUFFER_41_005: [This function shall return the length of the batch.]
+        return this.length;
+    }
+
+    /**
+     * @return the number of messages in the batch.
+     */
+    public int getMessageCount()
+    {
+        // Codes_SRS_AMQPSBATCHBUFFER_41_006: [This function shall return the number of messages in the batch.]
+        return this.messageCount;
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > this.buffer.length)
+        {
+            byte[] newBuffer = new byte[Math.max(capacity, this.buffer.length * 2)];
+            System.arraycopy(this.buffer, 0, newBuffer, 0, this.length);
+            this.buffer = newBuffer;
+        }
+    }
+}
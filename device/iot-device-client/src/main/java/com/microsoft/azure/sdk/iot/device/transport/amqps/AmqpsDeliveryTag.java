@@ -0,0 +1,60 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+/**
+ * Collection of static helper functions to convert between the integer counters this SDK uses to track its deliveries
+ * and the fixed width, big endian delivery tags they are sent with.
+ */
+public final class AmqpsDeliveryTag
+{
+    /**
+     * The number of bytes of every delivery tag.
+     */
+    public static final int SIZE_IN_BYTES = 4;
+
+    private AmqpsDeliveryTag()
+    {
+    }
+
+    /**
+     * Encodes the counter as a delivery tag.
+     *
+     * @param counter the counter to encode.
+     * @return the delivery tag.
+     */
+    public static byte[] fromInt(int counter)
+    {
+        // Codes_SRS_AMQPSDELIVERYTAG_41_001: [This function shall encode the counter in SIZE_IN_BYTES bytes, most significant byte first.]
+        return new byte[]
+        {
+            (byte) (counter >>> 24),
+            (byte) (counter >>> 16),
+            (byte) (counter >>> 8),
+            (byte) counter
+        };
+    }
+
+    /**
+     * Decodes the counter a delivery tag was created from.
+     *
+     * @param deliveryTag the delivery tag, as created by {@link #fromInt(int)}.
+     * @return the counter.
+     * @throws IllegalArgumentException if the delivery tag is null or not SIZE_IN_BYTES long.
+     */
+    public static int toInt(byte[] deliveryTag)
+    {
+        if (deliveryTag == null || deliveryTag.length != SIZE_IN_BYTES)
+        {
+            // Codes_SRS_AMQPSDELIVERYTAG_41_002: [If the delivery tag is null or not SIZE_IN_BYTES long, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("delivery tag must be " + SIZE_IN_BYTES + " bytes long");
+        }
+
+        // Codes_SRS_AMQPSDELIVERYTAG_41_003: [This function shall decode the counter encoded by fromInt.]
+        return ((deliveryTag[0] & 0xFF) << 24)
+                | ((deliveryTag[1] & 0xFF) << 16)
+                | ((deliveryTag[2] & 0xFF) << 8)
+                | (deliveryTag[3] & 0xFF);
+    }
+}
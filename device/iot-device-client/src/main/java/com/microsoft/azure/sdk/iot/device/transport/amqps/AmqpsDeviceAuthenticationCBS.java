@@ -19,7 +19,6 @@ import org.apache.qpid.proton.engine.Transport;
 import org.apache.qpid.proton.message.impl.MessageImpl;
 
 import java.io.IOException;
-import java.nio.BufferOverflowException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -47,7 +46,9 @@ public final class AmqpsDeviceAuthenticationCBS extends AmqpsDeviceAuthenticatio
 
     private static final String DEVICES_PATH =  "/devices/";
 
-    private long nextTag = 0;
+    private int nextTag = 0;
+
+    private final AmqpsEncodingBuffer encodingBuffer = new AmqpsEncodingBuffer();
 
     private final DeviceClientConfig deviceClientConfig;
 
@@ -228,22 +229,8 @@ public final class AmqpsDeviceAuthenticationCBS extends AmqpsDeviceAuthenticatio
     {
         this.log.trace("authenticate called in AmqpsDeviceAuthenticationCBS");
         MessageImpl outgoingMessage = createCBSAuthenticationMessage(deviceClientConfig, correlationId);
-        byte[] msgData = new byte[1024];
-        int length;
-
-        while (true)
-        {
-            try
-            {
-                length = outgoingMessage.encode(msgData, 0, msgData.length);
-                break;
-            }
-            catch (BufferOverflowException e)
-            {
-                msgData = new byte[msgData.length * 2];
-            }
-        }
-        byte[] deliveryTag = String.valueOf(this.nextTag).getBytes();
+        int length = this.encodingBuffer.encode(outgoingMessage);
+        byte[] deliveryTag = AmqpsDeliveryTag.fromInt(this.nextTag);
 
         if (this.nextTag == Integer.MAX_VALUE || this.nextTag < 0)
         {
@@ -254,7 +241,7 @@ public final class AmqpsDeviceAuthenticationCBS extends AmqpsDeviceAuthenticatio
             this.nextTag++;
         }
 
-        this.sendMessageAndGetDeliveryTag(MessageType.CBS_AUTHENTICATION, msgData, 0, length, deliveryTag);
+        this.sendMessageAndGetDeliveryTag(MessageType.CBS_AUTHENTICATION, this.encodingBuffer.getBuffer(), 0, length, deliveryTag);
     }
 
     /**
@@ -18,6 +18,7 @@ import org.apache.qpid.proton.engine.*;
 import org.apache.qpid.proton.message.impl.MessageImpl;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -34,6 +35,9 @@ public abstract class AmqpsDeviceOperations
     protected static final String AMQPS_APP_PROPERTY_PREFIX = "iothub-app-";
     protected static final String INPUT_NAME_PROPERTY_KEY = "x-opt-input-name";
 
+    // The message format of a delivery that holds a single message
+    private static final int DEFAULT_MESSAGE_FORMAT = 0;
+
     protected AmqpsDeviceOperationLinkState amqpsSendLinkState = AmqpsDeviceOperationLinkState.UNKNOWN;
     protected AmqpsDeviceOperationLinkState amqpsRecvLinkState = AmqpsDeviceOperationLinkState.UNKNOWN;
 
@@ -266,6 +270,21 @@ public abstract class AmqpsDeviceOperations
      * @return delivery tag
      */
     protected synchronized AmqpsSendReturnValue sendMessageAndGetDeliveryTag(MessageType messageType, byte[] msgData, int offset, int length, byte[] deliveryTag)
+    {
+        return this.sendMessageAndGetDeliveryTag(messageType, msgData, offset, length, deliveryTag, DEFAULT_MESSAGE_FORMAT);
+    }
+
+    /**
+     * Sends the given message with the given message format and returns with the delivery hash
+     * @param messageType The message operation type.
+     * @param msgData The binary array of the bytes to send
+     * @param offset The start offset to copy the bytes from
+     * @param length The number of bytes to be send related to the offset
+     * @param deliveryTag The unique identifier of the delivery
+     * @param messageFormat The message format of the delivery, such as {@link AmqpsBatchBuffer#BATCH_MESSAGE_FORMAT}
+     * @return delivery tag
+     */
+    protected synchronized AmqpsSendReturnValue sendMessageAndGetDeliveryTag(MessageType messageType, byte[] msgData, int offset, int length, byte[] deliveryTag, int messageFormat)
     {
         // Codes_SRS_AMQPSDEVICEOPERATIONS_12_019: [The function shall throw IllegalStateException if the sender link is not initialized.]
         if (this.senderLink == null)
@@ -283,6 +302,12 @@ public abstract class AmqpsDeviceOperations
         Delivery delivery = this.senderLink.delivery(deliveryTag);
         try
         {
+            if (messageFormat != DEFAULT_MESSAGE_FORMAT)
+            {
+                // Codes_SRS_AMQPSDEVICEOPERATIONS_41_001: [If the message format is not the default one, the function shall set it on the delivery.]
+                delivery.setMessageFormat(messageFormat);
+            }
+
             this.log.trace("Sending {} bytes over the amqp {} sender link with link correlation id {}", length, getLinkInstanceType(), this.linkCorrelationId);
             // Codes_SRS_AMQPSDEVICEOPERATIONS_12_022: [The function shall try to send the message data using the sender link with the offset and length argument.]
             int bytesSent = this.senderLink.send(msgData, offset, length);
@@ -303,7 +328,7 @@ public abstract class AmqpsDeviceOperations
                 throw amqpSendFailedException;
             }
 
-            this.log.trace("Message was sent over {} sender link with delivery tag {} and hash {}", getLinkInstanceType(), new String(deliveryTag), delivery.hashCode());
+            this.log.trace("Message was sent over {} sender link with delivery tag {} and hash {}", getLinkInstanceType(), Arrays.toString(deliveryTag), delivery.hashCode());
             return new AmqpsSendReturnValue(true, delivery.hashCode(), deliveryTag);
         }
         catch (Exception e)
@@ -0,0 +1,87 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.message.Message;
+
+import java.nio.BufferOverflowException;
+
+/**
+ * Buffer that outgoing Proton messages are encoded into before they are handed to a sender link. The buffer is kept
+ * between messages, and sized up front from the message body, so that encoding a message neither allocates nor has to
+ * be retried. The sender link copies the encoded bytes, so the buffer can be reused as soon as the send call returns.
+ */
+public final class AmqpsEncodingBuffer
+{
+    /**
+     * The size of the buffer before any message was encoded into it.
+     */
+    public static final int INITIAL_SIZE_IN_BYTES = 1024;
+
+    // Room left for the header, properties and application properties on top of the body size
+    private static final int ENCODING_OVERHEAD_IN_BYTES = 1024;
+
+    private byte[] buffer = new byte[INITIAL_SIZE_IN_BYTES];
+
+    /**
+     * Encodes the message at the start of the buffer, growing the buffer first if the message might not fit.
+     *
+     * @param message the message to encode.
+     * @return the number of bytes the encoded message takes at the start of {@link #getBuffer()}.
+     * @throws IllegalArgumentException if the message is null.
+     */
+    public int encode(Message message)
+    {
+        if (message == null)
+        {
+            // Codes_SRS_AMQPSENCODINGBUFFER_41_001: [If the message is null, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("message cannot be null");
+        }
+
+        // Codes_SRS_AMQPSENCODINGBUFFER_41_002: [If the estimated encoded size of the message is larger than the buffer, this function shall replace the buffer with one of the estimated size before encoding.]
+        int estimatedSize = estimateEncodedSize(message);
+        if (estimatedSize > this.buffer.length)
+        {
+            this.buffer = new byte[estimatedSize];
+        }
+
+        while (true)
+        {
+            try
+            {
+                // Codes_SRS_AMQPSENCODINGBUFFER_41_003: [This function shall encode the message at the start of the buffer and return the encoded length.]
+                return message.encode(this.buffer, 0, this.buffer.length);
+            }
+            catch (BufferOverflowException e)
+            {
+                // Codes_SRS_AMQPSENCODINGBUFFER_41_004: [If the message does not fit, this function shall double the buffer and encode the message again.]
+                this.buffer = new byte[this.buffer.length * 2];
+            }
+        }
+    }
+
+    /**
+     * @return the buffer the last message was encoded into. Only valid until the next call to {@link #encode(Message)}.
+     */
+    public byte[] getBuffer()
+    {
+        return this.buffer;
+    }
+
+    private static int estimateEncodedSize(Message message)
+    {
+        if (message.getBody() instanceof Data)
+        {
+            Binary body = ((Data) message.getBody()).getValue();
+            if (body != null)
+            {
+                return body.getLength() + ENCODING_OVERHEAD_IN_BYTES;
+            }
+        }
+
+        return 0;
+    }
+}
@@ -28,10 +28,13 @@ import org.apache.qpid.proton.reactor.Reactor;
 import org.apache.qpid.proton.reactor.ReactorOptions;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.microsoft.azure.sdk.iot.device.DeviceTwin.DeviceOperations.*;
 import static com.microsoft.azure.sdk.iot.device.MessageType.DEVICE_METHODS;
@@ -48,7 +51,6 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
     private static final int MAX_WAIT_TO_OPEN_CBS_LINKS = 20 * 1000; // 20 second timeout
     private static final int MAX_WAIT_TO_OPEN_WORKER_LINKS = 60 * 1000; // 60 second timeout
     private static final int MAX_WAIT_TO_TERMINATE_EXECUTOR = 30;
-    private static final int SEND_MESSAGES_PERIOD_MILLIS = 50; //every 50 seconds, the method onTimerTask will fire to send queued messages
     /**
      * The {@link Delivery} tag.
      */
@@ -67,6 +69,8 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
     private final static int MAX_MESSAGES_TO_SEND_PER_CALLBACK = 1000;
     private final Boolean useWebSockets;
     private final Map<Integer, com.microsoft.azure.sdk.iot.device.Message> inProgressMessages = new ConcurrentHashMap<>();
+    private final Map<Integer, List<com.microsoft.azure.sdk.iot.device.Message>> inProgressBatches = new ConcurrentHashMap<>();
+    private final AmqpsBatchBuffer batchBuffer = new AmqpsBatchBuffer();
     private final Map<com.microsoft.azure.sdk.iot.device.Message, AmqpsMessage> sendAckMessages = new ConcurrentHashMap<>();
     public String connectionId;
     public AmqpsSessionManager amqpsSessionManager;
@@ -86,9 +90,12 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
     private CountDownLatch workerLinksOpenLatch;
     private CountDownLatch cbsLinkAuthorizedLatch;
     private CountDownLatch closeReactorLatch;
-    private Reactor reactor;
+    private volatile Reactor reactor;
     private TransportException savedException;
     private Queue<com.microsoft.azure.sdk.iot.device.Message> messagesToSend = new ConcurrentLinkedQueue<>();
+    //Set when messages were queued since the reactor last sent queued messages, so that the reactor is only woken up
+    // once for a burst of queued messages
+    private final AtomicBoolean reactorWakeupPending = new AtomicBoolean(false);
 
     /**
      * Constructor to set up connection parameters using the {@link DeviceClientConfig}.
@@ -310,7 +317,15 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
             executorService = Executors.newFixedThreadPool(1);
         }
 
-        IotHubReactor iotHubReactor = new IotHubReactor(reactor);
+        //Codes_SRS_AMQPSIOTHUBCONNECTION_41_001: [The function shall run the reactor with a process task that sends the queued messages.]
+        IotHubReactor iotHubReactor = new IotHubReactor(reactor, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                processOutgoingMessages();
+            }
+        });
         ReactorRunner reactorRunner = new ReactorRunner(iotHubReactor, this.listener, this.connectionId);
         executorService.submit(reactorRunner);
     }
@@ -472,8 +487,6 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
             reactor.connectionToHost(this.chooseHostname(), AMQP_PORT, this);
         }
 
-        reactor.schedule(SEND_MESSAGES_PERIOD_MILLIS, this);
-
         if (this.deviceClientConfig.getAuthenticationProvider() instanceof IotHubSasTokenAuthenticationProvider)
         {
             int sasTokenRenewalPeriod = this.deviceClientConfig.getSasTokenAuthentication().getMillisecondsBeforeProactiveRenewal();
@@ -632,7 +645,7 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
             {
                 DeliveryState remoteState = delivery.getRemoteState();
 
-                int deliveryTag = Integer.valueOf(new String(delivery.getTag()));
+                int deliveryTag = AmqpsDeliveryTag.toInt(delivery.getTag());
 
                 if (!link.getSource().getAddress().equalsIgnoreCase(AmqpsDeviceAuthenticationCBS.SENDER_LINK_ENDPOINT_PATH))
                 {
@@ -656,26 +669,7 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
                         {
                             this.log.trace("AMQP connection received Rejected acknowledgement for iot hub message  ({})", acknowledgedMessage);
 
-                            TransportException transportException;
-                            ErrorCondition errorCondition = ((Rejected) remoteState).getError();
-                            if (errorCondition != null && errorCondition.getCondition() != null)
-                            {
-                                // Codes_SRS_AMQPSIOTHUBCONNECTION_28_001: [If the acknowledgement sent from the service is "Rejected", this function shall map the error condition if it exists to amqp exceptions.]
-                                String errorCode = errorCondition.getCondition().toString();
-                                String errorDescription = "";
-                                if (errorCondition.getDescription() != null)
-                                {
-                                    errorDescription = errorCondition.getDescription();
-                                }
-
-                                transportException = AmqpsExceptionTranslator.convertToAmqpException(errorCode, errorDescription);
-                            }
-                            else
-                            {
-                                // Codes_SRS_AMQPSIOTHUBCONNECTION_34_065: [If the acknowledgement sent from the service is "Rejected", this function shall notify its listener that the sent message was rejected and that it should not be retried.]
-                                transportException = new TransportException("IotHub rejected the message");
-                            }
-
+                            TransportException transportException = getTransportExceptionFromRejection((Rejected) remoteState);
                             this.listener.onMessageSent(inProgressMessages.remove(deliveryTag), transportException);
 
                         }
@@ -689,6 +683,14 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
                             this.listener.onMessageSent(inProgressMessages.remove(deliveryTag), transportException);
                         }
                     }
+                    else if (this.inProgressBatches.containsKey(deliveryTag))
+                    {
+                        List<com.microsoft.azure.sdk.iot.device.Message> acknowledgedMessages = this.inProgressBatches.remove(deliveryTag);
+                        log.trace("Amqp in progress batches does contain delivery tag {}, acknowledging its {} messages", deliveryTag, acknowledgedMessages.size());
+
+                        // Codes_SRS_AMQPSIOTHUBCONNECTION_41_005: [If the acknowledged delivery is a batch, this function shall notify its listener of the acknowledgement of every message of the batch as it would for a single message.]
+                        this.notifyBatchAcknowledged(acknowledgedMessages, remoteState);
+                    }
                     else
                     {
                         this.log.warn("Unable to correlate acknowledgement with delivery tag {} to a sent message, ignoring it", deliveryTag);
@@ -757,6 +759,9 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
 
     private void processOutgoingMessages()
     {
+        //Codes_SRS_AMQPSIOTHUBCONNECTION_41_003: [The function shall allow the next queued message to wake up the reactor again.]
+        reactorWakeupPending.set(false);
+
         int messagesAttemptedToBeProcessed = 0;
         int lastDeliveryTag = 0;
         com.microsoft.azure.sdk.iot.device.Message message = messagesToSend.poll();
@@ -809,6 +814,14 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
         }
         else
         {
+            if (this.deviceClientConfig.getAmqpBatchMaxMessages() > 1
+                    && amqpsConvertToProtonReturnValue.getMessageType() == MessageType.DEVICE_TELEMETRY
+                    && isBatchable(messagesToSend.peek(), message.getConnectionDeviceId()))
+            {
+                // Codes_SRS_AMQPSIOTHUBCONNECTION_41_004: [If batching is enabled and more telemetry of the same device is queued, this function shall send the message in a batch with that telemetry.]
+                return this.processBatch(message, amqpsConvertToProtonReturnValue);
+            }
+
             try
             {
                 this.log.debug("Sending message over amqp ({})", message);
@@ -847,6 +860,144 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
         return lastDeliveryTag;
     }
 
+    /**
+     * Packs the given telemetry message, and as much of the telemetry of the same device that is queued right after
+     * it as fits, into a single batched message, and sends it.
+     *
+     * @param firstMessage the first message of the batch, already taken off the queue
+     * @param firstConvertedMessage the first message of the batch, converted to a Proton message
+     * @return the delivery tag of the batch, or -1 if it could not be sent
+     */
+    private int processBatch(com.microsoft.azure.sdk.iot.device.Message firstMessage, AmqpsConvertToProtonReturnValue firstConvertedMessage)
+    {
+        List<com.microsoft.azure.sdk.iot.device.Message> batchedMessages = new ArrayList<>();
+        String deviceId = firstMessage.getConnectionDeviceId();
+        int maxMessagesPerBatch = this.deviceClientConfig.getAmqpBatchMaxMessages();
+
+        this.batchBuffer.clear();
+        this.batchBuffer.add(firstConvertedMessage.getMessageImpl());
+        batchedMessages.add(firstMessage);
+
+        com.microsoft.azure.sdk.iot.device.Message nextMessage = messagesToSend.peek();
+        while (batchedMessages.size() < maxMessagesPerBatch && isBatchable(nextMessage, deviceId))
+        {
+            AmqpsConvertToProtonReturnValue nextConvertedMessage;
+            try
+            {
+                nextConvertedMessage = this.convertToProton(nextMessage);
+            }
+            catch (TransportException e)
+            {
+                //leave the message in the queue, it will be handled on its own
+                break;
+            }
+
+            if (nextConvertedMessage == null
+                    || nextConvertedMessage.getMessageType() != MessageType.DEVICE_TELEMETRY
+                    || !this.batchBuffer.add(nextConvertedMessage.getMessageImpl()))
+            {
+                break;
+            }
+
+            messagesToSend.poll();
+            batchedMessages.add(nextMessage);
+            nextMessage = messagesToSend.peek();
+        }
+
+        int deliveryTag = -1;
+        if (this.state != IotHubConnectionStatus.DISCONNECTED)
+        {
+            log.debug("Sending batch of {} messages over amqp", batchedMessages.size());
+            deliveryTag = this.amqpsSessionManager.sendBatchMessage(this.batchBuffer, deviceId);
+        }
+
+        if (deliveryTag != -1)
+        {
+            // Codes_SRS_AMQPSIOTHUBCONNECTION_41_006: [If the batch was sent, this function shall save its messages as in progress under the delivery tag of the batch.]
+            log.trace("Adding amqp delivery tag {} to in progress batches", deliveryTag);
+            this.inProgressBatches.put(deliveryTag, batchedMessages);
+        }
+        else
+        {
+            // Codes_SRS_AMQPSIOTHUBCONNECTION_41_007: [If the batch could not be sent, this function shall add its messages back to the messages to send.]
+            log.trace("Amqp batch failed to send, adding its {} messages back to messages to send queue", batchedMessages.size());
+            messagesToSend.addAll(batchedMessages);
+        }
+
+        return deliveryTag;
+    }
+
+    private static boolean isBatchable(com.microsoft.azure.sdk.iot.device.Message message, String deviceId)
+    {
+        return message != null
+                && (message.getMessageType() == null || message.getMessageType() == MessageType.DEVICE_TELEMETRY)
+                && deviceId != null
+                && deviceId.equals(message.getConnectionDeviceId());
+    }
+
+    private void notifyBatchAcknowledged(List<com.microsoft.azure.sdk.iot.device.Message> acknowledgedMessages, DeliveryState remoteState)
+    {
+        TransportException transportException;
+        if (remoteState instanceof Accepted)
+        {
+            transportException = null;
+        }
+        else if (remoteState instanceof Rejected)
+        {
+            transportException = getTransportExceptionFromRejection((Rejected) remoteState);
+        }
+        else if (remoteState instanceof Modified || remoteState instanceof Released || remoteState instanceof Received)
+        {
+            transportException = new TransportException("IotHub responded to message with Modified, Received or Released; message needs to be re-delivered");
+            transportException.setRetryable(true);
+        }
+        else
+        {
+            return;
+        }
+
+        for (com.microsoft.azure.sdk.iot.device.Message acknowledgedMessage : acknowledgedMessages)
+        {
+            this.listener.onMessageSent(acknowledgedMessage, transportException);
+        }
+    }
+
+    private static TransportException getTransportExceptionFromRejection(Rejected rejected)
+    {
+        ErrorCondition errorCondition = rejected.getError();
+        if (errorCondition != null && errorCondition.getCondition() != null)
+        {
+            // Codes_SRS_AMQPSIOTHUBCONNECTION_28_001: [If the acknowledgement sent from the service is "Rejected", this function shall map the error condition if it exists to amqp exceptions.]
+            String errorCode = errorCondition.getCondition().toString();
+            String errorDescription = "";
+            if (errorCondition.getDescription() != null)
+            {
+                errorDescription = errorCondition.getDescription();
+            }
+
+            return AmqpsExceptionTranslator.convertToAmqpException(errorCode, errorDescription);
+        }
+
+        // Codes_SRS_AMQPSIOTHUBCONNECTION_34_065: [If the acknowledgement sent from the service is "Rejected", this function shall notify its listener that the sent message was rejected and that it should not be retried.]
+        return new TransportException("IotHub rejected the message");
+    }
+
+    /**
+     * Event handler for the link flow event. Sends the queued messages as soon as a sender link is given credit.
+     *
+     * @param event The Proton Event object.
+     */
+    @Override
+    public void onLinkFlow(Event event)
+    {
+        Link link = event.getLink();
+        if (link instanceof Sender && link.getCredit() > 0)
+        {
+            // Codes_SRS_AMQPSIOTHUBCONNECTION_41_008: [If a sender link was given credit, this function shall send the queued messages.]
+            this.processOutgoingMessages();
+        }
+    }
+
     /**
      * Event handler for the link remote open event. This signifies that the
      * {@link org.apache.qpid.proton.reactor.Reactor} is ready, so we set the connection to CONNECTED.
@@ -978,14 +1129,6 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
         }
     }
 
-    @Override
-    public void onTimerTask(Event event)
-    {
-        processOutgoingMessages();
-
-        event.getReactor().schedule(SEND_MESSAGES_PERIOD_MILLIS, this);
-    }
-
     /**
      * Notifies all the listeners that a message was received from the server.
      *
@@ -1125,6 +1268,14 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
     {
         this.log.trace("Adding message to amqp message queue to be sent later ({})", message);
         messagesToSend.add(message);
+
+        Reactor reactor = this.reactor;
+        if (reactor != null && reactorWakeupPending.compareAndSet(false, true))
+        {
+            //Codes_SRS_AMQPSIOTHUBCONNECTION_41_002: [If the reactor is running and was not woken up yet since it last sent the queued messages, the function shall wake it up.]
+            reactor.wakeup();
+        }
+
         return IotHubStatusCode.OK;
     }
 
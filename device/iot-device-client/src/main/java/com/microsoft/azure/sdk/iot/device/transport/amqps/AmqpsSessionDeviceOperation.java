@@ -8,7 +8,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.qpid.proton.engine.Link;
 import org.apache.qpid.proton.engine.Session;
 
-import java.nio.BufferOverflowException;
 import java.util.*;
 
 import static com.microsoft.azure.sdk.iot.device.MessageType.*;
@@ -23,7 +22,9 @@ public class AmqpsSessionDeviceOperation
 
     private Map<MessageType, AmqpsDeviceOperations> amqpsDeviceOperationsMap = new HashMap<MessageType, AmqpsDeviceOperations>();
 
-    private static long nextTag = 0;
+    private static int nextTag = 0;
+
+    private final AmqpsEncodingBuffer encodingBuffer = new AmqpsEncodingBuffer();
 
     private Integer openLock = new Integer(1);
 
@@ -188,38 +189,15 @@ public class AmqpsSessionDeviceOperation
             if (this.deviceClientConfig.getDeviceId().equals(deviceId))
             {
                 // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_014: [The function shall encode the message and copy the contents to the byte buffer.]
-                byte[] msgData = new byte[1024];
-                int length;
+                // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_015: [The function shall doubles the buffer if encode throws BufferOverflowException.]
+                int length = this.encodingBuffer.encode(message);
 
-                while (true)
-                {
-                    try
-                    {
-                        length = message.encode(msgData, 0, msgData.length);
-                        break;
-                    }
-                    catch (BufferOverflowException e)
-                    {
-                        // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_015: [The function shall doubles the buffer if encode throws BufferOverflowException.]
-                        msgData = new byte[msgData.length * 2];
-                    }
-                }
                 // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_017: [The function shall set the delivery tag for the sender.]
-                byte[] deliveryTag = String.valueOf(this.nextTag).getBytes();
-
-                //want to avoid negative delivery tags since -1 is the designated failure value
-                if (this.nextTag == Integer.MAX_VALUE || this.nextTag < 0)
-                {
-                    this.nextTag = 0;
-                }
-                else
-                {
-                    this.nextTag++;
-                }
+                byte[] deliveryTag = this.nextDeliveryTag();
 
                 // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_018: [The function shall call sendMessageAndGetDeliveryTag on all device operation objects.]
                 // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_019: [The function shall return the delivery hash.]
-                return this.sendMessageAndGetDeliveryTag(messageType, msgData, 0, length, deliveryTag);
+                return this.sendMessageAndGetDeliveryTag(messageType, this.encodingBuffer.getBuffer(), 0, length, deliveryTag);
             }
             else
             {
@@ -233,6 +211,51 @@ public class AmqpsSessionDeviceOperation
         }
     }
 
+    /**
+     * Send a batch of telemetry messages as a single delivery on the telemetry sender link.
+     *
+     * @param batch the batch to send.
+     * @param deviceId the deviceId of the messages in the batch
+     * @throws IllegalStateException if sender link has not been initialized
+     * @return the delivery tag of the batch, or -1 if it was not sent
+     */
+    Integer sendBatchMessage(AmqpsBatchBuffer batch, String deviceId) throws IllegalStateException
+    {
+        // Codes_SRS_AMQPSESSIONDEVICEOPERATION_41_001: [The function shall return -1 if the state is not authenticated or if the deviceId is not equal to the deviceId in the config.]
+        if (this.amqpsAuthenticatorState == AmqpsDeviceAuthenticationState.AUTHENTICATED && this.deviceClientConfig.getDeviceId().equals(deviceId))
+        {
+            AmqpsDeviceOperations telemetryOperations = amqpsDeviceOperationsMap.get(DEVICE_TELEMETRY);
+            if (telemetryOperations != null)
+            {
+                // Codes_SRS_AMQPSESSIONDEVICEOPERATION_41_002: [The function shall send the batch on the telemetry sender link with the batch message format and return the delivery tag.]
+                AmqpsSendReturnValue amqpsSendReturnValue = telemetryOperations.sendMessageAndGetDeliveryTag(DEVICE_TELEMETRY, batch.getBuffer(), 0, batch.getLength(), this.nextDeliveryTag(), AmqpsBatchBuffer.BATCH_MESSAGE_FORMAT);
+                if (amqpsSendReturnValue.isDeliverySuccessful())
+                {
+                    return AmqpsDeliveryTag.toInt(amqpsSendReturnValue.getDeliveryTag());
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    private byte[] nextDeliveryTag()
+    {
+        byte[] deliveryTag = AmqpsDeliveryTag.fromInt(this.nextTag);
+
+        //want to avoid negative delivery tags since -1 is the designated failure value
+        if (this.nextTag == Integer.MAX_VALUE || this.nextTag < 0)
+        {
+            this.nextTag = 0;
+        }
+        else
+        {
+            this.nextTag++;
+        }
+
+        return deliveryTag;
+    }
+
     /**
      * Delegate the send call to device operation objects.
      * Loop through the device operation list and find the sender 
@@ -254,7 +277,7 @@ public class AmqpsSessionDeviceOperation
             AmqpsSendReturnValue amqpsSendReturnValue = amqpsDeviceOperationsMap.get(messageType).sendMessageAndGetDeliveryTag(messageType, msgData, offset, length, deliveryTag);
             if (amqpsSendReturnValue.isDeliverySuccessful())
             {
-                return Integer.parseInt(new String(amqpsSendReturnValue.getDeliveryTag()));
+                return AmqpsDeliveryTag.toInt(amqpsSendReturnValue.getDeliveryTag());
             }
         }
 
@@ -308,6 +308,33 @@ public class AmqpsSessionManager
         return deliveryTag;
     }
 
+    /**
+     * Delegate the send call of a batch of telemetry messages to the device session of the given deviceId.
+     *
+     * @param batch the batch to send.
+     * @param deviceId the deviceId of the messages in the batch.
+     * @return the delivery tag of the batch, or -1 if it was not sent
+     */
+    Integer sendBatchMessage(AmqpsBatchBuffer batch, String deviceId)
+    {
+        Integer deliveryTag = -1;
+
+        if (this.session != null)
+        {
+            for (int i = 0; i < this.amqpsDeviceSessionList.size(); i++)
+            {
+                // Codes_SRS_AMQPSESSIONMANAGER_41_001: [The function shall call sendBatchMessage on all session list members and if there is a successful send return with the delivery tag, otherwise return -1.]
+                deliveryTag = this.amqpsDeviceSessionList.get(i).sendBatchMessage(batch, deviceId);
+                if (deliveryTag != -1)
+                {
+                    break;
+                }
+            }
+        }
+
+        return deliveryTag;
+    }
+
     /**
      * Delegate the onDelivery call to device operation objects.
      * Loop through the device operation list and find the receiver `
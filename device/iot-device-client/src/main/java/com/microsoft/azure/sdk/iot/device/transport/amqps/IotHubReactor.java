@@ -11,13 +11,26 @@ import org.apache.qpid.proton.reactor.Reactor;
 public class IotHubReactor
 {
     private final Reactor reactor;
+    private final Runnable processTask;
 
     public IotHubReactor(Reactor reactor)
+    {
+        this(reactor, null);
+    }
+
+    /**
+     * Constructor for a reactor that runs the provided task on the reactor thread every time the reactor processed
+     * its events, including when it was woken up by {@link Reactor#wakeup()}.
+     * @param reactor the reactor to run
+     * @param processTask the task to run after every pass of the reactor, or null if there is none
+     */
+    public IotHubReactor(Reactor reactor, Runnable processTask)
     {
         //Codes_SRS_IOTHUBREACTOR_34_001: [This constructor will save the provided reactor.]
         this.reactor = reactor;
+        this.processTask = processTask;
     }
-    
+
     public void run() throws HandlerException
     {
         //Codes_SRS_IOTHUBREACTOR_34_003: [This function shall set the timeout of the reactor to 10 milliseconds.]
@@ -25,7 +38,14 @@ public class IotHubReactor
         this.reactor.start();
 
         //Codes_SRS_IOTHUBREACTOR_34_004: [This function shall start the reactor and have it process indefinitely and stop the reactor when it finishes.]
-        while(this.reactor.process()){}
+        while(this.reactor.process())
+        {
+            if (this.processTask != null)
+            {
+                //Codes_SRS_IOTHUBREACTOR_41_001: [If a process task was provided, this function shall run it after every pass of the reactor.]
+                this.processTask.run();
+            }
+        }
         this.reactor.stop();
         this.reactor.process();
         this.reactor.free();
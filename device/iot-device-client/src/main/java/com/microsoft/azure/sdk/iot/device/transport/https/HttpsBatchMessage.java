@@ -9,6 +9,7 @@ import com.microsoft.azure.sdk.iot.device.exceptions.IotHubSizeExceededException
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -19,8 +20,10 @@ import java.util.Map;
  */
 public final class HttpsBatchMessage implements HttpsMessage
 {
-    // Note: this limit is defined by the IoT Hub.
-    private static final int SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES = 255 * 1024 - 1;
+    /**
+     * The maximum size of a batched message body, in bytes. Note: this limit is defined by the IoT Hub.
+     */
+    public static final int SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES = 255 * 1024 - 1;
 
     /**
      * The value for the "content-type" header field in a batched HTTPS
@@ -34,8 +37,21 @@ public final class HttpsBatchMessage implements HttpsMessage
      */
     private static final Charset BATCH_CHARSET = StandardCharsets.UTF_8;
 
-    /** The current batched message body. */
-    private String batchBody;
+    /** The initial capacity of the batch body buffer, which grows as messages are added. */
+    private static final int INITIAL_BATCH_BODY_CAPACITY_BYTES = 1024;
+
+    private static final byte[] BODY_FIELD_START = "{\"body\":\"".getBytes(BATCH_CHARSET);
+    private static final byte[] BASE64_ENCODED_FIELD = "\",\"base64Encoded\":true".getBytes(BATCH_CHARSET);
+    private static final byte[] PROPERTIES_FIELD_START = ",\"properties\":{".getBytes(BATCH_CHARSET);
+
+    /**
+     * The current batched message body, UTF-8 encoded, without the closing bracket of the JSON array. Only the
+     * first batchBodyLength bytes are in use.
+     */
+    private byte[] batchBody;
+
+    /** The number of bytes of batchBody in use. */
+    private int batchBodyLength;
 
     /** The current number of messages in the batch. */
     private int numMsgs;
@@ -44,7 +60,9 @@ public final class HttpsBatchMessage implements HttpsMessage
     public HttpsBatchMessage()
     {
         // Codes_SRS_HTTPSBATCHMESSAGE_11_001: [The constructor shall initialize the batch message with the body as an empty JSON array.]
-        this.batchBody = "[]";
+        this.batchBody = new byte[INITIAL_BATCH_BODY_CAPACITY_BYTES];
+        this.batchBody[0] = '[';
+        this.batchBodyLength = 1;
         this.numMsgs = 0;
     }
 
@@ -59,22 +77,28 @@ public final class HttpsBatchMessage implements HttpsMessage
      */
     public void addMessage(HttpsSingleMessage msg) throws IotHubSizeExceededException
     {
-        String jsonMsg = msgToJson(msg);
+        int previousBatchBodyLength = this.batchBodyLength;
+
         // Codes_SRS_HTTPSBATCHMESSAGE_11_002: [The function shall add the message as a JSON object appended to the current JSON array.]
-        String newBatchBody = addJsonObjToArray(jsonMsg, this.batchBody);
+        // Codes_SRS_HTTPSBATCHMESSAGE_41_001: [The function shall encode the message straight into the batch body buffer, so that adding a message takes time proportional to the size of that message only.]
+        if (this.numMsgs > 0)
+        {
+            appendByte((byte) ',');
+        }
+
+        appendMessage(msg);
 
         // Codes_SRS_HTTPSBATCHMESSAGE_11_008: [If adding the message causes the batched message to exceed 256 kb in size, the function shall throw a IotHubSizeExceededException.]
         // Codes_SRS_HTTPSBATCHMESSAGE_11_009: [If the function throws a IotHubSizeExceededException, the batched message shall remain as if the message was never added.]
-        byte[] newBatchBodyBytes = newBatchBody.getBytes(BATCH_CHARSET);
-
-        if (newBatchBodyBytes.length > SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES)
+        int newBatchBodySize = this.getBodySizeInBytes();
+        if (newBatchBodySize > SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES)
         {
+            this.batchBodyLength = previousBatchBodyLength;
             String errMsg = String.format("Service-bound message size (%d bytes) cannot exceed %d bytes.",
-                    newBatchBodyBytes.length, SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES);
+                    newBatchBodySize, SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES);
             throw new IotHubSizeExceededException(errMsg);
         }
 
-        this.batchBody = newBatchBody;
         this.numMsgs++;
     }
 
@@ -87,7 +111,20 @@ public final class HttpsBatchMessage implements HttpsMessage
     {
         // Codes_SRS_HTTPSBATCHMESSAGE_11_006: [The function shall return the current batch message body.]
         // Codes_SRS_HTTPSBATCHMESSAGE_11_007: [The batch message body shall be encoded using UTF-8.]
-        return this.batchBody.getBytes(BATCH_CHARSET);
+        byte[] body = Arrays.copyOf(this.batchBody, this.batchBodyLength + 1);
+        body[this.batchBodyLength] = ']';
+        return body;
+    }
+
+    /**
+     * Returns the size of the current batch body, in bytes, without building it.
+     *
+     * @return the size of the current batch body, in bytes.
+     */
+    public int getBodySizeInBytes()
+    {
+        // Codes_SRS_HTTPSBATCHMESSAGE_41_002: [The function shall return the size in bytes of the body that getBody would return.]
+        return this.batchBodyLength + 1;
     }
 
     /**
@@ -136,22 +173,18 @@ public final class HttpsBatchMessage implements HttpsMessage
     }
 
     /**
-     * Converts a service-bound message to a JSON object with the correct
-     * format.
-     *
-     * @param msg the message to be converted to a corresponding JSON object.
+     * Appends a service-bound message to the batch body as a JSON object with
+     * the correct format.
      *
-     * @return the JSON string representation of the message.
+     * @param msg the message to be appended.
      */
-    private static String msgToJson(HttpsSingleMessage msg)
+    private void appendMessage(HttpsSingleMessage msg)
     {
-        StringBuilder jsonMsg = new StringBuilder("{");
         // Codes_SRS_HTTPSBATCHMESSAGE_11_003: [The JSON object shall have the field "body" set to the raw message encoded in Base64.]
-        jsonMsg.append("\"body\":");
-        jsonMsg.append("\"").append(Base64.encodeBase64StringLocal(msg.getBody())).append("\",");
+        appendBytes(BODY_FIELD_START);
+        appendBytes(Base64.encodeBase64Local(msg.getBody()));
         // Codes_SRS_HTTPSBATCHMESSAGE_11_004: [The JSON object shall have the field "base64Encoded" set to true and always encode the body for a batch message.]
-        jsonMsg.append("\"base64Encoded\":");
-        jsonMsg.append(true);
+        appendBytes(BASE64_ENCODED_FIELD);
         // Codes_SRS_HTTPSBATCHMESSAGE_11_005: [The JSON object shall have the field "properties" set to a JSON object which has the field "content-type" set to the content type of the raw message.]
         MessageProperty[] properties = msg.getProperties();
         Map<String, String> allProperties = new HashMap<>(msg.getSystemProperties());
@@ -160,48 +193,100 @@ public final class HttpsBatchMessage implements HttpsMessage
             allProperties.put(p.getName(), p.getValue());
         }
 
-        int numProperties = allProperties.size();
-        if (numProperties > 0)
+        if (!allProperties.isEmpty())
         {
-            jsonMsg.append(",");
-            jsonMsg.append("\"properties\":");
-            jsonMsg.append("{");
-            for (String key : allProperties.keySet())
+            appendBytes(PROPERTIES_FIELD_START);
+            boolean isFirstProperty = true;
+            for (Map.Entry<String, String> property : allProperties.entrySet())
             {
-                jsonMsg.append("\"").append(key).append("\":");
-                jsonMsg.append("\"").append(allProperties.get(key)).append("\",");
+                if (!isFirstProperty)
+                {
+                    appendByte((byte) ',');
+                }
+
+                isFirstProperty = false;
+                appendByte((byte) '"');
+                appendUtf8(property.getKey());
+                appendByte((byte) '"');
+                appendByte((byte) ':');
+                appendByte((byte) '"');
+                appendUtf8(property.getValue());
+                appendByte((byte) '"');
             }
 
-            //remove last trailing comma
-            jsonMsg.deleteCharAt(jsonMsg.length()-1);
+            appendByte((byte) '}');
+        }
 
-            jsonMsg.append("}");
+        appendByte((byte) '}');
+    }
+
+    private void ensureCapacity(int additionalBytes)
+    {
+        int requiredCapacity = this.batchBodyLength + additionalBytes;
+        if (requiredCapacity > this.batchBody.length)
+        {
+            this.batchBody = Arrays.copyOf(this.batchBody, Math.max(requiredCapacity, this.batchBody.length * 2));
         }
+    }
 
-        jsonMsg.append("}");
+    private void appendByte(byte value)
+    {
+        ensureCapacity(1);
+        this.batchBody[this.batchBodyLength++] = value;
+    }
 
-        return jsonMsg.toString();
+    private void appendBytes(byte[] values)
+    {
+        ensureCapacity(values.length);
+        System.arraycopy(values, 0, this.batchBody, this.batchBodyLength, values.length);
+        this.batchBodyLength += values.length;
     }
 
     /**
-     * Adds a JSON object to a JSON array.
-     *
-     * @param jsonObj the object to be added to the JSON array.
-     * @param jsonArray the JSON array.
+     * Appends the UTF-8 encoding of the provided value, without building an intermediate array for it.
      *
-     * @return the JSON string representation of the JSON array with the object
-     * added.
+     * @param value the value to be appended. A null value is appended as "null".
      */
-    private static String addJsonObjToArray(String jsonObj, String jsonArray)
+    private void appendUtf8(String value)
     {
-        if (jsonArray.equals("[]"))
+        if (value == null)
         {
-            return "[" + jsonObj + "]";
+            value = "null";
         }
 
-        // removes the closing brace of the JSON array.
-        String openJsonArray = jsonArray.substring(0, jsonArray.length() - 1);
-
-        return openJsonArray + "," + jsonObj + "]";
+        // A UTF-16 code unit never takes more than three bytes in UTF-8, and a surrogate pair only takes four.
+        ensureCapacity(value.length() * 3);
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c < 0x80)
+            {
+                this.batchBody[this.batchBodyLength++] = (byte) c;
+            }
+            else if (c < 0x800)
+            {
+                this.batchBody[this.batchBodyLength++] = (byte) (0xC0 | (c >> 6));
+                this.batchBody[this.batchBodyLength++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                this.batchBody[this.batchBodyLength++] = (byte) (0xF0 | (codePoint >> 18));
+                this.batchBody[this.batchBodyLength++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                this.batchBody[this.batchBodyLength++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                this.batchBody[this.batchBodyLength++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+            else if (Character.isSurrogate(c))
+            {
+                // Unpaired surrogates are replaced, the same way String.getBytes does.
+                this.batchBody[this.batchBodyLength++] = '?';
+            }
+            else
+            {
+                this.batchBody[this.batchBodyLength++] = (byte) (0xE0 | (c >> 12));
+                this.batchBody[this.batchBodyLength++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                this.batchBody[this.batchBodyLength++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
     }
 }
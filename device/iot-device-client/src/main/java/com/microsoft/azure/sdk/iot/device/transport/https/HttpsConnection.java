@@ -3,6 +3,7 @@
 
 package com.microsoft.azure.sdk.iot.device.transport.https;
 
+import com.microsoft.azure.sdk.iot.deps.util.StreamTools;
 import com.microsoft.azure.sdk.iot.device.ProxySettings;
 import com.microsoft.azure.sdk.iot.device.exceptions.TransportException;
 import com.microsoft.azure.sdk.iot.device.transport.HttpProxySocketFactory;
@@ -12,7 +13,6 @@ import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.*;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -322,7 +322,8 @@ public class HttpsConnection
     }
 
     /**
-     * Reads the input stream until the stream is empty.
+     * Reads the input stream until the stream is empty, in bulk, using the response Content-Length (if any) to size
+     * the returned array up front.
      *
      * @param stream the input stream.
      *
@@ -330,27 +331,11 @@ public class HttpsConnection
      *
      * @throws TransportException if the input stream could not be read from.
      */
-    private static byte[] readInputStream(InputStream stream) throws TransportException
+    private byte[] readInputStream(InputStream stream) throws TransportException
     {
         try
         {
-            ArrayList<Byte> byteBuffer = new ArrayList<>();
-            int nextByte = -1;
-            // read(byte[]) reads the byte into the buffer and returns the number
-            // of bytes read, or -1 if the end of the stream has been reached.
-            while ((nextByte = stream.read()) > -1)
-            {
-                byteBuffer.add((byte) nextByte);
-            }
-
-            int bufferSize = byteBuffer.size();
-            byte[] byteArray = new byte[bufferSize];
-            for (int i = 0; i < bufferSize; ++i)
-            {
-                byteArray[i] = byteBuffer.get(i);
-            }
-
-            return byteArray;
+            return StreamTools.readAllBytes(stream, this.connection.getContentLengthLong());
         }
         catch (IOException e)
         {
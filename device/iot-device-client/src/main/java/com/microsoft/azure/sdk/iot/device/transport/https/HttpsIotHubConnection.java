@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ScheduledExecutorService;
@@ -161,6 +162,50 @@ public class HttpsIotHubConnection implements IotHubTransportConnection
         }
     }
 
+    /**
+     * Sends a batch of event messages in a single request.
+     *
+     * @param batchMessage the batch holding the event messages.
+     * @param messages the event messages in the batch, whose sent status is reported to the listener once the batch
+     *                 was sent.
+     *
+     * @return the IotHubStatusCode from sending the batch.
+     *
+     * @throws TransportException if the IoT Hub could not be reached.
+     */
+    public IotHubStatusCode sendMessageBatch(HttpsBatchMessage batchMessage, List<Message> messages) throws TransportException
+    {
+        synchronized (HTTPS_CONNECTION_LOCK)
+        {
+            // Codes_SRS_HTTPSIOTHUBCONNECTION_41_001: [The function shall send a POST request to the same event URL as sendMessage, with the batch body and the batch content type.]
+            IotHubEventUri iotHubEventUri = new IotHubEventUri(getHostName(), this.config.getDeviceId(), this.config.getModuleId());
+            URL eventUrl = this.buildUrlFromString(HTTPS_HEAD_TAG + iotHubEventUri.toString());
+
+            HttpsRequest request = new HttpsRequest(eventUrl, HttpsMethod.POST, batchMessage.getBody(), this.config.getProductInfo().getUserAgentString(), config.getProxySettings());
+            request.setHeaderField(HTTPS_PROPERTY_IOTHUB_TO_TAG, iotHubEventUri.getPath())
+                    .setHeaderField(HTTPS_PROPERTY_CONTENT_TYPE_TAG, batchMessage.getContentType());
+
+            log.trace("Sending batch of {} messages using http request", messages.size());
+            HttpsResponse response = this.sendRequest(request);
+            IotHubStatusCode status = IotHubStatusCode.getIotHubStatusCode(response.getStatus());
+            log.trace("Iot Hub responded to http batch of {} messages with status code {}", messages.size(), status);
+
+            // Codes_SRS_HTTPSIOTHUBCONNECTION_41_002: [The function shall notify its listener that each message in the batch was sent, with no exception if the response from the service is OK or OK_EMPTY, and with the mapped IotHubServiceException otherwise.]
+            TransportException sendException = null;
+            if (status != IotHubStatusCode.OK && status != IotHubStatusCode.OK_EMPTY)
+            {
+                sendException = IotHubStatusCode.getConnectionStatusException(status, "");
+            }
+
+            for (Message message : messages)
+            {
+                this.listener.onMessageSent(message, sendException);
+            }
+
+            return status;
+        }
+    }
+
     /**
      * Sends an generic https message.
      *
@@ -16,11 +16,10 @@ import org.apache.commons.lang3.tuple.MutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.eclipse.paho.client.mqttv3.*;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 abstract public class Mqtt implements MqttCallback
@@ -28,12 +27,16 @@ abstract public class Mqtt implements MqttCallback
     private static final int CONNECTION_TIMEOUT = 60 * 1000;
     private static final int DISCONNECTION_TIMEOUT = 60 * 1000;
 
+    // how often publish checks that the connection is still open while it waits for an in flight permit
+    private static final long IN_FLIGHT_PERMIT_WAIT_MILLIS = 100;
+
     private MqttConnection mqttConnection;
     private MqttMessageListener messageListener;
     ConcurrentLinkedQueue<Pair<String, byte[]>> allReceivedMessages;
     private final Object stateLock;
     protected final Object incomingLock;
     private final Object publishLock;
+    private final Semaphore inFlightPermits;
 
     private Map<Integer, Message> unacknowledgedSentMessages;
 
@@ -93,6 +96,7 @@ abstract public class Mqtt implements MqttCallback
         this.stateLock = mqttConnection.getMqttLock();
         this.incomingLock = new Object();
         this.publishLock = new Object();
+        this.inFlightPermits = mqttConnection.getInFlightPermits();
         this.userSpecifiedSASTokenExpiredOnRetry = false;
         this.listener = listener;
         this.messageListener = messageListener;
@@ -208,11 +212,9 @@ abstract public class Mqtt implements MqttCallback
 
             byte[] payload = message.getBytes();
 
-            while (this.mqttConnection.getMqttAsyncClient().getPendingDeliveryTokens().length >= MqttConnection.MAX_IN_FLIGHT_COUNT)
+            //Codes_SRS_Mqtt_25_048: [publish shall wait for an in flight permit of the connection before publishing, so that no more messages are in flight than the connection allows]
+            while (!this.inFlightPermits.tryAcquire(IN_FLIGHT_PERMIT_WAIT_MILLIS, TimeUnit.MILLISECONDS))
             {
-                //Codes_SRS_Mqtt_25_048: [publish shall check for pending publish tokens by calling getPendingDeliveryTokens. And if there are pending tokens publish shall sleep until the number of pending tokens are less than 10 as per paho limitations]
-                Thread.sleep(10);
-
                 if (this.mqttConnection.getMqttAsyncClient() == null)
                 {
                     TransportException transportException = new TransportException("Connection was lost while waiting for mqtt deliveries to finish");
@@ -223,23 +225,37 @@ abstract public class Mqtt implements MqttCallback
                 if (!this.mqttConnection.getMqttAsyncClient().isConnected())
                 {
                     //Codes_SRS_Mqtt_25_012: [If the MQTT connection is closed, the function shall throw a ProtocolException.]
-                    TransportException transportException = new TransportException("Cannot publish when mqtt client is holding 10 tokens and is disconnected");
+                    TransportException transportException = new TransportException("Cannot publish when mqtt client is holding the maximum number of in flight messages and is disconnected");
                     transportException.setRetryable(true);
                     throw transportException;
                 }
             }
 
-            MqttMessage mqttMessage = (payload.length == 0) ? new MqttMessage() : new MqttMessage(payload);
+            boolean isPublished = false;
+            try
+            {
+                MqttMessage mqttMessage = (payload.length == 0) ? new MqttMessage() : new MqttMessage(payload);
+
+                mqttMessage.setQos(MqttConnection.QOS);
 
-            mqttMessage.setQos(MqttConnection.QOS);
+                synchronized (this.publishLock)
+                {
+                    this.log.trace("Publishing message ({}) to MQTT topic {}", message, publishTopic);
+                    //Codes_SRS_Mqtt_25_014: [The function shall publish message payload on the publishTopic specified to the IoT Hub given in the configuration.]
+                    IMqttDeliveryToken publishToken = this.mqttConnection.getMqttAsyncClient().publish(publishTopic, mqttMessage);
+                    unacknowledgedSentMessages.put(publishToken.getMessageId(), message);
+                    this.log.trace("Message published to MQTT topic {}. Mqtt message id {} added to list of messages to wait for acknowledgement ({})", publishTopic, publishToken.getMessageId(), message);
+                }
 
-            synchronized (this.publishLock)
+                isPublished = true;
+            }
+            finally
             {
-                this.log.trace("Publishing message ({}) to MQTT topic {}", message, publishTopic);
-                //Codes_SRS_Mqtt_25_014: [The function shall publish message payload on the publishTopic specified to the IoT Hub given in the configuration.]
-                IMqttDeliveryToken publishToken = this.mqttConnection.getMqttAsyncClient().publish(publishTopic, mqttMessage);
-                unacknowledgedSentMessages.put(publishToken.getMessageId(), message);
-                this.log.trace("Message published to MQTT topic {}. Mqtt message id {} added to list of messages to wait for acknowledgement ({})", publishTopic, publishToken.getMessageId(), message);
+                if (!isPublished)
+                {
+                    //Codes_SRS_Mqtt_41_001: [If the message could not be published, the function shall give its in flight permit back.]
+                    this.inFlightPermits.release();
+                }
             }
         }
         catch (MqttException e)
@@ -434,6 +450,12 @@ abstract public class Mqtt implements MqttCallback
         this.log.trace("Mqtt message with message id {} was acknowledge by service", iMqttDeliveryToken.getMessageId());
         synchronized (this.publishLock)
         {
+            if (unacknowledgedSentMessages.containsKey(iMqttDeliveryToken.getMessageId()))
+            {
+                //Codes_SRS_Mqtt_41_002: [If the delivered message was published by this connection, this function shall give its in flight permit back.]
+                this.inFlightPermits.release();
+            }
+
             if (this.listener != null && unacknowledgedSentMessages.containsKey(iMqttDeliveryToken.getMessageId()))
             {
                 this.log.trace("Mqtt message with message id {} that was acknowledge by service was sent by this client", iMqttDeliveryToken.getMessageId());
@@ -533,25 +555,30 @@ abstract public class Mqtt implements MqttCallback
     {
         //Codes_SRS_Mqtt_34_054: [A message may have 0 to many custom properties]
         //expected format is <key>=<value><MESSAGE_PROPERTY_SEPARATOR><key>=<value><MESSAGE_PROPERTY_SEPARATOR>...
-        for (String propertyString : propertiesString.split(String.valueOf(MESSAGE_PROPERTY_SEPARATOR)))
+        int propertiesStringLength = propertiesString.length();
+        int propertyStart = 0;
+        while (propertyStart < propertiesStringLength)
         {
-            if (propertyString.contains("="))
+            int propertyEnd = propertiesString.indexOf(MESSAGE_PROPERTY_SEPARATOR, propertyStart);
+            if (propertyEnd == -1)
+            {
+                propertyEnd = propertiesStringLength;
+            }
+
+            int keyValueSeparator = propertiesString.indexOf(MESSAGE_PROPERTY_KEY_VALUE_SEPARATOR, propertyStart);
+            if (keyValueSeparator != -1 && keyValueSeparator < propertyEnd)
             {
                 //Expected format is <key>=<value> where both key and value may be encoded
-                String key = propertyString.split("=")[PROPERTY_KEY_INDEX];
-                String value = propertyString.split("=")[PROPERTY_VALUE_INDEX];
-                try
-                {
-                    //Codes_SRS_Mqtt_34_053: [A property's key and value may include unusual characters such as &, %, $]
-                    key = URLDecoder.decode(key, StandardCharsets.UTF_8.name());
-                    value = URLDecoder.decode(value, StandardCharsets.UTF_8.name());
-                }
-                catch (UnsupportedEncodingException e)
+                //Codes_SRS_Mqtt_34_053: [A property's key and value may include unusual characters such as &, %, $]
+                int valueEnd = propertiesString.indexOf(MESSAGE_PROPERTY_KEY_VALUE_SEPARATOR, keyValueSeparator + 1);
+                if (valueEnd == -1 || valueEnd > propertyEnd)
                 {
-                    // should never happen, since the encoding is hard-coded.
-                    throw new IllegalStateException(e);
+                    valueEnd = propertyEnd;
                 }
 
+                String key = MqttPropertyCodec.decode(propertiesString, propertyStart, keyValueSeparator);
+                String value = MqttPropertyCodec.decode(propertiesString, keyValueSeparator + 1, valueEnd);
+
                 //Some properties are reserved system properties and must be saved in the message differently
                 //Codes_SRS_Mqtt_34_057: [This function shall parse the messageId, correlationId, outputname, content encoding and content type from the provided property string]
                 switch (key)
@@ -587,11 +614,26 @@ abstract public class Mqtt implements MqttCallback
                         message.setProperty(key, value);
                 }
             }
-            else
+            else if (propertyStart < propertyEnd || !isOnlyPropertySeparators(propertiesString, propertyEnd))
             {
                 //Codes_SRS_Mqtt_34_051: [If a topic string's property's key and value are not separated by the '=' symbol, an IllegalArgumentException shall be thrown]
-                throw new IllegalArgumentException("Unexpected property string provided. Expected '=' symbol between key and value of the property in string: " + propertyString);
+                throw new IllegalArgumentException("Unexpected property string provided. Expected '=' symbol between key and value of the property in string: " + propertiesString.substring(propertyStart, propertyEnd));
+            }
+
+            propertyStart = propertyEnd + 1;
+        }
+    }
+
+    private static boolean isOnlyPropertySeparators(String propertiesString, int start)
+    {
+        for (int i = start; i < propertiesString.length(); i++)
+        {
+            if (propertiesString.charAt(i) != MESSAGE_PROPERTY_SEPARATOR)
+            {
+                return false;
             }
         }
+
+        return true;
     }
 }
@@ -17,6 +17,7 @@ import javax.net.ssl.SSLContext;
 import java.net.Proxy;
 import java.net.UnknownHostException;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 
 public class MqttConnection
 {
@@ -24,6 +25,7 @@ public class MqttConnection
     private MqttConnectOptions connectionOptions = null;
     private ConcurrentLinkedQueue<Pair<String, byte[]>> allReceivedMessages;
     private Object mqttLock;
+    private Semaphore inFlightPermits;
 
     //mqtt connection options
     private static final int KEEP_ALIVE_INTERVAL = 230;
@@ -32,8 +34,8 @@ public class MqttConnection
     static final int QOS = 1;
     static final int MAX_SUBSCRIBE_ACK_WAIT_TIME = 15 * 1000;
 
-    // paho mqtt only supports 10 messages in flight at the same time
-    static final int MAX_IN_FLIGHT_COUNT = 10;
+    // paho mqtt allows 10 messages in flight at the same time unless configured otherwise
+    static final int DEFAULT_MAX_IN_FLIGHT_COUNT = 10;
 
     /**
      * Constructor to create MqttAsync Client with Paho
@@ -47,6 +49,29 @@ public class MqttConnection
      */
     MqttConnection(String serverURI, String clientId, String userName, String password, SSLContext sslContext, ProxySettings proxySettings) throws TransportException, IllegalArgumentException, UnknownHostException
     {
+        this(serverURI, clientId, userName, password, sslContext, proxySettings, DEFAULT_MAX_IN_FLIGHT_COUNT);
+    }
+
+    /**
+     * Constructor to create MqttAsync Client with Paho that allows up to maxInFlightCount messages to wait for their
+     * acknowledgement at the same time
+     * @param serverURI Uri to connect to
+     * @param clientId Client Id to connect to
+     * @param userName Username
+     * @param password password
+     * @param sslContext SSLContext for the connection
+     * @param maxInFlightCount the number of published messages that may wait for their acknowledgement at the same time
+     * @throws IllegalArgumentException is thrown if any of the parameters are null or empty, or if maxInFlightCount is smaller than 1
+     * @throws TransportException when Mqtt async client cannot be instantiated
+     */
+    MqttConnection(String serverURI, String clientId, String userName, String password, SSLContext sslContext, ProxySettings proxySettings, int maxInFlightCount) throws TransportException, IllegalArgumentException, UnknownHostException
+    {
+        if (maxInFlightCount < 1)
+        {
+            //Codes_SRS_MQTTCONNECTION_41_001: [The constructor shall throw IllegalArgumentException if maxInFlightCount is smaller than 1.]
+            throw new IllegalArgumentException("maxInFlightCount must be at least 1");
+        }
+
         if (serverURI == null || clientId == null || userName == null || sslContext == null)
         {
             //Codes_SRS_MQTTCONNECTION_25_001: [The constructor shall throw IllegalArgumentException if any of the input parameters are null other than password.]
@@ -66,6 +91,9 @@ public class MqttConnection
             this.mqttAsyncClient.setManualAcks(true);
             this.connectionOptions = new MqttConnectOptions();
             this.updateConnectionOptions(userName, password, sslContext, proxySettings);
+
+            //Codes_SRS_MQTTCONNECTION_41_002: [The constructor shall let Paho keep up to maxInFlightCount messages in flight.]
+            this.connectionOptions.setMaxInflight(maxInFlightCount);
         }
         catch (MqttException e)
         {
@@ -78,6 +106,9 @@ public class MqttConnection
         //Codes_SRS_MQTTCONNECTION_25_003: [The constructor shall create lock, queue for this MqttConnection.]
         this.allReceivedMessages = new ConcurrentLinkedQueue<>();
         this.mqttLock = new Object();
+
+        //Codes_SRS_MQTTCONNECTION_41_003: [The constructor shall create as many in flight permits as maxInFlightCount.]
+        this.inFlightPermits = new Semaphore(maxInFlightCount);
     }
 
     /**
@@ -201,6 +232,17 @@ public class MqttConnection
         return this.mqttLock;
     }
 
+    /**
+     * Getter for the permits of the messages that may be in flight on this connection. A permit is taken for each
+     * published message and given back once its delivery completes.
+     * @return The semaphore holding the in flight permits
+     */
+    Semaphore getInFlightPermits()
+    {
+        //Codes_SRS_MQTTCONNECTION_41_004: [Getter for the in flight permits of this connection.]
+        return this.inFlightPermits;
+    }
+
     /**
      * Getter for connection Options
      * @return the connection options to be used for Mqtt
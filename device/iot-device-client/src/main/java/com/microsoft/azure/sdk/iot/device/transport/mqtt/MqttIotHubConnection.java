@@ -7,6 +7,7 @@ import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.exceptions.TransportException;
 import com.microsoft.azure.sdk.iot.device.transport.*;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.Pair;
 
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
@@ -42,6 +43,9 @@ public class MqttIotHubConnection implements IotHubTransportConnection, MqttMess
     private static final String SSL_PREFIX = "ssl://";
     private static final String SSL_PORT_SUFFIX = ":8883";
 
+    private static final String METHODS_TOPIC_PREFIX = "$iothub/methods/";
+    private static final String TWIN_TOPIC_PREFIX = "$iothub/twin/";
+
     private static final String API_VERSION = "?api-version=" + TransportUtils.IOTHUB_API_VERSION;
 
     private String connectionId;
@@ -168,14 +172,14 @@ public class MqttIotHubConnection implements IotHubTransportConnection, MqttMess
                     //Codes_SRS_MQTTIOTHUBCONNECTION_25_018: [The function shall establish an MQTT WS connection with a server uri as wss://<hostName>/$iothub/websocket?iothub-no-client-cert=true if websocket was enabled.]
                     final String wsServerUri = WS_SSL_PREFIX + host + WEBSOCKET_RAW_PATH + WEBSOCKET_QUERY ;
                     mqttConnection = new MqttConnection(wsServerUri,
-                            clientId, this.iotHubUserName, this.iotHubUserPassword, sslContext, this.config.getProxySettings());
+                            clientId, this.iotHubUserName, this.iotHubUserPassword, sslContext, this.config.getProxySettings(), this.config.getMqttMaxInFlightMessages());
                 }
                 else
                 {
                     //Codes_SRS_MQTTIOTHUBCONNECTION_25_019: [The function shall establish an MQTT connection with a server uri as ssl://<hostName>:8883 if websocket was not enabled.]
                     final String serverUri = SSL_PREFIX + host + SSL_PORT_SUFFIX;
                     mqttConnection = new MqttConnection(serverUri,
-                            clientId, this.iotHubUserName, this.iotHubUserPassword, sslContext, null);
+                            clientId, this.iotHubUserName, this.iotHubUserPassword, sslContext, null, this.config.getMqttMaxInFlightMessages());
                 }
 
                 //Codes_SRS_MQTTIOTHUBCONNECTION_34_030: [This function shall instantiate this object's MqttMessaging object with this object as the listener.]
@@ -263,7 +267,8 @@ public class MqttIotHubConnection implements IotHubTransportConnection, MqttMess
     }
 
     /**
-     * Receives a message, if one exists.
+     * Receives the message that just arrived, if one exists. The message is handed to the messaging client that owns
+     * its topic, instead of offering it to each messaging client in turn.
      *
      * @return the message received, or null if none exists.
      *
@@ -273,21 +278,32 @@ public class MqttIotHubConnection implements IotHubTransportConnection, MqttMess
     {
         // Codes_SRS_MQTTIOTHUBCONNECTION_15_014: [The function shall attempt to consume a message
         // from various messaging clients.]
-        IotHubTransportMessage message = this.deviceMethod.receive();
-        if (message != null)
+        IotHubTransportMessage message = null;
+        Pair<String, byte[]> arrivedMessage = this.mqttConnection.getAllReceivedMessages().peek();
+        String topic = arrivedMessage == null ? null : arrivedMessage.getKey();
+        if (topic != null && topic.startsWith(METHODS_TOPIC_PREFIX))
         {
-            this.log.trace("Received MQTT device method message ({})", message);
-            return message;
+            //Codes_SRS_MQTTIOTHUBCONNECTION_41_001: [If the arrived message has a device method topic, this function shall receive it from the device method client.]
+            message = this.deviceMethod.receive();
+            if (message != null)
+            {
+                this.log.trace("Received MQTT device method message ({})", message);
+                return message;
+            }
         }
-
-        message = deviceTwin.receive();
-        if (message != null)
+        else if (topic != null && topic.startsWith(TWIN_TOPIC_PREFIX))
         {
-            this.log.trace("Received MQTT device twin message ({})", message);
-            return message;
+            //Codes_SRS_MQTTIOTHUBCONNECTION_41_002: [If the arrived message has a device twin topic, this function shall receive it from the device twin client.]
+            message = this.deviceTwin.receive();
+            if (message != null)
+            {
+                this.log.trace("Received MQTT device twin message ({})", message);
+                return message;
+            }
         }
 
-        message = deviceMessaging.receive();
+        //Codes_SRS_MQTTIOTHUBCONNECTION_41_003: [If the arrived message was not received by the device method or device twin client, this function shall receive it from the device messaging client.]
+        message = this.deviceMessaging.receive();
         if (message != null)
         {
             this.log.trace("Received MQTT device messaging message ({})", message);
@@ -8,13 +8,20 @@ import com.microsoft.azure.sdk.iot.device.MessageProperty;
 import com.microsoft.azure.sdk.iot.device.exceptions.TransportException;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubListener;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 public class MqttMessaging extends Mqtt
 {
+    // the topics of the messages sent by a thread are built in the same builder, so that they do not each allocate one
+    private static final ThreadLocal<StringBuilder> TOPIC_BUILDER = new ThreadLocal<StringBuilder>()
+    {
+        @Override
+        protected StringBuilder initialValue()
+        {
+            return new StringBuilder();
+        }
+    };
+
     private String moduleId;
     private String eventsSubscribeTopic;
     private String inputsSubscribeTopic;
@@ -88,7 +95,8 @@ public class MqttMessaging extends Mqtt
             throw new IllegalArgumentException("Message cannot be null");
         }
 
-        StringBuilder stringBuilder = new StringBuilder();
+        StringBuilder stringBuilder = TOPIC_BUILDER.get();
+        stringBuilder.setLength(0);
         stringBuilder.append(this.publishTopic);
 
         boolean separatorNeeded = false;
@@ -141,29 +149,22 @@ public class MqttMessaging extends Mqtt
      * @param propertyValue the property value (message id, correlation id, etc.)
      * @return true if a separator will be needed for any later properties appended on
      */
-    private boolean appendPropertyIfPresent(StringBuilder stringBuilder, boolean separatorNeeded, String propertyKey, String propertyValue) throws TransportException
+    private boolean appendPropertyIfPresent(StringBuilder stringBuilder, boolean separatorNeeded, String propertyKey, String propertyValue)
     {
-        try
+        if (propertyValue != null && !propertyValue.isEmpty())
         {
-            if (propertyValue != null && !propertyValue.isEmpty())
+            if (separatorNeeded)
             {
-                if (separatorNeeded)
-                {
-                    stringBuilder.append(MESSAGE_PROPERTY_SEPARATOR);
-                }
-
-                stringBuilder.append(propertyKey);
-                stringBuilder.append(MESSAGE_PROPERTY_KEY_VALUE_SEPARATOR);
-                stringBuilder.append(URLEncoder.encode(propertyValue, StandardCharsets.UTF_8.name()));
-
-                return true;
+                stringBuilder.append(MESSAGE_PROPERTY_SEPARATOR);
             }
 
-            return separatorNeeded;
-        }
-        catch (UnsupportedEncodingException e)
-        {
-            throw new TransportException("Could not utf-8 encode the mqtt property", e);
+            stringBuilder.append(propertyKey);
+            stringBuilder.append(MESSAGE_PROPERTY_KEY_VALUE_SEPARATOR);
+            MqttPropertyCodec.appendEncoded(stringBuilder, propertyValue);
+
+            return true;
         }
+
+        return separatorNeeded;
     }
 }
@@ -0,0 +1,178 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport.mqtt;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes and decodes the message properties carried in mqtt topic strings. The output is the same as the one of
+ * {@link java.net.URLEncoder} and {@link java.net.URLDecoder} with UTF-8, but the property is written straight into
+ * the topic being built, or read straight from the received topic, instead of going through intermediate strings.
+ */
+final class MqttPropertyCodec
+{
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private MqttPropertyCodec()
+    {
+    }
+
+    /**
+     * Appends the form url encoded UTF-8 representation of the value to the builder.
+     * @param builder the builder to append to
+     * @param value the value to encode
+     */
+    static void appendEncoded(StringBuilder builder, String value)
+    {
+        int length = value.length();
+        for (int i = 0; i < length; i++)
+        {
+            char c = value.charAt(i);
+            if (isUnreserved(c))
+            {
+                //Codes_SRS_MQTTPROPERTYCODEC_41_001: [The function shall append letters, digits and the characters '.', '-', '*' and '_' as they are.]
+                builder.append(c);
+            }
+            else if (c == ' ')
+            {
+                //Codes_SRS_MQTTPROPERTYCODEC_41_002: [The function shall append a space as '+'.]
+                builder.append('+');
+            }
+            else
+            {
+                //Codes_SRS_MQTTPROPERTYCODEC_41_003: [The function shall append every other character as its percent encoded UTF-8 bytes, and an unpaired surrogate as an encoded '?'.]
+                int codePoint = c;
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1)))
+                {
+                    codePoint = Character.toCodePoint(c, value.charAt(++i));
+                }
+                else if (Character.isSurrogate(c))
+                {
+                    codePoint = '?';
+                }
+
+                appendUtf8Encoded(builder, codePoint);
+            }
+        }
+    }
+
+    /**
+     * Decodes the form url encoded UTF-8 characters of the source between start and end.
+     * @param source the string holding the encoded value
+     * @param start the index of the first character to decode
+     * @param end the index after the last character to decode
+     * @return the decoded value
+     * @throws IllegalArgumentException if the value holds an incomplete or invalid escape sequence
+     */
+    static String decode(String source, int start, int end) throws IllegalArgumentException
+    {
+        int firstEscape = start;
+        while (firstEscape < end && source.charAt(firstEscape) != '%' && source.charAt(firstEscape) != '+')
+        {
+            firstEscape++;
+        }
+
+        if (firstEscape == end)
+        {
+            //Codes_SRS_MQTTPROPERTYCODEC_41_004: [If the value holds no escaped character, the function shall return it as it is.]
+            return source.substring(start, end);
+        }
+
+        StringBuilder decoded = new StringBuilder(end - start);
+        decoded.append(source, start, firstEscape);
+        byte[] escapedBytes = null;
+        int i = firstEscape;
+        while (i < end)
+        {
+            char c = source.charAt(i);
+            if (c == '+')
+            {
+                //Codes_SRS_MQTTPROPERTYCODEC_41_005: [The function shall decode '+' as a space.]
+                decoded.append(' ');
+                i++;
+            }
+            else if (c == '%')
+            {
+                //Codes_SRS_MQTTPROPERTYCODEC_41_006: [The function shall decode consecutive percent encoded bytes as UTF-8.]
+                if (escapedBytes == null)
+                {
+                    escapedBytes = new byte[(end - i) / 3];
+                }
+
+                int byteCount = 0;
+                while (i + 2 < end && source.charAt(i) == '%')
+                {
+                    escapedBytes[byteCount++] = (byte) ((hexValue(source.charAt(i + 1)) << 4) | hexValue(source.charAt(i + 2)));
+                    i += 3;
+                }
+
+                if (i < end && source.charAt(i) == '%')
+                {
+                    //Codes_SRS_MQTTPROPERTYCODEC_41_007: [The function shall throw IllegalArgumentException if an escape sequence is incomplete or not hexadecimal.]
+                    throw new IllegalArgumentException("Incomplete trailing escape (%) pattern in mqtt topic property");
+                }
+
+                decoded.append(new String(escapedBytes, 0, byteCount, StandardCharsets.UTF_8));
+            }
+            else
+            {
+                decoded.append(c);
+                i++;
+            }
+        }
+
+        return decoded.toString();
+    }
+
+    private static boolean isUnreserved(char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '.' || c == '-' || c == '*' || c == '_';
+    }
+
+    private static void appendUtf8Encoded(StringBuilder builder, int codePoint)
+    {
+        if (codePoint < 0x80)
+        {
+            appendEscapedByte(builder, codePoint);
+        }
+        else if (codePoint < 0x800)
+        {
+            appendEscapedByte(builder, 0xC0 | (codePoint >> 6));
+            appendEscapedByte(builder, 0x80 | (codePoint & 0x3F));
+        }
+        else if (codePoint < 0x10000)
+        {
+            appendEscapedByte(builder, 0xE0 | (codePoint >> 12));
+            appendEscapedByte(builder, 0x80 | ((codePoint >> 6) & 0x3F));
+            appendEscapedByte(builder, 0x80 | (codePoint & 0x3F));
+        }
+        else
+        {
+            appendEscapedByte(builder, 0xF0 | (codePoint >> 18));
+            appendEscapedByte(builder, 0x80 | ((codePoint >> 12) & 0x3F));
+            appendEscapedByte(builder, 0x80 | ((codePoint >> 6) & 0x3F));
+            appendEscapedByte(builder, 0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    private static void appendEscapedByte(StringBuilder builder, int value)
+    {
+        builder.append('%');
+        builder.append(HEX_DIGITS[(value >> 4) & 0xF]);
+        builder.append(HEX_DIGITS[value & 0xF]);
+    }
+
+    private static int hexValue(char c)
+    {
+        int value = Character.digit(c, 16);
+        if (value < 0)
+        {
+            //Codes_SRS_MQTTPROPERTYCODEC_41_007: [The function shall throw IllegalArgumentException if an escape sequence is incomplete or not hexadecimal.]
+            throw new IllegalArgumentException("Illegal hex characters in escape (%) pattern in mqtt topic property");
+        }
+
+        return value;
+    }
+}
@@ -7,6 +7,7 @@ import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.DeviceTwin.Pair;
 import com.microsoft.azure.sdk.iot.device.auth.*;
 import com.microsoft.azure.sdk.iot.device.transport.ExponentialBackoffWithJitter;
+import com.microsoft.azure.sdk.iot.device.transport.MessageSpool;
 import com.microsoft.azure.sdk.iot.device.transport.RetryPolicy;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProvider;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProviderSymmetricKey;
@@ -17,6 +18,7 @@ import mockit.*;
 import org.junit.Test;
 
 import javax.net.ssl.SSLContext;
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.Map;
@@ -1160,4 +1162,265 @@ public class DeviceClientConfigTest
         //assert
         assertEquals(mockedProxySettings, actualProxySettings);
     }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_001: [The class shall have an unbounded outbound queue with the REJECT overflow policy by default.]
+    @Test
+    public void constructorHasUnboundedOutboundQueueByDefault()
+    {
+        //act
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+
+        //assert
+        assertEquals(0, config.getMaxOutboundQueueMessages());
+        assertEquals(0, config.getMaxOutboundQueueBytes());
+        assertEquals(OutboundQueueOverflowPolicy.REJECT, config.getOutboundQueueOverflowPolicy());
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_002: [This function shall throw IllegalArgumentException if either limit is negative.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOutboundQueueLimitsThrowsIfNegative()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+
+        //act
+        config.setOutboundQueueLimits(10, -1);
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_003: [This function shall save the provided limits.]
+    //Tests_SRS_DEVICECLIENTCONFIG_41_004: [This function shall return the saved maximum number of messages.]
+    //Tests_SRS_DEVICECLIENTCONFIG_41_005: [This function shall return the saved maximum number of bytes.]
+    @Test
+    public void setOutboundQueueLimitsSavesLimits()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+
+        //act
+        config.setOutboundQueueLimits(10, 1024);
+
+        //assert
+        assertEquals(10, config.getMaxOutboundQueueMessages());
+        assertEquals(1024, config.getMaxOutboundQueueBytes());
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_006: [This function shall throw IllegalArgumentException if overflowPolicy is null or blockTimeoutMillis is negative.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOutboundQueueOverflowPolicyThrowsIfNull()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+
+        //act
+        config.setOutboundQueueOverflowPolicy(null, 0);
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_006: [This function shall throw IllegalArgumentException if overflowPolicy is null or blockTimeoutMillis is negative.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setOutboundQueueOverflowPolicyThrowsIfNegativeTimeout()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+
+        //act
+        config.setOutboundQueueOverflowPolicy(OutboundQueueOverflowPolicy.BLOCK, -1);
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_007: [This function shall save the provided overflow policy and block timeout.]
+    //Tests_SRS_DEVICECLIENTCONFIG_41_008: [This function shall return the saved overflow policy.]
+    //Tests_SRS_DEVICECLIENTCONFIG_41_009: [This function shall return the saved block timeout.]
+    @Test
+    public void setOutboundQueueOverflowPolicySavesPolicy()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+
+        //act
+        config.setOutboundQueueOverflowPolicy(OutboundQueueOverflowPolicy.BLOCK, 500);
+
+        //assert
+        assertEquals(OutboundQueueOverflowPolicy.BLOCK, config.getOutboundQueueOverflowPolicy());
+        assertEquals(500, config.getOutboundQueueBlockTimeoutMillis());
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_010: [This function shall throw IllegalArgumentException if segmentSizeInBytes is smaller than the minimum spool segment size.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setMessageSpoolThrowsIfSegmentSizeTooSmall()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+
+        //act
+        config.setMessageSpool(new File("spool"), MessageSpool.MIN_SEGMENT_SIZE_IN_BYTES - 1);
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_011: [This function shall save the provided directory and segment size.]
+    //Tests_SRS_DEVICECLIENTCONFIG_41_012: [This function shall return the saved spool directory.]
+    //Tests_SRS_DEVICECLIENTCONFIG_41_013: [This function shall return the saved spool segment size.]
+    @Test
+    public void setMessageSpoolSavesDirectoryAndSegmentSize()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+        File directory = new File("spool");
+        assertNull(config.getMessageSpoolDirectory());
+
+        //act
+        config.setMessageSpool(directory, MessageSpool.MIN_SEGMENT_SIZE_IN_BYTES);
+
+        //assert
+        assertEquals(directory, config.getMessageSpoolDirectory());
+        assertEquals(MessageSpool.MIN_SEGMENT_SIZE_IN_BYTES, config.getMessageSpoolSegmentSizeInBytes());
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_014: [The class shall not batch HTTPS telemetry by default.]
+    @Test
+    public void constructorDoesNotBatchHttpsTelemetryByDefault()
+    {
+        //act
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+
+        //assert
+        assertEquals(1, config.getHttpsBatchMaxMessages());
+        assertEquals(0, config.getHttpsBatchLingerMillis());
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_015: [This function shall throw IllegalArgumentException if maxMessagesPerBatch is smaller than 1 or lingerMillis is negative.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setHttpsBatchingThrowsIfBatchSizeTooSmall()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+
+        //act
+        config.setHttpsBatching(0, 100);
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_015: [This function shall throw IllegalArgumentException if maxMessagesPerBatch is smaller than 1 or lingerMillis is negative.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setHttpsBatchingThrowsIfNegativeLinger()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+
+        //act
+        config.setHttpsBatching(10, -1);
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_016: [This function shall save the provided batch size and linger time.]
+    //Tests_SRS_DEVICECLIENTCONFIG_41_017: [This function shall return the saved batch size.]
+    //Tests_SRS_DEVICECLIENTCONFIG_41_018: [This function shall return the saved linger time.]
+    @Test
+    public void setHttpsBatchingSavesBatchSizeAndLinger()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+
+        //act
+        config.setHttpsBatching(50, 200);
+
+        //assert
+        assertEquals(50, config.getHttpsBatchMaxMessages());
+        assertEquals(200, config.getHttpsBatchLingerMillis());
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_019: [This function shall throw IllegalArgumentException if maxInFlightMessages is smaller than 1.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setMqttMaxInFlightMessagesThrowsIfTooSmall()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+
+        //act
+        config.setMqttMaxInFlightMessages(0);
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_020: [This function shall save the provided maximum number of messages in flight.]
+    //Tests_SRS_DEVICECLIENTCONFIG_41_021: [This function shall return the saved maximum number of messages in flight.]
+    @Test
+    public void setMqttMaxInFlightMessagesSavesWindow()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+        assertEquals(10, config.getMqttMaxInFlightMessages());
+
+        //act
+        config.setMqttMaxInFlightMessages(100);
+
+        //assert
+        assertEquals(100, config.getMqttMaxInFlightMessages());
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_023: [This function shall throw IllegalArgumentException if maxMessagesPerBatch is smaller than 1.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setAmqpBatchMaxMessagesThrowsIfTooSmall()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+
+        //act
+        config.setAmqpBatchMaxMessages(0);
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_022: [The class shall not batch AMQPS telemetry by default.]
+    //Tests_SRS_DEVICECLIENTCONFIG_41_024: [This function shall save the provided batch size.]
+    //Tests_SRS_DEVICECLIENTCONFIG_41_025: [This function shall return the saved batch size.]
+    @Test
+    public void setAmqpBatchMaxMessagesSavesBatchSize()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+        assertEquals(1, config.getAmqpBatchMaxMessages());
+
+        //act
+        config.setAmqpBatchMaxMessages(50);
+
+        //assert
+        assertEquals(50, config.getAmqpBatchMaxMessages());
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_027: [This function shall throw IllegalArgumentException if
+    // flushIntervalMillis or maxPropertiesPerPatch is smaller than 1.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setReportedPropertiesCoalescingThrowsIfFlushIntervalTooSmall()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+
+        //act
+        config.setReportedPropertiesCoalescing(0, 10);
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_027: [This function shall throw IllegalArgumentException if
+    // flushIntervalMillis or maxPropertiesPerPatch is smaller than 1.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setReportedPropertiesCoalescingThrowsIfMaxPerPatchTooSmall()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+
+        //act
+        config.setReportedPropertiesCoalescing(500, 0);
+    }
+
+    //Tests_SRS_DEVICECLIENTCONFIG_41_026: [The class shall flush queued reported properties every second, or as soon
+    // as 100 of them are queued, by default.]
+    //Tests_SRS_DEVICECLIENTCONFIG_41_028: [This function shall save the provided flush interval and patch size.]
+    //Tests_SRS_DEVICECLIENTCONFIG_41_029: [This function shall return the saved flush interval.]
+    //Tests_SRS_DEVICECLIENTCONFIG_41_030: [This function shall return the saved patch size.]
+    @Test
+    public void setReportedPropertiesCoalescingSavesIntervalAndPatchSize()
+    {
+        //arrange
+        DeviceClientConfig config = Deencapsulation.newInstance(DeviceClientConfig.class, mockIotHubConnectionString);
+        assertEquals(1000, config.getReportedPropertiesFlushIntervalMillis());
+        assertEquals(100, config.getReportedPropertiesMaxPerPatch());
+
+        //act
+        config.setReportedPropertiesCoalescing(500, 10);
+
+        //assert
+        assertEquals(500, config.getReportedPropertiesFlushIntervalMillis());
+        assertEquals(10, config.getReportedPropertiesMaxPerPatch());
+    }
 }
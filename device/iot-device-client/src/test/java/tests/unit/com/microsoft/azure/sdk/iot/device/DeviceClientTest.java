@@ -19,6 +19,9 @@ import java.io.IOError;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import static com.microsoft.azure.sdk.iot.device.transport.amqps.IoTHubConnectionType.SINGLE_CLIENT;
 import static com.microsoft.azure.sdk.iot.device.transport.amqps.IoTHubConnectionType.USE_TRANSPORTCLIENT;
@@ -1793,6 +1796,44 @@ public class DeviceClientTest
         Deencapsulation.invoke(client, "uploadToBlobAsync", destinationBlobName, mockInputStream, streamLength, mockedStatusCB, mockedPropertyCB);
     }
 
+    @Test
+    public void startFileUploadFromFileSucceeds(@Mocked final FileUpload mockedFileUpload,
+                                                @Mocked final IotHubEventCallback mockedStatusCB,
+                                                @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        final String destinationBlobName = "valid/blob/name.txt";
+        final Path file = Files.createTempFile("upload", ".txt");
+        file.toFile().deleteOnExit();
+
+        // assert
+        new Expectations()
+        {
+            {
+                Deencapsulation.newInstance(FileUpload.class, new Class[] {DeviceClientConfig.class}, (DeviceClientConfig) any);
+                result = mockedFileUpload;
+                mockedFileUpload.uploadToBlobAsync(destinationBlobName, file, true, mockedStatusCB, mockedPropertyCB);
+            }
+        };
+        DeviceClient client = Deencapsulation.newInstance(DeviceClient.class, new Class[] {String.class, IotHubClientProtocol.class}, "some conn string", protocol);
+
+        // act
+        client.uploadToBlobAsync(destinationBlobName, file, true, mockedStatusCB, mockedPropertyCB);
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void startFileUploadFromMissingFileThrows(@Mocked final IotHubEventCallback mockedStatusCB,
+                                                     @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        DeviceClient client = Deencapsulation.newInstance(DeviceClient.class, new Class[] {String.class, IotHubClientProtocol.class}, "some conn string", protocol);
+
+        // act
+        client.uploadToBlobAsync("valid/blob/name.txt", Paths.get("does", "not", "exist.txt"), false, mockedStatusCB, mockedPropertyCB);
+    }
+
     /* Tests_SRS_INTERNALCLIENT_21_054: [If the fileUpload is not null, the closeNow shall call closeNow on fileUpload.] */
     @Test
     public void closeNowClosesFileUploadSucceeds(@Mocked final FileUpload mockedFileUpload,
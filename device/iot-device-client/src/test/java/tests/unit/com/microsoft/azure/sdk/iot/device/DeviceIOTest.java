@@ -543,6 +543,41 @@ public class DeviceIOTest
         };
     }
 
+    /* Tests_SRS_DEVICE_IO_21_022: [The sendEventAsync shall add the message, with its associated callback and callback context, to the transport.] */
+    @Test
+    public void sendEventAsyncDoesNotHoldMonitorWhileAddingMessage(
+            @Mocked final Message mockMsg,
+            @Mocked final IotHubEventCallback mockCallback)
+            throws IOException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIO();
+        openDeviceIO(deviceIO, mockedTransport, mockExecutors, mockScheduler);
+        final boolean[] heldMonitor = new boolean[1];
+        new NonStrictExpectations()
+        {
+            {
+                mockedTransport.addMessage(mockMsg, mockCallback, any);
+                result = new Delegate()
+                {
+                    void addMessage(Message message, IotHubEventCallback callback, Object callbackContext)
+                    {
+                        // the transport may block here while the outbound queue is full
+                        heldMonitor[0] = Thread.holdsLock(deviceIO);
+                    }
+                };
+            }
+        };
+
+        // act
+        Deencapsulation.invoke(deviceIO, "sendEventAsync",
+                new Class[] {Message.class, IotHubEventCallback.class, Object.class, String.class},
+                mockMsg, mockCallback, null, "someDeviceId");
+
+        // assert
+        assertFalse(heldMonitor[0]);
+    }
+
     /* Tests_SRS_DEVICE_IO_21_023: [If the message given is null, the sendEventAsync shall throw an IllegalArgumentException.] */
     @Test (expected = IllegalArgumentException.class)
     public void sendEventAsyncRejectsNullMessageThrows(
@@ -973,4 +1008,127 @@ public class DeviceIOTest
             }
         };
     }
+
+    /* Tests_SRS_DEVICE_IO_41_001: [If event driven send is enabled, the open shall run a single event driven send task on its own thread instead of scheduling send tasks.] */
+    @Test
+    public void openEventDrivenSubmitsSingleSendTask() throws DeviceClientException, IOException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIO();
+        configs.add(mockConfig);
+        Deencapsulation.setField(deviceIO, "deviceClientConfigs", configs);
+        Deencapsulation.invoke(deviceIO, "setEventDrivenSend", true);
+
+        new NonStrictExpectations()
+        {
+            {
+                new IotHubSendTask(mockedTransport, true);
+                result = mockIotHubSendTask;
+                new IotHubReceiveTask(mockedTransport);
+                result = mockIotHubReceiveTask;
+                mockExecutors.newScheduledThreadPool(2);
+                result = mockScheduler;
+            }
+        };
+
+        // act
+        Deencapsulation.invoke(deviceIO, "open");
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockScheduler.submit(mockIotHubSendTask);
+                times = 1;
+                mockScheduler.scheduleAtFixedRate(mockIotHubSendTask, anyLong, anyLong, TimeUnit.MILLISECONDS);
+                times = 0;
+                mockScheduler.scheduleAtFixedRate(mockIotHubReceiveTask,
+                        0, RECEIVE_PERIOD_MILLIS_AMQPS,
+                        TimeUnit.MILLISECONDS);
+                times = 1;
+            }
+        };
+    }
+
+    /* Tests_SRS_DEVICE_IO_41_002: [If event driven send is enabled, the close shall interrupt the event driven send task.] */
+    @Test
+    public void closeEventDrivenInterruptsSendTask() throws IOException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIO();
+        Deencapsulation.invoke(deviceIO, "setEventDrivenSend", true);
+        new NonStrictExpectations()
+        {
+            {
+                mockExecutors.newScheduledThreadPool(2);
+                result = mockScheduler;
+            }
+        };
+        Deencapsulation.invoke(deviceIO, "open");
+
+        // act
+        Deencapsulation.invoke(deviceIO, "close");
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockScheduler.shutdownNow();
+                times = 1;
+            }
+        };
+    }
+
+    /* Tests_SRS_DEVICE_IO_41_004: [If the client is open, the setEventDrivenSend shall throw IllegalStateException.] */
+    @Test (expected = IllegalStateException.class)
+    public void setEventDrivenSendThrowsIfOpen() throws IOException
+    {
+        // arrange
+        final DeviceIO deviceIO = newDeviceIO();
+        openDeviceIO(deviceIO, mockedTransport, mockExecutors, mockScheduler);
+
+        // act
+        deviceIO.setEventDrivenSend(true);
+    }
+
+    /* Tests_SRS_DEVICE_IO_41_005: [The setEventDrivenSend shall store the new send mode.] */
+    @Test
+    public void setEventDrivenSendStoresMode()
+    {
+        // arrange
+        final DeviceIO deviceIO = newDeviceIO();
+
+        // act
+        deviceIO.setEventDrivenSend(true);
+
+        // assert
+        assertTrue(deviceIO.isEventDrivenSend());
+    }
+
+    /* Tests_SRS_DEVICE_IO_41_006: [The getOutboundQueueDepth shall return the transport outbound queue depth.] */
+    /* Tests_SRS_DEVICE_IO_41_007: [The getOutboundQueueSizeInBytes shall return the transport outbound queue size in bytes.] */
+    @Test
+    public void getOutboundQueueGaugesReturnTransportGauges()
+            throws URISyntaxException, IOException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIO();
+        new NonStrictExpectations()
+        {
+            {
+                mockedTransport.getOutboundQueueDepth();
+                result = 3;
+                mockedTransport.getOutboundQueueSizeInBytes();
+                result = 300L;
+            }
+        };
+
+        // act
+        int depth = Deencapsulation.invoke(deviceIO, "getOutboundQueueDepth");
+        long sizeInBytes = Deencapsulation.invoke(deviceIO, "getOutboundQueueSizeInBytes");
+
+        // assert
+        assertEquals(3, depth);
+        assertEquals(300L, sizeInBytes);
+    }
 }
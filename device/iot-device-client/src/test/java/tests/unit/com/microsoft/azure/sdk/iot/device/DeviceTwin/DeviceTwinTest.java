@@ -13,9 +13,11 @@ import mockit.*;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentSkipListMap;
 
@@ -635,6 +637,272 @@ public class DeviceTwinTest
         };
     }
 
+    /*
+     **Tests_SRS_DEVICETWIN_41_001: [**The method shall throw IllegalArgumentException if the property is null.**]**
+     */
+    @Test (expected = IllegalArgumentException.class)
+    public void queueReportedPropertyThrowsIfPropertyIsNull()
+    {
+        //arrange
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+
+        //act
+        testTwin.queueReportedProperty(null, mockedStatusCB, null);
+    }
+
+    /*
+     **Tests_SRS_DEVICETWIN_41_002: [**The method shall throw IllegalArgumentException if the property cannot be serialized in a TwinCollection.**]**
+     */
+    @Test (expected = IllegalArgumentException.class)
+    public void queueReportedPropertyThrowsIfPropertyKeyIsInvalid()
+    {
+        //arrange
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+
+        //act
+        testTwin.queueReportedProperty(new Property("invalid key", "value"), mockedStatusCB, null);
+    }
+
+    /*
+     **Tests_SRS_DEVICETWIN_41_003: [**If the property is already queued, the method shall replace its value and keep the callbacks of both.**]**
+     **Tests_SRS_DEVICETWIN_41_005: [**Otherwise, if no patch is scheduled yet, the method shall schedule the queued properties to be sent once the flush interval has passed.**]**
+     **Tests_SRS_DEVICETWIN_41_006: [**The method shall send all the queued properties in a single update reported properties request by calling sendEventAsync.**]**
+     */
+    @Test
+    public void queueReportedPropertyKeepsLastValueOfEachProperty()
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getReportedPropertiesMaxPerPatch();
+                result = 100;
+                mockedConfig.getReportedPropertiesFlushIntervalMillis();
+                result = 60000L;
+            }
+        };
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+        testTwin.queueReportedProperty(new Property("prop1", "val1"), mockedStatusCB, null);
+        testTwin.queueReportedProperty(new Property("prop2", 10), mockedStatusCB, null);
+        testTwin.queueReportedProperty(new Property("prop1", "val2"), mockedStatusCB, null);
+
+        //act
+        testTwin.flushReportedProperties();
+        testTwin.close();
+
+        //assert
+        final List<Message> sentMessages = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockedDeviceIO.sendEventAsync(withCapture(sentMessages), (IotHubEventCallback) any, any, anyString);
+                times = 1;
+            }
+        };
+        IotHubTransportMessage sentMessage = (IotHubTransportMessage) sentMessages.get(0);
+        assertEquals(DeviceOperations.DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_REQUEST, sentMessage.getDeviceOperationType());
+        String sentJson = new String(sentMessage.getBytes());
+        assertTrue(sentJson.contains("\"prop1\":\"val2\""));
+        assertTrue(sentJson.contains("\"prop2\":10"));
+        assertFalse(sentJson.contains("val1"));
+    }
+
+    /*
+     **Tests_SRS_DEVICETWIN_41_004: [**If the maximum number of properties per patch is queued, the method shall send the queued properties.**]**
+     */
+    @Test
+    public void queueReportedPropertySendsPatchWhenMaxPropertiesAreQueued()
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getReportedPropertiesMaxPerPatch();
+                result = 2;
+                mockedConfig.getReportedPropertiesFlushIntervalMillis();
+                result = 60000L;
+            }
+        };
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+        testTwin.queueReportedProperty(new Property("prop1", "val1"), mockedStatusCB, null);
+        testTwin.queueReportedProperty(new Property("prop1", "val2"), mockedStatusCB, null);
+
+        //act
+        testTwin.queueReportedProperty(new Property("prop2", "val3"), mockedStatusCB, null);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedDeviceIO.sendEventAsync((Message) any, (IotHubEventCallback) any, any, anyString);
+                times = 1;
+            }
+        };
+        assertTrue(((Map) Deencapsulation.getField(testTwin, "queuedReportedProperties")).isEmpty());
+        testTwin.close();
+    }
+
+    /*
+     **Tests_SRS_DEVICETWIN_41_007: [**If the response is for a patch of queued reported properties, the callback of every property in that patch shall be triggered with the status.**]**
+     */
+    @Test
+    public void queuedReportedPropertyCallbacksAreTriggeredOnResponse()
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getReportedPropertiesMaxPerPatch();
+                result = 1;
+            }
+        };
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+        MessageCallback deviceTwinResponseMessageCallback = Deencapsulation.newInnerInstance("deviceTwinResponseMessageCallback", testTwin);
+        testTwin.queueReportedProperty(new Property("prop1", "val1"), mockedStatusCB, "context1");
+        final List<Message> sentMessages = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockedDeviceIO.sendEventAsync(withCapture(sentMessages), (IotHubEventCallback) any, any, anyString);
+            }
+        };
+
+        final IotHubTransportMessage testMessage = new IotHubTransportMessage(new byte[0], MessageType.DEVICE_TWIN);
+        testMessage.setStatus(String.valueOf(200));
+        testMessage.setRequestId(((IotHubTransportMessage) sentMessages.get(0)).getRequestId());
+        testMessage.setDeviceOperationType(DeviceOperations.DEVICE_OPERATION_TWIN_UPDATE_REPORTED_PROPERTIES_RESPONSE);
+
+        //act
+        deviceTwinResponseMessageCallback.execute(testMessage, null);
+        deviceTwinResponseMessageCallback.execute(testMessage, null);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedStatusCB.execute(IotHubStatusCode.OK, "context1");
+                times = 1;
+            }
+        };
+        assertTrue(((Map) Deencapsulation.getField(testTwin, "reportedPropertiesPatchesInFlight")).isEmpty());
+    }
+
+    /*
+     **Tests_SRS_DEVICETWIN_41_008: [**If a patch of queued reported properties could not be delivered, the callback of every property in that patch shall be triggered with the delivery status.**]**
+     */
+    @Test
+    public void queuedReportedPropertyCallbacksAreTriggeredOnFailedDelivery()
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getReportedPropertiesMaxPerPatch();
+                result = 1;
+            }
+        };
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+        testTwin.queueReportedProperty(new Property("prop1", "val1"), mockedStatusCB, "context1");
+        final List<IotHubEventCallback> deliveryCallbacks = new ArrayList<>();
+        final List<Object> deliveryContexts = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockedDeviceIO.sendEventAsync((Message) any, withCapture(deliveryCallbacks), withCapture(deliveryContexts), anyString);
+            }
+        };
+
+        //act
+        deliveryCallbacks.get(0).execute(IotHubStatusCode.MESSAGE_EXPIRED, deliveryContexts.get(0));
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedStatusCB.execute(IotHubStatusCode.MESSAGE_EXPIRED, "context1");
+                times = 1;
+            }
+        };
+    }
+
+    /*
+     **Tests_SRS_DEVICETWIN_41_010: [**The method shall trigger the callback of every property still queued with MESSAGE_CANCELLED_ONCLOSE, and drop the queued properties.**]**
+     */
+    @Test
+    public void closeCancelsQueuedReportedProperties()
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getReportedPropertiesMaxPerPatch();
+                result = 100;
+                mockedConfig.getReportedPropertiesFlushIntervalMillis();
+                result = 60000L;
+            }
+        };
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+        testTwin.queueReportedProperty(new Property("prop1", "val1"), mockedStatusCB, "context1");
+
+        //act
+        testTwin.close();
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedStatusCB.execute(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, "context1");
+                times = 1;
+                mockedDeviceIO.sendEventAsync((Message) any, (IotHubEventCallback) any, any, anyString);
+                times = 0;
+            }
+        };
+        assertNull(Deencapsulation.getField(testTwin, "reportedPropertiesFlushScheduler"));
+    }
+
+    /*
+     **Tests_SRS_DEVICETWIN_41_011: [**The method shall trigger the callback of every property in a patch still waiting for its response with MESSAGE_CANCELLED_ONCLOSE, once per patch, and drop the patches.**]**
+     */
+    @Test
+    public void closeCancelsReportedPropertiesPatchesInFlight()
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getReportedPropertiesMaxPerPatch();
+                result = 100;
+                mockedConfig.getReportedPropertiesFlushIntervalMillis();
+                result = 60000L;
+            }
+        };
+        DeviceTwin testTwin = new DeviceTwin(mockedDeviceIO, mockedConfig,
+                mockedStatusCB, null, mockedGenericPropertyCB, null);
+        testTwin.queueReportedProperty(new Property("prop1", "val1"), mockedStatusCB, "context1");
+        testTwin.flushReportedProperties();
+
+        //act
+        testTwin.close();
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedStatusCB.execute(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, "context1");
+                times = 1;
+            }
+        };
+        Map<String, ?> patchesInFlight = Deencapsulation.getField(testTwin, "reportedPropertiesPatchesInFlight");
+        assertTrue(patchesInFlight.isEmpty());
+    }
+
     /*
      **Tests_SRS_DEVICETWIN_25_017: [**The method shall create a treemap to store callbacks for desired property notifications specified in onDesiredPropertyChange.**]**
      **Tests_SRS_DEVICETWIN_25_018: [**If not already subscribed then this method shall create a device twin message with empty payload and set its type as DEVICE_OPERATION_TWIN_SUBSCRIBE_DESIRED_PROPERTIES_REQUEST.**]**
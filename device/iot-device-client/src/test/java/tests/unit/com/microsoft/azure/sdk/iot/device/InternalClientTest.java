@@ -17,6 +17,7 @@ import com.microsoft.azure.sdk.iot.provisioning.security.exceptions.SecurityProv
 import mockit.*;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOError;
 import java.io.IOException;
 import java.net.URISyntaxException;
@@ -2719,4 +2720,438 @@ public class InternalClientTest
             }
         };
     }
+
+    //Tests_SRS_INTERNALCLIENT_41_001: [The function shall set the device config's outbound queue limits.]
+    //Tests_SRS_INTERNALCLIENT_41_002: [The function shall set the device config's outbound queue overflow policy.]
+    @Test
+    public void setOutboundQueueOptionsSetConfig() throws URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        Deencapsulation.setField(client, "config", mockConfig);
+
+        //act
+        client.setOutboundQueueLimits(100, 1024);
+        client.setOutboundQueueOverflowPolicy(OutboundQueueOverflowPolicy.DROP_OLDEST, 0);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockConfig.setOutboundQueueLimits(100, 1024);
+                times = 1;
+                mockConfig.setOutboundQueueOverflowPolicy(OutboundQueueOverflowPolicy.DROP_OLDEST, 0);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_003: [The function shall return the outbound queue depth of its device IO instance.]
+    //Tests_SRS_INTERNALCLIENT_41_004: [The function shall return the outbound queue size in bytes of its device IO instance.]
+    @Test
+    public void getOutboundQueueGaugesReturnDeviceIOGauges() throws URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.getOutboundQueueDepth();
+                result = 3;
+                mockDeviceIO.getOutboundQueueSizeInBytes();
+                result = 300L;
+            }
+        };
+
+        //act
+        int depth = client.getOutboundQueueDepth();
+        long sizeInBytes = client.getOutboundQueueSizeInBytes();
+
+        //assert
+        assertEquals(3, depth);
+        assertEquals(300L, sizeInBytes);
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_005: [If the client is open, this function shall throw an IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setMessageSpoolDirectoryThrowsIfOpen() throws URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+            }
+        };
+
+        //act
+        client.setMessageSpoolDirectory(new File("spool"));
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_006: [The function shall set the device config's message spool.]
+    @Test
+    public void setMessageSpoolDirectorySetsConfig() throws URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        final File directory = new File("spool");
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        Deencapsulation.setField(client, "config", mockConfig);
+
+        //act
+        client.setMessageSpoolDirectory(directory);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockConfig.setMessageSpool(directory, DeviceClientConfig.DEFAULT_MESSAGE_SPOOL_SEGMENT_SIZE_IN_BYTES);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_007: [If the client does not use HTTPS, this function shall throw an UnsupportedOperationException.]
+    @Test (expected = UnsupportedOperationException.class)
+    public void setHttpsBatchingThrowsIfNotHttps() throws URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+
+        //act
+        client.setHttpsBatching(10, 100);
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_008: [The function shall set the device config's HTTPS batching.]
+    @Test
+    public void setHttpsBatchingSetsConfig() throws URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.HTTPS;
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        Deencapsulation.setField(client, "config", mockConfig);
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+
+        //act
+        client.setHttpsBatching(10, 100);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockConfig.setHttpsBatching(10, 100);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_009: [If the client does not use MQTT or MQTT_WS, this function shall throw an UnsupportedOperationException.]
+    @Test (expected = UnsupportedOperationException.class)
+    public void setMqttMaxInFlightMessagesThrowsIfNotMqtt() throws URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+
+        //act
+        client.setMqttMaxInFlightMessages(100);
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_010: [If the client is open, this function shall throw an IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void setMqttMaxInFlightMessagesThrowsIfOpen() throws URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.getProtocol();
+                result = protocol;
+                mockDeviceIO.isOpen();
+                result = true;
+            }
+        };
+
+        //act
+        client.setMqttMaxInFlightMessages(100);
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_011: [The function shall set the device config's maximum number of MQTT messages in flight.]
+    @Test
+    public void setMqttMaxInFlightMessagesSetsConfig() throws URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT_WS;
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        Deencapsulation.setField(client, "config", mockConfig);
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.getProtocol();
+                result = protocol;
+                mockDeviceIO.isOpen();
+                result = false;
+            }
+        };
+
+        //act
+        client.setMqttMaxInFlightMessages(100);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockConfig.setMqttMaxInFlightMessages(100);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_012: [If the client does not use AMQPS or AMQPS_WS, this function shall throw an UnsupportedOperationException.]
+    @Test (expected = UnsupportedOperationException.class)
+    public void setAmqpBatchingThrowsIfNotAmqps() throws URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+
+        //act
+        client.setAmqpBatching(50);
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_013: [The function shall set the device config's AMQP batching.]
+    @Test
+    public void setAmqpBatchingSetsConfig() throws URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS_WS;
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        Deencapsulation.setField(client, "config", mockConfig);
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.getProtocol();
+                result = protocol;
+            }
+        };
+
+        //act
+        client.setAmqpBatching(50);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockConfig.setAmqpBatchMaxMessages(50);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_016: [If the client has not started twin before calling this method, the function shall throw an IOException.]
+    @Test (expected = IOException.class)
+    public void queueReportedPropertyThrowsIfCalledBeforeStartingTwin(@Mocked final Property mockProperty) throws IOException, URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+            }
+        };
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+
+        //act
+        client.queueReportedProperty(mockProperty, null, null);
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_017: [If the client has not been open, the function shall throw an IOException.]
+    @Test (expected = IOException.class)
+    public void queueReportedPropertyThrowsIfClientNotOpen(@Mocked final DeviceTwin mockedDeviceTwin,
+                                                          @Mocked final Property mockProperty) throws IOException, URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = false;
+            }
+        };
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        Deencapsulation.setField(client, "twin", mockedDeviceTwin);
+
+        //act
+        client.queueReportedProperty(mockProperty, null, null);
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_018: [If the reportedProperty is null, the function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void queueReportedPropertyThrowsIfPropertyNull(@Mocked final DeviceTwin mockedDeviceTwin) throws IOException, URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+            }
+        };
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        Deencapsulation.setField(client, "twin", mockedDeviceTwin);
+
+        //act
+        client.queueReportedProperty(null, null, null);
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_019: [This method shall queue the reported property by calling queueReportedProperty on the twin object.]
+    @Test
+    public void queueReportedPropertyQueuesOnTwin(@Mocked final DeviceTwin mockedDeviceTwin,
+                                                  @Mocked final IotHubEventCallback mockedCallback,
+                                                  @Mocked final Property mockProperty) throws IOException, URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        final Object context = new Object();
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+            }
+        };
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        Deencapsulation.setField(client, "twin", mockedDeviceTwin);
+
+        //act
+        client.queueReportedProperty(mockProperty, mockedCallback, context);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedDeviceTwin.queueReportedProperty(mockProperty, mockedCallback, context);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_020: [The function shall set the device config's reported properties coalescing.]
+    @Test
+    public void setReportedPropertiesCoalescingSetsConfig() throws URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        Deencapsulation.setField(client, "config", mockConfig);
+
+        //act
+        client.setReportedPropertiesCoalescing(500, 10);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockConfig.setReportedPropertiesCoalescing(500, 10);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_014: [The close shall send the queued reported properties before waiting for the deviceIO to be empty.]
+    //Tests_SRS_INTERNALCLIENT_41_015: [The close and closeNow shall stop sending the queued reported properties of the twin.]
+    @Test
+    public void closeFlushesAndClosesTwin(@Mocked final DeviceTwin mockedDeviceTwin) throws IOException, URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isEmpty();
+                result = true;
+            }
+        };
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        Deencapsulation.setField(client, "twin", mockedDeviceTwin);
+
+        //act
+        client.close();
+
+        //assert
+        new VerificationsInOrder()
+        {
+            {
+                mockedDeviceTwin.flushReportedProperties();
+                times = 1;
+                mockDeviceIO.close();
+                times = 1;
+                mockedDeviceTwin.close();
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_INTERNALCLIENT_41_015: [The close and closeNow shall stop sending the queued reported properties of the twin.]
+    @Test
+    public void closeNowClosesTwin(@Mocked final DeviceTwin mockedDeviceTwin) throws IOException, URISyntaxException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        InternalClient client = Deencapsulation.newInstance(InternalClient.class, new Class[] {IotHubConnectionString.class, IotHubClientProtocol.class, long.class, long.class}, mockIotHubConnectionString, protocol, SEND_PERIOD, RECEIVE_PERIOD);
+        Deencapsulation.setField(client, "twin", mockedDeviceTwin);
+
+        //act
+        client.closeNow();
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedDeviceTwin.flushReportedProperties();
+                times = 0;
+                mockedDeviceTwin.close();
+                times = 1;
+            }
+        };
+    }
 }
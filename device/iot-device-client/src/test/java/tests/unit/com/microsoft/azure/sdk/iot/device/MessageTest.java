@@ -284,6 +284,17 @@ public class MessageTest
         assertFalse(msg.isExpired());
     }
 
+    // Tests_SRS_MESSAGE_41_001: [The function shall return the saved expiryTime.]
+    @Test
+    public void getExpiryTimeReturnsAbsoluteExpiryTime()
+    {
+        Message msg = new Message("body");
+        assertEquals(0, msg.getExpiryTime());
+
+        msg.setAbsoluteExpiryTime(1234L);
+        assertEquals(1234L, msg.getExpiryTime());
+    }
+
     // Tests_SRS_MESSAGE_34_038: [If the provided absolute expiry time is negative, an IllegalArgumentException shall be thrown.]
     @Test (expected = IllegalArgumentException.class)
     public void setAbsoluteTimeWithNegativeTimeThrowsIllegalArgumentException()
@@ -0,0 +1,467 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.fileupload;
+
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlockEntry;
+import com.microsoft.azure.storage.blob.BlockListingFilter;
+import com.microsoft.azure.storage.blob.CloudBlockBlob;
+import mockit.Deencapsulation;
+import mockit.Delegate;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the file upload block uploader.
+ */
+public class FileUploadBlockUploaderTest
+{
+    private static final String CLASS_NAME = "com.microsoft.azure.sdk.iot.device.fileupload.FileUploadBlockUploader";
+    private static final int BLOCK_SIZE = 4;
+    private static final int STREAM_LENGTH = 10;
+
+    @Mocked
+    private CloudBlockBlob mockCloudBlockBlob;
+
+    private Object createUploader(int blockSize, int maxBlocksInFlight) throws ClassNotFoundException
+    {
+        return Deencapsulation.newInstance(Class.forName(CLASS_NAME), new Class[] {CloudBlockBlob.class, int.class, int.class}, mockCloudBlockBlob, blockSize, maxBlocksInFlight);
+    }
+
+    private static String blockId(byte[] content, int blockIndex) throws ClassNotFoundException
+    {
+        int offset = blockIndex * BLOCK_SIZE;
+        ByteBuffer block = ByteBuffer.wrap(content, offset, Math.min(BLOCK_SIZE, content.length - offset));
+        return Deencapsulation.invoke(Class.forName(CLASS_NAME), "blockId", blockIndex, block);
+    }
+
+    private static String blockId(int blockIndex) throws ClassNotFoundException
+    {
+        return blockId(new byte[STREAM_LENGTH], blockIndex);
+    }
+
+    private static void deleteMappedFile(Path file)
+    {
+        try
+        {
+            Files.delete(file);
+        }
+        catch (IOException e)
+        {
+            // Some platforms do not delete a file while a mapping of it was not garbage collected yet
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    private static InputStream createStream()
+    {
+        return new ByteArrayInputStream(new byte[STREAM_LENGTH]);
+    }
+
+    /* Tests_SRS_FILEUPLOADBLOCKUPLOADER_41_001: [If the `blob` is null, the constructor shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNullBlob() throws ClassNotFoundException
+    {
+        Deencapsulation.newInstance(Class.forName(CLASS_NAME), new Class[] {CloudBlockBlob.class, int.class, int.class}, null, BLOCK_SIZE, 2);
+    }
+
+    /* Tests_SRS_FILEUPLOADBLOCKUPLOADER_41_002: [If the `blockSizeInBytes` or the `maxBlocksInFlight` is not positive, the constructor shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnInvalidBlockSize() throws ClassNotFoundException
+    {
+        createUploader(0, 2);
+    }
+
+    /* Tests_SRS_FILEUPLOADBLOCKUPLOADER_41_002: [If the `blockSizeInBytes` or the `maxBlocksInFlight` is not positive, the constructor shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnInvalidMaxBlocksInFlight() throws ClassNotFoundException
+    {
+        createUploader(BLOCK_SIZE, 0);
+    }
+
+    /* Tests_SRS_FILEUPLOADBLOCKUPLOADER_41_003: [The upload shall read the stream in blocks of `blockSizeInBytes`, the last block holding the rest of the stream.] */
+    /* Tests_SRS_FILEUPLOADBLOCKUPLOADER_41_005: [The upload shall upload at most `maxBlocksInFlight` blocks at the same time.] */
+    /* Tests_SRS_FILEUPLOADBLOCKUPLOADER_41_007: [Once every block was uploaded, the upload shall commit the block list in the order of the stream.] */
+    @Test
+    public void uploadUploadsBlocksAndCommitsBlockList() throws Exception
+    {
+        //arrange
+        Object uploader = createUploader(BLOCK_SIZE, 2);
+
+        //act
+        Deencapsulation.invoke(uploader, "upload", createStream(), (long) STREAM_LENGTH);
+
+        //assert
+        final List<Long> blockLengths = new ArrayList<>();
+        final List<Iterable<BlockEntry>> blockLists = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockCloudBlockBlob.uploadBlock(anyString, (InputStream) any, withCapture(blockLengths));
+                mockCloudBlockBlob.commitBlockList(withCapture(blockLists));
+            }
+        };
+
+        Collections.sort(blockLengths);
+        assertEquals(Arrays.asList((long) STREAM_LENGTH - 2 * BLOCK_SIZE, (long) BLOCK_SIZE, (long) BLOCK_SIZE), blockLengths);
+        assertEquals(1, blockLists.size());
+        List<String> blockIds = new ArrayList<>();
+        for (BlockEntry block : blockLists.get(0))
+        {
+            blockIds.add(block.getId());
+        }
+        assertEquals(Arrays.asList(blockId(0), blockId(1), blockId(2)), blockIds);
+    }
+
+    /* Tests_SRS_FILEUPLOADBLOCKUPLOADER_41_004: [If a block of the same name and length is in the uncommitted block list of the blob, the upload shall not upload it again. The name of a block shall hold a digest of its content.] */
+    @Test
+    public void uploadSkipsBlocksUploadedBefore() throws Exception
+    {
+        //arrange
+        final ArrayList<BlockEntry> uploadedBlocks = new ArrayList<>();
+        BlockEntry uploadedBlock = new BlockEntry(blockId(1));
+        uploadedBlock.setSize(BLOCK_SIZE);
+        uploadedBlocks.add(uploadedBlock);
+        new NonStrictExpectations()
+        {
+            {
+                mockCloudBlockBlob.downloadBlockList(BlockListingFilter.UNCOMMITTED, null, null, null);
+                result = uploadedBlocks;
+            }
+        };
+        Object uploader = createUploader(BLOCK_SIZE, 2);
+
+        //act
+        Deencapsulation.invoke(uploader, "upload", createStream(), (long) STREAM_LENGTH);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockCloudBlockBlob.uploadBlock(blockId(0), (InputStream) any, BLOCK_SIZE);
+                times = 1;
+                mockCloudBlockBlob.uploadBlock(blockId(1), (InputStream) any, anyLong);
+                times = 0;
+                mockCloudBlockBlob.uploadBlock(blockId(2), (InputStream) any, STREAM_LENGTH - 2 * BLOCK_SIZE);
+                times = 1;
+                mockCloudBlockBlob.commitBlockList((Iterable<BlockEntry>) any);
+                times = 1;
+            }
+        };
+    }
+
+    /* Tests_SRS_FILEUPLOADBLOCKUPLOADER_41_004: [If a block of the same name and length is in the uncommitted block list of the blob, the upload shall not upload it again. The name of a block shall hold a digest of its content.] */
+    @Test
+    public void uploadUploadsEveryBlockOfADifferentStreamOfTheSameLength() throws Exception
+    {
+        //arrange
+        final byte[] otherContent = new byte[STREAM_LENGTH];
+        for (int i = 0; i < STREAM_LENGTH; i++)
+        {
+            otherContent[i] = (byte) (i + 1);
+        }
+
+        final ArrayList<BlockEntry> uploadedBlocks = new ArrayList<>();
+        for (int blockIndex = 0; blockIndex < 3; blockIndex++)
+        {
+            BlockEntry uploadedBlock = new BlockEntry(blockId(blockIndex));
+            uploadedBlock.setSize(Math.min(BLOCK_SIZE, STREAM_LENGTH - blockIndex * BLOCK_SIZE));
+            uploadedBlocks.add(uploadedBlock);
+        }
+
+        new NonStrictExpectations()
+        {
+            {
+                mockCloudBlockBlob.downloadBlockList(BlockListingFilter.UNCOMMITTED, null, null, null);
+                result = uploadedBlocks;
+            }
+        };
+        Object uploader = createUploader(BLOCK_SIZE, 2);
+
+        //act
+        Deencapsulation.invoke(uploader, "upload", new ByteArrayInputStream(otherContent), (long) STREAM_LENGTH);
+
+        //assert
+        final List<Iterable<BlockEntry>> blockLists = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockCloudBlockBlob.uploadBlock(anyString, (InputStream) any, anyLong);
+                times = 3;
+                mockCloudBlockBlob.commitBlockList(withCapture(blockLists));
+            }
+        };
+
+        List<String> blockIds = new ArrayList<>();
+        for (BlockEntry block : blockLists.get(0))
+        {
+            blockIds.add(block.getId());
+        }
+        assertEquals(Arrays.asList(blockId(otherContent, 0), blockId(otherContent, 1), blockId(otherContent, 2)), blockIds);
+        for (BlockEntry uploadedBlock : uploadedBlocks)
+        {
+            assertFalse(blockIds.contains(uploadedBlock.getId()));
+        }
+    }
+
+    /* Tests_SRS_FILEUPLOADBLOCKUPLOADER_41_006: [If a block failed to upload, the upload shall throw its exception without committing the block list.] */
+    @Test
+    public void uploadThrowsIfBlockFailsToUpload() throws Exception
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockCloudBlockBlob.uploadBlock(anyString, (InputStream) any, anyLong);
+                result = new StorageException("500", "block failed", 500, null, null);
+            }
+        };
+        Object uploader = createUploader(BLOCK_SIZE, 2);
+
+        //act
+        Exception thrown = null;
+        try
+        {
+            Deencapsulation.invoke(uploader, "upload", createStream(), (long) STREAM_LENGTH);
+        }
+        catch (Exception e)
+        {
+            thrown = e;
+        }
+
+        //assert
+        assertTrue(thrown instanceof StorageException);
+        new Verifications()
+        {
+            {
+                mockCloudBlockBlob.commitBlockList((Iterable<BlockEntry>) any);
+                times = 0;
+            }
+        };
+    }
+
+    /* Tests_SRS_FILEUPLOADBLOCKUPLOADER_41_003: [The upload shall read the stream in blocks of `blockSizeInBytes`, the last block holding the rest of the stream.] */
+    @Test (expected = IOException.class)
+    public void uploadThrowsIfStreamEndsEarly() throws Exception
+    {
+        //arrange
+        Object uploader = createUploader(BLOCK_SIZE, 2);
+
+        //act
+        Deencapsulation.invoke(uploader, "upload", createStream(), (long) STREAM_LENGTH + 1);
+    }
+
+    /* Tests_SRS_FILEUPLOADBLOCKUPLOADER_41_008: [The upload of a file shall map each block of it from the start of the file when there is room to upload it, and upload the block from its mapping.] */
+    @Test
+    public void uploadFileUploadsBlocksFromStartAndCommitsBlockList() throws Exception
+    {
+        //arrange
+        final byte[] content = new byte[STREAM_LENGTH];
+        for (int i = 0; i < content.length; i++)
+        {
+            content[i] = (byte) (i + 1);
+        }
+
+        final Map<String, byte[]> uploadedContent = new ConcurrentHashMap<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockCloudBlockBlob.uploadBlock(anyString, (InputStream) any, anyLong);
+                result = new Delegate()
+                {
+                    void uploadBlock(String blockId, InputStream sourceStream, long length) throws IOException
+                    {
+                        byte[] block = new byte[(int) length];
+                        int read = 0;
+                        while (read < length)
+                        {
+                            read += sourceStream.read(block, read, block.length - read);
+                        }
+
+                        uploadedContent.put(blockId, block);
+                    }
+                };
+            }
+        };
+
+        Path file = Files.createTempFile("fileUploadBlockUploaderTest", ".bin");
+        Files.write(file, content);
+        Object uploader = createUploader(BLOCK_SIZE, 2);
+
+        //act
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            fileChannel.position(STREAM_LENGTH / 2);
+            Deencapsulation.invoke(uploader, "upload", fileChannel);
+        }
+        finally
+        {
+            deleteMappedFile(file);
+        }
+
+        //assert
+        final List<Iterable<BlockEntry>> blockLists = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockCloudBlockBlob.commitBlockList(withCapture(blockLists));
+            }
+        };
+
+        assertEquals(1, blockLists.size());
+        List<String> blockIds = new ArrayList<>();
+        for (BlockEntry block : blockLists.get(0))
+        {
+            blockIds.add(block.getId());
+        }
+        assertEquals(Arrays.asList(blockId(content, 0), blockId(content, 1), blockId(content, 2)), blockIds);
+        assertArrayEquals(Arrays.copyOfRange(content, 0, BLOCK_SIZE), uploadedContent.get(blockIds.get(0)));
+        assertArrayEquals(Arrays.copyOfRange(content, BLOCK_SIZE, 2 * BLOCK_SIZE), uploadedContent.get(blockIds.get(1)));
+        assertArrayEquals(Arrays.copyOfRange(content, 2 * BLOCK_SIZE, STREAM_LENGTH), uploadedContent.get(blockIds.get(2)));
+    }
+
+    /* Tests_SRS_FILEUPLOADBLOCKUPLOADER_41_005: [The upload shall upload at most `maxBlocksInFlight` blocks at the same time.] */
+    /* Tests_SRS_FILEUPLOADBLOCKUPLOADER_41_008: [The upload of a file shall map each block of it from the start of the file when there is room to upload it, and upload the block from its mapping.] */
+    @Test
+    public void uploadFileMapsNoMoreBlocksThanMaxBlocksInFlight() throws Exception
+    {
+        //arrange
+        final int maxBlocksInFlight = 2;
+        final AtomicInteger blocksInFlight = new AtomicInteger();
+        final AtomicInteger maxObservedBlocksInFlight = new AtomicInteger();
+        new NonStrictExpectations()
+        {
+            {
+                mockCloudBlockBlob.uploadBlock(anyString, (InputStream) any, anyLong);
+                result = new Delegate()
+                {
+                    void uploadBlock(String blockId, InputStream sourceStream, long length) throws InterruptedException
+                    {
+                        int current = blocksInFlight.incrementAndGet();
+                        int observed;
+                        do
+                        {
+                            observed = maxObservedBlocksInFlight.get();
+                        }
+                        while (current > observed && !maxObservedBlocksInFlight.compareAndSet(observed, current));
+
+                        Thread.sleep(20);
+                        blocksInFlight.decrementAndGet();
+                    }
+                };
+            }
+        };
+
+        Path file = Files.createTempFile("fileUploadBlockUploaderTest", ".bin");
+        Files.write(file, new byte[BLOCK_SIZE * 8]);
+        Object uploader = createUploader(BLOCK_SIZE, maxBlocksInFlight);
+
+        //act
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            Deencapsulation.invoke(uploader, "upload", fileChannel);
+        }
+        finally
+        {
+            deleteMappedFile(file);
+        }
+
+        //assert
+        assertTrue(maxObservedBlocksInFlight.get() <= maxBlocksInFlight);
+        new Verifications()
+        {
+            {
+                mockCloudBlockBlob.uploadBlock(anyString, (InputStream) any, BLOCK_SIZE);
+                times = 8;
+            }
+        };
+    }
+
+    /* Tests_SRS_FILEUPLOADBLOCKUPLOADER_41_003: [The upload shall read the stream in blocks of `blockSizeInBytes`, the last block holding the rest of the stream.] */
+    @Test
+    public void uploadToEndUploadsStreamOfUnknownLength() throws Exception
+    {
+        //arrange
+        Object uploader = createUploader(BLOCK_SIZE, 2);
+
+        //act
+        Deencapsulation.invoke(uploader, "uploadToEnd", createStream());
+
+        //assert
+        final List<Iterable<BlockEntry>> blockLists = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockCloudBlockBlob.uploadBlock(anyString, (InputStream) any, anyLong);
+                times = 3;
+                mockCloudBlockBlob.commitBlockList(withCapture(blockLists));
+            }
+        };
+
+        List<String> blockIds = new ArrayList<>();
+        for (BlockEntry block : blockLists.get(0))
+        {
+            blockIds.add(block.getId());
+        }
+        assertEquals(Arrays.asList(blockId(0), blockId(1), blockId(2)), blockIds);
+    }
+
+    /* Tests_SRS_FILEUPLOADBLOCKUPLOADER_41_004: [If a block of the same name and length is in the uncommitted block list of the blob, the upload shall not upload it again. The name of a block shall hold a digest of its content.] */
+    @Test
+    public void uploadToEndSkipsBlocksUploadedBefore() throws Exception
+    {
+        //arrange
+        final ArrayList<BlockEntry> uploadedBlocks = new ArrayList<>();
+        BlockEntry uploadedBlock = new BlockEntry(blockId(0));
+        uploadedBlock.setSize(BLOCK_SIZE);
+        uploadedBlocks.add(uploadedBlock);
+        new NonStrictExpectations()
+        {
+            {
+                mockCloudBlockBlob.downloadBlockList(BlockListingFilter.UNCOMMITTED, null, null, null);
+                result = uploadedBlocks;
+            }
+        };
+        Object uploader = createUploader(BLOCK_SIZE, 2);
+
+        //act
+        Deencapsulation.invoke(uploader, "uploadToEnd", createStream());
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockCloudBlockBlob.uploadBlock(blockId(0), (InputStream) any, anyLong);
+                times = 0;
+                mockCloudBlockBlob.uploadBlock(anyString, (InputStream) any, anyLong);
+                times = 2;
+                mockCloudBlockBlob.commitBlockList((Iterable<BlockEntry>) any);
+                times = 1;
+            }
+        };
+    }
+}
@@ -12,17 +12,22 @@ import com.microsoft.azure.sdk.iot.device.transport.IotHubTransportMessage;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsTransportManager;
 import com.microsoft.azure.storage.StorageException;
 import com.microsoft.azure.storage.StorageExtendedErrorInformation;
+import com.microsoft.azure.storage.blob.BlobProperties;
+import com.microsoft.azure.storage.blob.BlockEntry;
 import com.microsoft.azure.storage.blob.CloudBlockBlob;
 import mockit.Deencapsulation;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
 import mockit.Verifications;
+import mockit.VerificationsInOrder;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -276,6 +281,18 @@ public class FileUploadTaskTest
                 VALID_BLOB_NAME, mockInputStream, VALID_STREAM_LENGTH, mockHttpsTransportManager, null, VALID_CALLBACK_CONTEXT);
     }
 
+    /* Tests_SRS_FILEUPLOADTASK_41_002: [If the `file` is null, the constructor shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorNullFileThrows()
+    {
+        // arrange
+
+        // act
+        Deencapsulation.newInstance(FileUploadTask.class,
+                new Class[] {String.class, Path.class, boolean.class, HttpsTransportManager.class, IotHubEventCallback.class, Object.class},
+                VALID_BLOB_NAME, null, false, mockHttpsTransportManager, mockIotHubEventCallback, VALID_CALLBACK_CONTEXT);
+    }
+
     /* Tests_SRS_FILEUPLOADTASK_21_006: [The constructor shall store all the provided parameters.] */
     @Test
     public void constructorStoreParametersSucceed()
@@ -507,6 +524,44 @@ public class FileUploadTaskTest
         };
     }
 
+    /* Tests_SRS_FILEUPLOADTASK_41_004: [If the file is to be compressed, the run shall upload it gzip compressed, compressing it as it is uploaded.] */
+    /* Tests_SRS_FILEUPLOADTASK_41_006: [If the file is to be compressed, the run shall set the content encoding of the blob to gzip and its content type to binary data before it is committed.] */
+    @Test
+    public void runSetsGzipPropertiesBeforeCommittingCompressedFile(@Mocked final BlobProperties mockBlobProperties) throws Exception
+    {
+        // arrange
+        expectSuccess(VALID_BLOB_NAME, VALID_CORRELATION_ID, VALID_HOST_NAME, VALID_CONTAINER_NAME, VALID_SAS_TOKEN,
+                VALID_REQUEST_JSON, VALID_RESPONSE_JSON, VALID_NOTIFICATION_JSON);
+        Path file = Files.createTempFile("fileUploadTaskTest", ".bin");
+        Files.write(file, new byte[(int) VALID_STREAM_LENGTH]);
+        FileUploadTask fileUploadTask = Deencapsulation.newInstance(FileUploadTask.class,
+                new Class[] {String.class, Path.class, boolean.class, HttpsTransportManager.class, IotHubEventCallback.class, Object.class},
+                VALID_BLOB_NAME, file, true, mockHttpsTransportManager, mockIotHubEventCallback, VALID_CALLBACK_CONTEXT);
+
+        // act
+        try
+        {
+            Deencapsulation.invoke(fileUploadTask, "run");
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+
+        // assert
+        new VerificationsInOrder()
+        {
+            {
+                mockBlobProperties.setContentEncoding("gzip");
+                times = 1;
+                mockBlobProperties.setContentType("application/octet-stream");
+                times = 1;
+                mockCloudBlockBlob.commitBlockList((Iterable<BlockEntry>) any);
+                times = 1;
+            }
+        };
+    }
+
     /* Tests_SRS_FILEUPLOADTASK_21_021: [If the upload to blob succeed, the run shall create a notification the IoT Hub with `isSuccess` equals true, `statusCode` equals 0.] */
     @Test
     public void runCreateNotificationSucceed() throws IOException, IllegalArgumentException, URISyntaxException, StorageException
@@ -16,6 +16,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Queue;
@@ -186,6 +187,52 @@ public class FileUploadTest
         fileUpload.uploadToBlobAsync(blobName, mockInputStream, streamLength, mockIotHubEventCallback, context);
     }
 
+    /* Tests_SRS_FILEUPLOAD_41_004: [The uploadToBlobAsync shall schedule a `FileUploadTask` that uploads the `file` to the blob in `blobName`.] */
+    @Test
+    public void uploadToBlobAsyncFileSuccess(@Mocked final Path mockPath) throws IOException
+    {
+        // arrange
+        final String blobName = "validBlobName";
+        final Map<String, Object> context = new HashMap<>();
+
+        constructorExpectations();
+        FileUpload fileUpload = new FileUpload(mockConfig);
+
+        // assert
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.newInstance(FileUploadInProgress.class,
+                        new Class[] {IotHubEventCallback.class, Object.class},
+                        mockIotHubEventCallback, context);
+                result = mockFileUploadInProgress;
+                times = 1;
+                Deencapsulation.newInstance(FileUploadTask.class,
+                        new Class[] { String.class, Path.class, boolean.class, HttpsTransportManager.class, IotHubEventCallback.class, Object.class},
+                        blobName, mockPath, true, mockHttpsTransportManager, (IotHubEventCallback)any, mockFileUploadInProgress);
+                result = mockFileUploadTask;
+                times = 1;
+                mockScheduler.submit(mockFileUploadTask);
+                times = 1;
+            }
+        };
+
+        // act
+        fileUpload.uploadToBlobAsync(blobName, mockPath, true, mockIotHubEventCallback, context);
+    }
+
+    /* Tests_SRS_FILEUPLOAD_41_002: [If the `file` is null, the uploadToBlobAsync shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void uploadToBlobAsyncNullFileThrows() throws IOException
+    {
+        // arrange
+        constructorExpectations();
+        FileUpload fileUpload = new FileUpload(mockConfig);
+
+        // act
+        fileUpload.uploadToBlobAsync("validBlobName", (Path) null, false, mockIotHubEventCallback, new HashMap<String, Object>());
+    }
+
     /* Tests_SRS_FILEUPLOAD_21_005: [If the `blobName` is null or empty, the uploadToBlobAsync shall throw IllegalArgumentException.] */
     @Test (expected = IllegalArgumentException.class)
     public void uploadToBlobAsyncNullBlobNameThrows() throws IOException
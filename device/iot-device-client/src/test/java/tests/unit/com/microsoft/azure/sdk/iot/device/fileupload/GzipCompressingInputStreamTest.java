@@ -0,0 +1,120 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.fileupload;
+
+import mockit.Deencapsulation;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Unit tests for the gzip compressing input stream.
+ */
+public class GzipCompressingInputStreamTest
+{
+    private static final String CLASS_NAME = "com.microsoft.azure.sdk.iot.device.fileupload.GzipCompressingInputStream";
+
+    private static InputStream createStream(byte[] content) throws ClassNotFoundException
+    {
+        return (InputStream) Deencapsulation.newInstance(Class.forName(CLASS_NAME), new Class[] {InputStream.class}, new ByteArrayInputStream(content));
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int count;
+        while ((count = inputStream.read(buffer)) >= 0)
+        {
+            outputStream.write(buffer, 0, count);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException
+    {
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(compressed)))
+        {
+            return readAll(inputStream);
+        }
+    }
+
+    /* Tests_SRS_GZIPCOMPRESSINGINPUTSTREAM_41_001: [If the `source` is null, the constructor shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNullSource() throws ClassNotFoundException
+    {
+        Deencapsulation.newInstance(Class.forName(CLASS_NAME), new Class[] {InputStream.class}, (InputStream) null);
+    }
+
+    /* Tests_SRS_GZIPCOMPRESSINGINPUTSTREAM_41_002: [The stream shall start with a gzip header.] */
+    /* Tests_SRS_GZIPCOMPRESSINGINPUTSTREAM_41_004: [The stream shall end with the CRC-32 and the length of the source, in little endian order.] */
+    @Test
+    public void readCompressesEmptySource() throws Exception
+    {
+        //arrange
+        byte[] content = new byte[0];
+
+        //act
+        byte[] compressed = readAll(createStream(content));
+
+        //assert
+        assertArrayEquals(content, decompress(compressed));
+    }
+
+    /* Tests_SRS_GZIPCOMPRESSINGINPUTSTREAM_41_003: [The stream shall deflate the source as it is read.] */
+    @Test
+    public void readCompressesSmallSource() throws Exception
+    {
+        //arrange
+        byte[] content = "some file content".getBytes("UTF-8");
+
+        //act
+        byte[] compressed = readAll(createStream(content));
+
+        //assert
+        assertArrayEquals(content, decompress(compressed));
+    }
+
+    /* Tests_SRS_GZIPCOMPRESSINGINPUTSTREAM_41_003: [The stream shall deflate the source as it is read.] */
+    @Test
+    public void readCompressesSourceLargerThanItsBuffer() throws Exception
+    {
+        //arrange
+        byte[] content = new byte[100 * 1024];
+        new Random(42).nextBytes(content);
+
+        //act
+        byte[] compressed = readAll(createStream(content));
+
+        //assert
+        assertArrayEquals(content, decompress(compressed));
+    }
+
+    /* Tests_SRS_GZIPCOMPRESSINGINPUTSTREAM_41_003: [The stream shall deflate the source as it is read.] */
+    @Test
+    public void readSingleBytesCompressesSource() throws Exception
+    {
+        //arrange
+        byte[] content = "some file content".getBytes("UTF-8");
+        InputStream inputStream = createStream(content);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        //act
+        int value;
+        while ((value = inputStream.read()) >= 0)
+        {
+            compressed.write(value);
+        }
+
+        //assert
+        assertArrayEquals(content, decompress(compressed.toByteArray()));
+    }
+}
@@ -81,4 +81,60 @@ public class IotHubSendTaskTest
         IotHubSendTask sendTask = new IotHubSendTask(mockTransport);
         sendTask.run();
     }
+
+    // Tests_SRS_IOTHUBSENDTASK_41_001: [If this task is event driven, the function shall wait for the transport to signal send work and then send and invoke callbacks, until the running thread is interrupted.]
+    // Tests_SRS_IOTHUBSENDTASK_41_002: [If this task is event driven, the function shall send messages until the transport queue is empty or the transport stops sending.]
+    @Test
+    public void runEventDrivenWaitsForSendWorkAndDrainsQueue() throws InterruptedException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.waitForSendWork(anyLong);
+                result = null;
+                result = new InterruptedException();
+            }
+        };
+
+        IotHubSendTask sendTask = new IotHubSendTask(mockTransport, true);
+        sendTask.run();
+
+        new Verifications()
+        {
+            {
+                mockTransport.waitForSendWork(anyLong);
+                times = 2;
+                mockTransport.sendMessages(Integer.MAX_VALUE);
+                times = 1;
+                mockTransport.invokeCallbacks();
+                times = 1;
+                mockTransport.sendMessages();
+                times = 0;
+            }
+        };
+
+        // clear the interrupt flag that the task restored on this thread
+        Thread.interrupted();
+    }
+
+    // Tests_SRS_IOTHUBSENDTASK_41_001: [If this task is event driven, the function shall wait for the transport to signal send work and then send and invoke callbacks, until the running thread is interrupted.]
+    @Test
+    public void runEventDrivenDoesNotCrashFromThrowable() throws InterruptedException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.waitForSendWork(anyLong);
+                result = null;
+                result = new InterruptedException();
+                mockTransport.sendMessages(anyInt);
+                result = new Throwable("Test that send does not crash.");
+            }
+        };
+
+        IotHubSendTask sendTask = new IotHubSendTask(mockTransport, true);
+        sendTask.run();
+
+        Thread.interrupted();
+    }
 }
@@ -10,6 +10,7 @@ import com.microsoft.azure.sdk.iot.device.Message;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransportPacket;
 import mockit.Deencapsulation;
 import mockit.Mocked;
+import mockit.NonStrictExpectations;
 import org.junit.Test;
 
 import java.util.HashMap;
@@ -20,7 +21,9 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.everyItem;
 import static org.hamcrest.Matchers.isIn;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Unit tests for IotHubTransportPacket.
@@ -200,4 +203,92 @@ public class IotHubTransportPacketTest
         //act
         new IotHubTransportPacket(mockMsg, mockCallback, new Object(), IotHubStatusCode.OK_EMPTY, -1);
     }
+
+    // Tests_SRS_IOTHUBTRANSPORTPACKET_41_001: [The constructor shall save the message's expiry time and assign this packet a sequence number that is unique and increasing across packets.]
+    // Tests_SRS_IOTHUBTRANSPORTPACKET_41_002: [This function shall return the saved expiry time.]
+    @Test
+    public void getExpiryTimeMillisReturnsMessageExpiryTime()
+    {
+        //arrange
+        final long expiryTime = 1234;
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getExpiryTime();
+                result = expiryTime;
+            }
+        };
+
+        //act
+        IotHubTransportPacket packet = new IotHubTransportPacket(mockMsg, mockCallback, null, null, 10);
+
+        //assert
+        assertEquals(expiryTime, packet.getExpiryTimeMillis());
+    }
+
+    // Tests_SRS_IOTHUBTRANSPORTPACKET_41_001: [The constructor shall save the message's expiry time and assign this packet a sequence number that is unique and increasing across packets.]
+    // Tests_SRS_IOTHUBTRANSPORTPACKET_41_003: [This function shall return the saved sequence number.]
+    @Test
+    public void getSequenceNumberIncreasesAcrossPackets()
+    {
+        //act
+        IotHubTransportPacket packet1 = new IotHubTransportPacket(mockMsg, mockCallback, null, null, 10);
+        IotHubTransportPacket packet2 = new IotHubTransportPacket(mockMsg, mockCallback, null, null, 10);
+
+        //assert
+        assertTrue(packet2.getSequenceNumber() > packet1.getSequenceNumber());
+    }
+
+    // Tests_SRS_IOTHUBTRANSPORTPACKET_41_004: [The constructor shall save the size of the message body, or 0 if the message has no body.]
+    // Tests_SRS_IOTHUBTRANSPORTPACKET_41_005: [This function shall return the saved size of the message body.]
+    @Test
+    public void getSizeInBytesReturnsMessageBodySize()
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getBytes();
+                result = new byte[12];
+            }
+        };
+
+        //act
+        IotHubTransportPacket packet = new IotHubTransportPacket(mockMsg, mockCallback, null, null, 10);
+
+        //assert
+        assertEquals(12, packet.getSizeInBytes());
+    }
+
+    // Tests_SRS_IOTHUBTRANSPORTPACKET_41_006: [This function shall return the saved spool record id, which is -1 by default.]
+    // Tests_SRS_IOTHUBTRANSPORTPACKET_41_007: [This function shall save the provided spool record id.]
+    @Test
+    public void setSpoolRecordIdSavesRecordId()
+    {
+        //arrange
+        IotHubTransportPacket packet = new IotHubTransportPacket(mockMsg, mockCallback, null, null, 10);
+        assertEquals(-1, packet.getSpoolRecordId());
+
+        //act
+        packet.setSpoolRecordId(5);
+
+        //assert
+        assertEquals(5, packet.getSpoolRecordId());
+    }
+
+    // Tests_SRS_IOTHUBTRANSPORTPACKET_41_008: [This function shall return the saved waiting flag, which is false by default.]
+    // Tests_SRS_IOTHUBTRANSPORTPACKET_41_009: [This function shall save the provided waiting flag.]
+    @Test
+    public void setWaitingSavesFlag()
+    {
+        //arrange
+        IotHubTransportPacket packet = new IotHubTransportPacket(mockMsg, mockCallback, null, null, 10);
+        assertFalse((boolean) Deencapsulation.invoke(packet, "isWaiting"));
+
+        //act
+        Deencapsulation.invoke(packet, "setWaiting", true);
+
+        //assert
+        assertTrue((boolean) Deencapsulation.invoke(packet, "isWaiting"));
+    }
 }
@@ -6,18 +6,22 @@ package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
 import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.exceptions.DeviceClientException;
 import com.microsoft.azure.sdk.iot.device.exceptions.IotHubServiceException;
+import com.microsoft.azure.sdk.iot.device.exceptions.IotHubSizeExceededException;
 import com.microsoft.azure.sdk.iot.device.exceptions.TransportException;
 import com.microsoft.azure.sdk.iot.device.exceptions.UnauthorizedException;
 import com.microsoft.azure.sdk.iot.device.transport.*;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsIotHubConnection;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.exceptions.AmqpConnectionThrottledException;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.exceptions.AmqpUnauthorizedAccessException;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsBatchMessage;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsIotHubConnection;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsSingleMessage;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttIotHubConnection;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.exceptions.MqttUnauthorizedException;
 import mockit.*;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
@@ -240,6 +244,56 @@ public class IotHubTransportTest
         assertEquals(mockedTransportMessage, receivedMessagesQueue.poll());
     }
 
+    //Tests_SRS_IOTHUBTRANSPORT_41_037: [If the received message is a direct method invocation, this function shall add it to the received method messages queue.]
+    @Test
+    public void onMessageReceivedWithMethodMessageAddsToMethodQueue()
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        new NonStrictExpectations()
+        {
+            {
+                mockedTransportMessage.getMessageType();
+                result = MessageType.DEVICE_METHODS;
+            }
+        };
+
+        //act
+        transport.onMessageReceived(mockedTransportMessage, null);
+
+        //assert
+        Queue<IotHubTransportMessage> receivedMethodMessagesQueue = Deencapsulation.getField(transport, "receivedMethodMessagesQueue");
+        Queue<IotHubTransportMessage> receivedMessagesQueue = Deencapsulation.getField(transport, "receivedMessagesQueue");
+        assertEquals(1, receivedMethodMessagesQueue.size());
+        assertEquals(mockedTransportMessage, receivedMethodMessagesQueue.poll());
+        assertTrue(receivedMessagesQueue.isEmpty());
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_038: [If the received message is a twin message, this function shall add it to the received twin messages queue.]
+    @Test
+    public void onMessageReceivedWithTwinMessageAddsToTwinQueue()
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        new NonStrictExpectations()
+        {
+            {
+                mockedTransportMessage.getMessageType();
+                result = MessageType.DEVICE_TWIN;
+            }
+        };
+
+        //act
+        transport.onMessageReceived(mockedTransportMessage, null);
+
+        //assert
+        Queue<IotHubTransportMessage> receivedTwinMessagesQueue = Deencapsulation.getField(transport, "receivedTwinMessagesQueue");
+        Queue<IotHubTransportMessage> receivedMessagesQueue = Deencapsulation.getField(transport, "receivedMessagesQueue");
+        assertEquals(1, receivedTwinMessagesQueue.size());
+        assertEquals(mockedTransportMessage, receivedTwinMessagesQueue.poll());
+        assertTrue(receivedMessagesQueue.isEmpty());
+    }
+
     //Tests_SRS_IOTHUBTRANSPORT_34_011: [If this function is called while the connection status is DISCONNECTED, this function shall do nothing.]
     @Test
     public void onConnectionLostWhileDisconnectedDoesNothing()
@@ -505,6 +559,14 @@ public class IotHubTransportTest
             }
         };
 
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getMessageSpoolDirectory();
+                result = null;
+            }
+        };
+
         //act
         transport.open(configs);
 
@@ -512,6 +574,53 @@ public class IotHubTransportTest
         assertTrue(verifier.toString().equalsIgnoreCase("Success"));
     }
 
+    //Tests_SRS_IOTHUBTRANSPORT_41_019: [If the config has a message spool directory, this function shall open the message spool, so that the messages left in it are sent again.]
+    @Test
+    public void openOpensMessageSpool(final @Mocked MessageSpool mockedSpool) throws DeviceClientException, IOException
+    {
+        //arrange
+        final File directory = new File("spool");
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED);
+        Collection<DeviceClientConfig> configs = new ArrayList<>();
+        configs.add(mockedConfig);
+
+        new MockUp<IotHubTransport>()
+        {
+            @Mock boolean isSasTokenExpired()
+            {
+                return false;
+            }
+
+            @Mock void openConnection()
+            {
+            }
+        };
+
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getMessageSpoolDirectory();
+                result = directory;
+                mockedConfig.getMessageSpoolSegmentSizeInBytes();
+                result = 4096;
+            }
+        };
+
+        //act
+        transport.open(configs);
+
+        //assert
+        assertNotNull(Deencapsulation.getField(transport, "messageSpool"));
+        new Verifications()
+        {
+            {
+                new MessageSpool(directory, 4096);
+                times = 1;
+            }
+        };
+    }
+
     //Tests_SRS_IOTHUBTRANSPORT_34_017: [If the connection status of this object is CONNECTED, this function shall do nothing.]
     @Test
     public void openDoesNothingIfConnectionStatusIsConnected() throws DeviceClientException
@@ -980,12 +1089,12 @@ public class IotHubTransportTest
         final Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
         final Map<String, IotHubTransportPacket> inProgressPackets = new ConcurrentHashMap<>();
         final Queue<IotHubTransportPacket> callbackPacketsQueue = new ConcurrentLinkedQueue<>();
-        waitingPacketsQueue.add(mockedPacket);
 
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
         Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
         Deencapsulation.setField(transport, "inProgressPackets", inProgressPackets);
         Deencapsulation.setField(transport, "callbackPacketsQueue", callbackPacketsQueue);
+        Deencapsulation.invoke(transport, "addWaitingPacket", mockedPacket);
 
         //act
         boolean isEmpty = transport.isEmpty();
@@ -994,6 +1103,36 @@ public class IotHubTransportTest
         assertFalse(isEmpty);
     }
 
+    //Tests_SRS_IOTHUBTRANSPORT_34_043: [This function return true if and only if there are no packets in the waiting queue, in progress, or in the callbacks queue.]
+    //Tests_SRS_IOTHUBTRANSPORT_41_034: [This function shall add the packet to the waiting queue, and count it
+    // as waiting unless it already expired.]
+    //Tests_SRS_IOTHUBTRANSPORT_41_035: [This function shall remove the head of the waiting queue, and no longer
+    // count it as waiting unless it already expired.]
+    @Test
+    public void hasWaitingPacketsDoesNotCountExpiredPackets()
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockedPacket, "isWaiting");
+                result = true;
+            }
+        };
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.invoke(transport, "addWaitingPacket", mockedPacket);
+        assertTrue((boolean) Deencapsulation.invoke(transport, "hasWaitingPackets"));
+
+        //act
+        Deencapsulation.invoke(transport, "expirePacket", mockedPacket);
+
+        //assert
+        assertFalse((boolean) Deencapsulation.invoke(transport, "hasWaitingPackets"));
+        assertEquals(mockedPacket, Deencapsulation.invoke(transport, "pollWaitingPacket"));
+        assertFalse((boolean) Deencapsulation.invoke(transport, "hasWaitingPackets"));
+        assertEquals(0, (int) Deencapsulation.getField(transport, "waitingPacketsCount"));
+    }
+
     //Tests_SRS_IOTHUBTRANSPORT_34_043: [This function return true if and only if there are no packets in the waiting queue, in progress, or in the callbacks queue.]
     @Test
     public void isEmptyReturnsFalseIfInProgressMapNotEmpty()
@@ -1329,6 +1468,43 @@ public class IotHubTransportTest
         assertEquals("acknowledgeReceivedMessage", methodsCalled.toString());
     }
 
+    //Tests_SRS_IOTHUBTRANSPORT_41_040: [This function shall return the oldest received method message, if any, else the oldest received twin message, if any, else the oldest message of the receivedMessagesQueue.]
+    @Test
+    public void handleMessageHandlesMethodAndTwinMessagesBeforeOtherReceivedMessages() throws DeviceClientException
+    {
+        //arrange
+        final IotHubTransportMessage telemetryMessage = new IotHubTransportMessage("telemetry");
+        final IotHubTransportMessage twinMessage = new IotHubTransportMessage("twin");
+        final IotHubTransportMessage methodMessage = new IotHubTransportMessage("method");
+        final List<IotHubTransportMessage> handledMessages = new ArrayList<>();
+        new MockUp<IotHubTransport>()
+        {
+            @Mock void acknowledgeReceivedMessage(IotHubTransportMessage receivedMessage)
+            {
+                handledMessages.add(receivedMessage);
+            }
+        };
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Queue<IotHubTransportMessage> receivedMessagesQueue = Deencapsulation.getField(transport, "receivedMessagesQueue");
+        receivedMessagesQueue.add(telemetryMessage);
+        Queue<IotHubTransportMessage> receivedTwinMessagesQueue = Deencapsulation.getField(transport, "receivedTwinMessagesQueue");
+        receivedTwinMessagesQueue.add(twinMessage);
+        Queue<IotHubTransportMessage> receivedMethodMessagesQueue = Deencapsulation.getField(transport, "receivedMethodMessagesQueue");
+        receivedMethodMessagesQueue.add(methodMessage);
+
+        //act
+        transport.handleMessage();
+        transport.handleMessage();
+        transport.handleMessage();
+
+        //assert
+        assertEquals(3, handledMessages.size());
+        assertSame(methodMessage, handledMessages.get(0));
+        assertSame(twinMessage, handledMessages.get(1));
+        assertSame(telemetryMessage, handledMessages.get(2));
+    }
+
     //Tests_SRS_IOTHUBTRANSPORT_34_049: [If the provided callback is null, this function shall throw an IllegalArgumentException.]
     @Test (expected = IllegalArgumentException.class)
     public void registerConnectionStateCallbackThrowsForNullCallback()
@@ -2075,17 +2251,27 @@ public class IotHubTransportTest
     public void isMessageValidWithMessageNotExpiredAndValidSasToken()
     {
         //arrange
+        final StringBuilder methodsCalled = new StringBuilder();
+        new MockUp<IotHubTransport>()
+        {
+            @Mock void addToCallbackQueue(IotHubTransportPacket packet)
+            {
+                methodsCalled.append("addToCallbackQueue");
+            }
+
+            @Mock boolean isSasTokenExpired()
+            {
+                return false;
+            }
+        };
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        new NonStrictExpectations(IotHubTransport.class)
+        new NonStrictExpectations()
         {
             {
                 mockedPacket.getMessage();
                 result = mockedMessage;
                 mockedMessage.isExpired();
                 result = false;
-                Deencapsulation.invoke(transport, "addToCallbackQueue", new Class[] {IotHubTransportPacket.class}, mockedPacket);
-                Deencapsulation.invoke(transport, "isSasTokenExpired");
-                result = false;
             }
         };
 
@@ -2094,13 +2280,12 @@ public class IotHubTransportTest
 
         //assert
         assertTrue(ret);
+        assertFalse(methodsCalled.toString().contains("addToCallbackQueue"));
         new Verifications()
         {
             {
                 mockedPacket.setStatus(IotHubStatusCode.MESSAGE_EXPIRED);
                 times = 0;
-                Deencapsulation.invoke(transport, "addToCallbackQueue", new Class[] {IotHubTransportPacket.class}, mockedPacket);
-                times = 0;
             }
         };
     }
@@ -2836,6 +3021,8 @@ public class IotHubTransportTest
         };
     }
 
+    //Tests_SRS_IOTHUBTRANSPORT_41_007: [This function shall visit the expiring packets index in order of expiry time, and stop at the first packet that has not expired.]
+    //Tests_SRS_IOTHUBTRANSPORT_41_008: [If the expired packet is in progress, this function shall remove it from the in progress packets.]
     @Test
     public void sendMessagesChecksForExpiredMessagesInInProgressPackets()
     {
@@ -2848,16 +3035,20 @@ public class IotHubTransportTest
         Deencapsulation.setField(transport, "inProgressPackets", inProgressMessages);
         Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
         Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        NavigableSet<IotHubTransportPacket> expiringPackets = Deencapsulation.getField(transport, "expiringPackets");
 
         inProgressMessages.put("someMessageId", mockedPacket);
+        expiringPackets.add(mockedPacket);
 
-        new Expectations()
+        new NonStrictExpectations()
         {
             {
+                mockedPacket.getExpiryTimeMillis();
+                result = 1;
                 mockedPacket.getMessage();
                 result = mockedMessage;
-                mockedMessage.isExpired();
-                result = true;
+                mockedMessage.getMessageId();
+                result = "someMessageId";
             }
         };
 
@@ -2867,6 +3058,7 @@ public class IotHubTransportTest
         //assert
         assertTrue(callbackPacketsQueue.contains(mockedPacket));
         assertTrue(inProgressMessages.isEmpty());
+        assertTrue(expiringPackets.isEmpty());
         new Verifications()
         {
             {
@@ -2875,4 +3067,1097 @@ public class IotHubTransportTest
             }
         };
     }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_006: [This function shall discard dequeued packets that already expired while waiting, since their callbacks have already been queued.]
+    //Tests_SRS_IOTHUBTRANSPORT_41_009: [If the expired packet is not in progress, this function shall mark it to be discarded once it is dequeued from the waiting queue.]
+    @Test
+    public void sendMessagesDiscardsMessagesThatExpiredWhileWaiting()
+    {
+        //arrange
+        new MockUp<IotHubTransport>()
+        {
+            @Mock void sendPacket(IotHubTransportPacket packet)
+            {
+                fail("Expired packet should not have been sent");
+            }
+        };
+
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Queue<IotHubTransportPacket> callbackPacketsQueue = new ConcurrentLinkedQueue<>();
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        Deencapsulation.setField(transport, "callbackPacketsQueue", callbackPacketsQueue);
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        NavigableSet<IotHubTransportPacket> expiringPackets = Deencapsulation.getField(transport, "expiringPackets");
+
+        waitingPacketsQueue.add(mockedPacket);
+        expiringPackets.add(mockedPacket);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockedPacket.getExpiryTimeMillis();
+                result = 1;
+                mockedPacket.getMessage();
+                result = mockedMessage;
+                mockedMessage.getMessageId();
+                result = "someMessageId";
+            }
+        };
+
+        //act
+        transport.sendMessages();
+
+        //assert
+        assertEquals(1, callbackPacketsQueue.size());
+        assertTrue(waitingPacketsQueue.isEmpty());
+        assertTrue(expiringPackets.isEmpty());
+        Set<IotHubTransportPacket> expiredWaitingPackets = Deencapsulation.getField(transport, "expiredWaitingPackets");
+        assertTrue(expiredWaitingPackets.isEmpty());
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_007: [This function shall visit the expiring packets index in order of expiry time, and stop at the first packet that has not expired.]
+    @Test
+    public void sendMessagesDoesNotExpireMessagesBeforeTheirExpiryTime()
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Queue<IotHubTransportPacket> callbackPacketsQueue = new ConcurrentLinkedQueue<>();
+        Deencapsulation.setField(transport, "callbackPacketsQueue", callbackPacketsQueue);
+        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED_RETRYING);
+        NavigableSet<IotHubTransportPacket> expiringPackets = Deencapsulation.getField(transport, "expiringPackets");
+        expiringPackets.add(mockedPacket);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockedPacket.getExpiryTimeMillis();
+                result = Long.MAX_VALUE;
+            }
+        };
+
+        //act
+        transport.sendMessages();
+
+        //assert
+        assertTrue(callbackPacketsQueue.isEmpty());
+        assertTrue(expiringPackets.contains(mockedPacket));
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_010: [If the packet has an expiry time but is no longer in the expiring packets index, its callback has already been queued as expired, so this function shall do nothing.]
+    @Test
+    public void addToCallbackQueueIgnoresPacketsThatAlreadyExpired()
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Queue<IotHubTransportPacket> callbackPacketsQueue = new ConcurrentLinkedQueue<>();
+        Deencapsulation.setField(transport, "callbackPacketsQueue", callbackPacketsQueue);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockedPacket.getExpiryTimeMillis();
+                result = 1;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(transport, "addToCallbackQueue", mockedPacket);
+
+        //assert
+        assertTrue(callbackPacketsQueue.isEmpty());
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_005: [If the message has an expiry time, this function shall add the packet to the expiring packets index.]
+    @Test
+    public void addMessageIndexesMessagesWithExpiryTime()
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        NavigableSet<IotHubTransportPacket> expiringPackets = Deencapsulation.getField(transport, "expiringPackets");
+
+        new NonStrictExpectations()
+        {
+            {
+                new IotHubTransportPacket(mockedMessage, mockedEventCallback, any, null, anyLong);
+                result = mockedPacket;
+                mockedPacket.getExpiryTimeMillis();
+                result = 1234;
+            }
+        };
+
+        //act
+        transport.addMessage(mockedMessage, mockedEventCallback, new Object());
+
+        //assert
+        assertTrue(expiringPackets.contains(mockedPacket));
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_001: [This function shall notify any send thread waiting for send work.]
+    @Test
+    public void addMessageSignalsSendThread(final @Mocked ObjectLock mockedLock)
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+
+        //act
+        transport.addMessage(mockedMessage, mockedEventCallback, new Object());
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedLock.notifyLock();
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_002: [If there is no send work, this function shall wait on the send thread lock for up to the provided timeout.]
+    @Test
+    public void waitForSendWorkWaitsIfNoSendWork(final @Mocked ObjectLock mockedLock) throws InterruptedException
+    {
+        //arrange
+        final long timeoutMillis = 1234;
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+
+        //act
+        transport.waitForSendWork(timeoutMillis);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedLock.waitLock(timeoutMillis);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_002: [If there is no send work, this function shall wait on the send thread lock for up to the provided timeout.]
+    @Test
+    public void waitForSendWorkDoesNotWaitIfSendWork(final @Mocked ObjectLock mockedLock) throws InterruptedException
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        waitingPacketsQueue.add(mockedPacket);
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+
+        //act
+        transport.waitForSendWork(1234);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedLock.waitLock(anyLong);
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_003: [This function shall return true if the callback queue is not empty, or if the waiting queue is not empty and the connection status is CONNECTED.]
+    @Test
+    public void hasSendWorkReturnsTrueForWaitingPacketsWhenConnected()
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        waitingPacketsQueue.add(mockedPacket);
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+
+        //act
+        boolean hasSendWork = transport.hasSendWork();
+
+        //assert
+        assertTrue(hasSendWork);
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_003: [This function shall return true if the callback queue is not empty, or if the waiting queue is not empty and the connection status is CONNECTED.]
+    @Test
+    public void hasSendWorkReturnsFalseForWaitingPacketsWhenRetrying()
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED_RETRYING);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        waitingPacketsQueue.add(mockedPacket);
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+
+        //act
+        boolean hasSendWork = transport.hasSendWork();
+
+        //assert
+        assertFalse(hasSendWork);
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_003: [This function shall return true if the callback queue is not empty, or if the waiting queue is not empty and the connection status is CONNECTED.]
+    @Test
+    public void hasSendWorkReturnsTrueForCallbacksWhenRetrying()
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED_RETRYING);
+        Queue<IotHubTransportPacket> callbackPacketsQueue = new ConcurrentLinkedQueue<>();
+        callbackPacketsQueue.add(mockedPacket);
+        Deencapsulation.setField(transport, "callbackPacketsQueue", callbackPacketsQueue);
+
+        //act
+        boolean hasSendWork = transport.hasSendWork();
+
+        //assert
+        assertTrue(hasSendWork);
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_044: [This function continue to dequeue packets saved in the waiting
+    // queue and send them until connection status isn't CONNECTED or until 10 messages have been sent]
+    @Test
+    public void sendMessagesWithLimitSendsUpToLimit()
+    {
+        //arrange
+        new MockUp<IotHubTransport>()
+        {
+            @Mock void sendPacket(IotHubTransportPacket packet)
+            {
+                //do nothing
+            }
+        };
+
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < 100; i++)
+        {
+            waitingPacketsQueue.add(mockedPacket);
+        }
+
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+
+        //act
+        transport.sendMessages(Integer.MAX_VALUE);
+
+        //assert
+        assertTrue(waitingPacketsQueue.isEmpty());
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_011: [If there is no room for the message in the outbound queue, this function shall not queue the message, and shall add its packet to the callback queue with status OUTBOUND_QUEUE_FULL.]
+    //Tests_SRS_IOTHUBTRANSPORT_41_015: [If the overflow policy is REJECT, this function shall reject the packet.]
+    @Test
+    public void addMessageRejectsMessageIfOutboundQueueIsFull()
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "outboundQueueDepth", 1);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = Deencapsulation.getField(transport, "waitingPacketsQueue");
+        Queue<IotHubTransportPacket> callbackPacketsQueue = Deencapsulation.getField(transport, "callbackPacketsQueue");
+
+        new NonStrictExpectations()
+        {
+            {
+                new IotHubTransportPacket(mockedMessage, mockedEventCallback, any, null, anyLong);
+                result = mockedPacket;
+                mockedConfig.getMaxOutboundQueueMessages();
+                result = 1;
+                mockedConfig.getOutboundQueueOverflowPolicy();
+                result = OutboundQueueOverflowPolicy.REJECT;
+            }
+        };
+
+        //act
+        transport.addMessage(mockedMessage, mockedEventCallback, new Object());
+
+        //assert
+        assertTrue(waitingPacketsQueue.isEmpty());
+        assertEquals(1, callbackPacketsQueue.size());
+        assertEquals(1, transport.getOutboundQueueDepth());
+        new Verifications()
+        {
+            {
+                mockedPacket.setStatus(IotHubStatusCode.OUTBOUND_QUEUE_FULL);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_012: [If the message body is larger than the outbound queue byte limit, this function shall reject it regardless of the overflow policy.]
+    @Test
+    public void addMessageRejectsMessageLargerThanByteLimit()
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = Deencapsulation.getField(transport, "waitingPacketsQueue");
+
+        new NonStrictExpectations()
+        {
+            {
+                new IotHubTransportPacket(mockedMessage, mockedEventCallback, any, null, anyLong);
+                result = mockedPacket;
+                mockedPacket.getSizeInBytes();
+                result = 11;
+                mockedConfig.getMaxOutboundQueueBytes();
+                result = 10;
+                mockedConfig.getOutboundQueueOverflowPolicy();
+                result = OutboundQueueOverflowPolicy.DROP_OLDEST;
+            }
+        };
+
+        //act
+        transport.addMessage(mockedMessage, mockedEventCallback, new Object());
+
+        //assert
+        assertTrue(waitingPacketsQueue.isEmpty());
+        assertEquals(0, transport.getOutboundQueueSizeInBytes());
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_013: [If the overflow policy is DROP_OLDEST, this function shall drop the oldest waiting packets until there is room, and reject the packet if there are no waiting packets left to drop.]
+    @Test
+    public void addMessageDropsOldestWaitingMessageIfOutboundQueueIsFull(@Mocked final IotHubTransportPacket mockedOldestPacket)
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "outboundQueueDepth", 1);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = Deencapsulation.getField(transport, "waitingPacketsQueue");
+        waitingPacketsQueue.add(mockedOldestPacket);
+        Queue<IotHubTransportPacket> callbackPacketsQueue = Deencapsulation.getField(transport, "callbackPacketsQueue");
+
+        new NonStrictExpectations()
+        {
+            {
+                new IotHubTransportPacket(mockedMessage, mockedEventCallback, any, null, anyLong);
+                result = mockedPacket;
+                mockedConfig.getMaxOutboundQueueMessages();
+                result = 1;
+                mockedConfig.getOutboundQueueOverflowPolicy();
+                result = OutboundQueueOverflowPolicy.DROP_OLDEST;
+                mockedOldestPacket.getCallback();
+                result = mockedEventCallback;
+                mockedOldestPacket.getExpiryTimeMillis();
+                result = 0;
+            }
+        };
+
+        //act
+        transport.addMessage(mockedMessage, mockedEventCallback, new Object());
+
+        //assert
+        assertEquals(1, waitingPacketsQueue.size());
+        assertEquals(1, callbackPacketsQueue.size());
+        assertEquals(1, callbackPacketsQueue.size());
+        assertTrue(callbackPacketsQueue.contains(mockedOldestPacket));
+        assertEquals(1, transport.getOutboundQueueDepth());
+        new Verifications()
+        {
+            {
+                mockedOldestPacket.setStatus(IotHubStatusCode.OUTBOUND_QUEUE_FULL);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_013: [If the overflow policy is DROP_OLDEST, this function shall drop the oldest waiting packets until there is room, and reject the packet if there are no waiting packets left to drop.]
+    @Test
+    public void addMessageDropOldestRejectsMessageIfNothingIsWaiting()
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "outboundQueueDepth", 1);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = Deencapsulation.getField(transport, "waitingPacketsQueue");
+
+        new NonStrictExpectations()
+        {
+            {
+                new IotHubTransportPacket(mockedMessage, mockedEventCallback, any, null, anyLong);
+                result = mockedPacket;
+                mockedConfig.getMaxOutboundQueueMessages();
+                result = 1;
+                mockedConfig.getOutboundQueueOverflowPolicy();
+                result = OutboundQueueOverflowPolicy.DROP_OLDEST;
+            }
+        };
+
+        //act
+        transport.addMessage(mockedMessage, mockedEventCallback, new Object());
+
+        //assert
+        assertTrue(waitingPacketsQueue.isEmpty());
+        assertEquals(1, transport.getOutboundQueueDepth());
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_036: [Only telemetry packets shall hold room in the outbound queue. Twin and
+    // method packets shall be neither rejected nor dropped because of the outbound queue limits.]
+    @Test
+    public void addMessageDoesNotLimitTwinAndMethodMessages()
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "outboundQueueDepth", 1);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = Deencapsulation.getField(transport, "waitingPacketsQueue");
+
+        new NonStrictExpectations()
+        {
+            {
+                new IotHubTransportPacket(mockedTransportMessage, mockedEventCallback, any, null, anyLong);
+                result = mockedPacket;
+                mockedPacket.getMessage();
+                result = mockedTransportMessage;
+                mockedConfig.getMaxOutboundQueueMessages();
+                result = 1;
+                mockedConfig.getOutboundQueueOverflowPolicy();
+                result = OutboundQueueOverflowPolicy.REJECT;
+            }
+        };
+
+        //act
+        transport.addMessage(mockedTransportMessage, mockedEventCallback, new Object());
+
+        //assert
+        assertEquals(1, waitingPacketsQueue.size());
+        assertEquals(1, transport.getOutboundQueueDepth());
+        new Verifications()
+        {
+            {
+                mockedPacket.setStatus(IotHubStatusCode.OUTBOUND_QUEUE_FULL);
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_013: [If the overflow policy is DROP_OLDEST, this function shall drop the oldest waiting packets until there is room, and reject the packet if there are no waiting packets left to drop.]
+    //Tests_SRS_IOTHUBTRANSPORT_41_036: [Only telemetry packets shall hold room in the outbound queue. Twin and
+    // method packets shall be neither rejected nor dropped because of the outbound queue limits.]
+    @Test
+    public void addMessageDropOldestDoesNotDropWaitingTwinMessages(@Mocked final IotHubTransportPacket mockedTwinPacket,
+                                                                  @Mocked final IotHubTransportPacket mockedOldestPacket)
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "outboundQueueDepth", 1);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = Deencapsulation.getField(transport, "waitingPacketsQueue");
+        waitingPacketsQueue.add(mockedTwinPacket);
+        waitingPacketsQueue.add(mockedOldestPacket);
+        Queue<IotHubTransportPacket> callbackPacketsQueue = Deencapsulation.getField(transport, "callbackPacketsQueue");
+
+        new NonStrictExpectations()
+        {
+            {
+                new IotHubTransportPacket(mockedMessage, mockedEventCallback, any, null, anyLong);
+                result = mockedPacket;
+                mockedTwinPacket.getMessage();
+                result = mockedTransportMessage;
+                mockedOldestPacket.getMessage();
+                result = mockedMessage;
+                mockedConfig.getMaxOutboundQueueMessages();
+                result = 1;
+                mockedConfig.getOutboundQueueOverflowPolicy();
+                result = OutboundQueueOverflowPolicy.DROP_OLDEST;
+                mockedOldestPacket.getCallback();
+                result = mockedEventCallback;
+                mockedOldestPacket.getExpiryTimeMillis();
+                result = 0;
+            }
+        };
+
+        //act
+        transport.addMessage(mockedMessage, mockedEventCallback, new Object());
+
+        //assert
+        assertEquals(2, waitingPacketsQueue.size());
+        assertEquals(mockedTwinPacket, waitingPacketsQueue.peek());
+        assertTrue(callbackPacketsQueue.contains(mockedOldestPacket));
+        assertFalse(callbackPacketsQueue.contains(mockedTwinPacket));
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_014: [If the overflow policy is BLOCK, this function shall wait for room until the block timeout elapses or the transport is closed, and reject the packet if there is still no room.]
+    @Test
+    public void addMessageBlocksUntilThereIsRoom(final @Mocked ObjectLock mockedLock) throws InterruptedException
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "outboundQueueDepth", 1);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = Deencapsulation.getField(transport, "waitingPacketsQueue");
+
+        new NonStrictExpectations()
+        {
+            {
+                new IotHubTransportPacket(mockedMessage, mockedEventCallback, any, null, anyLong);
+                result = mockedPacket;
+                mockedConfig.getMaxOutboundQueueMessages();
+                result = 1;
+                mockedConfig.getOutboundQueueOverflowPolicy();
+                result = OutboundQueueOverflowPolicy.BLOCK;
+                mockedConfig.getOutboundQueueBlockTimeoutMillis();
+                result = 60000;
+                mockedLock.waitLock(anyLong);
+                result = new Delegate()
+                {
+                    void waitLock(long timeout)
+                    {
+                        Deencapsulation.setField(transport, "outboundQueueDepth", 0);
+                    }
+                };
+            }
+        };
+
+        //act
+        transport.addMessage(mockedMessage, mockedEventCallback, new Object());
+
+        //assert
+        assertEquals(1, waitingPacketsQueue.size());
+        assertEquals(1, transport.getOutboundQueueDepth());
+        new Verifications()
+        {
+            {
+                mockedLock.waitLock(anyLong);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_014: [If the overflow policy is BLOCK, this function shall wait for room until the block timeout elapses or the transport is closed, and reject the packet if there is still no room.]
+    @Test
+    public void addMessageBlockRejectsMessageOnceTimeoutElapses()
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "outboundQueueDepth", 1);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = Deencapsulation.getField(transport, "waitingPacketsQueue");
+
+        new NonStrictExpectations()
+        {
+            {
+                new IotHubTransportPacket(mockedMessage, mockedEventCallback, any, null, anyLong);
+                result = mockedPacket;
+                mockedConfig.getMaxOutboundQueueMessages();
+                result = 1;
+                mockedConfig.getOutboundQueueOverflowPolicy();
+                result = OutboundQueueOverflowPolicy.BLOCK;
+                mockedConfig.getOutboundQueueBlockTimeoutMillis();
+                result = 0;
+            }
+        };
+
+        //act
+        transport.addMessage(mockedMessage, mockedEventCallback, new Object());
+
+        //assert
+        assertTrue(waitingPacketsQueue.isEmpty());
+        new Verifications()
+        {
+            {
+                mockedPacket.setStatus(IotHubStatusCode.OUTBOUND_QUEUE_FULL);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_016: [When a packet is completed, this function shall release the room it held in the outbound queue and notify any thread blocked waiting for room.]
+    //Tests_SRS_IOTHUBTRANSPORT_41_017: [This function shall return the number of messages in the outbound queue.]
+    //Tests_SRS_IOTHUBTRANSPORT_41_018: [This function shall return the number of message body bytes in the outbound queue.]
+    @Test
+    public void addToCallbackQueueReleasesOutboundQueueRoom()
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "outboundQueueDepth", 2);
+        Deencapsulation.setField(transport, "outboundQueueSizeInBytes", 20L);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockedPacket.getSizeInBytes();
+                result = 10;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(transport, "addToCallbackQueue", mockedPacket);
+
+        //assert
+        assertEquals(1, transport.getOutboundQueueDepth());
+        assertEquals(10, transport.getOutboundQueueSizeInBytes());
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_020: [If there is a message spool, this function shall append telemetry messages to the spool instead of the waiting queue.]
+    @Test
+    public void addMessageAppendsTelemetryToMessageSpool(final @Mocked MessageSpool mockedSpool) throws IOException
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "messageSpool", mockedSpool);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = Deencapsulation.getField(transport, "waitingPacketsQueue");
+        Map<Long, Object> spooledMessageCallbacks = Deencapsulation.getField(transport, "spooledMessageCallbacks");
+
+        new NonStrictExpectations()
+        {
+            {
+                mockedSpool.append(mockedMessage);
+                result = 5L;
+            }
+        };
+
+        //act
+        transport.addMessage(mockedMessage, mockedEventCallback, new Object());
+
+        //assert
+        assertTrue(waitingPacketsQueue.isEmpty());
+        assertTrue(spooledMessageCallbacks.containsKey(5L));
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_021: [If the message cannot be appended to the spool, this function shall add its packet to the callback queue with status ERROR.]
+    @Test
+    public void addMessageCompletesMessageWithErrorIfItCannotBeSpooled(final @Mocked MessageSpool mockedSpool) throws IOException
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "messageSpool", mockedSpool);
+        Queue<IotHubTransportPacket> callbackPacketsQueue = Deencapsulation.getField(transport, "callbackPacketsQueue");
+
+        new NonStrictExpectations()
+        {
+            {
+                new IotHubTransportPacket(mockedMessage, mockedEventCallback, any, null, anyLong);
+                result = mockedPacket;
+                mockedSpool.append(mockedMessage);
+                result = new IOException();
+            }
+        };
+
+        //act
+        transport.addMessage(mockedMessage, mockedEventCallback, new Object());
+
+        //assert
+        assertEquals(1, callbackPacketsQueue.size());
+        new Verifications()
+        {
+            {
+                mockedPacket.setStatus(IotHubStatusCode.ERROR);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_022: [This function shall read spooled messages into the waiting queue in the order they were spooled, with the callbacks they were added with.]
+    @Test
+    public void sendMessagesReadsSpooledMessagesWithTheirCallbacks(final @Mocked MessageSpool mockedSpool) throws IOException
+    {
+        //arrange
+        final Object context = new Object();
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED_RETRYING);
+        Deencapsulation.setField(transport, "messageSpool", mockedSpool);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = Deencapsulation.getField(transport, "waitingPacketsQueue");
+        final MessageSpool.SpooledMessage spooledMessage = Deencapsulation.newInstance(MessageSpool.SpooledMessage.class, new Class[] {long.class, Message.class}, 5L, mockedMessage);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockedSpool.append(mockedMessage);
+                result = 5L;
+                mockedSpool.hasUnreadMessages();
+                result = true;
+                mockedSpool.read(anyInt);
+                result = Collections.singletonList(spooledMessage);
+            }
+        };
+
+        transport.addMessage(mockedMessage, mockedEventCallback, context);
+
+        //act
+        transport.sendMessages();
+
+        //assert
+        assertEquals(1, waitingPacketsQueue.size());
+        new Verifications()
+        {
+            {
+                new IotHubTransportPacket(mockedMessage, mockedEventCallback, context, null, anyLong);
+                times = 2;
+                mockedPacket.setSpoolRecordId(5L);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_025: [If the packet's message is spooled, and the packet was not cancelled on close, this function shall acknowledge the message in the spool so it is not sent again.]
+    @Test
+    public void addToCallbackQueueAcknowledgesSpooledMessage(final @Mocked MessageSpool mockedSpool)
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "messageSpool", mockedSpool);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockedPacket.getSpoolRecordId();
+                result = 5L;
+                mockedPacket.getStatus();
+                result = IotHubStatusCode.OK_EMPTY;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(transport, "addToCallbackQueue", mockedPacket);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedSpool.acknowledge(5L);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_025: [If the packet's message is spooled, and the packet was not cancelled on close, this function shall acknowledge the message in the spool so it is not sent again.]
+    @Test
+    public void addToCallbackQueueDoesNotAcknowledgeCancelledSpooledMessage(final @Mocked MessageSpool mockedSpool)
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "messageSpool", mockedSpool);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockedPacket.getSpoolRecordId();
+                result = 5L;
+                mockedPacket.getStatus();
+                result = IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(transport, "addToCallbackQueue", mockedPacket);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedSpool.acknowledge(anyLong);
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_024: [This function shall invoke the callbacks of messages that are still in the spool with status MESSAGE_CANCELLED_ONCLOSE, and leave the messages in the spool.]
+    @Test
+    public void closeMessageSpoolCancelsCallbacksOfSpooledMessages(final @Mocked MessageSpool mockedSpool) throws IOException
+    {
+        //arrange
+        final Object context = new Object();
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "messageSpool", mockedSpool);
+        transport.addMessage(mockedMessage, mockedEventCallback, context);
+
+        //act
+        Deencapsulation.invoke(transport, "closeMessageSpool");
+
+        //assert
+        assertNull(Deencapsulation.getField(transport, "messageSpool"));
+        new Verifications()
+        {
+            {
+                mockedEventCallback.execute(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, context);
+                times = 1;
+                mockedSpool.acknowledge(anyLong);
+                times = 0;
+                mockedSpool.close();
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_026: [If HTTPS batching is enabled, this function shall send the waiting telemetry in batches.]
+    //Tests_SRS_IOTHUBTRANSPORT_41_028: [This function shall add each dequeued telemetry message to the current batch until the batch holds the configured number of messages, or until the next message does not fit in it.]
+    //Tests_SRS_IOTHUBTRANSPORT_41_030: [This function shall send each batch over the saved HTTPS connection, which reports the status of the batch to every message in it.]
+    @Test
+    public void sendMessagesSendsTelemetryInHttpsBatchesOfConfiguredSize(final @Mocked HttpsBatchMessage mockedBatchMessage) throws TransportException, IotHubSizeExceededException
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < 5; i++)
+        {
+            waitingPacketsQueue.add(mockedPacket);
+        }
+
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getHttpsBatchMaxMessages();
+                result = 2;
+                mockedConfig.getHttpsBatchLingerMillis();
+                result = 0;
+                mockedPacket.getMessage();
+                result = mockedMessage;
+                mockedMessage.getMessageId();
+                result = "some message id";
+                mockedMessage.isExpired();
+                result = false;
+            }
+        };
+
+        //act
+        transport.sendMessages(Integer.MAX_VALUE);
+
+        //assert
+        assertTrue(waitingPacketsQueue.isEmpty());
+        new Verifications()
+        {
+            {
+                mockedBatchMessage.addMessage((HttpsSingleMessage) any);
+                times = 5;
+                mockedHttpsIotHubConnection.sendMessageBatch((HttpsBatchMessage) any, (List<Message>) any);
+                times = 3;
+                mockedHttpsIotHubConnection.sendMessage((Message) any);
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_028: [This function shall add each dequeued telemetry message to the current batch until the batch holds the configured number of messages, or until the next message does not fit in it.]
+    @Test
+    public void sendMessagesSendsHttpsBatchesLargerThanDefaultTimeSlice(final @Mocked HttpsBatchMessage mockedBatchMessage) throws TransportException, IotHubSizeExceededException
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < 30; i++)
+        {
+            waitingPacketsQueue.add(mockedPacket);
+        }
+
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getHttpsBatchMaxMessages();
+                result = 25;
+                mockedConfig.getHttpsBatchLingerMillis();
+                result = 0;
+                mockedPacket.getMessage();
+                result = mockedMessage;
+                mockedMessage.getMessageId();
+                result = "some message id";
+                mockedMessage.isExpired();
+                result = false;
+            }
+        };
+
+        //act
+        transport.sendMessages();
+
+        //assert
+        assertTrue(waitingPacketsQueue.isEmpty());
+        final List<List<Message>> batches = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockedBatchMessage.addMessage((HttpsSingleMessage) any);
+                times = 30;
+                mockedHttpsIotHubConnection.sendMessageBatch((HttpsBatchMessage) any, withCapture(batches));
+                times = 2;
+            }
+        };
+        assertEquals(25, batches.get(0).size());
+        assertEquals(5, batches.get(1).size());
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_028: [This function shall add each dequeued telemetry message to the current batch until the batch holds the configured number of messages, or until the next message does not fit in it.]
+    @Test
+    public void sendMessagesStartsNewHttpsBatchWhenMessageDoesNotFit(final @Mocked HttpsSingleMessage mockedSingleMessage) throws TransportException
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < 3; i++)
+        {
+            waitingPacketsQueue.add(mockedPacket);
+        }
+
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getHttpsBatchMaxMessages();
+                result = 10;
+                mockedPacket.getMessage();
+                result = mockedMessage;
+                mockedMessage.getMessageId();
+                result = "some message id";
+                mockedMessage.isExpired();
+                result = false;
+                HttpsSingleMessage.parseHttpsMessage(mockedMessage);
+                result = mockedSingleMessage;
+                mockedSingleMessage.getBody();
+                result = new byte[HttpsBatchMessage.SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES / 2];
+            }
+        };
+
+        //act
+        transport.sendMessages(Integer.MAX_VALUE);
+
+        //assert
+        assertTrue(waitingPacketsQueue.isEmpty());
+        new Verifications()
+        {
+            {
+                mockedHttpsIotHubConnection.sendMessageBatch((HttpsBatchMessage) any, (List<Message>) any);
+                times = 3;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_027: [This function shall not send a partial batch until its oldest message has waited for the configured linger time.]
+    //Tests_SRS_IOTHUBTRANSPORT_41_033: [This function shall not count waiting messages as send work while they are lingering for more messages to fill their HTTPS batch.]
+    @Test
+    public void sendMessagesLetsPartialHttpsBatchLinger() throws TransportException
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        waitingPacketsQueue.add(mockedPacket);
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getHttpsBatchMaxMessages();
+                result = 10;
+                mockedConfig.getHttpsBatchLingerMillis();
+                result = 60 * 1000;
+                mockedPacket.getStartTimeMillis();
+                result = System.currentTimeMillis();
+            }
+        };
+
+        //act
+        transport.sendMessages(Integer.MAX_VALUE);
+
+        //assert
+        assertEquals(1, waitingPacketsQueue.size());
+        assertFalse(transport.hasSendWork());
+        new Verifications()
+        {
+            {
+                mockedHttpsIotHubConnection.sendMessageBatch((HttpsBatchMessage) any, (List<Message>) any);
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_027: [This function shall not send a partial batch until its oldest message has waited for the configured linger time.]
+    @Test
+    public void sendMessagesSendsPartialHttpsBatchOnceLingerElapsed(final @Mocked HttpsBatchMessage mockedBatchMessage) throws TransportException
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        waitingPacketsQueue.add(mockedPacket);
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getHttpsBatchMaxMessages();
+                result = 10;
+                mockedConfig.getHttpsBatchLingerMillis();
+                result = 100;
+                mockedPacket.getStartTimeMillis();
+                result = System.currentTimeMillis() - 1000;
+                mockedPacket.getMessage();
+                result = mockedMessage;
+                mockedMessage.getMessageId();
+                result = "some message id";
+                mockedMessage.isExpired();
+                result = false;
+            }
+        };
+
+        //act
+        transport.sendMessages(Integer.MAX_VALUE);
+
+        //assert
+        assertTrue(waitingPacketsQueue.isEmpty());
+        new Verifications()
+        {
+            {
+                mockedHttpsIotHubConnection.sendMessageBatch((HttpsBatchMessage) any, (List<Message>) any);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_41_031: [If an exception is encountered while sending a batch, this function shall invoke handleMessageException with each packet in that batch.]
+    @Test
+    public void sendMessagesHandlesExceptionForEachPacketInHttpsBatch(final @Mocked HttpsBatchMessage mockedBatchMessage) throws TransportException
+    {
+        //arrange
+        final List<IotHubTransportPacket> handledPackets = new ArrayList<>();
+        new MockUp<IotHubTransport>()
+        {
+            @Mock void handleMessageException(IotHubTransportPacket packet, TransportException transportException)
+            {
+                handledPackets.add(packet);
+            }
+        };
+
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        waitingPacketsQueue.add(mockedPacket);
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+        Map<String, IotHubTransportPacket> inProgressPackets = Deencapsulation.getField(transport, "inProgressPackets");
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getHttpsBatchMaxMessages();
+                result = 10;
+                mockedPacket.getMessage();
+                result = mockedMessage;
+                mockedMessage.getMessageId();
+                result = "some message id";
+                mockedMessage.isExpired();
+                result = false;
+                mockedHttpsIotHubConnection.sendMessageBatch((HttpsBatchMessage) any, (List<Message>) any);
+                result = mockedTransportException;
+            }
+        };
+
+        //act
+        transport.sendMessages(Integer.MAX_VALUE);
+
+        //assert
+        assertEquals(1, handledPackets.size());
+        assertEquals(mockedPacket, handledPackets.get(0));
+        assertTrue(inProgressPackets.isEmpty());
+    }
 }
@@ -0,0 +1,246 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.transport.MessageSpool;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for MessageSpool. These use real segment files in a temporary folder, since the spool is only useful
+ * for what it leaves on disk.
+ */
+public class MessageSpoolTest
+{
+    private static final int SEGMENT_SIZE = MessageSpool.MIN_SEGMENT_SIZE_IN_BYTES;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static List<String> readBodies(MessageSpool spool, boolean acknowledge)
+    {
+        List<String> bodies = new ArrayList<>();
+        for (MessageSpool.SpooledMessage spooledMessage : spool.read(Integer.MAX_VALUE))
+        {
+            bodies.add(new String(spooledMessage.getMessage().getBytes()));
+            if (acknowledge)
+            {
+                spool.acknowledge(spooledMessage.getRecordId());
+            }
+        }
+
+        return bodies;
+    }
+
+    // Tests_SRS_MESSAGESPOOL_41_001: [If the provided directory is null, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForNullDirectory() throws IOException
+    {
+        new MessageSpool(null, SEGMENT_SIZE);
+    }
+
+    // Tests_SRS_MESSAGESPOOL_41_002: [If the provided segment size is smaller than MIN_SEGMENT_SIZE_IN_BYTES, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForSmallSegmentSize() throws IOException
+    {
+        new MessageSpool(temporaryFolder.getRoot(), SEGMENT_SIZE - 1);
+    }
+
+    // Tests_SRS_MESSAGESPOOL_41_007: [This function shall return the pending records after the read position in the order they were appended, and skip acknowledged records.]
+    @Test
+    public void readReturnsMessagesInOrderWithTheirProperties() throws IOException
+    {
+        //arrange
+        MessageSpool spool = new MessageSpool(temporaryFolder.getRoot(), SEGMENT_SIZE);
+        Message message = new Message("first");
+        message.setMessageId("some message id");
+        message.setCorrelationId("some correlation id");
+        message.setProperty("some property", "some value");
+        message.setContentEncoding("utf-8");
+        message.setAbsoluteExpiryTime(1234);
+        spool.append(message);
+        spool.append(new Message("second"));
+
+        //act
+        List<MessageSpool.SpooledMessage> spooledMessages = spool.read(10);
+
+        //assert
+        assertEquals(2, spooledMessages.size());
+        Message actual = spooledMessages.get(0).getMessage();
+        assertEquals("first", new String(actual.getBytes()));
+        assertEquals("some message id", actual.getMessageId());
+        assertEquals("some correlation id", actual.getCorrelationId());
+        assertEquals("some value", actual.getProperty("some property"));
+        assertEquals("utf-8", actual.getContentEncoding());
+        assertEquals(message.getContentType(), actual.getContentType());
+        assertEquals(1234, actual.getExpiryTime());
+        assertEquals("second", new String(spooledMessages.get(1).getMessage().getBytes()));
+        assertFalse(spool.hasUnreadMessages());
+    }
+
+    // Tests_SRS_MESSAGESPOOL_41_007: [This function shall return the pending records after the read position in the order they were appended, and skip acknowledged records.]
+    // Tests_SRS_MESSAGESPOOL_41_009: [This function shall return true if the read position is before the end of the last segment.]
+    @Test
+    public void readReturnsAtMostTheRequestedNumberOfMessages() throws IOException
+    {
+        //arrange
+        MessageSpool spool = new MessageSpool(temporaryFolder.getRoot(), SEGMENT_SIZE);
+        spool.append(new Message("first"));
+        spool.append(new Message("second"));
+
+        //act
+        List<MessageSpool.SpooledMessage> spooledMessages = spool.read(1);
+
+        //assert
+        assertEquals(1, spooledMessages.size());
+        assertTrue(spool.hasUnreadMessages());
+    }
+
+    // Tests_SRS_MESSAGESPOOL_41_003: [The constructor shall recover the segments left in the directory in order, counting the records that were not acknowledged, and ignoring any partly written record at their end.]
+    // Tests_SRS_MESSAGESPOOL_41_010: [This function shall mark the record as acknowledged, and delete its segment once every record in it was acknowledged and the segment is no longer being written or read.]
+    @Test
+    public void newSpoolReplaysMessagesThatWereNotAcknowledged() throws IOException
+    {
+        //arrange
+        MessageSpool spool = new MessageSpool(temporaryFolder.getRoot(), SEGMENT_SIZE);
+        long firstRecordId = spool.append(new Message("first"));
+        spool.append(new Message("second"));
+        spool.append(new Message("third"));
+        spool.acknowledge(firstRecordId);
+        spool.close();
+
+        //act
+        MessageSpool recoveredSpool = new MessageSpool(temporaryFolder.getRoot(), SEGMENT_SIZE);
+
+        //assert
+        List<String> bodies = readBodies(recoveredSpool, false);
+        assertEquals(2, bodies.size());
+        assertEquals("second", bodies.get(0));
+        assertEquals("third", bodies.get(1));
+    }
+
+    // Tests_SRS_MESSAGESPOOL_41_003: [The constructor shall recover the segments left in the directory in order, counting the records that were not acknowledged, and ignoring any partly written record at their end.]
+    // Tests_SRS_MESSAGESPOOL_41_006: [This function shall write the record state, checksum and payload before the record length, so that a partly written record is never read back.]
+    @Test
+    public void newSpoolIgnoresRecordThatWasPartlyWrittenWhenTheProcessDied() throws IOException
+    {
+        //arrange
+        MessageSpool spool = new MessageSpool(temporaryFolder.getRoot(), SEGMENT_SIZE);
+        spool.append(new Message("first"));
+        long secondRecordId = spool.append(new Message("second"));
+
+        // the spool is never closed, as if the process died while the second record was being written
+        File[] segmentFiles = temporaryFolder.getRoot().listFiles();
+        assertNotNull(segmentFiles);
+        assertEquals(1, segmentFiles.length);
+        try (RandomAccessFile segmentFile = new RandomAccessFile(segmentFiles[0], "rw"))
+        {
+            int payloadPosition = (int) secondRecordId + 9;
+            segmentFile.seek(payloadPosition);
+            segmentFile.write(~segmentFile.read());
+        }
+
+        //act
+        MessageSpool recoveredSpool = new MessageSpool(temporaryFolder.getRoot(), SEGMENT_SIZE);
+        recoveredSpool.append(new Message("third"));
+
+        //assert
+        List<String> bodies = readBodies(recoveredSpool, false);
+        assertEquals(2, bodies.size());
+        assertEquals("first", bodies.get(0));
+        assertEquals("third", bodies.get(1));
+    }
+
+    // Tests_SRS_MESSAGESPOOL_41_013: [The constructor shall skip any file in the directory that is named like a segment but is not one.]
+    @Test
+    public void newSpoolSkipsFilesThatAreNamedLikeSegments() throws IOException
+    {
+        //arrange
+        MessageSpool spool = new MessageSpool(temporaryFolder.getRoot(), SEGMENT_SIZE);
+        spool.append(new Message("first"));
+        spool.close();
+        assertTrue(new File(temporaryFolder.getRoot(), "segment-backup.spool").createNewFile());
+        assertTrue(new File(temporaryFolder.getRoot(), "segment-.spool").createNewFile());
+        assertTrue(new File(temporaryFolder.getRoot(), "segment-0000000000000000099.spool").mkdir());
+
+        //act
+        MessageSpool recoveredSpool = new MessageSpool(temporaryFolder.getRoot(), SEGMENT_SIZE);
+        recoveredSpool.append(new Message("second"));
+
+        //assert
+        List<String> bodies = readBodies(recoveredSpool, false);
+        assertEquals(2, bodies.size());
+        assertEquals("first", bodies.get(0));
+        assertEquals("second", bodies.get(1));
+    }
+
+    // Tests_SRS_MESSAGESPOOL_41_011: [This function shall flush the segment being written to disk.]
+    // Tests_SRS_MESSAGESPOOL_41_012: [This function shall close the file of every segment.]
+    @Test
+    public void closeKeepsMessagesForTheNextSpool() throws IOException
+    {
+        //arrange
+        MessageSpool spool = new MessageSpool(temporaryFolder.getRoot(), SEGMENT_SIZE);
+        for (int i = 0; i < 30; i++)
+        {
+            spool.append(new Message(new byte[200]));
+        }
+
+        //act
+        spool.close();
+
+        //assert
+        assertTrue(readBodies(spool, false).isEmpty());
+        assertEquals(30, readBodies(new MessageSpool(temporaryFolder.getRoot(), SEGMENT_SIZE), false).size());
+    }
+
+    // Tests_SRS_MESSAGESPOOL_41_005: [If the message does not fit in the current segment, this function shall flush the current segment to disk and start a new segment.]
+    // Tests_SRS_MESSAGESPOOL_41_010: [This function shall mark the record as acknowledged, and delete its segment once every record in it was acknowledged and the segment is no longer being written or read.]
+    @Test
+    public void acknowledgedSegmentsAreDeleted() throws IOException
+    {
+        //arrange
+        MessageSpool spool = new MessageSpool(temporaryFolder.getRoot(), SEGMENT_SIZE);
+        int messageCount = 100;
+        for (int i = 0; i < messageCount; i++)
+        {
+            spool.append(new Message(new byte[200]));
+        }
+
+        File[] segmentFiles = temporaryFolder.getRoot().listFiles();
+        assertNotNull(segmentFiles);
+        assertTrue(segmentFiles.length > 1);
+
+        //act
+        List<String> bodies = readBodies(spool, true);
+
+        //assert
+        assertEquals(messageCount, bodies.size());
+        segmentFiles = temporaryFolder.getRoot().listFiles();
+        assertNotNull(segmentFiles);
+        assertEquals(1, segmentFiles.length);
+        assertTrue(readBodies(new MessageSpool(temporaryFolder.getRoot(), SEGMENT_SIZE), false).isEmpty());
+    }
+
+    // Tests_SRS_MESSAGESPOOL_41_004: [If the message does not fit in a single segment, this function shall throw an IOException.]
+    @Test (expected = IOException.class)
+    public void appendThrowsIfMessageDoesNotFitInASegment() throws IOException
+    {
+        //arrange
+        MessageSpool spool = new MessageSpool(temporaryFolder.getRoot(), SEGMENT_SIZE);
+
+        //act
+        spool.append(new Message(new byte[SEGMENT_SIZE]));
+    }
+}
@@ -0,0 +1,141 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsBatchBuffer;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.codec.AMQPDefinedTypes;
+import org.apache.qpid.proton.codec.DecoderImpl;
+import org.apache.qpid.proton.codec.EncoderImpl;
+import org.apache.qpid.proton.message.Message;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for AmqpsBatchBuffer. These use real Proton messages, since the batch is only useful for the bytes
+ * Proton encodes into it.
+ */
+public class AmqpsBatchBufferTest
+{
+    private static Message createMessage(String messageId, int bodySize)
+    {
+        Message message = Proton.message();
+        message.setMessageId(messageId);
+        message.setBody(new Data(new Binary(new byte[bodySize])));
+        return message;
+    }
+
+    // Decodes each data section of the batch back into the message it holds
+    private static List<Message> decode(AmqpsBatchBuffer batchBuffer)
+    {
+        DecoderImpl decoder = new DecoderImpl();
+        AMQPDefinedTypes.registerAllTypes(decoder, new EncoderImpl(decoder));
+        ByteBuffer buffer = ByteBuffer.wrap(batchBuffer.getBuffer(), 0, batchBuffer.getLength());
+        decoder.setByteBuffer(buffer);
+
+        List<Message> messages = new ArrayList<>();
+        while (buffer.hasRemaining())
+        {
+            Binary encodedMessage = ((Data) decoder.readObject()).getValue();
+            Message message = Proton.message();
+            message.decode(encodedMessage.getArray(), encodedMessage.getArrayOffset(), encodedMessage.getLength());
+            messages.add(message);
+        }
+
+        return messages;
+    }
+
+    // Tests_SRS_AMQPSBATCHBUFFER_41_002: [If the message is null, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void addThrowsForNullMessage()
+    {
+        new AmqpsBatchBuffer().add(null);
+    }
+
+    // Tests_SRS_AMQPSBATCHBUFFER_41_003: [This function shall write the encoded message as a data section after the messages already in the batch.]
+    // Tests_SRS_AMQPSBATCHBUFFER_41_005: [This function shall return the length of the batch.]
+    // Tests_SRS_AMQPSBATCHBUFFER_41_006: [This function shall return the number of messages in the batch.]
+    @Test
+    public void addWritesEachMessageAsDataSection()
+    {
+        //arrange
+        AmqpsBatchBuffer batchBuffer = new AmqpsBatchBuffer();
+
+        //act
+        assertTrue(batchBuffer.add(createMessage("first", 10)));
+        assertTrue(batchBuffer.add(createMessage("second", 20000)));
+        assertTrue(batchBuffer.add(createMessage("third", 30)));
+
+        //assert
+        assertEquals(3, batchBuffer.getMessageCount());
+        List<Message> messages = decode(batchBuffer);
+        assertEquals(3, messages.size());
+        assertEquals("first", messages.get(0).getMessageId());
+        assertEquals(10, ((Data) messages.get(0).getBody()).getValue().getLength());
+        assertEquals("second", messages.get(1).getMessageId());
+        assertEquals(20000, ((Data) messages.get(1).getBody()).getValue().getLength());
+        assertEquals("third", messages.get(2).getMessageId());
+        assertEquals(30, ((Data) messages.get(2).getBody()).getValue().getLength());
+    }
+
+    // Tests_SRS_AMQPSBATCHBUFFER_41_004: [If the batch is not empty and would no longer fit in a single message to IoT Hub, this function shall leave the batch as it was and return false.]
+    @Test
+    public void addReturnsFalseWhenBatchIsFull()
+    {
+        //arrange
+        AmqpsBatchBuffer batchBuffer = new AmqpsBatchBuffer();
+        assertTrue(batchBuffer.add(createMessage("first", 200 * 1024)));
+        int length = batchBuffer.getLength();
+
+        //act
+        boolean added = batchBuffer.add(createMessage("second", 100 * 1024));
+
+        //assert
+        assertFalse(added);
+        assertEquals(length, batchBuffer.getLength());
+        assertEquals(1, batchBuffer.getMessageCount());
+        assertEquals("first", decode(batchBuffer).get(0).getMessageId());
+    }
+
+    // Tests_SRS_AMQPSBATCHBUFFER_41_004: [If the batch is not empty and would no longer fit in a single message to IoT Hub, this function shall leave the batch as it was and return false.]
+    @Test
+    public void addAcceptsOversizedMessageIntoEmptyBatch()
+    {
+        //arrange
+        AmqpsBatchBuffer batchBuffer = new AmqpsBatchBuffer();
+
+        //act
+        boolean added = batchBuffer.add(createMessage("large", AmqpsBatchBuffer.MAX_BATCH_SIZE_IN_BYTES));
+
+        //assert
+        assertTrue(added);
+        assertEquals(1, batchBuffer.getMessageCount());
+        assertEquals(AmqpsBatchBuffer.MAX_BATCH_SIZE_IN_BYTES, ((Data) decode(batchBuffer).get(0).getBody()).getValue().getLength());
+    }
+
+    // Tests_SRS_AMQPSBATCHBUFFER_41_001: [This function shall empty the batch.]
+    @Test
+    public void clearEmptiesBatch()
+    {
+        //arrange
+        AmqpsBatchBuffer batchBuffer = new AmqpsBatchBuffer();
+        batchBuffer.add(createMessage("first", 10));
+
+        //act
+        batchBuffer.clear();
+
+        //assert
+        assertEquals(0, batchBuffer.getLength());
+        assertEquals(0, batchBuffer.getMessageCount());
+        assertTrue(batchBuffer.add(createMessage("second", 10)));
+        assertEquals("second", decode(batchBuffer).get(0).getMessageId());
+    }
+}
@@ -0,0 +1,51 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsDeliveryTag;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for AmqpsDeliveryTag
+ */
+public class AmqpsDeliveryTagTest
+{
+    // Tests_SRS_AMQPSDELIVERYTAG_41_001: [This function shall encode the counter in SIZE_IN_BYTES bytes, most significant byte first.]
+    @Test
+    public void fromIntEncodesBigEndian()
+    {
+        //act
+        byte[] deliveryTag = AmqpsDeliveryTag.fromInt(0x01020304);
+
+        //assert
+        assertArrayEquals(new byte[] {1, 2, 3, 4}, deliveryTag);
+    }
+
+    // Tests_SRS_AMQPSDELIVERYTAG_41_003: [This function shall decode the counter encoded by fromInt.]
+    @Test
+    public void toIntDecodesFromInt()
+    {
+        for (int counter : new int[] {0, 12, 255, 256, Integer.MAX_VALUE, -1})
+        {
+            assertEquals(counter, AmqpsDeliveryTag.toInt(AmqpsDeliveryTag.fromInt(counter)));
+        }
+    }
+
+    // Tests_SRS_AMQPSDELIVERYTAG_41_002: [If the delivery tag is null or not SIZE_IN_BYTES long, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void toIntThrowsForNullTag()
+    {
+        AmqpsDeliveryTag.toInt(null);
+    }
+
+    // Tests_SRS_AMQPSDELIVERYTAG_41_002: [If the delivery tag is null or not SIZE_IN_BYTES long, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void toIntThrowsForTagOfWrongLength()
+    {
+        AmqpsDeliveryTag.toInt("12".getBytes());
+    }
+}
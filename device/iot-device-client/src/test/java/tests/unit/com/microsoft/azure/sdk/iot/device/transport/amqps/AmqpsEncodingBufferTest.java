@@ -0,0 +1,99 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsEncodingBuffer;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.message.Message;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for AmqpsEncodingBuffer. These use real Proton messages, since the buffer is only useful for the bytes
+ * Proton encodes into it.
+ */
+public class AmqpsEncodingBufferTest
+{
+    private static Message createMessage(int bodySize)
+    {
+        Message message = Proton.message();
+        message.setMessageId("some message id");
+        message.setBody(new Data(new Binary(new byte[bodySize])));
+        return message;
+    }
+
+    private static Message decode(AmqpsEncodingBuffer encodingBuffer, int length)
+    {
+        Message message = Proton.message();
+        message.decode(encodingBuffer.getBuffer(), 0, length);
+        return message;
+    }
+
+    // Tests_SRS_AMQPSENCODINGBUFFER_41_001: [If the message is null, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void encodeThrowsForNullMessage()
+    {
+        new AmqpsEncodingBuffer().encode(null);
+    }
+
+    // Tests_SRS_AMQPSENCODINGBUFFER_41_003: [This function shall encode the message at the start of the buffer and return the encoded length.]
+    @Test
+    public void encodeReusesBufferForSmallMessages()
+    {
+        //arrange
+        AmqpsEncodingBuffer encodingBuffer = new AmqpsEncodingBuffer();
+        encodingBuffer.encode(createMessage(100));
+        byte[] firstBuffer = encodingBuffer.getBuffer();
+
+        //act
+        int length = encodingBuffer.encode(createMessage(10));
+
+        //assert
+        assertSame(firstBuffer, encodingBuffer.getBuffer());
+        Message decoded = decode(encodingBuffer, length);
+        assertEquals("some message id", decoded.getMessageId());
+        assertEquals(10, ((Data) decoded.getBody()).getValue().getLength());
+    }
+
+    // Tests_SRS_AMQPSENCODINGBUFFER_41_002: [If the estimated encoded size of the message is larger than the buffer, this function shall replace the buffer with one of the estimated size before encoding.]
+    @Test
+    public void encodeGrowsBufferForLargeDataBody()
+    {
+        //arrange
+        AmqpsEncodingBuffer encodingBuffer = new AmqpsEncodingBuffer();
+        int bodySize = 256 * 1024;
+
+        //act
+        int length = encodingBuffer.encode(createMessage(bodySize));
+
+        //assert
+        assertTrue(encodingBuffer.getBuffer().length >= length);
+        assertTrue(encodingBuffer.getBuffer().length < 2 * bodySize);
+        assertEquals(bodySize, ((Data) decode(encodingBuffer, length).getBody()).getValue().getLength());
+    }
+
+    // Tests_SRS_AMQPSENCODINGBUFFER_41_004: [If the message does not fit, this function shall double the buffer and encode the message again.]
+    @Test
+    public void encodeDoublesBufferForBodyItCannotEstimate()
+    {
+        //arrange
+        AmqpsEncodingBuffer encodingBuffer = new AmqpsEncodingBuffer();
+        char[] body = new char[4 * AmqpsEncodingBuffer.INITIAL_SIZE_IN_BYTES];
+        Arrays.fill(body, 'a');
+        Message message = Proton.message();
+        message.setBody(new AmqpValue(new String(body)));
+
+        //act
+        int length = encodingBuffer.encode(message);
+
+        //assert
+        assertEquals(new String(body), ((AmqpValue) decode(encodingBuffer, length).getBody()).getValue());
+    }
+}
@@ -38,7 +38,9 @@ import org.junit.Test;
 
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.*;
@@ -600,7 +602,7 @@ public class AmqpsIotHubConnectionTest {
         new NonStrictExpectations()
         {
             {
-                new IotHubReactor((Reactor) any);
+                new IotHubReactor((Reactor) any, (Runnable) any);
                 result = new IOException();
             }
         };
@@ -610,6 +612,7 @@ public class AmqpsIotHubConnectionTest {
     }
 
     // Tests_SRS_AMQPSIOTHUBCONNECTION_15_009: [The function shall trigger the Reactor (Proton) to begin running.]
+    //Tests_SRS_AMQPSIOTHUBCONNECTION_41_001: [The function shall run the reactor with a process task that sends the queued messages.]
     @Test
     public void openTriggersProtonReactor(@Mocked final Reactor mockedReactor) throws TransportException, InterruptedException
     {
@@ -649,7 +652,7 @@ public class AmqpsIotHubConnectionTest {
         new Verifications()
         {
             {
-                new IotHubReactor((Reactor)any);
+                new IotHubReactor((Reactor) any, (Runnable) any);
                 times = 1;
             }
         };
@@ -905,7 +908,6 @@ public class AmqpsIotHubConnectionTest {
     {
         baseExpectations();
 
-        final int sendPeriod = Deencapsulation.getField(AmqpsIotHubConnection.class, "SEND_MESSAGES_PERIOD_MILLIS");
         final int expectedSasTokenRenewalPeriod = 444;
 
         new NonStrictExpectations()
@@ -933,7 +935,8 @@ public class AmqpsIotHubConnectionTest {
         {
             {
                 mockEvent.getReactor();
-                mockReactor.schedule(sendPeriod, connection);
+                mockReactor.schedule(anyInt, connection);
+                times = 0;
                 mockReactor.schedule(expectedSasTokenRenewalPeriod, mockAmqpSasTokenRenewalHandler);
                 mockReactor.connectionToHost(anyString, anyInt, connection);
             }
@@ -990,7 +993,6 @@ public class AmqpsIotHubConnectionTest {
     {
         baseExpectations();
 
-        final int sendPeriod = Deencapsulation.getField(AmqpsIotHubConnection.class, "SEND_MESSAGES_PERIOD_MILLIS");
         final int expectedSasTokenRenewalPeriod = 444;
 
         new NonStrictExpectations()
@@ -1018,7 +1020,8 @@ public class AmqpsIotHubConnectionTest {
         {
             {
                 mockEvent.getReactor();
-                mockReactor.schedule(sendPeriod, connection);
+                mockReactor.schedule(anyInt, connection);
+                times = 0;
 
                 mockReactor.schedule(expectedSasTokenRenewalPeriod, mockAmqpSasTokenRenewalHandler);
                 times = 0;
@@ -1409,7 +1412,7 @@ public class AmqpsIotHubConnectionTest {
                 result = false;
 
                 mockDelivery.getTag();
-                result = "12".getBytes();
+                result = AmqpsDeliveryTag.fromInt(12);
 
                 mockSender.head();
                 result = null;
@@ -1473,7 +1476,7 @@ public class AmqpsIotHubConnectionTest {
                 times = 2;
 
                 mockDelivery.getTag();
-                result = "12".getBytes();
+                result = AmqpsDeliveryTag.fromInt(12);
 
                 mockSender.getSource();
                 result = mockSource;
@@ -1500,7 +1503,7 @@ public class AmqpsIotHubConnectionTest {
                 times = 2;
 
                 mockDelivery.getTag();
-                result = "12".getBytes();
+                result = AmqpsDeliveryTag.fromInt(12);
 
                 mockSender.getSource();
                 result = mockSource;
@@ -1569,7 +1572,7 @@ public class AmqpsIotHubConnectionTest {
                 result = mockSender;
 
                 mockDelivery.getTag();
-                result = "12".getBytes();
+                result = AmqpsDeliveryTag.fromInt(12);
 
                 mockSender.head();
                 result = null;
@@ -1646,7 +1649,7 @@ public class AmqpsIotHubConnectionTest {
                 result = mockSender;
 
                 mockDelivery.getTag();
-                result = "12".getBytes();
+                result = AmqpsDeliveryTag.fromInt(12);
 
                 mockSender.head();
                 result = null;
@@ -1728,7 +1731,7 @@ public class AmqpsIotHubConnectionTest {
                 result = mockSender;
 
                 mockDelivery.getTag();
-                result = "12".getBytes();
+                result = AmqpsDeliveryTag.fromInt(12);
 
                 mockSender.head();
                 result = null;
@@ -1810,7 +1813,7 @@ public class AmqpsIotHubConnectionTest {
                 result = mockSender;
 
                 mockDelivery.getTag();
-                result = "12".getBytes();
+                result = AmqpsDeliveryTag.fromInt(12);
 
                 mockSender.head();
                 result = null;
@@ -1889,7 +1892,7 @@ public class AmqpsIotHubConnectionTest {
                 result = mockSender;
 
                 mockDelivery.getTag();
-                result = "12".getBytes();
+                result = AmqpsDeliveryTag.fromInt(12);
 
                 mockSender.head();
                 result = null;
@@ -2484,6 +2487,55 @@ public class AmqpsIotHubConnectionTest {
         assertEquals(1, messagesToSend.size());
     }
 
+    //Tests_SRS_AMQPSIOTHUBCONNECTION_41_002: [If the reactor is running and was not woken up yet since it last sent the queued messages, the function shall wake it up.]
+    @Test
+    public void sendMessageWakesUpReactorOnceForQueuedMessages() throws TransportException
+    {
+        //arrange
+        baseExpectations();
+        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
+        Deencapsulation.setField(connection, "reactor", mockReactor);
+
+        //act
+        connection.sendMessage(mockIoTMessage);
+        connection.sendMessage(mockIoTMessage);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockReactor.wakeup();
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_AMQPSIOTHUBCONNECTION_41_003: [The function shall allow the next queued message to wake up the reactor again.]
+    @Test
+    public void sendMessageWakesUpReactorAgainAfterQueuedMessagesWereProcessed() throws TransportException
+    {
+        //arrange
+        baseExpectations();
+        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
+        Deencapsulation.setField(connection, "reactor", mockReactor);
+        Deencapsulation.setField(connection, "messagesToSend", new ConcurrentLinkedQueue<>());
+        connection.sendMessage(mockIoTMessage);
+        Deencapsulation.setField(connection, "messagesToSend", new ConcurrentLinkedQueue<>());
+        Deencapsulation.invoke(connection, "processOutgoingMessages");
+
+        //act
+        connection.sendMessage(mockIoTMessage);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockReactor.wakeup();
+                times = 2;
+            }
+        };
+    }
+
     // Tests_SRS_AMQPSTRANSPORT_34_094: [This function shall return the saved connection id.]
     @Test
     public void getConnectionIdReturnsSavedConnectionId() throws TransportException
@@ -3175,42 +3227,67 @@ public class AmqpsIotHubConnectionTest {
     }
 
     @Test
-    public void onTimerTaskSchedulesNextTimerTask() throws TransportException
+    public void processOutgoingMessagesSendsQueuedMessages() throws TransportException
     {
+        //arrange
+        final String expectedConnectionDeviceId = "1234";
+        Queue<com.microsoft.azure.sdk.iot.device.Message> messagesToSend = new ConcurrentLinkedQueue<>();
+        messagesToSend.add(mockIoTMessage);
+        messagesToSend.add(mockIoTMessage);
+
         baseExpectations();
 
-        final int sendPeriod = Deencapsulation.getField(AmqpsIotHubConnection.class, "SEND_MESSAGES_PERIOD_MILLIS");
-        final int expectedSasTokenRenewalPeriod = 444;
+        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
 
-        new NonStrictExpectations()
+        Deencapsulation.setField(connection, "messagesToSend", messagesToSend);
+        Deencapsulation.setField(connection, "amqpsSessionManager", mockAmqpsSessionManager);
+        Deencapsulation.setField(connection, "state", IotHubConnectionStatus.CONNECTED);
+
+        new Expectations()
         {
             {
-                mockEvent.getReactor();
-                result = mockReactor;
-                mockReactor.connectionToHost(anyString, anyInt, (Handler) any);
-                mockConfig.getSasTokenAuthentication();
-                result = mockIotHubSasTokenAuthenticationProvider;
-                mockIotHubSasTokenAuthenticationProvider.getMillisecondsBeforeProactiveRenewal();
-                result = expectedSasTokenRenewalPeriod;
-            }
-        };
+                //first message
+                Deencapsulation.invoke(mockAmqpsSessionManager, "convertToProton", mockIoTMessage);
+                result = mockedAmqpsConvertToProtonReturnValue;
 
-        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
-        Deencapsulation.setField(connection, "sasTokenRenewalHandler", mockAmqpSasTokenRenewalHandler);
+                Deencapsulation.invoke(mockedAmqpsConvertToProtonReturnValue, "getMessageImpl");
+                result = mockedMessageImpl;
 
+                Deencapsulation.invoke(mockedAmqpsConvertToProtonReturnValue, "getMessageType");
+                result = MessageType.DEVICE_TELEMETRY;
 
-        connection.onTimerTask(mockEvent);
+                mockIoTMessage.getConnectionDeviceId();
+                result = expectedConnectionDeviceId;
 
-        new Verifications()
-        {
-            {
-                mockReactor.schedule(sendPeriod, connection);
+                Deencapsulation.invoke(mockAmqpsSessionManager, "sendMessage", mockedMessageImpl, MessageType.DEVICE_TELEMETRY, expectedConnectionDeviceId);
+                result = 1;
+
+                //second message
+                Deencapsulation.invoke(mockAmqpsSessionManager, "convertToProton", mockIoTMessage);
+                result = mockedAmqpsConvertToProtonReturnValue;
+
+                Deencapsulation.invoke(mockedAmqpsConvertToProtonReturnValue, "getMessageImpl");
+                result = mockedMessageImpl;
+
+                Deencapsulation.invoke(mockedAmqpsConvertToProtonReturnValue, "getMessageType");
+                result = MessageType.DEVICE_TELEMETRY;
+
+                mockIoTMessage.getConnectionDeviceId();
+                result = expectedConnectionDeviceId;
+
+                Deencapsulation.invoke(mockAmqpsSessionManager, "sendMessage", mockedMessageImpl, MessageType.DEVICE_TELEMETRY, expectedConnectionDeviceId);
+                result = 2;
             }
         };
+
+        //act
+        Deencapsulation.invoke(connection, "processOutgoingMessages");
     }
 
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_41_004: [If batching is enabled and more telemetry of the same device is queued, this function shall send the message in a batch with that telemetry.]
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_41_006: [If the batch was sent, this function shall save its messages as in progress under the delivery tag of the batch.]
     @Test
-    public void onTimerTaskProcessesMessages() throws TransportException
+    public void processOutgoingMessagesSendsQueuedTelemetryInBatch(@Mocked final AmqpsBatchBuffer mockBatchBuffer) throws TransportException
     {
         //arrange
         final String expectedConnectionDeviceId = "1234";
@@ -3225,11 +3302,20 @@ public class AmqpsIotHubConnectionTest {
         Deencapsulation.setField(connection, "messagesToSend", messagesToSend);
         Deencapsulation.setField(connection, "amqpsSessionManager", mockAmqpsSessionManager);
         Deencapsulation.setField(connection, "state", IotHubConnectionStatus.CONNECTED);
+        Deencapsulation.setField(connection, "batchBuffer", mockBatchBuffer);
 
-        new Expectations()
+        new NonStrictExpectations()
         {
             {
-                //first message
+                mockConfig.getAmqpBatchMaxMessages();
+                result = 10;
+
+                mockIoTMessage.getMessageType();
+                result = MessageType.DEVICE_TELEMETRY;
+
+                mockIoTMessage.getConnectionDeviceId();
+                result = expectedConnectionDeviceId;
+
                 Deencapsulation.invoke(mockAmqpsSessionManager, "convertToProton", mockIoTMessage);
                 result = mockedAmqpsConvertToProtonReturnValue;
 
@@ -3239,13 +3325,65 @@ public class AmqpsIotHubConnectionTest {
                 Deencapsulation.invoke(mockedAmqpsConvertToProtonReturnValue, "getMessageType");
                 result = MessageType.DEVICE_TELEMETRY;
 
-                mockIoTMessage.getConnectionDeviceId();
-                result = expectedConnectionDeviceId;
+                mockBatchBuffer.add(mockedMessageImpl);
+                result = true;
 
+                Deencapsulation.invoke(mockAmqpsSessionManager, "sendBatchMessage", mockBatchBuffer, expectedConnectionDeviceId);
+                result = 5;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(connection, "processOutgoingMessages");
+
+        //assert
+        assertTrue(messagesToSend.isEmpty());
+        Map<Integer, List<com.microsoft.azure.sdk.iot.device.Message>> inProgressBatches = Deencapsulation.getField(connection, "inProgressBatches");
+        assertEquals(2, inProgressBatches.get(5).size());
+        new Verifications()
+        {
+            {
+                mockBatchBuffer.add(mockedMessageImpl);
+                times = 2;
+                Deencapsulation.invoke(mockAmqpsSessionManager, "sendBatchMessage", mockBatchBuffer, expectedConnectionDeviceId);
+                times = 1;
                 Deencapsulation.invoke(mockAmqpsSessionManager, "sendMessage", mockedMessageImpl, MessageType.DEVICE_TELEMETRY, expectedConnectionDeviceId);
-                result = 1;
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_41_007: [If the batch could not be sent, this function shall add its messages back to the messages to send.]
+    @Test
+    public void processOutgoingMessagesRequeuesBatchThatCouldNotBeSent(@Mocked final AmqpsBatchBuffer mockBatchBuffer) throws TransportException
+    {
+        //arrange
+        final String expectedConnectionDeviceId = "1234";
+        Queue<com.microsoft.azure.sdk.iot.device.Message> messagesToSend = new ConcurrentLinkedQueue<>();
+        messagesToSend.add(mockIoTMessage);
+        messagesToSend.add(mockIoTMessage);
+
+        baseExpectations();
+
+        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
+
+        Deencapsulation.setField(connection, "messagesToSend", messagesToSend);
+        Deencapsulation.setField(connection, "amqpsSessionManager", mockAmqpsSessionManager);
+        Deencapsulation.setField(connection, "state", IotHubConnectionStatus.CONNECTED);
+        Deencapsulation.setField(connection, "batchBuffer", mockBatchBuffer);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getAmqpBatchMaxMessages();
+                result = 10;
+
+                mockIoTMessage.getMessageType();
+                result = MessageType.DEVICE_TELEMETRY;
+
+                mockIoTMessage.getConnectionDeviceId();
+                result = expectedConnectionDeviceId;
 
-                //second message
                 Deencapsulation.invoke(mockAmqpsSessionManager, "convertToProton", mockIoTMessage);
                 result = mockedAmqpsConvertToProtonReturnValue;
 
@@ -3255,16 +3393,156 @@ public class AmqpsIotHubConnectionTest {
                 Deencapsulation.invoke(mockedAmqpsConvertToProtonReturnValue, "getMessageType");
                 result = MessageType.DEVICE_TELEMETRY;
 
-                mockIoTMessage.getConnectionDeviceId();
-                result = expectedConnectionDeviceId;
+                mockBatchBuffer.add(mockedMessageImpl);
+                result = true;
 
-                Deencapsulation.invoke(mockAmqpsSessionManager, "sendMessage", mockedMessageImpl, MessageType.DEVICE_TELEMETRY, expectedConnectionDeviceId);
-                result = 2;
+                Deencapsulation.invoke(mockAmqpsSessionManager, "sendBatchMessage", mockBatchBuffer, expectedConnectionDeviceId);
+                result = -1;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(connection, "processOutgoingMessages");
+
+        //assert
+        assertEquals(2, messagesToSend.size());
+        Map<Integer, List<com.microsoft.azure.sdk.iot.device.Message>> inProgressBatches = Deencapsulation.getField(connection, "inProgressBatches");
+        assertTrue(inProgressBatches.isEmpty());
+    }
+
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_41_005: [If the acknowledged delivery is a batch, this function shall notify its listener of the acknowledgement of every message of the batch as it would for a single message.]
+    @Test
+    public void onDeliverySendBatchNotifiesEveryMessage() throws TransportException
+    {
+        //arrange
+        baseExpectations();
+
+        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
+        Deencapsulation.setField(connection, "amqpsSessionManager", mockAmqpsSessionManager);
+        Map<Integer, List<com.microsoft.azure.sdk.iot.device.Message>> inProgressBatches = Deencapsulation.getField(connection, "inProgressBatches");
+        List<com.microsoft.azure.sdk.iot.device.Message> batch = new ArrayList<>();
+        batch.add(mockedTransportMessage);
+        batch.add(mockedTransportMessage);
+        inProgressBatches.put(12, batch);
+
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsSessionManager, "getMessageFromReceiverLink", anyString);
+                result = null;
+
+                mockEvent.getLink();
+                result = mockSender;
+
+                mockSender.getSource();
+                result = mockSource;
+
+                mockSource.getAddress();
+                result = "notACBSLink";
+
+                mockEvent.getDelivery();
+                result = mockDelivery;
+
+                mockDelivery.isSettled();
+                result = false;
+
+                mockDelivery.getTag();
+                result = AmqpsDeliveryTag.fromInt(12);
+
+                mockSender.head();
+                result = null;
+
+                mockDelivery.getRemoteState();
+                result = Accepted.getInstance();
+            }
+        };
+
+        connection.setListener(mockedIotHubListener);
+
+        //act
+        connection.onDelivery(mockEvent);
+
+        //assert
+        assertTrue(inProgressBatches.isEmpty());
+        new Verifications()
+        {
+            {
+                mockedIotHubListener.onMessageSent(mockedTransportMessage, null);
+                times = 2;
+                mockDelivery.free();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_41_008: [If a sender link was given credit, this function shall send the queued messages.]
+    @Test
+    public void onLinkFlowSendsQueuedMessagesWhenSenderHasCredit() throws TransportException
+    {
+        //arrange
+        Queue<com.microsoft.azure.sdk.iot.device.Message> messagesToSend = new ConcurrentLinkedQueue<>();
+        messagesToSend.add(mockIoTMessage);
+
+        baseExpectations();
+
+        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
+        Deencapsulation.setField(connection, "messagesToSend", messagesToSend);
+        Deencapsulation.setField(connection, "amqpsSessionManager", mockAmqpsSessionManager);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockEvent.getLink();
+                result = mockSender;
+
+                mockSender.getCredit();
+                result = 5;
             }
         };
 
         //act
-        connection.onTimerTask(mockEvent);
+        connection.onLinkFlow(mockEvent);
+
+        //assert
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsSessionManager, "convertToProton", mockIoTMessage);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_41_008: [If a sender link was given credit, this function shall send the queued messages.]
+    @Test
+    public void onLinkFlowDoesNothingWithoutCredit() throws TransportException
+    {
+        //arrange
+        Queue<com.microsoft.azure.sdk.iot.device.Message> messagesToSend = new ConcurrentLinkedQueue<>();
+        messagesToSend.add(mockIoTMessage);
+
+        baseExpectations();
+
+        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
+        Deencapsulation.setField(connection, "messagesToSend", messagesToSend);
+        Deencapsulation.setField(connection, "amqpsSessionManager", mockAmqpsSessionManager);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockEvent.getLink();
+                result = mockSender;
+
+                mockSender.getCredit();
+                result = 0;
+            }
+        };
+
+        //act
+        connection.onLinkFlow(mockEvent);
+
+        //assert
+        assertEquals(1, messagesToSend.size());
     }
 
     private void baseExpectations() throws TransportException
@@ -435,7 +435,7 @@ public class AmqpsSessionDeviceOperationTest
                 Deencapsulation.invoke(mockAmqpsSendReturnValue, "isDeliverySuccessful");
                 result = true;
                 mockAmqpsSendReturnValue.getDeliveryTag();
-                result = "12".getBytes();
+                result = AmqpsDeliveryTag.fromInt(12);
 
                 mockDeviceClientConfig.getDeviceId();
                 result = "someDeviceId";
@@ -456,6 +456,56 @@ public class AmqpsSessionDeviceOperationTest
         };
     }
 
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_41_001: [The function shall return -1 if the state is not authenticated or if the deviceId is not equal to the deviceId in the config.]
+    @Test
+    public void sendBatchMessageNotAuthenticated(@Mocked final AmqpsBatchBuffer mockBatchBuffer) throws IllegalArgumentException, TransportException
+    {
+        // arrange
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATING);
+
+        // act
+        Integer deliveryHash = Deencapsulation.invoke(amqpsSessionDeviceOperation, "sendBatchMessage", mockBatchBuffer, "someDeviceId");
+
+        // assert
+        assertTrue(deliveryHash == -1);
+    }
+
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_41_002: [The function shall send the batch on the telemetry sender link with the batch message format and return the delivery tag.]
+    @Test
+    public void sendBatchMessageSuccess(@Mocked final AmqpsBatchBuffer mockBatchBuffer) throws IllegalArgumentException, TransportException
+    {
+        // arrange
+        final AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+        Deencapsulation.setField(amqpsSessionDeviceOperation, "amqpsAuthenticatorState", AmqpsDeviceAuthenticationState.AUTHENTICATED);
+        final byte[] bytes = new byte[1024];
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceClientConfig.getDeviceId();
+                result = "someDeviceId";
+
+                mockBatchBuffer.getBuffer();
+                result = bytes;
+                mockBatchBuffer.getLength();
+                result = 100;
+
+                Deencapsulation.invoke(mockAmqpsDeviceTelemetry, "sendMessageAndGetDeliveryTag", MessageType.DEVICE_TELEMETRY, bytes, 0, 100, bytes, AmqpsBatchBuffer.BATCH_MESSAGE_FORMAT);
+                result = mockAmqpsSendReturnValue;
+                Deencapsulation.invoke(mockAmqpsSendReturnValue, "isDeliverySuccessful");
+                result = true;
+                mockAmqpsSendReturnValue.getDeliveryTag();
+                result = AmqpsDeliveryTag.fromInt(12);
+            }
+        };
+
+        // act
+        Integer actualDeliveryHash = Deencapsulation.invoke(amqpsSessionDeviceOperation, "sendBatchMessage", mockBatchBuffer, "someDeviceId");
+
+        // assert
+        assertEquals(12, (int) actualDeliveryHash);
+    }
+
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_015: [The function shall doubles the buffer if encode throws BufferOverflowException.]
     @Test
     public void sendMessageDoublesBufferIfEncodeThrowsBufferOverflowException() throws IllegalArgumentException, TransportException
@@ -484,7 +534,7 @@ public class AmqpsSessionDeviceOperationTest
                 result = "someDeviceId";
 
                 mockAmqpsSendReturnValue.getDeliveryTag();
-                result = "12".getBytes();
+                result = AmqpsDeliveryTag.fromInt(12);
             }
         };
 
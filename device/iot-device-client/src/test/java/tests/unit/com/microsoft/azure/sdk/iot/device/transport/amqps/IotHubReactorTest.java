@@ -7,6 +7,7 @@ package tests.unit.com.microsoft.azure.sdk.iot.device.transport.amqps;
 
 import com.microsoft.azure.sdk.iot.device.transport.amqps.IotHubReactor;
 import mockit.Deencapsulation;
+import mockit.Expectations;
 import mockit.Mocked;
 import mockit.StrictExpectations;
 import mockit.Verifications;
@@ -61,4 +62,30 @@ public class IotHubReactorTest
         };
     }
 
+    // Tests_SRS_IOTHUBREACTOR_41_001: [If a process task was provided, this function shall run it after every pass of the reactor.]
+    @Test
+    public void runRunsProcessTaskAfterEveryPass(@Mocked final Runnable mockProcessTask)
+    {
+        //arrange
+        IotHubReactor iotHubReactor = new IotHubReactor(mockReactor, mockProcessTask);
+        new Expectations()
+        {
+            {
+                mockReactor.process();
+                returns(true, true, false, false);
+            }
+        };
+
+        //act
+        iotHubReactor.run();
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockProcessTask.run();
+                times = 2;
+            }
+        };
+    }
 }
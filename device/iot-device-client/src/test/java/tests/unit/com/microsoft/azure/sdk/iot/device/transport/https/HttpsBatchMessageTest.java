@@ -342,4 +342,95 @@ public class HttpsBatchMessageTest
 
         assertThat(httpsBatchMessageSizeLimitVerified, is(true));
     }
+
+    // Tests_SRS_HTTPSBATCHMESSAGE_41_001: [The function shall encode the message straight into the batch body buffer, so that adding a message takes time proportional to the size of that message only.]
+    // Tests_SRS_HTTPSBATCHMESSAGE_41_002: [The function shall return the size in bytes of the body that getBody would return.]
+    @Test
+    public void addMessageAppendsMessagesInOrderAndTracksBodySize(
+            @Mocked final HttpsSingleMessage mockMsg) throws IotHubSizeExceededException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getBody();
+                returns("first".getBytes(), "second".getBytes());
+            }
+        };
+
+        HttpsBatchMessage batchMsg = new HttpsBatchMessage();
+        batchMsg.addMessage(mockMsg);
+        batchMsg.addMessage(mockMsg);
+        byte[] testBatchBody = batchMsg.getBody();
+
+        final String expectedBatchBody =
+                "[{\"body\":\"" + Base64.encodeBase64StringLocal("first".getBytes()) + "\",\"base64Encoded\":true},"
+                        + "{\"body\":\"" + Base64.encodeBase64StringLocal("second".getBytes()) + "\",\"base64Encoded\":true}]";
+        assertThat(new String(testBatchBody, UTF8), is(expectedBatchBody));
+        assertThat(batchMsg.getBodySizeInBytes(), is(testBatchBody.length));
+    }
+
+    // Tests_SRS_HTTPSBATCHMESSAGE_11_007: [The batch message body shall be encoded using UTF-8.]
+    @Test
+    public void addMessageEncodesPropertiesAsUtf8(
+            @Mocked final HttpsSingleMessage mockMsg,
+            @Mocked final MessageProperty mockProperty) throws IotHubSizeExceededException
+    {
+        final String propertyName = "na\u00efve";
+        final String propertyValue = "\u20ac \uD83D\uDE00";
+        final MessageProperty[] properties = { mockProperty };
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getBody();
+                result = new byte[0];
+                mockMsg.getProperties();
+                result = properties;
+                mockProperty.getName();
+                result = propertyName;
+                mockProperty.getValue();
+                result = propertyValue;
+            }
+        };
+
+        HttpsBatchMessage batchMsg = new HttpsBatchMessage();
+        batchMsg.addMessage(mockMsg);
+        byte[] testBatchBody = batchMsg.getBody();
+
+        final String expectedBatchBody =
+                "[{\"body\":\"\",\"base64Encoded\":true,\"properties\":{\"" + propertyName + "\":\"" + propertyValue + "\"}}]";
+        assertThat(testBatchBody, is(expectedBatchBody.getBytes(UTF8)));
+    }
+
+    // Tests_SRS_HTTPSBATCHMESSAGE_11_009: [If the function throws a IotHubSizeExceededException, the batched message shall remain as if the message was never added.]
+    @Test
+    public void addMessageRestoresExactBodyWhenRejectingMessage(
+            @Mocked final HttpsSingleMessage mockMsg) throws IotHubSizeExceededException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getBody();
+                returns("first".getBytes(), new byte[SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES], "third".getBytes());
+            }
+        };
+
+        HttpsBatchMessage batchMsg = new HttpsBatchMessage();
+        batchMsg.addMessage(mockMsg);
+        byte[] expectedBatchBody = batchMsg.getBody();
+        try
+        {
+            batchMsg.addMessage(mockMsg);
+        }
+        catch (IotHubSizeExceededException e)
+        {
+            // expected, the batch must be unchanged
+        }
+
+        assertThat(batchMsg.getBody(), is(expectedBatchBody));
+        assertThat(batchMsg.numMessages(), is(1));
+
+        batchMsg.addMessage(mockMsg);
+        assertThat(new String(batchMsg.getBody(), UTF8),
+                containsString("true},{\"body\":\"" + Base64.encodeBase64StringLocal("third".getBytes()) + "\""));
+    }
 }
@@ -503,8 +503,21 @@ public class HttpsConnectionTest
                 result = httpsMethod.name();
                 mockUrlConn.getInputStream();
                 result = mockIs;
+                mockUrlConn.getContentLengthLong();
+                result = 3;
+                mockIs.read((byte[]) any, 0, 3);
+                result = new Delegate()
+                {
+                    int read(byte[] buffer, int offset, int length)
+                    {
+                        buffer[0] = 1;
+                        buffer[1] = 2;
+                        buffer[2] = 3;
+                        return 3;
+                    }
+                };
                 mockIs.read();
-                returns(1, 2, 3, -1);
+                result = -1;
             }
         };
         HttpsConnection conn = new HttpsConnection(mockUrl, httpsMethod);
@@ -535,6 +548,8 @@ public class HttpsConnectionTest
                 result = mockIs;
                 mockIs.read();
                 result = new TransportException("This is a test exception");
+                mockIs.read((byte[]) any, anyInt, anyInt);
+                result = new TransportException("This is a test exception");
             }
         };
         HttpsConnection conn = new HttpsConnection(mockUrl, httpsMethod);
@@ -639,6 +654,8 @@ public class HttpsConnectionTest
                 result = mockIs;
                 mockIs.read();
                 result = -1;
+                mockIs.read((byte[]) any, anyInt, anyInt);
+                result = -1;
             }
         };
         HttpsConnection conn = new HttpsConnection(mockUrl, httpsMethod);
@@ -671,8 +688,21 @@ public class HttpsConnectionTest
                 result = httpsMethod.name();
                 mockUrlConn.getErrorStream();
                 result = mockIs;
+                mockUrlConn.getContentLengthLong();
+                result = 3;
+                mockIs.read((byte[]) any, 0, 3);
+                result = new Delegate()
+                {
+                    int read(byte[] buffer, int offset, int length)
+                    {
+                        buffer[0] = 1;
+                        buffer[1] = 2;
+                        buffer[2] = 3;
+                        return 3;
+                    }
+                };
                 mockIs.read();
-                returns(1, 2, 3, -1);
+                result = -1;
             }
         };
         HttpsConnection conn = new HttpsConnection(mockUrl, httpsMethod);
@@ -703,6 +733,8 @@ public class HttpsConnectionTest
                 result = mockIs;
                 mockIs.read();
                 result = new TransportException("This is a test exception");
+                mockIs.read((byte[]) any, anyInt, anyInt);
+                result = new TransportException("This is a test exception");
             }
         };
         HttpsConnection conn = new HttpsConnection(mockUrl, httpsMethod);
@@ -796,6 +828,8 @@ public class HttpsConnectionTest
                 result = mockIs;
                 mockIs.read();
                 result = -1;
+                mockIs.read((byte[]) any, anyInt, anyInt);
+                result = -1;
             }
         };
         HttpsConnection conn = new HttpsConnection(mockUrl, httpsMethod);
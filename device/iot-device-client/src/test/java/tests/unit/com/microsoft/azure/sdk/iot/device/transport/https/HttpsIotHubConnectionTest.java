@@ -18,6 +18,7 @@ import org.junit.Test;
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -2152,4 +2153,85 @@ public class HttpsIotHubConnectionTest
         connection.open(null, mockedScheduledExecutorService);
         connection.close();
     }
-}
\ No newline at end of file
+
+    //Tests_SRS_HTTPSIOTHUBCONNECTION_41_001: [The function shall send a POST request to the same event URL as sendMessage, with the batch body and the batch content type.]
+    @Test
+    public void sendMessageBatchPostsBatchBody(final @Mocked IotHubEventUri mockUri, final @Mocked HttpsBatchMessage mockBatchMessage) throws IOException, TransportException
+    {
+        //arrange
+        final String eventUri = "test-event-uri";
+        final String eventPath = "test-event-path";
+        final byte[] batchBody = { 0x5B, 0x5D };
+        final String batchContentType = "application/vnd.microsoft.iothub.json";
+        new NonStrictExpectations()
+        {
+            {
+                mockUri.toString();
+                result = eventUri;
+                mockUri.getPath();
+                result = eventPath;
+                mockBatchMessage.getBody();
+                result = batchBody;
+                mockBatchMessage.getContentType();
+                result = batchContentType;
+                mockRequest.send();
+                result = mockResponse;
+                mockResponse.getStatus();
+                result = 204;
+            }
+        };
+
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+        conn.setListener(mockedListener);
+
+        //act
+        IotHubStatusCode status = conn.sendMessageBatch(mockBatchMessage, Arrays.asList(mockedMessage, mockedMessage));
+
+        //assert
+        assertEquals(IotHubStatusCode.OK_EMPTY, status);
+        new Verifications()
+        {
+            {
+                new URL("https://" + eventUri);
+                new HttpsRequest((URL) any, HttpsMethod.POST, batchBody, anyString, (ProxySettings) any);
+                mockRequest.setHeaderField("iothub-to", eventPath);
+                mockRequest.setHeaderField("content-type", batchContentType);
+                mockedListener.onMessageSent(mockedMessage, null);
+                times = 2;
+            }
+        };
+    }
+
+    //Tests_SRS_HTTPSIOTHUBCONNECTION_41_002: [The function shall notify its listener that each message in the batch was sent, with no exception if the response from the service is OK or OK_EMPTY, and with the mapped IotHubServiceException otherwise.]
+    @Test
+    public void sendMessageBatchNotifiesListenerOfIotHubServiceExceptionForEachMessage(final @Mocked IotHubEventUri mockUri, final @Mocked HttpsBatchMessage mockBatchMessage) throws TransportException
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockRequest.send();
+                result = mockResponse;
+                mockResponse.getStatus();
+                result = 404;
+            }
+        };
+
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+        conn.setListener(mockedListener);
+
+        //act
+        conn.sendMessageBatch(mockBatchMessage, Arrays.asList(mockedMessage, mockedMessage, mockedMessage));
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedListener.onMessageSent(mockedMessage, (TransportException) any);
+                times = 3;
+                mockedListener.onMessageSent(mockedMessage, null);
+                times = 0;
+            }
+        };
+    }
+}
@@ -16,6 +16,7 @@ import javax.net.ssl.SSLSocketFactory;
 import java.net.Proxy;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 
 import static org.junit.Assert.*;
 
@@ -111,6 +112,60 @@ public class MqttConnectionTest
         assertNotNull(actualLock);
     }
 
+    //Tests_SRS_MQTTCONNECTION_41_002: [The constructor shall let Paho keep up to maxInFlightCount messages in flight.]
+    //Tests_SRS_MQTTCONNECTION_41_003: [The constructor shall create as many in flight permits as maxInFlightCount.]
+    //Tests_SRS_MQTTCONNECTION_41_004: [Getter for the in flight permits of this connection.]
+    @Test
+    public void constructorSetsMaxInFlightCount() throws Exception
+    {
+        //arrange
+        baseConstructorExpectations();
+
+        //act
+        final MqttConnection mqttConnection = Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class, int.class}, SERVER_URI, CLIENT_ID, USER_NAME, PWORD, mockSSLContext, (ProxySettings) null, 100);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockMqttConnectionOptions.setMaxInflight(100);
+                times = 1;
+            }
+        };
+        Semaphore inFlightPermits = Deencapsulation.invoke(mqttConnection, "getInFlightPermits");
+        assertEquals(100, inFlightPermits.availablePermits());
+    }
+
+    //Tests_SRS_MQTTCONNECTION_41_002: [The constructor shall let Paho keep up to maxInFlightCount messages in flight.]
+    @Test
+    public void constructorDefaultsToTenMessagesInFlight() throws Exception
+    {
+        //arrange
+        baseConstructorExpectations();
+
+        //act
+        final MqttConnection mqttConnection = Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class}, SERVER_URI, CLIENT_ID, USER_NAME, PWORD, mockSSLContext, (ProxySettings) null);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockMqttConnectionOptions.setMaxInflight(10);
+                times = 1;
+            }
+        };
+        Semaphore inFlightPermits = Deencapsulation.invoke(mqttConnection, "getInFlightPermits");
+        assertEquals(10, inFlightPermits.availablePermits());
+    }
+
+    //Tests_SRS_MQTTCONNECTION_41_001: [The constructor shall throw IllegalArgumentException if maxInFlightCount is smaller than 1.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsIfMaxInFlightCountTooSmall() throws Exception
+    {
+        //act
+        Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class, int.class}, SERVER_URI, CLIENT_ID, USER_NAME, PWORD, mockSSLContext, (ProxySettings) null, 0);
+    }
+
     @Test
     public void constructorWithProxySetsSocketFactory(final @Mocked Socks5SocketFactory mockedSocks5SocketFactory, final @Mocked Proxy mockProxy) throws Exception
     {
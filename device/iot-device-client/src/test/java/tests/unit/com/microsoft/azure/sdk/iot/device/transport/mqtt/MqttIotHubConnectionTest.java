@@ -15,6 +15,8 @@ import com.microsoft.azure.sdk.iot.device.transport.IotHubTransportMessage;
 import com.microsoft.azure.sdk.iot.device.transport.TransportUtils;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.*;
 import mockit.*;
+import org.apache.commons.lang3.tuple.MutablePair;
+import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Test;
 
 import javax.net.ssl.SSLContext;
@@ -39,6 +41,7 @@ public class MqttIotHubConnectionTest
 {
     private static final String SSL_PREFIX = "ssl://";
     private static final String SSL_PORT_SUFFIX = ":8883";
+    private static final int MAX_IN_FLIGHT_MESSAGES = 100;
     final String iotHubHostName = "test.host.name";
     final String hubName = "test.iothub";
     final String deviceId = "test-deviceId";
@@ -51,6 +54,9 @@ public class MqttIotHubConnectionTest
     final String expectedToken = "someToken";
     final byte[] expectedMessageBody = { 0x61, 0x62, 0x63 };
     final String userAgentString = "some user agent string";
+    final String methodTopic = "$iothub/methods/POST/methodName/?$rid=1";
+    final String twinTopic = "$iothub/twin/res/200/?$rid=1";
+    final String telemetryTopic = "devices/test-deviceId/messages/devicebound/%24.mid=1";
 
     @Mocked
     private ProductInfo mockedProductInfo;
@@ -302,7 +308,7 @@ public class MqttIotHubConnectionTest
         new Verifications()
         {
             {
-                Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class}, serverUri, deviceId, any, any, any, null);
+                Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class, int.class}, serverUri, deviceId, any, any, any, null, MAX_IN_FLIGHT_MESSAGES);
                 times = 1;
             }
         };
@@ -353,7 +359,7 @@ public class MqttIotHubConnectionTest
         new Verifications()
         {
             {
-               Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class}, serverUri, deviceId, any, any, any, mockedProxySettings);
+               Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class, int.class}, serverUri, deviceId, any, any, any, mockedProxySettings, MAX_IN_FLIGHT_MESSAGES);
                times = 1;
             }
         };
@@ -382,7 +388,7 @@ public class MqttIotHubConnectionTest
         new StrictExpectations()
         {
             {
-                Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class}, serverUri, deviceId, any, any, mockSslContext, null);
+                Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class, int.class}, serverUri, deviceId, any, any, mockSslContext, null, MAX_IN_FLIGHT_MESSAGES);
                 result = new IOException();
             }
         };
@@ -430,7 +436,7 @@ public class MqttIotHubConnectionTest
         new StrictExpectations()
         {
             {
-                Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class}, any, any, any, any, mockSslContext, null);
+                Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class, int.class}, any, any, any, any, mockSslContext, null, MAX_IN_FLIGHT_MESSAGES);
                 result = mockedMqttConnection;
             }
         };
@@ -486,7 +492,7 @@ public class MqttIotHubConnectionTest
         new StrictExpectations()
         {
             {
-                Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class}, any, any, any, any, mockSslContext, null);
+                Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class, int.class}, any, any, any, any, mockSslContext, null, MAX_IN_FLIGHT_MESSAGES);
                 result = mockedMqttConnection;
             }
         };
@@ -544,7 +550,7 @@ public class MqttIotHubConnectionTest
         new Verifications()
         {
             {
-                Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class}, any, any, any, any, any, (ProxySettings) any);
+                Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class, int.class}, any, any, any, any, any, (ProxySettings) any, MAX_IN_FLIGHT_MESSAGES);
                 maxTimes = 1;
             }
         };
@@ -920,6 +926,7 @@ public class MqttIotHubConnectionTest
 
     // Tests_SRS_MQTTIOTHUBCONNECTION_15_014: [The function shall attempt to consume a message
     // from the received messages queue.]
+    //Tests_SRS_MQTTIOTHUBCONNECTION_41_003: [If the arrived message was not received by the device method or device twin client, this function shall receive it from the device messaging client.]
     @Test
     public void receiveMessageSucceeds() throws IOException, TransportException
     {
@@ -928,10 +935,8 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                mockDeviceMethod.receive();
-                result = null;
-                mockDeviceTwin.receive();
-                result = null;
+                Deencapsulation.invoke(mockedMqttConnection, "getAllReceivedMessages");
+                result = arrivedMessage(telemetryTopic);
                 mockDeviceMessaging.receive();
                 result = mockedTransportMessage;
             }
@@ -953,15 +958,16 @@ public class MqttIotHubConnectionTest
         {
             {
                 mockDeviceTwin.receive();
-                times = 1;
+                times = 0;
                 mockDeviceMethod.receive();
-                times = 1;
+                times = 0;
                 mockDeviceMessaging.receive();
                 times = 1;
             }
         };
     }
 
+    //Tests_SRS_MQTTIOTHUBCONNECTION_41_002: [If the arrived message has a device twin topic, this function shall receive it from the device twin client.]
     @Test
     public void receiveDeviceTwinMessageSucceeds() throws IOException, TransportException
     {
@@ -971,8 +977,8 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                mockDeviceMethod.receive();
-                result = null;
+                Deencapsulation.invoke(mockedMqttConnection, "getAllReceivedMessages");
+                result = arrivedMessage(twinTopic);
                 mockDeviceTwin.receive();
                 result = mockedTransportMessage;
             }
@@ -996,13 +1002,14 @@ public class MqttIotHubConnectionTest
         {
             {
                 mockDeviceMethod.receive();
-                times = 1;
+                times = 0;
                 mockDeviceMessaging.receive();
                 times = 0;
             }
         };
     }
 
+    //Tests_SRS_MQTTIOTHUBCONNECTION_41_001: [If the arrived message has a device method topic, this function shall receive it from the device method client.]
     @Test
     public void receiveDeviceMethodMessageSucceeds() throws IOException, TransportException
     {
@@ -1012,6 +1019,8 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
+                Deencapsulation.invoke(mockedMqttConnection, "getAllReceivedMessages");
+                result = arrivedMessage(methodTopic);
                 mockDeviceMethod.receive();
                 result = mockedTransportMessage;
             }
@@ -1044,6 +1053,44 @@ public class MqttIotHubConnectionTest
         };
     }
 
+    //Tests_SRS_MQTTIOTHUBCONNECTION_41_003: [If the arrived message was not received by the device method or device twin client, this function shall receive it from the device messaging client.]
+    @Test
+    public void receiveMethodTopicNotReceivedByDeviceMethodFallsBackToDeviceMessaging() throws IOException, TransportException
+    {
+        baseExpectations();
+        openExpectations(null);
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockedMqttConnection, "getAllReceivedMessages");
+                result = arrivedMessage("$iothub/methods/res/200/?$rid=1");
+                mockDeviceMethod.receive();
+                result = null;
+                mockDeviceMessaging.receive();
+                result = mockedTransportMessage;
+            }
+        };
+
+        MqttIotHubConnection connection = new MqttIotHubConnection(mockConfig);
+        Deencapsulation.setField(connection, "listener", mockedIotHubListener);
+        connection.open(mockedQueue, mockedScheduledExecutorService);
+
+        Message message = Deencapsulation.invoke(connection, "receiveMessage");
+
+        assertEquals(mockedTransportMessage, message);
+        new Verifications()
+        {
+            {
+                mockDeviceMethod.receive();
+                times = 1;
+                mockDeviceTwin.receive();
+                times = 0;
+                mockDeviceMessaging.receive();
+                times = 1;
+            }
+        };
+    }
+
     //Tests_SRS_MQTTIOTHUBCONNECTION_34_027: [If this function is called while using websockets and x509 authentication, an UnsupportedOperationException shall be thrown.]
     @Test (expected = UnsupportedOperationException.class)
     public void websocketWithX509ThrowsAtOpen() throws TransportException
@@ -1122,6 +1169,8 @@ public class MqttIotHubConnectionTest
                 result = deviceId;
                 mockConfig.getModuleId();
                 result = expectedModuleId;
+                mockConfig.getMqttMaxInFlightMessages();
+                result = MAX_IN_FLIGHT_MESSAGES;
                 mockConfig.getIotHubHostname();
                 result = "hostname.com";
                 mockConfig.getIotHubName();
@@ -1143,7 +1192,7 @@ public class MqttIotHubConnectionTest
         new Verifications()
         {
             {
-                Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class}, anyString, anyString, expectedUserName, anyString, any, null);
+                Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class, int.class}, anyString, anyString, expectedUserName, anyString, any, null, MAX_IN_FLIGHT_MESSAGES);
                 times = 1;
             }
         };
@@ -1445,8 +1494,8 @@ public class MqttIotHubConnectionTest
         new Expectations()
         {
             {
-                mockDeviceMethod.receive();
-                result = null;
+                Deencapsulation.invoke(mockedMqttConnection, "getAllReceivedMessages");
+                result = arrivedMessage(twinTopic);
 
                 mockDeviceTwin.receive();
                 result = mockedTransportMessage;
@@ -1495,6 +1544,9 @@ public class MqttIotHubConnectionTest
         new Expectations()
         {
             {
+                Deencapsulation.invoke(mockedMqttConnection, "getAllReceivedMessages");
+                result = arrivedMessage(methodTopic);
+
                 mockDeviceMethod.receive();
                 result = mockedTransportMessage;
 
@@ -1534,11 +1586,8 @@ public class MqttIotHubConnectionTest
         new Expectations()
         {
             {
-                mockDeviceMethod.receive();
-                result = null;
-
-                mockDeviceTwin.receive();
-                result = null;
+                Deencapsulation.invoke(mockedMqttConnection, "getAllReceivedMessages");
+                result = arrivedMessage(telemetryTopic);
 
                 mockDeviceMessaging.receive();
                 result = mockedTransportMessage;
@@ -1594,6 +1643,7 @@ public class MqttIotHubConnectionTest
                 mockConfig.getIotHubHostname(); result = iotHubHostName;
                 mockConfig.getIotHubName(); result = hubName;
                 mockConfig.getDeviceId(); result = deviceId;
+                mockConfig.getMqttMaxInFlightMessages(); result = MAX_IN_FLIGHT_MESSAGES;
 
                 mockConfig.getProductInfo();
                 result = mockedProductInfo;
@@ -1615,7 +1665,7 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class}, anyString, anyString, anyString, anyString, any, proxySettings);
+                Deencapsulation.newInstance(MqttConnection.class, new Class[] {String.class, String.class, String.class, String.class, SSLContext.class, ProxySettings.class, int.class}, anyString, anyString, anyString, anyString, any, proxySettings, MAX_IN_FLIGHT_MESSAGES);
                 result = mockedMqttConnection;
                 new MqttMessaging(mockedMqttConnection, anyString, (IotHubListener) any, null, null, anyString, anyBoolean, (Map) any);
                 result = mockDeviceMessaging;
@@ -1629,4 +1679,11 @@ public class MqttIotHubConnectionTest
             }
         };
     }
+
+    private static ConcurrentLinkedQueue<Pair<String, byte[]>> arrivedMessage(String topic)
+    {
+        ConcurrentLinkedQueue<Pair<String, byte[]>> arrivedMessages = new ConcurrentLinkedQueue<>();
+        arrivedMessages.add(new MutablePair<>(topic, new byte[0]));
+        return arrivedMessages;
+    }
 }
@@ -0,0 +1,94 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport.mqtt;
+
+import mockit.Deencapsulation;
+import org.junit.Test;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for MqttPropertyCodec
+ */
+public class MqttPropertyCodecTest
+{
+    private static final String[] VALUES =
+    {
+        "",
+        "plainValue-1.2_3*",
+        "with space",
+        "$.mid=some&value%",
+        "/devices/deviceID/messages/deviceBound",
+        "2019-10-01T12:00:00.0000000",
+        "\u00e9t\u00e9 \u4e2d\u6587",
+        "emoji \ud83d\ude00 pair",
+        "lone \ud83d surrogate",
+        "trailing \ude00",
+        "~!@#^()[]{}|\\;:'\",<>?`+"
+    };
+
+    private static Class<?> codecClass() throws ClassNotFoundException
+    {
+        return Class.forName("com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttPropertyCodec");
+    }
+
+    //Tests_SRS_MQTTPROPERTYCODEC_41_001: [The function shall append letters, digits and the characters '.', '-', '*' and '_' as they are.]
+    //Tests_SRS_MQTTPROPERTYCODEC_41_002: [The function shall append a space as '+'.]
+    //Tests_SRS_MQTTPROPERTYCODEC_41_003: [The function shall append every other character as its percent encoded UTF-8 bytes, and an unpaired surrogate as an encoded '?'.]
+    @Test
+    public void appendEncodedMatchesUrlEncoder() throws Exception
+    {
+        for (String value : VALUES)
+        {
+            //arrange
+            StringBuilder builder = new StringBuilder("prefix/");
+
+            //act
+            Deencapsulation.invoke(codecClass(), "appendEncoded", builder, value);
+
+            //assert
+            assertEquals(value, "prefix/" + URLEncoder.encode(value, StandardCharsets.UTF_8.name()), builder.toString());
+        }
+    }
+
+    //Tests_SRS_MQTTPROPERTYCODEC_41_004: [If the value holds no escaped character, the function shall return it as it is.]
+    //Tests_SRS_MQTTPROPERTYCODEC_41_005: [The function shall decode '+' as a space.]
+    //Tests_SRS_MQTTPROPERTYCODEC_41_006: [The function shall decode consecutive percent encoded bytes as UTF-8.]
+    @Test
+    public void decodeMatchesUrlDecoder() throws Exception
+    {
+        for (String value : VALUES)
+        {
+            //arrange
+            String encoded = URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+            String source = "key=" + encoded + "&next";
+
+            //act
+            String decoded = Deencapsulation.invoke(codecClass(), "decode", source, 4, 4 + encoded.length());
+
+            //assert
+            assertEquals(encoded, URLDecoder.decode(encoded, StandardCharsets.UTF_8.name()), decoded);
+        }
+    }
+
+    //Tests_SRS_MQTTPROPERTYCODEC_41_007: [The function shall throw IllegalArgumentException if an escape sequence is incomplete or not hexadecimal.]
+    @Test (expected = IllegalArgumentException.class)
+    public void decodeThrowsOnIncompleteEscape() throws Exception
+    {
+        //act
+        Deencapsulation.invoke(codecClass(), "decode", "value%4", 0, 7);
+    }
+
+    //Tests_SRS_MQTTPROPERTYCODEC_41_007: [The function shall throw IllegalArgumentException if an escape sequence is incomplete or not hexadecimal.]
+    @Test (expected = IllegalArgumentException.class)
+    public void decodeThrowsOnInvalidHex() throws Exception
+    {
+        //act
+        Deencapsulation.invoke(codecClass(), "decode", "value%ZZ", 0, 8);
+    }
+}
@@ -26,6 +26,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 
 import static com.microsoft.azure.sdk.iot.device.DeviceTwin.DeviceOperations.*;
 import static org.junit.Assert.*;
@@ -144,6 +145,8 @@ public class MqttTest
                 result = new ConcurrentLinkedQueue<>();
                 Deencapsulation.invoke(mockedMqttConnection, "getMqttLock");
                 result = new Object();
+                Deencapsulation.invoke(mockedMqttConnection, "getInFlightPermits");
+                result = new Semaphore(10);
             }
         };
     }
@@ -562,18 +565,14 @@ public class MqttTest
         //arrange
         baseConstructorExpectations();
         final byte[] payload = {0x61, 0x62, 0x63};
-        final IMqttDeliveryToken[] testTokens = {mockMqttDeliveryToken, mockMqttDeliveryToken, mockMqttDeliveryToken,
-                mockMqttDeliveryToken, mockMqttDeliveryToken, mockMqttDeliveryToken,
-                mockMqttDeliveryToken, mockMqttDeliveryToken, mockMqttDeliveryToken,
-                mockMqttDeliveryToken, mockMqttDeliveryToken, mockMqttDeliveryToken
-        };
         new NonStrictExpectations()
         {
             {
+                // every in flight permit is taken
+                Deencapsulation.invoke(mockedMqttConnection, "getInFlightPermits");
+                result = new Semaphore(0);
                 mockMqttAsyncClient.isConnected();
                 result = true;
-                mockMqttAsyncClient.getPendingDeliveryTokens();
-                result = testTokens;
                 mockMqttAsyncClient.isConnected();
                 result = false;
             }
@@ -585,6 +584,94 @@ public class MqttTest
     }
 
 
+    //Tests_SRS_Mqtt_25_048: [publish shall wait for an in flight permit of the connection before publishing, so that no more messages are in flight than the connection allows]
+    //Tests_SRS_Mqtt_41_002: [If the delivered message was published by this connection, this function shall give its in flight permit back.]
+    @Test
+    public void publishWaitsForDeliveryOfMessageInFlight(final @Mocked Message mockedMessage) throws Exception
+    {
+        //arrange
+        baseConstructorExpectations();
+        baseConnectExpectation();
+        basePublishExpectations(mockedMessage);
+        final Semaphore inFlightPermits = new Semaphore(1);
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockedMqttConnection, "getInFlightPermits");
+                result = inFlightPermits;
+                mockMqttDeliveryToken.getMessageId();
+                result = 1;
+            }
+        };
+        final Mqtt mockMqtt = instantiateMqtt(true, mockedIotHubListener);
+        Deencapsulation.invoke(mockMqtt, "publish", MOCK_PARSE_TOPIC, mockedMessage);
+        Thread secondPublish = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Deencapsulation.invoke(mockMqtt, "publish", MOCK_PARSE_TOPIC, mockedMessage);
+            }
+        });
+
+        //act
+        secondPublish.start();
+        secondPublish.join(300);
+        assertTrue(secondPublish.isAlive());
+        mockMqtt.deliveryComplete(mockMqttDeliveryToken);
+        secondPublish.join(10000);
+
+        //assert
+        assertFalse(secondPublish.isAlive());
+        assertEquals(0, inFlightPermits.availablePermits());
+        new Verifications()
+        {
+            {
+                mockMqttAsyncClient.publish(MOCK_PARSE_TOPIC, mockMqttMessage);
+                times = 2;
+            }
+        };
+    }
+
+    //Tests_SRS_Mqtt_41_001: [If the message could not be published, the function shall give its in flight permit back.]
+    @Test
+    public void publishGivesPermitBackWhenPublishThrows(final @Mocked Message mockedMessage) throws Exception
+    {
+        //arrange
+        baseConstructorExpectations();
+        final byte[] payload = {0x61, 0x62, 0x63};
+        final Semaphore inFlightPermits = new Semaphore(1);
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockedMqttConnection, "getInFlightPermits");
+                result = inFlightPermits;
+                mockedMessage.getBytes();
+                result = payload;
+                mockMqttAsyncClient.isConnected();
+                result = true;
+                mockMqttAsyncClient.publish(anyString, (MqttMessage) any);
+                result = mockMqttException;
+            }
+        };
+        Mqtt mockMqtt = instantiateMqtt(true);
+
+        //act
+        try
+        {
+            Deencapsulation.invoke(mockMqtt, "publish", MOCK_PARSE_TOPIC, mockedMessage);
+            fail("Expected publish to throw");
+        }
+        catch (Exception e)
+        {
+            //expected
+            assertTrue(e instanceof TransportException);
+        }
+
+        //assert
+        assertEquals(1, inFlightPermits.availablePermits());
+    }
+
     /*
     **Tests_SRS_Mqtt_25_014: [The function shall publish message payload on the publishTopic specified to the IoT Hub given in the configuration.]
      */
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package com.microsoft.azure.sdk.iot.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs one asynchronous operation per device, keeping at most a given number of them running at any time, and
+ * collects the outcome of each by device id. This backs the service client operations that act on many devices at
+ * once, such as {@link ServiceClient#sendAllAsync(Map, int)}.
+ *
+ * @param <T> the type of the result of the operation on one device
+ */
+public final class BulkOperation<T>
+{
+    private final Queue<String> pendingDeviceIds;
+    private final Function<String, CompletableFuture<T>> operation;
+    private final int maxRunningOperations;
+    private final AtomicInteger runningOperations = new AtomicInteger();
+    private final AtomicInteger unfinishedOperations;
+    private final AtomicInteger wakeups = new AtomicInteger();
+    private final Map<String, T> results = Collections.synchronizedMap(new HashMap<String, T>());
+    private final Map<String, Exception> failures = new ConcurrentHashMap<>();
+    private final CompletableFuture<BulkOperation<T>> completion = new CompletableFuture<>();
+    private final long startTimeNanos = System.nanoTime();
+    private volatile long elapsedTimeNanos;
+
+    private BulkOperation(Collection<String> deviceIds, int maxRunningOperations, Function<String, CompletableFuture<T>> operation)
+    {
+        this.pendingDeviceIds = new ConcurrentLinkedQueue<>(new ArrayList<>(deviceIds));
+        this.maxRunningOperations = maxRunningOperations;
+        this.operation = operation;
+        this.unfinishedOperations = new AtomicInteger(this.pendingDeviceIds.size());
+    }
+
+    /**
+     * Starts the operation on each of the provided devices, without blocking the caller. A new operation is started
+     * each time a running one completes. Operations that fail do not stop the others, their exception is recorded
+     * instead.
+     *
+     * @param deviceIds the devices to run the operation on. Each device id may only appear once
+     * @param maxRunningOperations the largest number of operations running at any time
+     * @param operation starts the operation on the device with the given id
+     * @param <T> the type of the result of the operation on one device
+     * @return a future that completes once every operation completed, with the outcome of each operation
+     * @throws IllegalArgumentException if deviceIds or operation is null, if deviceIds holds the same device id more
+     * than once, or if maxRunningOperations is smaller than 1
+     */
+    public static <T> CompletableFuture<BulkOperation<T>> start(Collection<String> deviceIds, int maxRunningOperations, Function<String, CompletableFuture<T>> operation) throws IllegalArgumentException
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_BULKOPERATION_41_001: [The function shall throw IllegalArgumentException if deviceIds or operation is null, if deviceIds holds the same device id more than once, or if maxRunningOperations is smaller than 1]
+        if (deviceIds == null || operation == null)
+        {
+            throw new IllegalArgumentException("deviceIds and operation cannot be null");
+        }
+        if (deviceIds.size() != deviceIds.stream().distinct().count())
+        {
+            throw new IllegalArgumentException("deviceIds cannot hold the same device id more than once");
+        }
+        if (maxRunningOperations < 1)
+        {
+            throw new IllegalArgumentException("maxRunningOperations must be at least 1");
+        }
+
+        BulkOperation<T> bulkOperation = new BulkOperation<>(deviceIds, maxRunningOperations, operation);
+        if (bulkOperation.pendingDeviceIds.isEmpty())
+        {
+            bulkOperation.completion.complete(bulkOperation);
+        }
+        else
+        {
+            bulkOperation.startPendingOperations();
+        }
+
+        return bulkOperation.completion;
+    }
+
+    /**
+     * @return the result of each operation that succeeded, keyed by device id
+     */
+    public Map<String, T> getResults()
+    {
+        return this.results;
+    }
+
+    /**
+     * @return the exception each operation that failed completed with, keyed by device id
+     */
+    public Map<String, Exception> getFailures()
+    {
+        return this.failures;
+    }
+
+    /**
+     * @return the time between the first operation being started and the last one completing, in nanoseconds
+     */
+    public long getElapsedTimeNanos()
+    {
+        return this.elapsedTimeNanos;
+    }
+
+    private void startPendingOperations()
+    {
+        // Futures that complete right away call back in here, so only one caller starts operations at a time and
+        // the others just ask it for another pass, instead of recursing once per device
+        if (wakeups.getAndIncrement() != 0)
+        {
+            return;
+        }
+
+        do
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_BULKOPERATION_41_002: [The function shall start the operation on each device, keeping at most maxRunningOperations of them running at any time]
+            while (runningOperations.get() < maxRunningOperations)
+            {
+                String deviceId = pendingDeviceIds.poll();
+                if (deviceId == null)
+                {
+                    break;
+                }
+
+                runningOperations.incrementAndGet();
+                CompletableFuture<T> future;
+                try
+                {
+                    future = operation.apply(deviceId);
+                }
+                catch (RuntimeException e)
+                {
+                    future = new CompletableFuture<>();
+                    future.completeExceptionally(e);
+                }
+
+                future.whenComplete((result, throwable) -> onFinished(deviceId, result, throwable));
+            }
+        }
+        while (wakeups.decrementAndGet() != 0);
+    }
+
+    private void onFinished(String deviceId, T result, Throwable throwable)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_BULKOPERATION_41_003: [The function shall record the result or the exception of each operation by device id]
+        if (throwable == null)
+        {
+            results.put(deviceId, result);
+        }
+        else
+        {
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+            failures.put(deviceId, cause instanceof Exception ? (Exception) cause : new IOException(cause));
+        }
+
+        runningOperations.decrementAndGet();
+        if (unfinishedOperations.decrementAndGet() == 0)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_BULKOPERATION_41_004: [The future shall complete once every operation completed, with the outcome of each operation and the elapsed time]
+            elapsedTimeNanos = System.nanoTime() - startTimeNanos;
+            completion.complete(this);
+        }
+        else
+        {
+            startPendingOperations();
+        }
+    }
+}
@@ -73,6 +73,21 @@ public class FeedbackReceiver extends Receiver
      * 
      */
     public FeedbackReceiver(String hostName, String userName, String sasToken, IotHubServiceClientProtocol iotHubServiceClientProtocol)
+    {
+        this(hostName, userName, sasToken, iotHubServiceClientProtocol, AmqpReceive.DEFAULT_PREFETCH_CREDIT);
+    }
+
+    /**
+     * Constructor to verify initialization parameters
+     * Create instance of AmqpReceive that keeps its connection open between receives
+     *
+     * @param hostName The iot hub host name
+     * @param userName The iot hub user name
+     * @param sasToken The iot hub SAS token for the given device
+     * @param iotHubServiceClientProtocol protocol to be used
+     * @param prefetchCredit the number of feedback batches the service can send before the earlier ones are received
+     */
+    public FeedbackReceiver(String hostName, String userName, String sasToken, IotHubServiceClientProtocol iotHubServiceClientProtocol, int prefetchCredit)
     {
         // Codes_SRS_SERVICE_SDK_JAVA_FEEDBACKRECEIVER_12_001: [The constructor shall throw IllegalArgumentException if any the input string is null or empty]
         if (Tools.isNullOrEmpty(hostName))
@@ -94,7 +109,7 @@ public class FeedbackReceiver extends Receiver
         }
                 
         // Codes_SRS_SERVICE_SDK_JAVA_FEEDBACKRECEIVER_12_003: [The constructor shall create a new instance of AmqpReceive object]
-        this.amqpReceive = new AmqpReceive(hostName, userName, sasToken, iotHubServiceClientProtocol);
+        this.amqpReceive = new AmqpReceive(hostName, userName, sasToken, iotHubServiceClientProtocol, prefetchCredit);
     }
         
     /**
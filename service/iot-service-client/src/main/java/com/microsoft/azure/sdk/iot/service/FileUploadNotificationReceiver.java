@@ -27,6 +27,20 @@ public class FileUploadNotificationReceiver extends Receiver
      * @param iotHubServiceClientProtocol The iot hub protocol name
      */
     FileUploadNotificationReceiver(String hostName, String userName, String sasToken, IotHubServiceClientProtocol iotHubServiceClientProtocol)
+    {
+        this(hostName, userName, sasToken, iotHubServiceClientProtocol, AmqpFileUploadNotificationReceive.DEFAULT_PREFETCH_CREDIT);
+    }
+
+    /**
+     * Constructor to verify initialization parameters
+     * Create instance of AmqpFileUploadNotificationReceive that keeps its connection open between receives
+     * @param hostName The iot hub host name
+     * @param userName The iot hub user name
+     * @param sasToken The iot hub SAS token for the given device
+     * @param iotHubServiceClientProtocol The iot hub protocol name
+     * @param prefetchCredit the number of notifications the service can send before the earlier ones are received
+     */
+    FileUploadNotificationReceiver(String hostName, String userName, String sasToken, IotHubServiceClientProtocol iotHubServiceClientProtocol, int prefetchCredit)
     {
         // Codes_SRS_SERVICE_SDK_JAVA_FILEUPLOADNOTIFICATIONRECEIVER_25_001: [** The constructor shall throw IllegalArgumentException if any the input string is null or empty **]**
         if (Tools.isNullOrEmpty(hostName))
@@ -47,7 +61,7 @@ public class FileUploadNotificationReceiver extends Receiver
         }
 
         // Codes_SRS_SERVICE_SDK_JAVA_FILEUPLOADNOTIFICATIONRECEIVER_25_002: [** The constructor shall create a new instance of AmqpFileUploadNotificationReceive object **]**
-        this.amqpFileUploadNotificationReceive = new AmqpFileUploadNotificationReceive(hostName, userName, sasToken, iotHubServiceClientProtocol);
+        this.amqpFileUploadNotificationReceive = new AmqpFileUploadNotificationReceive(hostName, userName, sasToken, iotHubServiceClientProtocol, prefetchCredit);
     }
 
     /**
@@ -5,6 +5,8 @@
 
 package com.microsoft.azure.sdk.iot.service;
 
+import com.microsoft.azure.sdk.iot.service.auth.IotHubServiceSasTokenCache;
+
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -31,6 +33,8 @@ public class IotHubConnectionString extends IotHubConnectionStringBuilder
     protected String sharedAccessKey;
     protected String sharedAccessSignature;
 
+    private final IotHubServiceSasTokenCache sasTokenCache = new IotHubServiceSasTokenCache();
+
     // Connection
     private static final String URL_SEPARATOR_0 = "/";
     private static final String URL_SEPARATOR_1 = "?";
@@ -751,6 +755,17 @@ public class IotHubConnectionString extends IotHubConnectionStringBuilder
         return this.hostName;
     }
 
+    /**
+     * Getter for the cache of the SAS tokens signed for this connection string. Each service client creates its own
+     * connection string, so clients do not share their cached tokens.
+     *
+     * @return The IotHubServiceSasTokenCache object
+     */
+    public IotHubServiceSasTokenCache getSasTokenCache()
+    {
+        return this.sasTokenCache;
+    }
+
     /**
      * Setter for sharedAccessKeyName
      *
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package com.microsoft.azure.sdk.iot.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Store the outcome of sending one message to each of many devices with {@link ServiceClient#sendAll(Map)}.
+ */
+public final class SendAllResult
+{
+    private final Set<String> succeededDeviceIds;
+    private final Map<String, Exception> failures;
+    private final long elapsedTimeNanos;
+
+    SendAllResult(Set<String> succeededDeviceIds, Map<String, Exception> failures, long elapsedTimeNanos)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_SENDALLRESULT_41_001: [The constructor shall save copies of the provided device ids, failures and elapsed time.]
+        this.succeededDeviceIds = Collections.unmodifiableSet(new HashSet<>(succeededDeviceIds));
+        this.failures = Collections.unmodifiableMap(new HashMap<>(failures));
+        this.elapsedTimeNanos = elapsedTimeNanos;
+    }
+
+    /**
+     * @return the ids of the devices whose message was acknowledged by IotHub.
+     */
+    public Set<String> getSucceededDeviceIds()
+    {
+        return this.succeededDeviceIds;
+    }
+
+    /**
+     * @return the exception each message failed with, keyed by the id of the device it was sent to.
+     * An IotHubException means that IotHub rejected the message, an IOException that the connection failed.
+     */
+    public Map<String, Exception> getFailures()
+    {
+        return this.failures;
+    }
+
+    /**
+     * @return true if IotHub acknowledged every message.
+     */
+    public boolean isSuccessful()
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_SENDALLRESULT_41_002: [The function shall return true if no message failed.]
+        return this.failures.isEmpty();
+    }
+
+    /**
+     * @return the time between the first message being queued and the last one being settled, in milliseconds.
+     */
+    public long getElapsedTimeMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(this.elapsedTimeNanos);
+    }
+
+    /**
+     * @return the number of messages settled per second, successfully or not, over the whole operation.
+     */
+    public double getMessagesPerSecond()
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_SENDALLRESULT_41_003: [The function shall return the number of settled messages divided by the elapsed time in seconds, or 0 if no time elapsed.]
+        if (this.elapsedTimeNanos <= 0)
+        {
+            return 0;
+        }
+
+        return (this.succeededDeviceIds.size() + this.failures.size()) * (double) TimeUnit.SECONDS.toNanos(1) / this.elapsedTimeNanos;
+    }
+}
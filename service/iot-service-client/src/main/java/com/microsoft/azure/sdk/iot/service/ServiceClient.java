@@ -10,7 +10,10 @@ import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
 import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpSend;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -19,6 +22,11 @@ import java.util.concurrent.Executors;
  */
 public class ServiceClient
 {
+    /**
+     * The number of messages sendAll keeps in flight at once unless told otherwise.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT_MESSAGES = 1000;
+
     private final ExecutorService executor = Executors.newFixedThreadPool(10);
 
     private AmqpSend amqpMessageSender;
@@ -197,18 +205,127 @@ public class ServiceClient
     public CompletableFuture<Void> sendAsync(String deviceId, Message message)
     {
         // Codes_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_12_016: [The function shall create an async wrapper around the send() function call]
-        final CompletableFuture<Void> future = new CompletableFuture<>();
-        executor.submit(() -> {
+        return this.sendAsync(deviceId, null, message);
+    }
+
+    /**
+     * Send a one-way message to the specified module without waiting for IotHub to acknowledge it.
+     * Messages sent this way share one AMQP connection and can all be in flight at the same time.
+     *
+     * @param deviceId The device identifier for the target device
+     * @param moduleId The module identifier for the target device, or null to send to the device itself
+     * @param message The message for the device
+     * @return The future object for the requested operation. It completes once IotHub acknowledges the message,
+     * or exceptionally with an IotHubException if IotHub rejects the message for any reason
+     */
+    public CompletableFuture<Void> sendAsync(String deviceId, String moduleId, Message message)
+    {
+        if (this.amqpMessageSender == null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_001: [The function shall return a future completed with an IOException if the member AMQP sender object has not been initialized]
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("AMQP sender is not initialized"));
+            return future;
+        }
+
         try
         {
-            send(deviceId, message);
-            future.complete(null);
-        } catch (Exception e)
+            // Codes_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_002: [The function shall call sendAsync() on the member AMQP sender object and return its future]
+            return this.amqpMessageSender.sendAsync(deviceId, moduleId, message);
+        }
+        catch (IOException e)
         {
+            // Codes_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_003: [If the AMQP sender throws, the function shall return a future completed with that exception]
+            CompletableFuture<Void> future = new CompletableFuture<>();
             future.completeExceptionally(e);
+            return future;
         }
-        });
-        return future;
+    }
+
+    /**
+     * Send one message to each of the specified devices and wait until IotHub has settled all of them.
+     * The messages are pipelined over the AMQP connection with at most {@link #DEFAULT_MAX_IN_FLIGHT_MESSAGES} in flight.
+     *
+     * @param messages The message for each device, keyed by device identifier
+     * @return The outcome of each message, keyed by device identifier, and the throughput of the operation
+     * @throws IOException This exception is thrown if the AmqpSender object is not initialized, or if the thread is interrupted while waiting
+     */
+    public SendAllResult sendAll(Map<String, Message> messages) throws IOException
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_004: [The function shall call sendAll() with DEFAULT_MAX_IN_FLIGHT_MESSAGES]
+        return this.sendAll(messages, DEFAULT_MAX_IN_FLIGHT_MESSAGES);
+    }
+
+    /**
+     * Send one message to each of the specified devices and wait until IotHub has settled all of them.
+     *
+     * @param messages The message for each device, keyed by device identifier
+     * @param maxInFlightMessages The largest number of messages sent but not yet settled at any time
+     * @return The outcome of each message, keyed by device identifier, and the throughput of the operation
+     * @throws IOException This exception is thrown if the AmqpSender object is not initialized, or if the thread is interrupted while waiting
+     */
+    public SendAllResult sendAll(Map<String, Message> messages, int maxInFlightMessages) throws IOException
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_005: [The function shall throw IOException if the member AMQP sender object has not been initialized]
+        if (this.amqpMessageSender == null)
+        {
+            throw new IOException("AMQP sender is not initialized");
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_006: [The function shall wait for the future returned by sendAllAsync() and return its result]
+        try
+        {
+            return this.sendAllAsync(messages, maxInFlightMessages).get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the messages to be acknowledged", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Provide asynchronous access to sendAll()
+     *
+     * @param messages The message for each device, keyed by device identifier
+     * @return The future object for the requested operation
+     */
+    public CompletableFuture<SendAllResult> sendAllAsync(Map<String, Message> messages)
+    {
+        return this.sendAllAsync(messages, DEFAULT_MAX_IN_FLIGHT_MESSAGES);
+    }
+
+    /**
+     * Provide asynchronous access to sendAll(). A new message is sent each time one in flight is settled,
+     * so the calling thread is never blocked.
+     *
+     * @param messages The message for each device, keyed by device identifier
+     * @param maxInFlightMessages The largest number of messages sent but not yet settled at any time
+     * @return The future object for the requested operation. It completes once every message was settled,
+     * successfully or not
+     */
+    public CompletableFuture<SendAllResult> sendAllAsync(Map<String, Message> messages, int maxInFlightMessages)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_007: [The function shall throw IllegalArgumentException if the messages are null, or if maxInFlightMessages is smaller than 1]
+        if (messages == null)
+        {
+            throw new IllegalArgumentException("messages cannot be null");
+        }
+        if (maxInFlightMessages < 1)
+        {
+            throw new IllegalArgumentException("maxInFlightMessages must be at least 1");
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_008: [The function shall send the messages with sendAsync(), keeping at most maxInFlightMessages of them unsettled at any time]
+        // Codes_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_009: [The function shall record the outcome of each message by device identifier]
+        // Codes_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_010: [The future shall complete once every message was settled, with the outcome of each message and the elapsed time]
+        Map<String, Message> messagesToSend = new LinkedHashMap<>(messages);
+        return BulkOperation.start(messagesToSend.keySet(), maxInFlightMessages, deviceId -> this.sendAsync(deviceId, messagesToSend.get(deviceId)))
+                .thenApply(operation -> new SendAllResult(operation.getResults().keySet(), operation.getFailures(), operation.getElapsedTimeNanos()));
     }
 
     /**
@@ -238,6 +355,19 @@ public class ServiceClient
         return feedbackReceiver;
     }
 
+    /**
+     * Get FeedbackReceiver object that lets the service send up to prefetchCredit feedback batches
+     * before the earlier ones are received.
+     *
+     * @param prefetchCredit the number of feedback batches that can wait to be received
+     * @return The instance of the FeedbackReceiver
+     */
+    public FeedbackReceiver getFeedbackReceiver(int prefetchCredit)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_011: [The function shall create a FeedbackReceiver object with the given prefetch credit and return with it]
+        return new FeedbackReceiver(hostName, userName, sasToken, iotHubServiceClientProtocol, prefetchCredit);
+    }
+
     /**
      * Get FileUploadNotificationReceiver object.
      *
@@ -247,5 +377,18 @@ public class ServiceClient
     {
         return new FileUploadNotificationReceiver(hostName, userName, sasToken, iotHubServiceClientProtocol);
     }
+
+    /**
+     * Get FileUploadNotificationReceiver object that lets the service send up to prefetchCredit notifications
+     * before the earlier ones are received.
+     *
+     * @param prefetchCredit the number of notifications that can wait to be received
+     * @return The instance of the FileUploadNotificationReceiver
+     */
+    public FileUploadNotificationReceiver getFileUploadNotificationReceiver(int prefetchCredit)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_012: [The function shall create a FileUploadNotificationReceiver object with the given prefetch credit and return with it]
+        return new FileUploadNotificationReceiver(hostName, userName, sasToken, iotHubServiceClientProtocol, prefetchCredit);
+    }
     
 }
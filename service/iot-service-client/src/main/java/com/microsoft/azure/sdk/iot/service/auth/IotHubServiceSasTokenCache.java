@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package com.microsoft.azure.sdk.iot.service.auth;
+
+import com.microsoft.azure.sdk.iot.service.IotHubConnectionString;
+
+import java.util.Objects;
+
+/**
+ * Keeps the SAS tokens of a service client, so that a token is only signed again shortly before it expires instead
+ * of on every request. Each client has its own cache, reachable through its connection string, which keeps the
+ * token last signed for it. The token is signed again if the credentials of the connection string changed.
+ */
+public final class IotHubServiceSasTokenCache
+{
+    /**
+     * The number of seconds before its expiry that a cached token is replaced by a new one, unless set otherwise.
+     */
+    public static final long DEFAULT_REFRESH_MARGIN_SECS = 60 * 60;
+
+    private volatile IotHubServiceSasToken token;
+    private volatile long refreshMarginSecs = DEFAULT_REFRESH_MARGIN_SECS;
+
+    /**
+     * Returns a SAS token for the provided connection string, signing a new one only if the cached token was not
+     * signed for its credentials or if it expires within the refresh margin. Safe to call from many threads;
+     * threads racing to replace an expiring token may each sign one, and the last one is kept.
+     *
+     * @param iotHubConnectionString Connection string object containing the connection parameters
+     * @return the string representation of the SAS token.
+     */
+    public String getToken(IotHubConnectionString iotHubConnectionString)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_IOTHUBSERVICESASTOKENCACHE_41_001: [The function shall throw IllegalArgumentException if the input object is null.]
+        if (iotHubConnectionString == null)
+        {
+            throw new IllegalArgumentException("iotHubConnectionString cannot be null");
+        }
+
+        IotHubServiceSasToken token = this.token;
+
+        // Codes_SRS_SERVICE_SDK_JAVA_IOTHUBSERVICESASTOKENCACHE_41_005: [The function shall only reuse the cached token if it was signed for the host name, shared access key name and shared access key of the connection string.]
+        if (token == null || !isSignedFor(token, iotHubConnectionString) || this.isExpiring(token))
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_IOTHUBSERVICESASTOKENCACHE_41_003: [If there is no cached token for the credentials, or if it expires within the refresh margin, the function shall create a new IotHubServiceSasToken and cache it.]
+            token = new IotHubServiceSasToken(iotHubConnectionString);
+            this.token = token;
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_IOTHUBSERVICESASTOKENCACHE_41_002: [The function shall return the string representation of the cached token for the credentials of the connection string.]
+        return token.toString();
+    }
+
+    /**
+     * Sets how long before its expiry a token cached by this client is replaced by a new one. Applies to the tokens
+     * returned from then on.
+     *
+     * @param refreshMarginSecs the refresh margin in seconds. Cannot be negative.
+     */
+    public void setRefreshMarginSecs(long refreshMarginSecs)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_IOTHUBSERVICESASTOKENCACHE_41_004: [The function shall throw IllegalArgumentException if the refresh margin is negative.]
+        if (refreshMarginSecs < 0)
+        {
+            throw new IllegalArgumentException("refreshMarginSecs cannot be negative");
+        }
+
+        this.refreshMarginSecs = refreshMarginSecs;
+    }
+
+    /**
+     * Drops the token cached by this client, so that its next request signs a new one.
+     */
+    public void clear()
+    {
+        this.token = null;
+    }
+
+    private boolean isExpiring(IotHubServiceSasToken token)
+    {
+        return System.currentTimeMillis() / 1000 >= token.expiryTime - this.refreshMarginSecs;
+    }
+
+    private static boolean isSignedFor(IotHubServiceSasToken token, IotHubConnectionString iotHubConnectionString)
+    {
+        return Objects.equals(token.resourceUri, iotHubConnectionString.getHostName())
+                && Objects.equals(token.keyName, iotHubConnectionString.getSharedAccessKeyName())
+                && Objects.equals(token.keyValue, iotHubConnectionString.getSharedAccessKey());
+    }
+}
@@ -4,8 +4,10 @@
 package com.microsoft.azure.sdk.iot.service.devicetwin;
 
 import com.microsoft.azure.sdk.iot.deps.serializer.MethodParser;
+import com.microsoft.azure.sdk.iot.service.BulkOperation;
 import com.microsoft.azure.sdk.iot.service.IotHubConnectionString;
 import com.microsoft.azure.sdk.iot.service.IotHubConnectionStringBuilder;
+import com.microsoft.azure.sdk.iot.service.auth.IotHubServiceSasTokenCache;
 import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpMethod;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpResponse;
@@ -13,15 +15,38 @@ import com.microsoft.azure.sdk.iot.service.transport.http.HttpResponse;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * DeviceMethod enables service client to directly invoke methods on various devices from service client.
  */
 public class DeviceMethod
 {
+    /**
+     * The number of invocations {@link #invokeAll(Collection, String, Long, Long, Object)} keeps running at the same
+     * time if no limit is provided.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_INVOCATIONS = 100;
+
+    /**
+     * The number of threads asynchronous invocations run on if no other number is provided.
+     */
+    public static final int DEFAULT_INVOCATION_THREADS = DEFAULT_MAX_CONCURRENT_INVOCATIONS;
+
+    private static final long INVOCATION_THREAD_KEEP_ALIVE_SECONDS = 60;
+
     private IotHubConnectionString iotHubConnectionString = null;
-    private Integer requestId = 0;
+    private final AtomicInteger requestId = new AtomicInteger();
+    private int invocationThreads = DEFAULT_INVOCATION_THREADS;
+    private ThreadPoolExecutor invocationExecutor = null;
     private static final int DEFAULT_RESPONSE_TIMEOUT = 30; // default response timeout is 30 seconds
     private static final int DEFAULT_CONNECT_TIMEOUT = 0;
     private static final int THOUSAND_MS = 1000;
@@ -49,6 +74,40 @@ public class DeviceMethod
         return deviceMethod;
     }
 
+    /**
+     * Create a DeviceMethod instance from the information in the connection string, whose asynchronous invocations
+     * run on at most the provided number of threads.
+     *
+     * @param connectionString is the IoTHub connection string.
+     * @param invocationThreads is the largest number of asynchronous invocations running at the same time. Any
+     *                          further invocation waits for one of them to complete.
+     * @return an instance of the DeviceMethod.
+     * @throws IOException This exception is thrown if the object creation failed
+     */
+    public static DeviceMethod createFromConnectionString(String connectionString, int invocationThreads) throws IOException
+    {
+        /* Codes_SRS_DEVICEMETHOD_41_008: [The constructor shall throw IllegalArgumentException if the provided invocationThreads is smaller than 1.] */
+        if (invocationThreads < 1)
+        {
+            throw new IllegalArgumentException("invocationThreads must be at least 1");
+        }
+
+        DeviceMethod deviceMethod = createFromConnectionString(connectionString);
+        deviceMethod.invocationThreads = invocationThreads;
+        return deviceMethod;
+    }
+
+    /**
+     * Getter for the cache of the SAS tokens this client signs its requests with, to change its refresh margin or
+     * clear it. Other clients keep their own cache.
+     *
+     * @return The IotHubServiceSasTokenCache object
+     */
+    public IotHubServiceSasTokenCache getSasTokenCache()
+    {
+        return this.iotHubConnectionString.getSasTokenCache();
+    }
+
     /**
      * Directly invokes a method on the device and return its result.
      *
@@ -61,7 +120,7 @@ public class DeviceMethod
      * @throws IotHubException This exception is thrown if the response verification failed
      * @throws IOException This exception is thrown if the IO operation failed
      */
-    public synchronized MethodResult invoke(String deviceId, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload) throws IotHubException, IOException
+    public MethodResult invoke(String deviceId, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload) throws IotHubException, IOException
     {
         /* Codes_SRS_DEVICEMETHOD_21_004: [The invoke shall throw IllegalArgumentException if the provided deviceId is null or empty.] */
         if((deviceId == null) || deviceId.isEmpty())
@@ -94,7 +153,7 @@ public class DeviceMethod
      * @throws IotHubException This exception is thrown if the response verification failed
      * @throws IOException This exception is thrown if the IO operation failed
      */
-    public synchronized MethodResult invoke(String deviceId, String moduleId, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload) throws IotHubException, IOException
+    public MethodResult invoke(String deviceId, String moduleId, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload) throws IotHubException, IOException
     {
         /* Codes_SRS_DEVICEMETHOD_28_001: [The invoke shall throw IllegalArgumentException if the provided deviceId is null or empty.] */
         if((deviceId == null) || deviceId.isEmpty())
@@ -120,6 +179,155 @@ public class DeviceMethod
         return invokeMethod(url, methodName, responseTimeoutInSeconds, connectTimeoutInSeconds, payload);
     }
 
+    /**
+     * Directly invokes a method on the device without blocking the caller. Invocations run on a bounded pool of
+     * threads owned by this instance, so a device that is slow to answer does not delay the invocations on other
+     * devices while there are free threads. The pool is released by {@link #close()}.
+     *
+     * @param deviceId is the device where the request is send to.
+     * @param methodName is the name of the method that shall be invoked on the device.
+     * @param responseTimeoutInSeconds is the maximum waiting time for a response from the device in seconds.
+     * @param connectTimeoutInSeconds is the maximum waiting time for a response from the connection in seconds.
+     * @param payload is the the method parameter
+     * @return a future that completes with the status and payload resulted from the method invoke, or completes
+     * exceptionally with the IotHubException or IOException that {@link #invoke(String, String, Long, Long, Object)}
+     * would have thrown.
+     */
+    public CompletableFuture<MethodResult> invokeAsync(String deviceId, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload)
+    {
+        /* Codes_SRS_DEVICEMETHOD_41_001: [The invokeAsync shall throw IllegalArgumentException if the provided deviceId or methodName is null or empty.] */
+        if((deviceId == null) || deviceId.isEmpty())
+        {
+            throw new IllegalArgumentException("deviceId is empty or null.");
+        }
+
+        if((methodName == null) || methodName.isEmpty())
+        {
+            throw new IllegalArgumentException("methodName is empty or null.");
+        }
+
+        CompletableFuture<MethodResult> future = new CompletableFuture<>();
+
+        /* Codes_SRS_DEVICEMETHOD_41_002: [The invokeAsync shall invoke the method on a thread of the invocation pool and return a future that completes with its result.] */
+        getInvocationExecutor().execute(() ->
+        {
+            try
+            {
+                future.complete(invoke(deviceId, methodName, responseTimeoutInSeconds, connectTimeoutInSeconds, payload));
+            }
+            catch (Exception e)
+            {
+                /* Codes_SRS_DEVICEMETHOD_41_003: [If the invocation fails, the future shall complete exceptionally with the exception it failed with.] */
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Directly invokes the same method on every provided device, keeping at most {@link #DEFAULT_MAX_CONCURRENT_INVOCATIONS}
+     * invocations running at the same time.
+     *
+     * @param deviceIds the devices where the request is send to.
+     * @param methodName is the name of the method that shall be invoked on the devices.
+     * @param responseTimeoutInSeconds is the maximum waiting time for a response from each device in seconds.
+     * @param connectTimeoutInSeconds is the maximum waiting time for a response from the connection in seconds.
+     * @param payload is the the method parameter
+     * @return a future that completes once every invocation completed, with the outcome of each invocation.
+     */
+    public CompletableFuture<InvokeAllResult> invokeAll(Collection<String> deviceIds, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload)
+    {
+        return invokeAll(deviceIds, methodName, responseTimeoutInSeconds, connectTimeoutInSeconds, payload, DEFAULT_MAX_CONCURRENT_INVOCATIONS);
+    }
+
+    /**
+     * Directly invokes the same method on every provided device, keeping at most maxConcurrentInvocations invocations
+     * running at the same time. Invocations that fail do not stop the others, their exception is reported in the result.
+     * Whatever maxConcurrentInvocations is, no more invocations run at the same time than this instance has threads.
+     *
+     * <p>The invocations share the keep-alive connections of the JDK HTTP client, which keeps at most
+     * {@code http.maxConnections} idle connections per host, so that system property should be raised to match
+     * maxConcurrentInvocations when it is large.</p>
+     *
+     * @param deviceIds the devices where the request is send to.
+     * @param methodName is the name of the method that shall be invoked on the devices.
+     * @param responseTimeoutInSeconds is the maximum waiting time for a response from each device in seconds.
+     * @param connectTimeoutInSeconds is the maximum waiting time for a response from the connection in seconds.
+     * @param payload is the the method parameter
+     * @param maxConcurrentInvocations the maximum number of invocations running at the same time.
+     * @return a future that completes once every invocation completed, with the outcome of each invocation.
+     */
+    public CompletableFuture<InvokeAllResult> invokeAll(Collection<String> deviceIds, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload, int maxConcurrentInvocations)
+    {
+        /* Codes_SRS_DEVICEMETHOD_41_004: [The invokeAll shall throw IllegalArgumentException if the provided deviceIds is null or holds a null, empty or repeated device id, if the methodName is null or empty, or if maxConcurrentInvocations is smaller than 1.] */
+        if (deviceIds == null)
+        {
+            throw new IllegalArgumentException("deviceIds cannot be null");
+        }
+
+        Set<String> uniqueDeviceIds = new HashSet<>();
+        for (String deviceId : deviceIds)
+        {
+            if ((deviceId == null) || deviceId.isEmpty())
+            {
+                throw new IllegalArgumentException("deviceIds cannot contain a null or empty device id");
+            }
+
+            if (!uniqueDeviceIds.add(deviceId))
+            {
+                throw new IllegalArgumentException("deviceIds cannot contain device id " + deviceId + " more than once");
+            }
+        }
+
+        if((methodName == null) || methodName.isEmpty())
+        {
+            throw new IllegalArgumentException("methodName is empty or null.");
+        }
+
+        if (maxConcurrentInvocations < 1)
+        {
+            throw new IllegalArgumentException("maxConcurrentInvocations must be at least 1");
+        }
+
+        /* Codes_SRS_DEVICEMETHOD_41_005: [The invokeAll shall invoke the method on each device with invokeAsync, keeping at most maxConcurrentInvocations invocations running at any time.] */
+        /* Codes_SRS_DEVICEMETHOD_41_006: [The invokeAll shall record the result or the exception of each invocation by device id.] */
+        /* Codes_SRS_DEVICEMETHOD_41_007: [The future shall complete once every invocation completed, with the outcome of each invocation and the elapsed time.] */
+        return BulkOperation.start(deviceIds, maxConcurrentInvocations, deviceId -> invokeAsync(deviceId, methodName, responseTimeoutInSeconds, connectTimeoutInSeconds, payload))
+                .thenApply(operation -> new InvokeAllResult(operation.getResults(), operation.getFailures(), operation.getElapsedTimeNanos()));
+    }
+
+    /**
+     * Shuts down the pool of threads the asynchronous invocations run on. Invocations that were already requested
+     * still run to completion. An asynchronous invocation requested after this starts a new pool.
+     */
+    public synchronized void close()
+    {
+        /* Codes_SRS_DEVICEMETHOD_41_009: [The close shall shut down the invocation pool, letting the invocations already requested complete.] */
+        if (this.invocationExecutor != null)
+        {
+            this.invocationExecutor.shutdown();
+            this.invocationExecutor = null;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getInvocationExecutor()
+    {
+        if (this.invocationExecutor == null)
+        {
+            // Idle threads end after a minute, so an instance that is no longer used does not keep any thread alive
+            this.invocationExecutor = new ThreadPoolExecutor(this.invocationThreads, this.invocationThreads, INVOCATION_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable ->
+            {
+                Thread thread = new Thread(runnable, "azure-iot-sdk-DeviceMethod");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.invocationExecutor.allowCoreThreadTimeOut(true);
+        }
+
+        return this.invocationExecutor;
+    }
+
     /**
      * Directly invokes a method on the device and return its result.
      *
@@ -132,7 +340,7 @@ public class DeviceMethod
      * @throws IotHubException This exception is thrown if the response verification failed
      * @throws IOException This exception is thrown if the IO operation failed
      */
-    private synchronized MethodResult invokeMethod(URL url, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload) throws IotHubException, IOException
+    private MethodResult invokeMethod(URL url, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload) throws IotHubException, IOException
     {
         /* Codes_SRS_DEVICEMETHOD_21_006: [The invoke shall throw IllegalArgumentException if the provided responseTimeoutInSeconds is negative.] */
         /* Codes_SRS_DEVICEMETHOD_21_007: [The invoke shall throw IllegalArgumentException if the provided connectTimeoutInSeconds is negative.] */
@@ -172,7 +380,7 @@ public class DeviceMethod
                
         /* Codes_SRS_DEVICEMETHOD_21_009: [The invoke shall send the created request and get the response using the HttpRequester.] */
         /* Codes_SRS_DEVICEMETHOD_21_010: [The invoke shall create a new HttpRequest with http method as `POST`.] */
-        HttpResponse response = DeviceOperations.request(this.iotHubConnectionString, url, HttpMethod.POST, json.getBytes(StandardCharsets.UTF_8), String.valueOf(requestId++), timeoutInMs);
+        HttpResponse response = DeviceOperations.request(this.iotHubConnectionString, url, HttpMethod.POST, json.getBytes(StandardCharsets.UTF_8), String.valueOf(requestId.getAndIncrement()), timeoutInMs);
 
         /* Codes_SRS_DEVICEMETHOD_21_013: [The invoke shall deserialize the payload using the `serializer.MethodParser`.] */
         MethodParser methodParserResponse = new MethodParser();
@@ -8,18 +8,27 @@ package com.microsoft.azure.sdk.iot.service.devicetwin;
 import com.microsoft.azure.sdk.iot.deps.twin.*;
 import com.microsoft.azure.sdk.iot.service.IotHubConnectionString;
 import com.microsoft.azure.sdk.iot.service.IotHubConnectionStringBuilder;
+import com.microsoft.azure.sdk.iot.service.auth.IotHubServiceSasTokenCache;
 import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpMethod;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpResponse;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class DeviceTwin
 {
+    /**
+     * The number of received pages {@link #queryTwinStream(String)} keeps waiting to be consumed if no limit is provided.
+     */
+    public static final int DEFAULT_MAX_BUFFERED_PAGES = 2;
+
     private IotHubConnectionString iotHubConnectionString = null;
     private Integer requestId = 0;
     private final long USE_DEFAULT_TIMEOUT = 0;
@@ -52,6 +61,17 @@ public class DeviceTwin
         return deviceTwin;
     }
 
+    /**
+     * Getter for the cache of the SAS tokens this client signs its requests with, to change its refresh margin or
+     * clear it. Other clients keep their own cache.
+     *
+     * @return The IotHubServiceSasTokenCache object
+     */
+    public IotHubServiceSasTokenCache getSasTokenCache()
+    {
+        return this.iotHubConnectionString.getSasTokenCache();
+    }
+
     /**
      * This method retrieves device twin for the specified device.
      *
@@ -105,12 +125,11 @@ public class DeviceTwin
          **Codes_SRS_DEVICETWIN_25_010: [** The function shall verify the response status and throw proper Exception **]**
          */
         HttpResponse response = DeviceOperations.request(this.iotHubConnectionString, url, HttpMethod.GET, new byte[0], String.valueOf(requestId++), USE_DEFAULT_TIMEOUT);
-        String twin = new String(response.getBody(), StandardCharsets.UTF_8);
 
         /*
         **Codes_SRS_DEVICETWIN_25_011: [** The function shall deserialize the payload by calling updateTwin Api on the twin object **]**
          */
-        TwinState twinState = TwinState.createFromTwinJson(twin);
+        TwinState twinState = TwinState.createFromTwinJson(new ByteArrayInputStream(response.getBody()));
 
         /*
         **Codes_SRS_DEVICETWIN_25_012: [** The function shall set eTag, tags, desired property map, reported property map on the user device **]**
@@ -264,6 +283,61 @@ public class DeviceTwin
         return deviceTwinQuery;
     }
 
+    /**
+     * Sql style query for twin, that provides every twin of every page of the query as a single stream. The next page
+     * is requested on a background thread as soon as the previous one is received, so that requests overlap with the
+     * processing of the twins already received. Pages are handed out whole when the stream is split, so a parallel
+     * stream processes different pages on different threads.
+     *
+     * <p>The stream should be closed, for example with try-with-resources, if it is not consumed to its end, so that
+     * no further pages are requested. A request that fails surfaces as an {@link java.io.UncheckedIOException} when
+     * the stream reaches the page that could not be received.</p>
+     *
+     * @param sqlQuery Sql query string to query IotHub for Twin
+     * @param pageSize Size to limit each query response by
+     * @param maxBufferedPages Maximum number of received pages waiting to be consumed
+     * @return the stream of twins matching the query
+     * @throws IllegalArgumentException if the query is null or not valid, or if pageSize or maxBufferedPages is smaller than 1
+     * @throws MalformedURLException If twin query url is not correct
+     */
+    public Stream<DeviceTwinDevice> queryTwinStream(String sqlQuery, Integer pageSize, int maxBufferedPages) throws MalformedURLException
+    {
+        if (sqlQuery == null || sqlQuery.length() == 0)
+        {
+            //Codes_SRS_DEVICETWIN_41_002: [ The method shall throw IllegalArgumentException if the query is null or empty, or if the page size or maxBufferedPages is zero or negative.]
+            throw new IllegalArgumentException("Query cannot be null or empty");
+        }
+
+        if (pageSize == null || pageSize <= 0)
+        {
+            throw new IllegalArgumentException("pagesize cannot be negative or zero");
+        }
+
+        //Codes_SRS_DEVICETWIN_41_003: [ The method shall create a new Query Object of Type TWIN and request its pages with a PrefetchingQuerySpliterator holding at most maxBufferedPages pages.]
+        Query deviceTwinQuery = new Query(sqlQuery, pageSize, QueryType.TWIN);
+        PrefetchingQuerySpliterator<DeviceTwinDevice> spliterator = new PrefetchingQuerySpliterator<>(
+                deviceTwinQuery, this.iotHubConnectionString, this.iotHubConnectionString.getUrlTwinQuery(), HttpMethod.POST,
+                USE_DEFAULT_TIMEOUT, maxBufferedPages, page -> twinStateToDeviceTwinDevice(page.nextTwinState()));
+
+        //Codes_SRS_DEVICETWIN_41_004: [ Closing the returned stream shall close the spliterator.]
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * Sql style query for twin, that provides every twin of every page of the query as a single stream, with the
+     * default page size and at most {@link #DEFAULT_MAX_BUFFERED_PAGES} pages waiting to be consumed.
+     * See {@link #queryTwinStream(String, Integer, int)}.
+     *
+     * @param sqlQuery Sql query string to query IotHub for Twin
+     * @return the stream of twins matching the query
+     * @throws IllegalArgumentException if the query is null or not valid
+     * @throws MalformedURLException If twin query url is not correct
+     */
+    public Stream<DeviceTwinDevice> queryTwinStream(String sqlQuery) throws MalformedURLException
+    {
+        return this.queryTwinStream(sqlQuery, DEFAULT_PAGE_SIZE, DEFAULT_MAX_BUFFERED_PAGES);
+    }
+
     /**
      * Sql style query for twin
      * @param sqlQuery Sql query string to query IotHub for Twin
@@ -343,9 +417,14 @@ public class DeviceTwin
             throw new IllegalArgumentException("Query cannot be null");
         }
 
-        Object nextObject = deviceTwinQuery.next();
+        Object nextObject = deviceTwinQuery.nextTwin();
 
-        if (nextObject instanceof String)
+        if (nextObject instanceof TwinState)
+        {
+            //Codes_SRS_DEVICETWIN_41_001: [ If the next element from the query response is a TwinState, the method shall provide it on DeviceTwinDevice without parsing it again.]
+            return twinStateToDeviceTwinDevice((TwinState) nextObject);
+        }
+        else if (nextObject instanceof String)
         {
             //Codes_SRS_DEVICETWIN_25_059: [ The method shall parse the next element from the query response as Twin Document using TwinState and provide the response on DeviceTwinDevice.]
             String twinJson = (String) nextObject;
@@ -486,8 +565,11 @@ public class DeviceTwin
 
     private DeviceTwinDevice jsonToDeviceTwinDevice(String json) throws IOException
     {
-        TwinState twinState = TwinState.createFromTwinJson(json);
+        return twinStateToDeviceTwinDevice(TwinState.createFromTwinJson(json));
+    }
 
+    private DeviceTwinDevice twinStateToDeviceTwinDevice(TwinState twinState)
+    {
         DeviceTwinDevice deviceTwinDevice = new DeviceTwinDevice(twinState.getDeviceId());
         deviceTwinDevice.setVersion(twinState.getVersion());
         deviceTwinDevice.setETag(twinState.getETag());
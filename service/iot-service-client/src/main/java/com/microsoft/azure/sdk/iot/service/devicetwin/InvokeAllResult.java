@@ -0,0 +1,62 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.service.devicetwin;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Store the outcome of invoking a method on each of many devices with {@link DeviceMethod#invokeAll(Collection, String, Long, Long, Object)}.
+ */
+public final class InvokeAllResult
+{
+    private final Map<String, MethodResult> results;
+    private final Map<String, Exception> failures;
+    private final long elapsedTimeNanos;
+
+    InvokeAllResult(Map<String, MethodResult> results, Map<String, Exception> failures, long elapsedTimeNanos)
+    {
+        /* Codes_SRS_INVOKEALLRESULT_41_001: [The constructor shall save copies of the provided results, failures and elapsed time.] */
+        this.results = Collections.unmodifiableMap(new HashMap<>(results));
+        this.failures = Collections.unmodifiableMap(new HashMap<>(failures));
+        this.elapsedTimeNanos = elapsedTimeNanos;
+    }
+
+    /**
+     * @return the status and payload returned by each device that answered, keyed by device id.
+     */
+    public Map<String, MethodResult> getResults()
+    {
+        return this.results;
+    }
+
+    /**
+     * @return the exception each invocation failed with, keyed by device id. An IotHubException means that IotHub
+     * rejected the invocation, for example because the device is not connected, an IOException that the request failed.
+     */
+    public Map<String, Exception> getFailures()
+    {
+        return this.failures;
+    }
+
+    /**
+     * @return true if every device answered.
+     */
+    public boolean isSuccessful()
+    {
+        /* Codes_SRS_INVOKEALLRESULT_41_002: [The function shall return true if no invocation failed.] */
+        return this.failures.isEmpty();
+    }
+
+    /**
+     * @return the time between the first invocation being started and the last one completing, in milliseconds.
+     */
+    public long getElapsedTimeMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(this.elapsedTimeNanos);
+    }
+}
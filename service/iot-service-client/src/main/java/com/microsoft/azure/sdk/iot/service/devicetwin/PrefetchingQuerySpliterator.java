@@ -0,0 +1,287 @@
+/*
+ *  Copyright (c) Microsoft. All rights reserved.
+ *  Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package com.microsoft.azure.sdk.iot.service.devicetwin;
+
+import com.microsoft.azure.sdk.iot.service.IotHubConnectionString;
+import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
+import com.microsoft.azure.sdk.iot.service.transport.http.HttpMethod;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Spliterator over every element of a query, that requests the next page on a background thread as soon as the
+ * continuation token of the current one arrives, instead of when the caller reaches the end of the current one.
+ *
+ * <p>At most maxBufferedPages received pages wait to be consumed, so a slow consumer holds back the requests instead
+ * of buffering the whole query. Each page is handed out as a whole by {@link #trySplit()}, so a parallel stream reads
+ * the elements of different pages on different threads.</p>
+ *
+ * <p>The background thread ends once the last page was received or {@link #close()} was called. A failed request
+ * is rethrown to the consumer as an {@link UncheckedIOException} once it reaches the page that could not be received.</p>
+ *
+ * @param <T> the type the query elements are converted into.
+ */
+final class PrefetchingQuerySpliterator<T> implements Spliterator<T>, AutoCloseable
+{
+    private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.NONNULL;
+    private static final long ENQUEUE_POLL_INTERVAL_MILLISECONDS = 100;
+
+    private static final class Page
+    {
+        private final QueryResponse response;
+        private final Exception failure;
+
+        private Page(QueryResponse response, Exception failure)
+        {
+            this.response = response;
+            this.failure = failure;
+        }
+    }
+
+    private static final Page END_OF_QUERY = new Page(null, null);
+
+    private final Query query;
+    private final IotHubConnectionString iotHubConnectionString;
+    private final URL url;
+    private final HttpMethod httpMethod;
+    private final long timeoutInMs;
+    private final Function<QueryResponse, T> elementReader;
+    private final BlockingQueue<Page> receivedPages;
+    private final Thread fetchThread;
+    private volatile boolean isClosed = false;
+
+    private QueryResponse currentPage = null;
+    private boolean isEndOfQuery = false;
+
+    /**
+     * Starts requesting the pages of the query.
+     *
+     * @param query the query to request, which must not have been sent yet.
+     * @param iotHubConnectionString the connection string of the hub to query.
+     * @param url the URL to query on.
+     * @param httpMethod the HTTP method for the query requests.
+     * @param timeoutInMs the maximum time to wait for the hub to respond to each request.
+     * @param maxBufferedPages the maximum number of received pages waiting to be consumed.
+     * @param elementReader reads the next element of a query response into the type this spliterator provides.
+     * @throws IllegalArgumentException if any of the parameters is null, or if maxBufferedPages is smaller than 1.
+     */
+    PrefetchingQuerySpliterator(Query query, IotHubConnectionString iotHubConnectionString, URL url, HttpMethod httpMethod,
+                                long timeoutInMs, int maxBufferedPages, Function<QueryResponse, T> elementReader)
+    {
+        if (query == null || iotHubConnectionString == null || url == null || httpMethod == null || elementReader == null)
+        {
+            //Codes_SRS_PREFETCHINGQUERYSPLITERATOR_41_001: [The constructor shall throw IllegalArgumentException if any of the parameters is null, or if maxBufferedPages is smaller than 1.]
+            throw new IllegalArgumentException("Input parameters cannot be null");
+        }
+
+        if (maxBufferedPages < 1)
+        {
+            throw new IllegalArgumentException("maxBufferedPages must be at least 1");
+        }
+
+        this.query = query;
+        this.iotHubConnectionString = iotHubConnectionString;
+        this.url = url;
+        this.httpMethod = httpMethod;
+        this.timeoutInMs = timeoutInMs;
+        this.elementReader = elementReader;
+        this.receivedPages = new ArrayBlockingQueue<>(maxBufferedPages);
+
+        //Codes_SRS_PREFETCHINGQUERYSPLITERATOR_41_002: [The constructor shall start a daemon thread that requests the pages of the query one after the other, as soon as the continuation token of the previous one is received.]
+        this.fetchThread = new Thread(this::fetchPages, "azure-iot-sdk-QueryPrefetch");
+        this.fetchThread.setDaemon(true);
+        this.fetchThread.start();
+    }
+
+    private void fetchPages()
+    {
+        try
+        {
+            QueryResponse response = this.query.sendQueryRequest(this.iotHubConnectionString, this.url, this.httpMethod, this.timeoutInMs);
+            while (response != null)
+            {
+                //Codes_SRS_PREFETCHINGQUERYSPLITERATOR_41_003: [The thread shall wait for room before adding a received page if maxBufferedPages pages are already waiting to be consumed.]
+                if (!this.enqueue(new Page(response, null)))
+                {
+                    return;
+                }
+
+                response = this.query.sendNextPageRequest();
+            }
+
+            this.enqueue(END_OF_QUERY);
+        }
+        catch (IOException | IotHubException | RuntimeException e)
+        {
+            //Codes_SRS_PREFETCHINGQUERYSPLITERATOR_41_004: [If a request fails, the thread shall stop requesting pages and hand the failure to the consumer after the pages received before it.]
+            this.enqueue(new Page(null, e));
+        }
+    }
+
+    private boolean enqueue(Page page)
+    {
+        try
+        {
+            while (!this.isClosed)
+            {
+                if (this.receivedPages.offer(page, ENQUEUE_POLL_INTERVAL_MILLISECONDS, TimeUnit.MILLISECONDS))
+                {
+                    return true;
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        return false;
+    }
+
+    private QueryResponse takePage()
+    {
+        if (this.isEndOfQuery || this.isClosed)
+        {
+            return null;
+        }
+
+        Page page;
+        try
+        {
+            page = this.receivedPages.take();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new IOException("Interrupted while waiting for the next query page", e));
+        }
+
+        if (page == END_OF_QUERY)
+        {
+            this.isEndOfQuery = true;
+            return null;
+        }
+
+        if (page.failure != null)
+        {
+            //Codes_SRS_PREFETCHINGQUERYSPLITERATOR_41_005: [If the next page could not be received, the consumer shall get an UncheckedIOException caused by the failure.]
+            this.isEndOfQuery = true;
+            if (page.failure instanceof RuntimeException)
+            {
+                throw (RuntimeException) page.failure;
+            }
+
+            IOException cause = page.failure instanceof IOException ? (IOException) page.failure : new IOException(page.failure.getMessage(), page.failure);
+            throw new UncheckedIOException(cause);
+        }
+
+        return page.response;
+    }
+
+    /**
+     * Provides the next element, waiting for its page to be received if needed.
+     *
+     * @param action the action to run on the next element.
+     * @return false if the query has no further element.
+     * @throws UncheckedIOException if the page of the next element could not be received.
+     */
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action)
+    {
+        while (this.currentPage == null || !this.currentPage.hasNext())
+        {
+            QueryResponse nextPage = this.takePage();
+            if (nextPage == null)
+            {
+                //Codes_SRS_PREFETCHINGQUERYSPLITERATOR_41_006: [The tryAdvance shall return false once every element of every page was provided.]
+                return false;
+            }
+
+            this.currentPage = nextPage;
+        }
+
+        //Codes_SRS_PREFETCHINGQUERYSPLITERATOR_41_007: [The tryAdvance shall provide the next element of the current page, read with the elementReader, in the order they were received.]
+        action.accept(this.elementReader.apply(this.currentPage));
+        return true;
+    }
+
+    /**
+     * Hands the rest of the current page, or else the next received page, to another spliterator.
+     *
+     * @return a spliterator over the elements of a single page, or null if the query has no further page.
+     * @throws UncheckedIOException if the next page could not be received.
+     */
+    @Override
+    public Spliterator<T> trySplit()
+    {
+        //Codes_SRS_PREFETCHINGQUERYSPLITERATOR_41_008: [The trySplit shall return a spliterator over the rest of the current page if it has elements left, or else over the next received page, or null if there is none.]
+        QueryResponse page = this.currentPage;
+        if (page != null && page.hasNext())
+        {
+            this.currentPage = null;
+        }
+        else
+        {
+            page = this.takePage();
+            if (page == null)
+            {
+                return null;
+            }
+        }
+
+        final QueryResponse splitPage = page;
+        Iterator<T> convertedPage = new Iterator<T>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return splitPage.hasNext();
+            }
+
+            @Override
+            public T next()
+            {
+                return elementReader.apply(splitPage);
+            }
+        };
+
+        return Spliterators.spliteratorUnknownSize(convertedPage, CHARACTERISTICS);
+    }
+
+    @Override
+    public long estimateSize()
+    {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return CHARACTERISTICS;
+    }
+
+    /**
+     * Stops requesting pages. Elements of pages that were already received are no longer provided.
+     */
+    @Override
+    public void close()
+    {
+        //Codes_SRS_PREFETCHINGQUERYSPLITERATOR_41_009: [The close shall stop the background thread and drop the received pages.]
+        this.isClosed = true;
+        this.fetchThread.interrupt();
+        this.receivedPages.clear();
+    }
+}
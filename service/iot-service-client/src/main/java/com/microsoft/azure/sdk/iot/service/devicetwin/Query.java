@@ -229,7 +229,27 @@ public class Query
         }
 
         //Codes_SRS_QUERY_25_013: [The method shall create a QueryResponse object with the contents from the response body and save it.]
-        this.queryResponse = new QueryResponse(new String(httpResponse.getBody()));
+        //Codes_SRS_QUERY_41_001: [The QueryResponse shall read the elements from the response body as json strings only when they are iterated.]
+        this.queryResponse = new QueryResponse(httpResponse.getBody());
+        return this.queryResponse;
+    }
+
+    /**
+     * Requests the page that follows the last one received, without waiting for the caller to iterate to its end
+     * @return the QueryResponse for the next page, or {@code null} if the last response had no continuation token
+     * @throws IOException if sending the request is unsuccessful because of input parameters
+     * @throws IotHubException if sending the request is unsuccessful at the Hub
+     */
+    QueryResponse sendNextPageRequest() throws IOException, IotHubException
+    {
+        if (this.getContinuationToken() == null)
+        {
+            //Codes_SRS_QUERY_41_002: [If the last response had no continuation token, this method shall return null without sending a request.]
+            return null;
+        }
+
+        //Codes_SRS_QUERY_41_003: [This method shall continue the query with the continuation token of the last response and return the new QueryResponse.]
+        this.continueQuery(this.getContinuationToken());
         return this.queryResponse;
     }
 
@@ -287,4 +307,23 @@ public class Query
        }
 
     }
+
+    /**
+     * provides the next element in query response, read straight into a {@link TwinState} if this is a twin query
+     * @return the next element in query response, as a {@link TwinState} for a twin query and as a json string otherwise
+     * @throws IOException if sending the request is unsuccessful because of input parameters
+     * @throws IotHubException if sending the request is unsuccessful at the Hub
+     * @throws NoSuchElementException if no further elements are available
+     */
+    Object nextTwin() throws IOException, IotHubException, NoSuchElementException
+    {
+        if (!this.hasNext())
+        {
+            //Codes_SRS_QUERY_41_004: [The method shall check if any further elements are available by calling hasNext and if none is available then it shall throw NoSuchElementException.]
+            throw new NoSuchElementException();
+        }
+
+        //Codes_SRS_QUERY_41_005: [The method shall return the next element for this QueryResponse, read into a TwinState if the query type is TWIN.]
+        return this.requestQueryType == QueryType.TWIN ? this.queryResponse.nextTwinState() : this.queryResponse.next();
+    }
 }
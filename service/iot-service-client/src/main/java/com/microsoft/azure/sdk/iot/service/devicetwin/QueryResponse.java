@@ -5,7 +5,10 @@
 
 package com.microsoft.azure.sdk.iot.service.devicetwin;
 
+import com.google.gson.stream.JsonReader;
 import com.microsoft.azure.sdk.iot.deps.serializer.QueryResponseParser;
+import com.microsoft.azure.sdk.iot.deps.serializer.QueryResponseReader;
+import com.microsoft.azure.sdk.iot.deps.twin.TwinState;
 
 import java.io.IOException;
 import java.util.Iterator;
@@ -15,7 +18,17 @@ import java.util.Iterator;
  */
 public class QueryResponse implements Iterator<Object>
 {
+    private static final QueryResponseReader.ItemReader<TwinState> TWIN_ITEM_READER = new QueryResponseReader.ItemReader<TwinState>()
+    {
+        @Override
+        public TwinState read(JsonReader reader)
+        {
+            return TwinState.createFromTwinJson(reader);
+        }
+    };
+
     private Iterator<?> responseElementsIterator;
+    private QueryResponseReader<String> responseReader;
 
     /**
      * Creates an object for the query response
@@ -35,6 +48,18 @@ public class QueryResponse implements Iterator<Object>
         this.responseElementsIterator = responseParser.getJsonItems().iterator();
     }
 
+    /**
+     * Creates an object for the query response that reads each element from the response body only when it is asked for
+     * @param body UTF-8 json body of the response for query to parse
+     * @throws IllegalArgumentException If the body is null, empty or not a json array
+     */
+    QueryResponse(byte[] body) throws IllegalArgumentException
+    {
+        //Codes_SRS_QUERY_RESPONSE_41_001: [The constructor shall set the iterator to a QueryResponseReader over the body, which reads each element as a json string as it is iterated.]
+        this.responseReader = new QueryResponseReader<>(body, QueryResponseReader.JSON_STRING_ITEM_READER);
+        this.responseElementsIterator = this.responseReader;
+    }
+
     /**
      * returns the availability of next response
      * @return true if present and false otherwise
@@ -56,4 +81,21 @@ public class QueryResponse implements Iterator<Object>
         //Codes_SRS_QUERY_RESPONSE_25_004: [The method shall return the next element for this QueryResponse.]
         return this.responseElementsIterator.next();
     }
+
+    /**
+     * returns next element in the response as a twin, read straight from the response body when it is available
+     * @return next element in the response as a twin
+     * @throws IllegalArgumentException If the element is not a valid twin
+     */
+    TwinState nextTwinState() throws IllegalArgumentException
+    {
+        if (this.responseReader != null)
+        {
+            //Codes_SRS_QUERY_RESPONSE_41_002: [If the response was created from its body, the method shall read the next element straight into a TwinState.]
+            return this.responseReader.next(TWIN_ITEM_READER);
+        }
+
+        //Codes_SRS_QUERY_RESPONSE_41_003: [Otherwise, the method shall create a TwinState from the next json element.]
+        return TwinState.createFromTwinJson((String) this.responseElementsIterator.next());
+    }
 }
@@ -9,6 +9,7 @@ import com.microsoft.azure.sdk.iot.deps.twin.TwinCollection;
 import com.microsoft.azure.sdk.iot.deps.twin.TwinState;
 import com.microsoft.azure.sdk.iot.service.IotHubConnectionString;
 import com.microsoft.azure.sdk.iot.service.IotHubConnectionStringBuilder;
+import com.microsoft.azure.sdk.iot.service.auth.IotHubServiceSasTokenCache;
 import com.microsoft.azure.sdk.iot.service.devicetwin.*;
 import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpMethod;
@@ -58,6 +59,17 @@ public class JobClient
         return jobClient;
     }
 
+    /**
+     * Getter for the cache of the SAS tokens this client signs its requests with, to change its refresh margin or
+     * clear it. Other clients keep their own cache.
+     *
+     * @return The IotHubServiceSasTokenCache object
+     */
+    public IotHubServiceSasTokenCache getSasTokenCache()
+    {
+        return this.iotHubConnectionString.getSasTokenCache();
+    }
+
     /**
      * Creates a new Job to update twin tags and desired properties on one or multiple devices
      *
@@ -7,6 +7,11 @@ package com.microsoft.azure.sdk.iot.service.transport.amqps;
 
 public interface AmqpFeedbackReceivedEvent
 {
-    public void onFeedbackReceived(String feedbackJson);
+    /**
+     * Called on the reactor thread for every message received on the link.
+     * @param feedbackJson the body of the received message
+     * @param acknowledgement settles the message with the service. Must be run once the message was consumed or
+     * dropped, the message is sent again on the next link otherwise
+     */
+    public void onFeedbackReceived(String feedbackJson, Runnable acknowledgement);
 }
-
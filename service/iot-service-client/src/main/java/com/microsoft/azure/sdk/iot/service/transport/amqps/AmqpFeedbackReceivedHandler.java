@@ -11,12 +11,10 @@ import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
 import com.microsoft.azure.sdk.iot.service.transport.TransportUtils;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.Symbol;
-import org.apache.qpid.proton.amqp.messaging.Accepted;
 import org.apache.qpid.proton.amqp.messaging.Source;
 import org.apache.qpid.proton.amqp.messaging.Target;
 import org.apache.qpid.proton.engine.*;
 import org.apache.qpid.proton.engine.impl.TransportInternal;
-import org.apache.qpid.proton.reactor.FlowController;
 import org.apache.qpid.proton.reactor.Handshaker;
 
 import java.io.IOException;
@@ -29,6 +27,8 @@ import java.util.Map;
  * Contains and sets connection parameters (path, port, endpoint)
  * Maintains the layers of AMQP protocol (Link, Session, Connection, Transport)
  * Creates and sets SASL authentication for transport
+ * The connection and the receive link stay open between messages. The link is given as much credit as the
+ * prefetch credit, and gets it back as the received messages are consumed.
  */
 public class AmqpFeedbackReceivedHandler extends BaseHandler
 {
@@ -48,12 +48,17 @@ public class AmqpFeedbackReceivedHandler extends BaseHandler
 
     private AmqpFeedbackReceivedEvent amqpFeedbackReceivedEvent;
 
+    private final int prefetchCredit;
+    private final AmqpReceivedDeliveries receivedDeliveries = new AmqpReceivedDeliveries();
+    private Receiver receiver = null;
+    private volatile boolean isCloseRequested = false;
+
     private Exception savedException;
     private boolean connectionWasOpened = false;
 
     /**
      * Constructor to set up connection parameters and initialize
-     * handshaker and flow controller for transport
+     * handshaker for transport
      * @param hostName The address string of the service (example: AAA.BBB.CCC)
      * @param userName The username string to use SASL authentication (example: user@sas.service)
      * @param sasToken The SAS token string
@@ -62,6 +67,27 @@ public class AmqpFeedbackReceivedHandler extends BaseHandler
      */
     public AmqpFeedbackReceivedHandler(String hostName, String userName, String sasToken, IotHubServiceClientProtocol iotHubServiceClientProtocol, AmqpFeedbackReceivedEvent amqpFeedbackReceivedEvent)
     {
+        this(hostName, userName, sasToken, iotHubServiceClientProtocol, amqpFeedbackReceivedEvent, AmqpReceive.DEFAULT_PREFETCH_CREDIT);
+    }
+
+    /**
+     * Constructor to set up connection parameters and initialize
+     * handshaker for transport
+     * @param hostName The address string of the service (example: AAA.BBB.CCC)
+     * @param userName The username string to use SASL authentication (example: user@sas.service)
+     * @param sasToken The SAS token string
+     * @param iotHubServiceClientProtocol protocol to use
+     * @param amqpFeedbackReceivedEvent callback to delegate the received message to the user API
+     * @param prefetchCredit the number of messages the service can send before the earlier ones are consumed
+     */
+    public AmqpFeedbackReceivedHandler(String hostName, String userName, String sasToken, IotHubServiceClientProtocol iotHubServiceClientProtocol, AmqpFeedbackReceivedEvent amqpFeedbackReceivedEvent, int prefetchCredit)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_41_001: [The constructor shall throw IllegalArgumentException if the prefetch credit is smaller than 1]
+        if (prefetchCredit < 1)
+        {
+            throw new IllegalArgumentException("prefetchCredit must be at least 1");
+        }
+
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_001: [The constructor shall copy all input parameters to private member variables for event processing]
         this.iotHubServiceClientProtocol = iotHubServiceClientProtocol;
         this.webSocketHostName = hostName;
@@ -78,14 +104,13 @@ public class AmqpFeedbackReceivedHandler extends BaseHandler
         this.sasToken = sasToken;
         this.amqpFeedbackReceivedEvent = amqpFeedbackReceivedEvent;
         this.savedException = null;
+        this.prefetchCredit = prefetchCredit;
 
         // Add a child handler that performs some default handshaking
         // behaviour.
 
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_002: [The constructor shall initialize a new Handshaker (Proton) object to handle communication handshake]
         add(new Handshaker());
-        // Codes_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_003: [The constructor shall initialize a new FlowController (Proton) object to handle communication handshake]
-        add(new FlowController());
     }
 
     /**
@@ -123,18 +148,18 @@ public class AmqpFeedbackReceivedHandler extends BaseHandler
             org.apache.qpid.proton.message.Message msg = Proton.message();
             msg.decode(buffer, 0, read);
           
-            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_007: [The event handler shall settle the Delivery with the Accepted outcome]
-            delivery.disposition(Accepted.getInstance());
-            delivery.settle();
-          
-            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_008: [The event handler shall close the Session and Connection (Proton)]
-            recv.getSession().close();
-            recv.getSession().getConnection().close();
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_41_002: [The event handler shall keep the Delivery open until the message is consumed, and shall not close the Session or Connection]
+            receivedDeliveries.add(delivery);
 
             // Codes_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_009: [The event handler shall call the FeedbackReceived callback if it has been initialized]
             if (amqpFeedbackReceivedEvent != null)
             {
-                amqpFeedbackReceivedEvent.onFeedbackReceived(msg.getBody().toString());
+                amqpFeedbackReceivedEvent.onFeedbackReceived(msg.getBody().toString(), () -> receivedDeliveries.acknowledge(delivery));
+            }
+            else
+            {
+                // Nobody will consume the message
+                receivedDeliveries.acknowledge(delivery);
             }
         }
     }
@@ -196,13 +221,16 @@ public class AmqpFeedbackReceivedHandler extends BaseHandler
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_15_017: [The Receiver object shall have the properties set to service client version identifier.]
         Map<Symbol, Object> properties = new HashMap<>();
         properties.put(Symbol.getSymbol(TransportUtils.versionIdentifierKey), TransportUtils.USER_AGENT_STRING);
-        Receiver receiver = ssn.receiver(RECEIVE_TAG);
+        receiver = ssn.receiver(RECEIVE_TAG);
         receiver.setProperties(properties);
 
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_014: [The event handler shall open the Connection, the Session and the Receiver object]
         conn.open();
         ssn.open();
         receiver.open();
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_41_003: [The event handler shall give the Receiver as much credit as the prefetch credit]
+        receiver.flow(prefetchCredit);
     }
 
     @Override
@@ -229,6 +257,37 @@ public class AmqpFeedbackReceivedHandler extends BaseHandler
         this.connectionWasOpened = true;
     }
 
+    /**
+     * Called on the reactor thread every time the reactor wakes up. Settles the messages consumed since the last
+     * wake up together and gives their credit back to the link. If a close was requested, the messages that were
+     * not consumed are released so that the service sends them again, and the connection is closed.
+     */
+    public void onReactorWakeup()
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_41_004: [The function shall settle the Deliveries consumed since the last call with the Accepted outcome and give their credit back to the Receiver]
+        receivedDeliveries.settleAndReplenishCredit(receiver);
+
+        if (isCloseRequested && receiver != null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_41_006: [If a close was requested, the function shall settle the Deliveries that were not consumed with the Released outcome]
+            receivedDeliveries.releaseUnsettled();
+
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_41_005: [If a close was requested, the function shall close the Receiver, Session and Connection]
+            receiver.close();
+            receiver.getSession().close();
+            receiver.getSession().getConnection().close();
+            receiver = null;
+        }
+    }
+
+    /**
+     * Ask for the connection to be closed the next time the reactor wakes up.
+     */
+    public void requestClose()
+    {
+        isCloseRequested = true;
+    }
+
     /**
      * If an exception was encountered while opening the AMQP connection, this function shall throw that saved exception
      * @throws IOException if an exception was encountered while openinging the AMQP connection. The encountered
@@ -11,27 +11,43 @@ import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.engine.BaseHandler;
 import org.apache.qpid.proton.engine.Event;
+import org.apache.qpid.proton.engine.HandlerException;
 import org.apache.qpid.proton.reactor.Reactor;
 
 import java.io.IOException;
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Instance of the QPID-Proton-J BaseHandler class
  * overriding the events what are needed to handle
  * high level open, close methods and feedback received event.
+ * The connection is opened by the first receive after open and is then kept open,
+ * with its reactor running on a dedicated thread, until close is called or the
+ * connection drops. Received notifications wait in a queue bounded by the
+ * prefetch credit until they are taken by receive, and are only settled with the
+ * service once taken. The next receive after a drop opens a new connection.
  */
 public class AmqpFileUploadNotificationReceive extends BaseHandler implements AmqpFeedbackReceivedEvent
 {
+    /**
+     * The number of notifications the service can send before the earlier ones are received, unless set otherwise.
+     */
+    public static final int DEFAULT_PREFETCH_CREDIT = 100;
+
     private final String hostName;
     private final String userName;
     private final String sasToken;
+    private final int prefetchCredit;
     private AmqpFileUploadNotificationReceivedHandler amqpReceiveHandler;
     private IotHubServiceClientProtocol iotHubServiceClientProtocol;
     private Reactor reactor = null;
-    private FileUploadNotification fileUploadNotification;
-    private Queue<FileUploadNotification> fileUploadNotificationQueue;
+    private ExecutorService reactorExecutor = null;
+    private BlockingQueue<ReceivedNotification> fileUploadNotificationQueue;
+    private volatile IOException connectionException = null;
     private static final int REACTOR_TIMEOUT = 3141; // reactor timeout in milliseconds
 
     /**
@@ -43,11 +59,31 @@ public class AmqpFileUploadNotificationReceive extends BaseHandler implements Am
      */
     public AmqpFileUploadNotificationReceive(String hostName, String userName, String sasToken, IotHubServiceClientProtocol iotHubServiceClientProtocol)
     {
+        this(hostName, userName, sasToken, iotHubServiceClientProtocol, DEFAULT_PREFETCH_CREDIT);
+    }
+
+    /**
+     * Constructor to set up connection parameters
+     * @param hostName The address string of the service (example: AAA.BBB.CCC)
+     * @param userName The username string to use SASL authentication (example: user@sas.service)
+     * @param sasToken The SAS token string
+     * @param iotHubServiceClientProtocol protocol to use
+     * @param prefetchCredit the number of notifications the service can send before the earlier ones are received
+     */
+    public AmqpFileUploadNotificationReceive(String hostName, String userName, String sasToken, IotHubServiceClientProtocol iotHubServiceClientProtocol, int prefetchCredit)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_41_001: [The constructor shall throw IllegalArgumentException if the prefetch credit is smaller than 1]
+        if (prefetchCredit < 1)
+        {
+            throw new IllegalArgumentException("prefetchCredit must be at least 1");
+        }
+
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_001: [The constructor shall copy all input parameters to private member variables for event processing]
         this.hostName = hostName;
         this.userName = userName;
         this.sasToken = sasToken;
         this.iotHubServiceClientProtocol = iotHubServiceClientProtocol;
+        this.prefetchCredit = prefetchCredit;
     }
 
     /**
@@ -65,7 +101,14 @@ public class AmqpFileUploadNotificationReceive extends BaseHandler implements Am
         // all the events would go to the reactor.
 
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_002: [The event handler shall set the member AmqpsReceiveHandler object to handle the given connection events]
-        event.getReactor().connection(amqpReceiveHandler);
+        synchronized (this)
+        {
+            // If close was called before the reactor got here, no connection is opened and the reactor stops right away
+            if (amqpReceiveHandler != null)
+            {
+                event.getReactor().connection(amqpReceiveHandler);
+            }
+        }
     }
 
     /**
@@ -77,16 +120,37 @@ public class AmqpFileUploadNotificationReceive extends BaseHandler implements Am
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_003: [The function shall create an AmqpsReceiveHandler object to handle reactor events]
         if (amqpReceiveHandler == null)
         {
-            amqpReceiveHandler = new AmqpFileUploadNotificationReceivedHandler(this.hostName, this.userName, this.sasToken, this.iotHubServiceClientProtocol, this);
-            this.fileUploadNotificationQueue = new LinkedBlockingDeque<>();
+            amqpReceiveHandler = new AmqpFileUploadNotificationReceivedHandler(this.hostName, this.userName, this.sasToken, this.iotHubServiceClientProtocol, this, this.prefetchCredit);
+            this.fileUploadNotificationQueue = new LinkedBlockingQueue<>();
+        }
+
+        if (reactorExecutor == null)
+        {
+            reactorExecutor = Executors.newSingleThreadExecutor();
         }
     }
 
     /**
-     * Invalidate AmqpsReceiveHandler member variable
+     * Invalidate AmqpsReceiveHandler member variable and close the connection, if one is open.
+     * Notifications that were received but not taken by receive are released, so that the service sends them again
+     * on the next connection.
      */
     public synchronized void close()
     {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_41_005: [If a connection is open, the function shall ask its handler to close it and wake up the reactor]
+        if (reactor != null && amqpReceiveHandler != null)
+        {
+            amqpReceiveHandler.requestClose();
+            reactor.wakeup();
+        }
+        reactor = null;
+
+        if (reactorExecutor != null)
+        {
+            reactorExecutor.shutdown();
+            reactorExecutor = null;
+        }
+
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_004: [The function shall invalidate the member AmqpsReceiveHandler object]
         amqpReceiveHandler = null;
         if ( fileUploadNotificationQueue!= null && !fileUploadNotificationQueue.isEmpty())
@@ -94,69 +158,126 @@ public class AmqpFileUploadNotificationReceive extends BaseHandler implements Am
             fileUploadNotificationQueue.clear();
         }
         fileUploadNotificationQueue = null;
+        connectionException = null;
     }
 
     /**
-     * Synchronized call to receive feedback batch
+     * Call to receive file upload notification
      * Hide the event based receiving mechanism from the user API
-     * @param timeoutMs The timeout in milliseconds to wait for the feedback
-     * @return The received feedback batch
-     * @throws IOException This exception is thrown if the input AmqpReceive object is null
+     * @param timeoutMs The timeout in milliseconds to wait for the notification
+     * @return The received notification, or null if none was received within the timeout
+     * @throws IOException This exception is thrown if the input AmqpReceive object is null, or if the connection
+     * failed and no notification was received
      * @throws InterruptedException This exception is thrown if the receive process has been interrupted
      */
-    public synchronized FileUploadNotification receive(long timeoutMs) throws IOException, InterruptedException
+    public FileUploadNotification receive(long timeoutMs) throws IOException, InterruptedException
     {
-        if  (amqpReceiveHandler != null)
-        {
-            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_005: [The function shall initialize the Proton reactor object]
-            this.reactor = Proton.reactor(this);
-            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_006: [The function shall start the Proton reactor object]
-            this.reactor.setTimeout(REACTOR_TIMEOUT);
-            this.reactor.start();
-            
-            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_007: [The function shall wait for specified timeout to check for any feedback message]
-            long startTime = System.currentTimeMillis();
-            long endTime = startTime + timeoutMs;
-            
-            while(this.reactor.process())
+        Reactor openReactor;
+        BlockingQueue<ReceivedNotification> queue;
+        synchronized (this)
+        {
+            if (amqpReceiveHandler == null)
             {
-                if (System.currentTimeMillis() > endTime)
-                {
-                    break;
-                }
+                // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_009: [The function shall throw IOException if the send handler object is not initialized]
+                throw new IOException("receive handler is not initialized. call open before receive");
             }
-            
-            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_008: [The function shall stop and free the Proton reactor object]
-            this.reactor.stop();
-            this.reactor.process();
-            this.reactor.free();
-            this.amqpReceiveHandler.receiveComplete();
+
+            if (reactor == null)
+            {
+                // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_005: [The function shall initialize the Proton reactor object]
+                // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_006: [The function shall start the Proton reactor object]
+                final Reactor newReactor = Proton.reactor(this);
+                newReactor.setTimeout(REACTOR_TIMEOUT);
+                final AmqpFileUploadNotificationReceivedHandler newHandler = amqpReceiveHandler;
+                reactorExecutor.submit(() -> runReactor(newReactor, newHandler));
+                reactor = newReactor;
+            }
+
+            openReactor = reactor;
+            queue = fileUploadNotificationQueue;
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_007: [The function shall wait for specified timeout to check for any feedback message]
+        ReceivedNotification receivedNotification = queue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        if (receivedNotification != null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_41_002: [If a notification was received, the function shall acknowledge its message and wake up the reactor]
+            receivedNotification.acknowledgement.run();
+            openReactor.wakeup();
+            return receivedNotification.fileUploadNotification;
         }
-        else
+
+        if (connectionException != null)
         {
-            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_009: [The function shall throw IOException if the send handler object is not initialized]
-            throw new IOException("receive handler is not initialized. call open before receive");
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_41_003: [If no notification was received and the last connection failed, the function shall throw the IOException it failed with]
+            IOException exception = connectionException;
+            connectionException = null;
+            throw exception;
         }
-        if (!fileUploadNotificationQueue.isEmpty())
+
+        return null;
+    }
+
+    private void runReactor(Reactor reactor, AmqpFileUploadNotificationReceivedHandler handler)
+    {
+        try
         {
-            return fileUploadNotificationQueue.remove();
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_41_004: [The reactor thread shall let the handler settle the received messages and replenish the link credit every time the reactor wakes up, until the connection is closed]
+            reactor.start();
+            while (reactor.process())
+            {
+                handler.onReactorWakeup();
+            }
+            reactor.stop();
         }
-        else
+        catch (HandlerException e)
         {
-            return null;
+            // The connection is gone either way, the next receive opens a new one
+        }
+        finally
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_008: [The function shall stop and free the Proton reactor object]
+            reactor.free();
+
+            try
+            {
+                handler.receiveComplete();
+            }
+            catch (IOException e)
+            {
+                connectionException = e;
+            }
+
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_41_006: [Once the reactor stops, the next receive shall open a new connection with a new handler]
+            synchronized (this)
+            {
+                if (this.reactor == reactor)
+                {
+                    // The service sends the notifications that were not settled again on the new connection
+                    if (fileUploadNotificationQueue != null)
+                    {
+                        fileUploadNotificationQueue.clear();
+                    }
+                    this.reactor = null;
+                    if (amqpReceiveHandler == handler)
+                    {
+                        amqpReceiveHandler = new AmqpFileUploadNotificationReceivedHandler(this.hostName, this.userName, this.sasToken, this.iotHubServiceClientProtocol, this, this.prefetchCredit);
+                    }
+                }
+            }
         }
     }
 
     /**
      * Handle on feedback received Proton event
-     * Parse received json and save result to a member variable
-     * Release semaphore for wait function
+     * Parse received json and queue the result for receive
      * @param feedbackJson Received Json string to process
+     * @param acknowledgement settles the message the notification was received with
      */
-    public synchronized void onFeedbackReceived(String feedbackJson)
+    public void onFeedbackReceived(String feedbackJson, Runnable acknowledgement)
     {
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_010: [The function shall parse the received Json string to FeedbackBath object]
-
+        FileUploadNotification fileUploadNotification;
         try
         {
             FileUploadNotificationParser notificationParser = new FileUploadNotificationParser(feedbackJson);
@@ -164,17 +285,43 @@ public class AmqpFileUploadNotificationReceive extends BaseHandler implements Am
             fileUploadNotification = new FileUploadNotification(notificationParser.getDeviceId(),
                     notificationParser.getBlobUri(), notificationParser.getBlobName(), notificationParser.getLastUpdatedTime(),
                     notificationParser.getBlobSizeInBytesTag(), notificationParser.getEnqueuedTimeUtc());
-
-            fileUploadNotificationQueue.add(fileUploadNotification);
         }
         catch (IOException e)
         {
-            this.fileUploadNotification = null;
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_41_007: [If the notification could not be parsed, the function shall acknowledge its message right away]
+            acknowledgement.run();
+            return;
         }
         catch (Exception e)
         {
             // this should never happen. However if it does, proton can't handle it. So guard against throwing it at proton.
             System.out.println("Service threw something mysteriously dangerous, message abandoned.");
+            acknowledgement.run();
+            return;
+        }
+
+        synchronized (this)
+        {
+            // Once closed, the message is left to be released with the other ones that were not received
+            if (fileUploadNotificationQueue != null)
+            {
+                fileUploadNotificationQueue.add(new ReceivedNotification(fileUploadNotification, acknowledgement));
+            }
+        }
+    }
+
+    /**
+     * A received notification, together with the acknowledgement of the message it was received with.
+     */
+    private static final class ReceivedNotification
+    {
+        private final FileUploadNotification fileUploadNotification;
+        private final Runnable acknowledgement;
+
+        private ReceivedNotification(FileUploadNotification fileUploadNotification, Runnable acknowledgement)
+        {
+            this.fileUploadNotification = fileUploadNotification;
+            this.acknowledgement = acknowledgement;
         }
     }
 }
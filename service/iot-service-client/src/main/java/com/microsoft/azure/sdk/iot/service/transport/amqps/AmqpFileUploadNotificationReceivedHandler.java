@@ -11,13 +11,11 @@ import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
 import com.microsoft.azure.sdk.iot.service.transport.TransportUtils;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.Symbol;
-import org.apache.qpid.proton.amqp.messaging.Accepted;
 import org.apache.qpid.proton.amqp.messaging.Data;
 import org.apache.qpid.proton.amqp.messaging.Source;
 import org.apache.qpid.proton.amqp.messaging.Target;
 import org.apache.qpid.proton.engine.*;
 import org.apache.qpid.proton.engine.impl.TransportInternal;
-import org.apache.qpid.proton.reactor.FlowController;
 import org.apache.qpid.proton.reactor.Handshaker;
 
 import java.io.IOException;
@@ -30,6 +28,8 @@ import java.util.Map;
  * Contains and sets connection parameters (path, port, endpoint)
  * Maintains the layers of AMQP protocol (Link, Session, Connection, Transport)
  * Creates and sets SASL authentication for transport
+ * The connection and the receive link stay open between messages. The link is given as much credit as the
+ * prefetch credit, and gets it back as the received messages are consumed.
  */
 public class AmqpFileUploadNotificationReceivedHandler extends BaseHandler
 {
@@ -53,15 +53,34 @@ public class AmqpFileUploadNotificationReceivedHandler extends BaseHandler
 
     private boolean connectionWasOpened = false;
 
+    private final int prefetchCredit;
+    private final AmqpReceivedDeliveries receivedDeliveries = new AmqpReceivedDeliveries();
+    private Receiver notificationReceiver = null;
+    private volatile boolean isCloseRequested = false;
+
     /**
      * Constructor to set up connection parameters and initialize
-     * handshaker and flow controller for transport
+     * handshaker for transport
      * @param hostName The address string of the service (example: AAA.BBB.CCC)
      * @param userName The username string to use SASL authentication (example: user@sas.service)
      * @param sasToken The SAS token string
      * @param amqpFeedbackReceivedEvent callback to delegate the received message to the user API
      */
     AmqpFileUploadNotificationReceivedHandler(String hostName, String userName, String sasToken, IotHubServiceClientProtocol iotHubServiceClientProtocol, AmqpFeedbackReceivedEvent amqpFeedbackReceivedEvent)
+    {
+        this(hostName, userName, sasToken, iotHubServiceClientProtocol, amqpFeedbackReceivedEvent, AmqpFileUploadNotificationReceive.DEFAULT_PREFETCH_CREDIT);
+    }
+
+    /**
+     * Constructor to set up connection parameters and initialize
+     * handshaker for transport
+     * @param hostName The address string of the service (example: AAA.BBB.CCC)
+     * @param userName The username string to use SASL authentication (example: user@sas.service)
+     * @param sasToken The SAS token string
+     * @param amqpFeedbackReceivedEvent callback to delegate the received message to the user API
+     * @param prefetchCredit the number of notifications the service can send before the earlier ones are consumed
+     */
+    AmqpFileUploadNotificationReceivedHandler(String hostName, String userName, String sasToken, IotHubServiceClientProtocol iotHubServiceClientProtocol, AmqpFeedbackReceivedEvent amqpFeedbackReceivedEvent, int prefetchCredit)
     {
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_001: [The constructor shall copy all input parameters to private member variables for event processing]
         if (hostName == null || userName == null || sasToken == null || iotHubServiceClientProtocol == null || amqpFeedbackReceivedEvent == null ||
@@ -70,6 +89,13 @@ public class AmqpFileUploadNotificationReceivedHandler extends BaseHandler
             //Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_021: [** The constructor shall throw IllegalArgumentException if any of the parameters are null or empty **]
             throw new IllegalArgumentException("Input parameters cannot be null or empty");
         }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_41_001: [The constructor shall throw IllegalArgumentException if the prefetch credit is smaller than 1]
+        if (prefetchCredit < 1)
+        {
+            throw new IllegalArgumentException("prefetchCredit must be at least 1");
+        }
+
         this.iotHubServiceClientProtocol = iotHubServiceClientProtocol;
         this.webSocketHostName = hostName;
         if (this.iotHubServiceClientProtocol == IotHubServiceClientProtocol.AMQPS_WS)
@@ -85,14 +111,13 @@ public class AmqpFileUploadNotificationReceivedHandler extends BaseHandler
         this.sasToken = sasToken;
         this.amqpFeedbackReceivedEvent = amqpFeedbackReceivedEvent;
         this.savedException = null;
+        this.prefetchCredit = prefetchCredit;
 
         // Add a child handler that performs some default handshaking
         // behaviour.
 
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_002: [The constructor shall initialize a new Handshaker (Proton) object to handle communication handshake]
         add(new Handshaker());
-        // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_003: [The constructor shall initialize a new FlowController (Proton) object to handle communication handshake]
-        add(new FlowController());
     }
 
     /**
@@ -131,22 +156,19 @@ public class AmqpFileUploadNotificationReceivedHandler extends BaseHandler
             org.apache.qpid.proton.message.Message msg = Proton.message();
             msg.decode(buffer, 0, read);
           
-            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_007: [The event handler shall settle the Delivery with the Accepted outcome]
-            delivery.disposition(Accepted.getInstance());
-            delivery.settle();
-          
-            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_008: [The event handler shall close the Session and Connection (Proton)]
-            recv.getSession().close();
-            recv.getSession().getConnection().close();
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_41_002: [The event handler shall keep the Delivery open until the notification is consumed, and shall not close the Session or Connection]
+            receivedDeliveries.add(delivery);
 
             // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_009: [The event handler shall call the FeedbackReceived callback if it has been initialized]
-            if (amqpFeedbackReceivedEvent != null)
+            if (amqpFeedbackReceivedEvent != null && msg.getBody() instanceof Data)
             {
-                if (msg.getBody() instanceof Data)
-                {
-                    Data feedbackJson = (Data) msg.getBody();
-                    amqpFeedbackReceivedEvent.onFeedbackReceived(feedbackJson.getValue().toString());
-                }
+                Data feedbackJson = (Data) msg.getBody();
+                amqpFeedbackReceivedEvent.onFeedbackReceived(feedbackJson.getValue().toString(), () -> receivedDeliveries.acknowledge(delivery));
+            }
+            else
+            {
+                // Nothing is handed to the consumer, so it will never acknowledge this message
+                receivedDeliveries.acknowledge(delivery);
             }
         }
     }
@@ -210,13 +232,16 @@ public class AmqpFileUploadNotificationReceivedHandler extends BaseHandler
         Map<Symbol, Object> properties = new HashMap<>();
         properties.put(Symbol.getSymbol(TransportUtils.versionIdentifierKey), TransportUtils.USER_AGENT_STRING);
 
-        Receiver notificationReceiver = ssn.receiver(FILE_NOTIFICATION_RECEIVE_TAG);
+        notificationReceiver = ssn.receiver(FILE_NOTIFICATION_RECEIVE_TAG);
         notificationReceiver.setProperties(properties);
 
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_014: [The event handler shall open the Connection, the Session and the Receiver object]
         conn.open();
         ssn.open();
         notificationReceiver.open();
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_41_003: [The event handler shall give the Receiver as much credit as the prefetch credit]
+        notificationReceiver.flow(prefetchCredit);
     }
 
     @Override
@@ -244,6 +269,37 @@ public class AmqpFileUploadNotificationReceivedHandler extends BaseHandler
         this.connectionWasOpened = true;
     }
 
+    /**
+     * Called on the reactor thread every time the reactor wakes up. Settles the notifications consumed since the
+     * last wake up together and gives their credit back to the link. If a close was requested, the notifications
+     * that were not consumed are released so that the service sends them again, and the connection is closed.
+     */
+    void onReactorWakeup()
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_41_004: [The function shall settle the Deliveries consumed since the last call with the Accepted outcome and give their credit back to the Receiver]
+        receivedDeliveries.settleAndReplenishCredit(notificationReceiver);
+
+        if (isCloseRequested && notificationReceiver != null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_41_006: [If a close was requested, the function shall settle the Deliveries that were not consumed with the Released outcome]
+            receivedDeliveries.releaseUnsettled();
+
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_41_005: [If a close was requested, the function shall close the Receiver, Session and Connection]
+            notificationReceiver.close();
+            notificationReceiver.getSession().close();
+            notificationReceiver.getSession().getConnection().close();
+            notificationReceiver = null;
+        }
+    }
+
+    /**
+     * Ask for the connection to be closed the next time the reactor wakes up.
+     */
+    void requestClose()
+    {
+        isCloseRequested = true;
+    }
+
     /**
      * If an exception was encountered while opening the AMQP connection, this function shall throw that saved exception
      * @throws IOException if an exception was encountered while openinging the AMQP connection. The encountered
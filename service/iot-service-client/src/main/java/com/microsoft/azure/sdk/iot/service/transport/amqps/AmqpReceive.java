@@ -11,24 +11,43 @@ import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.engine.BaseHandler;
 import org.apache.qpid.proton.engine.Event;
+import org.apache.qpid.proton.engine.HandlerException;
 import org.apache.qpid.proton.reactor.Reactor;
 
 import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Instance of the QPID-Proton-J BaseHandler class
  * overriding the events what are needed to handle
  * high level open, close methods and feedback received event.
+ * The connection is opened by the first receive after open and is then kept open,
+ * with its reactor running on a dedicated thread, until close is called or the
+ * connection drops. Received feedback batches wait in a queue bounded by the
+ * prefetch credit until they are taken by receive, and are only settled with the
+ * service once taken. The next receive after a drop opens a new connection.
  */
 public class AmqpReceive extends BaseHandler implements AmqpFeedbackReceivedEvent
 {
+    /**
+     * The number of feedback batches the service can send before the earlier ones are received, unless set otherwise.
+     */
+    public static final int DEFAULT_PREFETCH_CREDIT = 100;
+
     private final String hostName;
     private final String userName;
     private final String sasToken;
+    private final int prefetchCredit;
     private AmqpFeedbackReceivedHandler amqpReceiveHandler;
     private IotHubServiceClientProtocol iotHubServiceClientProtocol;
     private Reactor reactor = null;
-    private FeedbackBatch feedbackBatch;
+    private ExecutorService reactorExecutor = null;
+    private final BlockingQueue<ReceivedFeedbackBatch> receivedFeedbackBatches = new LinkedBlockingQueue<>();
+    private volatile IOException connectionException = null;
     private static final int REACTOR_TIMEOUT = 3141; // reactor timeout in milliseconds
 
     /**
@@ -40,11 +59,31 @@ public class AmqpReceive extends BaseHandler implements AmqpFeedbackReceivedEven
      */
     public AmqpReceive(String hostName, String userName, String sasToken, IotHubServiceClientProtocol iotHubServiceClientProtocol)
     {
+        this(hostName, userName, sasToken, iotHubServiceClientProtocol, DEFAULT_PREFETCH_CREDIT);
+    }
+
+    /**
+     * Constructor to set up connection parameters
+     * @param hostName The address string of the service (example: AAA.BBB.CCC)
+     * @param userName The username string to use SASL authentication (example: user@sas.service)
+     * @param sasToken The SAS token string
+     * @param iotHubServiceClientProtocol protocol to use
+     * @param prefetchCredit the number of feedback batches the service can send before the earlier ones are received
+     */
+    public AmqpReceive(String hostName, String userName, String sasToken, IotHubServiceClientProtocol iotHubServiceClientProtocol, int prefetchCredit)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_41_001: [The constructor shall throw IllegalArgumentException if the prefetch credit is smaller than 1]
+        if (prefetchCredit < 1)
+        {
+            throw new IllegalArgumentException("prefetchCredit must be at least 1");
+        }
+
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_001: [The constructor shall copy all input parameters to private member variables for event processing]
         this.hostName = hostName;
         this.userName = userName;
         this.sasToken = sasToken;
         this.iotHubServiceClientProtocol = iotHubServiceClientProtocol;
+        this.prefetchCredit = prefetchCredit;
     }
 
     /**
@@ -61,80 +100,197 @@ public class AmqpReceive extends BaseHandler implements AmqpFeedbackReceivedEven
         // all the events would go to the reactor.
 
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_002: [The event handler shall set the member AmqpsReceiveHandler object to handle the given connection events]
-        event.getReactor().connection(amqpReceiveHandler);
+        synchronized (this)
+        {
+            // If close was called before the reactor got here, no connection is opened and the reactor stops right away
+            if (amqpReceiveHandler != null)
+            {
+                event.getReactor().connection(amqpReceiveHandler);
+            }
+        }
     }
 
     /**
      * Create AmqpsReceiveHandler and store it in a member variable
      */
-    public void open()
+    public synchronized void open()
     {
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_003: [The function shall create an AmqpsReceiveHandler object to handle reactor events]
-        amqpReceiveHandler = new AmqpFeedbackReceivedHandler(this.hostName, this.userName, this.sasToken, this.iotHubServiceClientProtocol, this);
+        amqpReceiveHandler = new AmqpFeedbackReceivedHandler(this.hostName, this.userName, this.sasToken, this.iotHubServiceClientProtocol, this, this.prefetchCredit);
+        if (reactorExecutor == null)
+        {
+            reactorExecutor = Executors.newSingleThreadExecutor();
+        }
     }
 
     /**
-     * Invalidate AmqpsReceiveHandler member variable
+     * Invalidate AmqpsReceiveHandler member variable and close the connection, if one is open.
+     * Feedback batches that were received but not taken by receive are released, so that the service sends them
+     * again on the next connection.
      */
-    public void close()
+    public synchronized void close()
     {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_41_005: [If a connection is open, the function shall ask its handler to close it and wake up the reactor]
+        if (reactor != null && amqpReceiveHandler != null)
+        {
+            amqpReceiveHandler.requestClose();
+            reactor.wakeup();
+        }
+        reactor = null;
+
+        if (reactorExecutor != null)
+        {
+            reactorExecutor.shutdown();
+            reactorExecutor = null;
+        }
+
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_004: [The function shall invalidate the member AmqpsReceiveHandler object]
         amqpReceiveHandler = null;
+        receivedFeedbackBatches.clear();
+        connectionException = null;
     }
 
     /**
-     * Synchronized call to receive feedback batch
+     * Call to receive feedback batch
      * Hide the event based receiving mechanism from the user API
      * @param timeoutMs The timeout in milliseconds to wait for the feedback
-     * @return The received feedback batch
-     * @throws IOException This exception is thrown if the input AmqpReceive object is null
+     * @return The received feedback batch, or null if none was received within the timeout
+     * @throws IOException This exception is thrown if the input AmqpReceive object is null, or if the connection
+     * failed and no feedback batch was received
      * @throws InterruptedException This exception is thrown if the receive process has been interrupted
      */
-    public synchronized FeedbackBatch receive(long timeoutMs) throws IOException, InterruptedException
+    public FeedbackBatch receive(long timeoutMs) throws IOException, InterruptedException
     {
-        feedbackBatch = null;
-        if  (amqpReceiveHandler != null)
+        Reactor openReactor;
+        synchronized (this)
         {
-            // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_005: [The function shall initialize the Proton reactor object]
-            this.reactor = Proton.reactor(this);
-            // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_006: [The function shall start the Proton reactor object]
-            this.reactor.setTimeout(REACTOR_TIMEOUT);
-            this.reactor.start();
-            
-            // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_007: [The function shall wait for specified timeout to check for any feedback message]
-            long startTime = System.currentTimeMillis();
-            long endTime = startTime + timeoutMs;
-            
-            while(this.reactor.process())
+            if (amqpReceiveHandler == null)
             {
-                if (System.currentTimeMillis() > endTime) break;
+                // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_008: [The function shall throw IOException if the send handler object is not initialized]
+                throw new IOException("receive handler is not initialized. call open before receive");
             }
-            
-            // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_008: [The function shall stop and free the Proton reactor object]
-            this.reactor.stop();
-            this.reactor.process();
-            this.reactor.free();   
-            this.amqpReceiveHandler.receiveComplete();
+
+            if (reactor == null)
+            {
+                // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_005: [The function shall initialize the Proton reactor object]
+                // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_006: [The function shall start the Proton reactor object]
+                final Reactor newReactor = Proton.reactor(this);
+                newReactor.setTimeout(REACTOR_TIMEOUT);
+                final AmqpFeedbackReceivedHandler newHandler = amqpReceiveHandler;
+                reactorExecutor.submit(() -> runReactor(newReactor, newHandler));
+                reactor = newReactor;
+            }
+
+            openReactor = reactor;
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_007: [The function shall wait for specified timeout to check for any feedback message]
+        ReceivedFeedbackBatch receivedFeedbackBatch = receivedFeedbackBatches.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        if (receivedFeedbackBatch != null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_41_002: [If a feedback batch was received, the function shall acknowledge its message and wake up the reactor]
+            receivedFeedbackBatch.acknowledgement.run();
+            openReactor.wakeup();
+            return receivedFeedbackBatch.feedbackBatch;
         }
-        else
+
+        if (connectionException != null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_41_003: [If no feedback batch was received and the last connection failed, the function shall throw the IOException it failed with]
+            IOException exception = connectionException;
+            connectionException = null;
+            throw exception;
+        }
+
+        return null;
+    }
+
+    private void runReactor(Reactor reactor, AmqpFeedbackReceivedHandler handler)
+    {
+        try
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_41_004: [The reactor thread shall let the handler settle the received messages and replenish the link credit every time the reactor wakes up, until the connection is closed]
+            reactor.start();
+            while (reactor.process())
+            {
+                handler.onReactorWakeup();
+            }
+            reactor.stop();
+        }
+        catch (HandlerException e)
         {
-            // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_008: [The function shall throw IOException if the send handler object is not initialized]
-            throw new IOException("receive handler is not initialized. call open before receive");
+            // The connection is gone either way, the next receive opens a new one
+        }
+        finally
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_008: [The function shall stop and free the Proton reactor object]
+            reactor.free();
+
+            try
+            {
+                handler.receiveComplete();
+            }
+            catch (IOException e)
+            {
+                connectionException = e;
+            }
+
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_41_006: [Once the reactor stops, the next receive shall open a new connection with a new handler]
+            synchronized (this)
+            {
+                if (this.reactor == reactor)
+                {
+                    // The service sends the feedback batches that were not settled again on the new connection
+                    receivedFeedbackBatches.clear();
+                    this.reactor = null;
+                    if (amqpReceiveHandler == handler)
+                    {
+                        amqpReceiveHandler = new AmqpFeedbackReceivedHandler(this.hostName, this.userName, this.sasToken, this.iotHubServiceClientProtocol, this, this.prefetchCredit);
+                    }
+                }
+            }
         }
-        return feedbackBatch;
     }
 
     /**
      * Handle on feedback received Proton event
-     * Parse received json and save result to a member variable
-     * Release semaphore for wait function
+     * Parse received json and queue the result for receive
      * @param feedbackJson Received Json string to process
+     * @param acknowledgement settles the message the feedback batch was received with
      */
-    public void onFeedbackReceived(String feedbackJson)
+    public void onFeedbackReceived(String feedbackJson, Runnable acknowledgement)
     {
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_010: [The function shall parse the received Json string to FeedbackBath object]
-        feedbackBatch = FeedbackBatchMessage.parse(feedbackJson);
-    
+        FeedbackBatch feedbackBatch = FeedbackBatchMessage.parse(feedbackJson);
+        if (feedbackBatch == null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_41_007: [If the feedback batch could not be parsed, the function shall acknowledge its message right away]
+            acknowledgement.run();
+            return;
+        }
+
+        synchronized (this)
+        {
+            // Once closed, the message is left to be released with the other ones that were not received
+            if (amqpReceiveHandler != null)
+            {
+                receivedFeedbackBatches.offer(new ReceivedFeedbackBatch(feedbackBatch, acknowledgement));
+            }
+        }
     }
 
+    /**
+     * A received feedback batch, together with the acknowledgement of the message it was received with.
+     */
+    private static final class ReceivedFeedbackBatch
+    {
+        private final FeedbackBatch feedbackBatch;
+        private final Runnable acknowledgement;
+
+        private ReceivedFeedbackBatch(FeedbackBatch feedbackBatch, Runnable acknowledgement)
+        {
+            this.feedbackBatch = feedbackBatch;
+            this.acknowledgement = acknowledgement;
+        }
+    }
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package com.microsoft.azure.sdk.iot.service.transport.amqps;
+
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Released;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.Receiver;
+
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Keeps track of the deliveries of a long lived receive link until the consumer of the received messages took them.
+ * A delivery is only accepted once its message was consumed, so that the service does not forget messages that
+ * are still waiting in memory. The consumed deliveries are settled together the next time the reactor wakes up, so
+ * that their dispositions are written in one go, and their credit is given back to the link at the same time, so
+ * that no more messages than the prefetch credit wait to be consumed.
+ */
+final class AmqpReceivedDeliveries
+{
+    private final Set<Delivery> unsettledDeliveries = new LinkedHashSet<>();
+    private final Queue<Delivery> consumedDeliveries = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Keep a received delivery unsettled until its message is consumed. Must be called from the reactor thread.
+     * @param delivery the delivery that was received
+     */
+    void add(Delivery delivery)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVEDDELIVERIES_41_001: [The function shall keep the delivery unsettled until its message is consumed.]
+        unsettledDeliveries.add(delivery);
+    }
+
+    /**
+     * Mark the message of a delivery as consumed, or as dropped by the consumer. It is accepted the next time the
+     * reactor wakes up. Can be called from any thread.
+     * @param delivery the delivery of the consumed message
+     */
+    void acknowledge(Delivery delivery)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVEDDELIVERIES_41_002: [The function shall queue the delivery to be accepted at the next settlement.]
+        consumedDeliveries.add(delivery);
+    }
+
+    /**
+     * Accept and settle the deliveries whose message was consumed, then give their credit back to the link. Must be
+     * called from the reactor thread.
+     * @param receiver the receive link, or null if it is not open yet
+     */
+    void settleAndReplenishCredit(Receiver receiver)
+    {
+        int credit = 0;
+        Delivery delivery;
+        while ((delivery = consumedDeliveries.poll()) != null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVEDDELIVERIES_41_003: [The function shall settle every kept delivery that was acknowledged with the Accepted outcome.]
+            if (unsettledDeliveries.remove(delivery))
+            {
+                delivery.disposition(Accepted.getInstance());
+                delivery.settle();
+                credit++;
+            }
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVEDDELIVERIES_41_004: [If the link is open, the function shall give it one credit for every settled delivery, if any.]
+        if (receiver != null && credit > 0)
+        {
+            receiver.flow(credit);
+        }
+    }
+
+    /**
+     * Release the deliveries whose message was not consumed, so that the service sends them again on the next
+     * link. Must be called from the reactor thread, before the link is closed.
+     */
+    void releaseUnsettled()
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVEDDELIVERIES_41_005: [The function shall settle every kept delivery that was not acknowledged with the Released outcome.]
+        for (Delivery delivery : unsettledDeliveries)
+        {
+            delivery.disposition(Released.getInstance());
+            delivery.settle();
+        }
+        unsettledDeliveries.clear();
+    }
+}
@@ -12,15 +12,23 @@ import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.engine.BaseHandler;
 import org.apache.qpid.proton.engine.Event;
+import org.apache.qpid.proton.engine.HandlerException;
 import org.apache.qpid.proton.reactor.Reactor;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Instance of the QPID-Proton-J BaseHandler class
  * overriding the events what are needed to handle
  * high level open, close and send methods.
  * Initialize and use AmqpsSendHandler class for low level ampqs operations.
+ * The connection is opened by the first send after open and is then kept open,
+ * with its reactor running on a dedicated thread, until close is called or the
+ * connection drops. The next send after a drop opens a new connection.
  */
 public class AmqpSend extends BaseHandler
 {
@@ -30,6 +38,7 @@ public class AmqpSend extends BaseHandler
     protected Reactor reactor = null;
     protected AmqpSendHandler amqpSendHandler;
     protected IotHubServiceClientProtocol iotHubServiceClientProtocol;
+    private ExecutorService reactorExecutor = null;
 
     /**
      * Constructor to set up connection parameters
@@ -80,66 +89,177 @@ public class AmqpSend extends BaseHandler
         // all the events would go to the reactor.
 
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_12_003: [The event handler shall set the member AmqpsSendHandler object to handle the given connection events]
-        event.getReactor().connection(amqpSendHandler);
+        synchronized (this)
+        {
+            // If close was called before the reactor got here, no connection is opened and the reactor stops right away
+            if (amqpSendHandler != null)
+            {
+                event.getReactor().connection(amqpSendHandler);
+            }
+        }
     }
 
     /**
-     * Create AmqpsSendHandler and store it in a member variable
+     * Create AmqpsSendHandler and store it in a member variable. If a connection is already open, it is kept, together
+     * with its handler.
      */
-    public void open()
+    public synchronized void open()
     {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_41_006: [If a connection is open, the function shall keep it and its handler, so that the next send still goes through it]
+        if (reactor != null && amqpSendHandler != null)
+        {
+            return;
+        }
+
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_12_004: [The function shall create an AmqpsSendHandler object to handle reactor events]
         amqpSendHandler = new AmqpSendHandler(this.hostName, this.userName, this.sasToken, this.iotHubServiceClientProtocol);
+        if (reactorExecutor == null)
+        {
+            reactorExecutor = Executors.newSingleThreadExecutor();
+        }
     }
 
     /**
-     * Invalidate AmqpsSendHandler member variable
+     * Invalidate AmqpsSendHandler member variable and close the connection, if one is open.
+     * Messages that were not acknowledged by then fail with an IOException.
      */
-    public void close()
+    public synchronized void close()
     {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_41_005: [If a connection is open, the function shall ask its handler to close it and wake up the reactor]
+        if (reactor != null && amqpSendHandler != null)
+        {
+            amqpSendHandler.requestClose();
+            reactor.wakeup();
+        }
+        reactor = null;
+
+        if (reactorExecutor != null)
+        {
+            reactorExecutor.shutdown();
+            reactorExecutor = null;
+        }
+
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_12_005: [The function shall invalidate the member AmqpsSendHandler object]
         amqpSendHandler = null;
     }
 
     /**
-     * Create binary message
-     * Initialize and start Proton reactor
-     * Send the created message
+     * Send the message and wait until the service acknowledges it
      * @param deviceId The device name string
      * @param moduleId The module name string
      * @param message The message to be sent
-     * @throws IOException This exception is thrown if the AmqpSend object is not initialized
+     * @throws IOException This exception is thrown if the AmqpSend object is not initialized or the connection failed
      * @throws IotHubException If IotHub rejects the message for any reason
      */
     public void send(String deviceId, String moduleId, Message message) throws IOException, IotHubException
     {
-        synchronized(this)
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_004: [The function shall wait for the sent message to be acknowledged and throw the exception it failed with, if any]
+        CompletableFuture<Void> future = sendAsync(deviceId, moduleId, message);
+        try
         {
-            if  (amqpSendHandler != null)
+            future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the message to be acknowledged", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IotHubException)
             {
-                if (moduleId == null)
-                {
-                    // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_006: [The function shall create a binary message with the given content with deviceId only if moduleId is null]
-                    amqpSendHandler.createProtonMessage(deviceId, message);
-                }
-                else
-                {
-                    // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_001: [The function shall create a binary message with the given content with moduleId]
-                    amqpSendHandler.createProtonMessage(deviceId, moduleId, message);
-                }
-                // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_002: [The function shall initialize the Proton reactor object]
-                this.reactor = Proton.reactor(this);
-                // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_003: [The function shall start the Proton reactor object]
-                this.reactor.run();
-                this.reactor.free();
-                // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_004: [** The function shall call sendComplete to identify the status of sent message and throws exception if thrown by sendComplete **]**
-                amqpSendHandler.sendComplete();
+                throw (IotHubException) e.getCause();
+            }
+            else if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Create binary message and queue it on the open connection, opening the connection
+     * first if there is none. Any number of messages can be in flight at once.
+     * @param deviceId The device name string
+     * @param moduleId The module name string
+     * @param message The message to be sent
+     * @return The future that completes once the service acknowledges the message. It completes
+     * exceptionally with an IotHubException if IotHub rejects the message, or with an IOException
+     * if the connection ends before the message was acknowledged
+     * @throws IOException This exception is thrown if the AmqpSend object is not initialized
+     */
+    public synchronized CompletableFuture<Void> sendAsync(String deviceId, String moduleId, Message message) throws IOException
+    {
+        if (amqpSendHandler == null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_005: [The function shall throw IOException if the send handler object is not initialized]
+            throw new IOException("send handler is not initialized. call open before send");
+        }
+
+        if (reactor == null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_002: [The function shall initialize the Proton reactor object if there is no open connection]
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_003: [The function shall start the Proton reactor object on a dedicated thread]
+            final Reactor newReactor = Proton.reactor(this);
+            final AmqpSendHandler handler = amqpSendHandler;
+            reactorExecutor.submit(() -> runReactor(newReactor, handler));
+            reactor = newReactor;
+        }
+
+        CompletableFuture<Void> future;
+        if (moduleId == null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_006: [The function shall create a binary message with the given content with deviceId only if moduleId is null]
+            future = amqpSendHandler.createProtonMessage(deviceId, message);
+        }
+        else
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_001: [The function shall create a binary message with the given content with moduleId]
+            future = amqpSendHandler.createProtonMessage(deviceId, moduleId, message);
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_41_001: [The function shall wake up the reactor so that it sends the queued message]
+        reactor.wakeup();
+        return future;
+    }
+
+    private void runReactor(Reactor reactor, AmqpSendHandler handler)
+    {
+        try
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_41_002: [The reactor thread shall let the handler send the queued messages every time the reactor wakes up, until the connection is closed]
+            reactor.start();
+            while (reactor.process())
+            {
+                handler.onReactorWakeup();
             }
-            else
+            reactor.stop();
+        }
+        catch (HandlerException e)
+        {
+            // The connection is gone either way, the pending messages are failed below
+        }
+        finally
+        {
+            reactor.free();
+
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_41_003: [Once the reactor stops, the next send shall open a new connection with a new handler]
+            synchronized (this)
             {
-                // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_005: [The function shall throw IOException if the send handler object is not initialized]
-                throw new IOException("send handler is not initialized. call open before send");
+                if (this.reactor == reactor)
+                {
+                    this.reactor = null;
+                    if (amqpSendHandler == handler)
+                    {
+                        amqpSendHandler = new AmqpSendHandler(this.hostName, this.userName, this.sasToken, this.iotHubServiceClientProtocol);
+                    }
+                }
             }
+
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_41_004: [Once the reactor stops, the messages that were not acknowledged shall fail]
+            handler.failPendingMessages();
         }
     }
 }
@@ -9,7 +9,6 @@ import com.microsoft.azure.sdk.iot.deps.auth.IotHubSSLContext;
 import com.microsoft.azure.sdk.iot.deps.ws.impl.WebSocketImpl;
 import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
 import com.microsoft.azure.sdk.iot.service.Tools;
-import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
 import com.microsoft.azure.sdk.iot.service.transport.TransportUtils;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.Binary;
@@ -22,9 +21,12 @@ import org.apache.qpid.proton.reactor.Handshaker;
 
 import java.io.IOException;
 import java.nio.BufferOverflowException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 
 /**
@@ -33,6 +35,8 @@ import java.util.concurrent.LinkedBlockingQueue;
  * Contains and sets connection parameters (path, port, endpoint)
  * Maintains the layers of AMQP protocol (Link, Session, Connection, Transport)
  * Creates and sets SASL authentication for transport
+ * The connection and the sender link stay open between messages, so that any number of
+ * messages can be in flight at once. Each message is correlated with its disposition by delivery tag.
  */
 public class AmqpSendHandler extends BaseHandler
 {
@@ -44,13 +48,18 @@ public class AmqpSendHandler extends BaseHandler
     public static final String MODULE_PATH_FORMAT = "/devices/%s/modules/%s/messages/devicebound";
     public static final String WEBSOCKET_PATH = "/$iothub/websocket";
     public static final String WEBSOCKET_SUB_PROTOCOL = "AMQPWSB10";
-    private Queue<AmqpResponseVerification> sendStatusQueue = new LinkedBlockingQueue<>();
-    private Queue<org.apache.qpid.proton.message.Message> messagesToBeSent = new LinkedBlockingQueue<>();
+    private static final int INITIAL_ENCODE_BUFFER_SIZE_IN_BYTES = 1024;
+
+    private final Queue<OutgoingMessage> messagesToBeSent = new LinkedBlockingQueue<>();
+    private final Map<String, CompletableFuture<Void>> inFlightDeliveries = new ConcurrentHashMap<>();
 
     protected final String hostName;
     protected final String userName;
     protected final String sasToken;
     private int nextTag = 0;
+    private byte[] encodeBuffer = new byte[INITIAL_ENCODE_BUFFER_SIZE_IN_BYTES];
+    private Sender sender = null;
+    private volatile boolean isCloseRequested = false;
 
     protected final IotHubServiceClientProtocol iotHubServiceClientProtocol;
     protected final String webSocketHostName;
@@ -111,27 +120,29 @@ public class AmqpSendHandler extends BaseHandler
     }
 
     /**
-     * Create Proton message from deviceId and content string
+     * Create Proton message from deviceId and content string and queue it to be sent
      * @param deviceId The device name string
      * @param message The message to be sent
+     * @return The future that completes once the service has settled the message
      */
-    public void createProtonMessage(String deviceId, com.microsoft.azure.sdk.iot.service.Message message)
+    public CompletableFuture<Void> createProtonMessage(String deviceId, com.microsoft.azure.sdk.iot.service.Message message)
     {
-        populateProtonMessage(String.format(DEVICE_PATH_FORMAT, deviceId), message);
+        return populateProtonMessage(String.format(DEVICE_PATH_FORMAT, deviceId), message);
     }
 
     /**
-     * Create Proton message from deviceId and content string
+     * Create Proton message from deviceId and content string and queue it to be sent
      * @param deviceId The device name string
      * @param moduleId The device name string
      * @param message The message to be sent
+     * @return The future that completes once the service has settled the message
      */
-    public void createProtonMessage(String deviceId, String moduleId, com.microsoft.azure.sdk.iot.service.Message message)
+    public CompletableFuture<Void> createProtonMessage(String deviceId, String moduleId, com.microsoft.azure.sdk.iot.service.Message message)
     {
-        populateProtonMessage(String.format(MODULE_PATH_FORMAT, deviceId, moduleId), message);
+        return populateProtonMessage(String.format(MODULE_PATH_FORMAT, deviceId, moduleId), message);
     }
 
-    private void populateProtonMessage(String targetPath, com.microsoft.azure.sdk.iot.service.Message message)
+    private CompletableFuture<Void> populateProtonMessage(String targetPath, com.microsoft.azure.sdk.iot.service.Message message)
     {
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_12_005: [The function shall create a new Message (Proton) object]
         org.apache.qpid.proton.message.Message protonMessage = Proton.message();
@@ -168,7 +179,11 @@ public class AmqpSendHandler extends BaseHandler
         Section section = new Data(binary);
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_12_009: [The function shall set the Message body to the created data section]
         protonMessage.setBody(section);
-        messagesToBeSent.add(protonMessage);
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_41_001: [The function shall queue the Proton message to be sent and return a future that completes when the message is settled]
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        messagesToBeSent.add(new OutgoingMessage(protonMessage, future));
+        return future;
     }
 
     /**
@@ -251,6 +266,7 @@ public class AmqpSendHandler extends BaseHandler
         properties.put(Symbol.getSymbol(TransportUtils.versionIdentifierKey), TransportUtils.USER_AGENT_STRING);
         Sender snd = ssn.sender(SEND_TAG);
         snd.setProperties(properties);
+        this.sender = snd;
 
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_12_015: [The event handler shall open the Connection, the Session and the Sender object]
         conn.open();
@@ -292,46 +308,120 @@ public class AmqpSendHandler extends BaseHandler
     @Override
     public void onLinkFlow(Event event)
     {
-        if (!messagesToBeSent.isEmpty())
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_12_018: [The event handler shall get the Sender (Proton) object from the link]
+        sendQueuedMessages((Sender)event.getLink());
+    }
+
+    /**
+     * Called on the reactor thread every time the reactor wakes up. Sends the messages queued since
+     * the last wakeup as far as the link credit allows, or closes the connection if a close was requested.
+     */
+    public void onReactorWakeup()
+    {
+        if (isCloseRequested)
         {
-            org.apache.qpid.proton.message.Message protonMessage = messagesToBeSent.remove();
-            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_12_018: [The event handler shall get the Sender (Proton) object from the link]
-            Sender snd = (Sender)event.getLink();
-            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_12_019: [The event handler shall encode the message and copy to the byte buffer]
-            if (snd.getCredit() > 0)
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_41_002: [If a close was requested, the function shall close the Sender, Session and Connection]
+            if (isConnected && sender != null)
             {
-                byte[] msgData = new byte[1024];
-                int length;
-                while (true)
-                {
-                    try
-                    {
-                        length = protonMessage.encode(msgData, 0, msgData.length);
-                        break;
-                    } catch (BufferOverflowException e)
-                    {
-                        msgData = new byte[msgData.length * 2];
-                    }
-                }
-                // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_12_020: [The event handler shall set the delivery tag on the Sender (Proton) object]
-                byte[] tag = String.valueOf(nextTag).getBytes();
+                sender.close();
+                sender.getSession().close();
+                sender.getSession().getConnection().close();
+            }
+            isConnected = false;
+        }
+        else if (isConnected && sender != null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_41_003: [Otherwise, the function shall send the queued messages]
+            sendQueuedMessages(sender);
+        }
+    }
+
+    /**
+     * Ask for the connection to be closed the next time the reactor wakes up. Messages that are
+     * still queued or in flight at that point fail.
+     */
+    public void requestClose()
+    {
+        isCloseRequested = true;
+    }
+
+    /**
+     * Fail every message that was queued or sent but not settled, once the reactor that was running
+     * this handler has stopped.
+     */
+    public void failPendingMessages()
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_41_006: [The function shall complete the futures of all the queued and in flight messages with an IOException describing why the connection ended]
+        IOException exception;
+        if (savedException != null)
+        {
+            exception = new IOException("Connection failed to be established", savedException);
+        }
+        else if (!connectionWasOpened)
+        {
+            exception = new IOException("Connection failed to open");
+        }
+        else
+        {
+            exception = new IOException("Connection was closed before the message was acknowledged");
+        }
+
+        OutgoingMessage outgoingMessage;
+        while ((outgoingMessage = messagesToBeSent.poll()) != null)
+        {
+            outgoingMessage.future.completeExceptionally(exception);
+        }
+
+        for (String tag : inFlightDeliveries.keySet())
+        {
+            CompletableFuture<Void> future = inFlightDeliveries.remove(tag);
+            if (future != null)
+            {
+                future.completeExceptionally(exception);
+            }
+        }
+    }
 
-                //want to avoid negative delivery tags since -1 is the designated failure value
-                if (this.nextTag == Integer.MAX_VALUE || this.nextTag < 0)
+    private void sendQueuedMessages(Sender snd)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_41_004: [The function shall keep sending queued messages while the Sender has credit]
+        while (snd.getCredit() > 0 && !messagesToBeSent.isEmpty())
+        {
+            OutgoingMessage outgoingMessage = messagesToBeSent.remove();
+
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_12_019: [The event handler shall encode the message and copy to the byte buffer]
+            int length;
+            while (true)
+            {
+                try
                 {
-                    this.nextTag = 0;
-                }
-                else
+                    length = outgoingMessage.protonMessage.encode(encodeBuffer, 0, encodeBuffer.length);
+                    break;
+                } catch (BufferOverflowException e)
                 {
-                    this.nextTag++;
+                    encodeBuffer = new byte[encodeBuffer.length * 2];
                 }
+            }
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_12_020: [The event handler shall set the delivery tag on the Sender (Proton) object]
+            String tag = String.valueOf(nextTag);
 
-                Delivery dlv = snd.delivery(tag);
-                // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_12_021: [The event handler shall send the encoded bytes]
-                snd.send(msgData, 0, length);
-
-                snd.advance();
+            //want to avoid negative delivery tags since -1 is the designated failure value
+            if (this.nextTag == Integer.MAX_VALUE || this.nextTag < 0)
+            {
+                this.nextTag = 0;
             }
+            else
+            {
+                this.nextTag++;
+            }
+
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_41_005: [The function shall remember the future of each sent message by its delivery tag]
+            inFlightDeliveries.put(tag, outgoingMessage.future);
+            snd.delivery(tag.getBytes(StandardCharsets.UTF_8));
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_12_021: [The event handler shall send the encoded bytes]
+            snd.send(encodeBuffer, 0, length);
+
+            snd.advance();
         }
     }
 
@@ -354,20 +444,23 @@ public class AmqpSendHandler extends BaseHandler
             //Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_024: [ The event handler shall get the Delivery remote state from the delivery **]**
             DeliveryState remoteState = d.getRemoteState();
 
-            //Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_025: [ The event handler shall verify the Amqp response and add the response to a queue. **]**
-            sendStatusQueue.add(new AmqpResponseVerification(remoteState));
+            //Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_025: [ The event handler shall verify the Amqp response and complete the future of the message with the delivery tag of the Delivery. **]**
+            AmqpResponseVerification verification = new AmqpResponseVerification(remoteState);
+            CompletableFuture<Void> future = inFlightDeliveries.remove(new String(d.getTag(), StandardCharsets.UTF_8));
+            if (future != null)
+            {
+                if (verification.getException() != null)
+                {
+                    future.completeExceptionally(verification.getException());
+                }
+                else
+                {
+                    future.complete(null);
+                }
+            }
 
             //Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_026: [ The event handler shall settle the delivery. **]**
             d.settle();
-
-            //Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_027: [ The event handler shall get the Sender (Proton) object from the event **]**
-            Sender snd = event.getSender();
-
-            //Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_028: [ The event handler shall close the Sender, Session and Connection **]**
-            snd.close();
-            snd.getSession().close();
-            snd.getSession().getConnection().close();
-            isConnected = false;
         }
     }
 
@@ -378,29 +471,15 @@ public class AmqpSendHandler extends BaseHandler
         event.getTransport().close_tail();
     }
 
-    public void sendComplete() throws IotHubException, IOException
+    private static final class OutgoingMessage
     {
-        //Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_34_034: [if 'connectionWasOpened' is false, or 'isConnectionError' is true, this function shall throw an IOException]
-        if (savedException != null)
-        {
-            throw new IOException("Connection failed to be established", savedException);
-        }
+        private final org.apache.qpid.proton.message.Message protonMessage;
+        private final CompletableFuture<Void> future;
 
-        if (!connectionWasOpened)
+        private OutgoingMessage(org.apache.qpid.proton.message.Message protonMessage, CompletableFuture<Void> future)
         {
-            throw new IOException("Connection failed to open");
-        }
-
-        //Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_029: [ The event handler shall check the status queue to get the response for the sent message]
-        if (!sendStatusQueue.isEmpty())
-        {
-            //Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_030: [ The event handler shall remove the response from the queue]
-            AmqpResponseVerification verifier = sendStatusQueue.remove();
-            if (verifier.getException() != null)
-            {
-                //Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_031: [ The event handler shall get the exception from the response and throw is it is not null]
-                throw verifier.getException();
-            }
+            this.protonMessage = protonMessage;
+            this.future = future;
         }
     }
 }
@@ -0,0 +1,125 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.service;
+
+import com.microsoft.azure.sdk.iot.service.BulkOperation;
+import com.microsoft.azure.sdk.iot.service.exceptions.IotHubNotFoundException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for BulkOperation
+ */
+public class BulkOperationTest
+{
+    private static void assertStartThrows(Collection<String> deviceIds, int maxRunningOperations, Function<String, CompletableFuture<String>> operation)
+    {
+        try
+        {
+            BulkOperation.start(deviceIds, maxRunningOperations, operation);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected)
+        {
+            // expected
+        }
+    }
+
+    //Tests_SRS_SERVICE_SDK_JAVA_BULKOPERATION_41_001: [The function shall throw IllegalArgumentException if deviceIds or operation is null, if deviceIds holds the same device id more than once, or if maxRunningOperations is smaller than 1]
+    @Test
+    public void startThrowsOnIllegalParameters()
+    {
+        // arrange
+        Function<String, CompletableFuture<String>> operation = CompletableFuture::completedFuture;
+
+        // act - assert
+        assertStartThrows(null, 1, operation);
+        assertStartThrows(Arrays.asList("device1", "device2"), 1, null);
+        assertStartThrows(Arrays.asList("device1", "device2", "device1"), 1, operation);
+        assertStartThrows(Arrays.asList("device1", "device2"), 0, operation);
+    }
+
+    //Tests_SRS_SERVICE_SDK_JAVA_BULKOPERATION_41_002: [The function shall start the operation on each device, keeping at most maxRunningOperations of them running at any time]
+    //Tests_SRS_SERVICE_SDK_JAVA_BULKOPERATION_41_003: [The function shall record the result or the exception of each operation by device id]
+    //Tests_SRS_SERVICE_SDK_JAVA_BULKOPERATION_41_004: [The future shall complete once every operation completed, with the outcome of each operation and the elapsed time]
+    @Test
+    public void startBoundsRunningOperations() throws Exception
+    {
+        // arrange
+        final Map<String, CompletableFuture<String>> startedOperations = new LinkedHashMap<>();
+        List<String> deviceIds = Arrays.asList("device0", "device1", "device2", "device3");
+
+        // act
+        CompletableFuture<BulkOperation<String>> future = BulkOperation.start(deviceIds, 2, deviceId ->
+        {
+            CompletableFuture<String> operation = new CompletableFuture<>();
+            startedOperations.put(deviceId, operation);
+            return operation;
+        });
+
+        // assert
+        assertEquals(2, startedOperations.size());
+        startedOperations.get("device0").complete("result0");
+        assertEquals(3, startedOperations.size());
+        startedOperations.get("device1").completeExceptionally(new IotHubNotFoundException());
+        startedOperations.get("device2").complete(null);
+        assertFalse(future.isDone());
+        startedOperations.get("device3").complete("result3");
+        BulkOperation<String> operation = future.get();
+        assertEquals(3, operation.getResults().size());
+        assertEquals("result0", operation.getResults().get("device0"));
+        assertTrue(operation.getResults().containsKey("device2"));
+        assertNull(operation.getResults().get("device2"));
+        assertEquals(1, operation.getFailures().size());
+        assertTrue(operation.getFailures().get("device1") instanceof IotHubNotFoundException);
+        assertTrue(operation.getElapsedTimeNanos() > 0);
+    }
+
+    //Tests_SRS_SERVICE_SDK_JAVA_BULKOPERATION_41_003: [The function shall record the result or the exception of each operation by device id]
+    @Test
+    public void startRecordsOperationsThatThrowAsFailures() throws Exception
+    {
+        // arrange
+        final IllegalStateException exception = new IllegalStateException();
+
+        // act
+        BulkOperation<String> operation = BulkOperation.<String>start(Collections.singletonList("device1"), 1, deviceId ->
+        {
+            throw exception;
+        }).get();
+
+        // assert
+        assertTrue(operation.getResults().isEmpty());
+        assertSame(exception, operation.getFailures().get("device1"));
+    }
+
+    //Tests_SRS_SERVICE_SDK_JAVA_BULKOPERATION_41_004: [The future shall complete once every operation completed, with the outcome of each operation and the elapsed time]
+    @Test
+    public void startCompletesRightAwayForNoDevices() throws Exception
+    {
+        // act
+        CompletableFuture<BulkOperation<String>> future = BulkOperation.start(new ArrayList<String>(), 1, CompletableFuture::completedFuture);
+
+        // assert
+        assertTrue(future.isDone());
+        assertTrue(future.get().getResults().isEmpty());
+        assertTrue(future.get().getFailures().isEmpty());
+    }
+}
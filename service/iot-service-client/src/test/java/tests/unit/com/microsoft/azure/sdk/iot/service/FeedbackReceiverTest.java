@@ -271,6 +271,26 @@ public class FeedbackReceiverTest
         // Assert
         assertEquals(deviceId, Deencapsulation.getField(feedbackReceiver, "deviceId"));
     }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_FEEDBACKRECEIVER_12_003: [The constructor shall create a new instance of AmqpReceive object]
+    @Test
+    public void constructor_passes_prefetch_credit_to_AmqpReceive()
+    {
+        // Arrange
+        String hostName = "aaa";
+        String userName = "bbb";
+        String sasToken = "ccc";
+        IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
+        new Expectations()
+        {
+            {
+                amqpReceive = new AmqpReceive(hostName, userName, sasToken, iotHubServiceClientProtocol, 5);
+                times = 1;
+            }
+        };
+        // Act
+        new FeedbackReceiver(hostName, userName, sasToken, iotHubServiceClientProtocol, 5);
+    }
     
    
   
@@ -131,7 +131,7 @@ public class FileUploadNotificationReceiverTest
         new Verifications()
         {
             {
-                new AmqpFileUploadNotificationReceive(anyString, anyString, anyString, iotHubServiceClientProtocol);
+                new AmqpFileUploadNotificationReceive(anyString, anyString, anyString, iotHubServiceClientProtocol, AmqpFileUploadNotificationReceive.DEFAULT_PREFETCH_CREDIT);
                 times = 1;
 
             }
@@ -0,0 +1,70 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.service;
+
+import com.microsoft.azure.sdk.iot.service.SendAllResult;
+import com.microsoft.azure.sdk.iot.service.exceptions.IotHubNotFoundException;
+import mockit.Deencapsulation;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for SendAllResult
+ */
+public class SendAllResultTest
+{
+    private static SendAllResult createResult(Set<String> succeededDeviceIds, Map<String, Exception> failures, long elapsedTimeNanos)
+    {
+        return Deencapsulation.newInstance(SendAllResult.class, new Class[] {Set.class, Map.class, long.class}, succeededDeviceIds, failures, elapsedTimeNanos);
+    }
+
+    //Tests_SRS_SERVICE_SDK_JAVA_SENDALLRESULT_41_001: [The constructor shall save copies of the provided device ids, failures and elapsed time.]
+    //Tests_SRS_SERVICE_SDK_JAVA_SENDALLRESULT_41_002: [The function shall return true if no message failed.]
+    //Tests_SRS_SERVICE_SDK_JAVA_SENDALLRESULT_41_003: [The function shall return the number of settled messages divided by the elapsed time in seconds, or 0 if no time elapsed.]
+    @Test
+    public void constructorSavesOutcomes()
+    {
+        // arrange
+        Set<String> succeededDeviceIds = new HashSet<>();
+        succeededDeviceIds.add("device1");
+        succeededDeviceIds.add("device2");
+        succeededDeviceIds.add("device3");
+        Map<String, Exception> failures = new HashMap<>();
+        failures.put("device4", new IotHubNotFoundException());
+
+        // act
+        SendAllResult result = createResult(succeededDeviceIds, failures, TimeUnit.MILLISECONDS.toNanos(500));
+        succeededDeviceIds.clear();
+        failures.clear();
+
+        // assert
+        assertEquals(3, result.getSucceededDeviceIds().size());
+        assertTrue(result.getFailures().get("device4") instanceof IotHubNotFoundException);
+        assertFalse(result.isSuccessful());
+        assertEquals(500, result.getElapsedTimeMillis());
+        assertEquals(8.0, result.getMessagesPerSecond(), 0.001);
+    }
+
+    //Tests_SRS_SERVICE_SDK_JAVA_SENDALLRESULT_41_003: [The function shall return the number of settled messages divided by the elapsed time in seconds, or 0 if no time elapsed.]
+    @Test
+    public void getMessagesPerSecondReturnsZeroWithoutElapsedTime()
+    {
+        // act
+        SendAllResult result = createResult(Collections.<String>emptySet(), Collections.<String, Exception>emptyMap(), 0);
+
+        // assert
+        assertTrue(result.isSuccessful());
+        assertEquals(0, result.getMessagesPerSecond(), 0);
+    }
+}
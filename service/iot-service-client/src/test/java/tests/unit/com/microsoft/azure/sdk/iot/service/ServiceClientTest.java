@@ -7,15 +7,23 @@ package tests.unit.com.microsoft.azure.sdk.iot.service;
 
 import com.microsoft.azure.sdk.iot.service.*;
 import com.microsoft.azure.sdk.iot.service.auth.IotHubServiceSasToken;
+import com.microsoft.azure.sdk.iot.service.exceptions.IotHubNotFoundException;
 import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpSend;
 import mockit.*;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ServiceClientTest
 {
@@ -438,8 +446,8 @@ public class ServiceClientTest
         new Expectations()
         {
             {
-                amqpSend.send(deviceId, null, iotMessage);
-                serviceClient.send(deviceId, iotMessage);
+                amqpSend.sendAsync(deviceId, null, iotMessage);
+                result = CompletableFuture.completedFuture(null);
             }
         };
         // Act
@@ -453,12 +461,11 @@ public class ServiceClientTest
     public void send_async_future_throw() throws Exception
     {
         // Arrange
-        new MockUp<ServiceClient>()
+        new Expectations()
         {
-            @Mock
-            public void send(String deviceId, String message) throws IOException
             {
-                throw new IOException();
+                amqpSend.sendAsync(anyString, null, (Message) any);
+                result = new IOException();
             }
         };
         String iotHubName = "IOTHUBNAME";
@@ -477,6 +484,173 @@ public class ServiceClientTest
         completableFuture.get();
     }
 
+    // Tests_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_002: [The function shall call sendAsync() on the member AMQP sender object and return its future]
+    @Test
+    public void send_module_async_returns_sender_future() throws Exception
+    {
+        // Arrange
+        String iotHubName = "IOTHUBNAME";
+        String hostName = "HOSTNAME";
+        String sharedAccessKeyName = "ACCESSKEYNAME";
+        String policyName = "SharedAccessKey";
+        String sharedAccessKey = "1234567890abcdefghijklmnopqrstvwxyz=";
+        String connectionString = "HostName=" + hostName + "." + iotHubName + ";SharedAccessKeyName=" + sharedAccessKeyName + ";" + policyName + "=" + sharedAccessKey;
+        String deviceId = "XXX";
+        String moduleId = "YYY";
+        String content = "HELLO";
+        Message iotMessage = new Message(content);
+        CompletableFuture<Void> senderFuture = new CompletableFuture<>();
+        IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
+        ServiceClient serviceClient = ServiceClient.createFromConnectionString(connectionString, iotHubServiceClientProtocol);
+        new Expectations()
+        {
+            {
+                amqpSend.sendAsync(deviceId, moduleId, iotMessage);
+                result = senderFuture;
+            }
+        };
+
+        // Act
+        CompletableFuture<Void> completableFuture = serviceClient.sendAsync(deviceId, moduleId, iotMessage);
+
+        // Assert
+        assertEquals(senderFuture, completableFuture);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_001: [The function shall return a future completed with an IOException if the member AMQP sender object has not been initialized]
+    @Test
+    public void send_async_sender_null() throws Exception
+    {
+        // Arrange
+        String iotHubName = "IOTHUBNAME";
+        String hostName = "HOSTNAME";
+        String sharedAccessKeyName = "ACCESSKEYNAME";
+        String policyName = "SharedAccessKey";
+        String sharedAccessKey = "1234567890abcdefghijklmnopqrstvwxyz=";
+        String connectionString = "HostName=" + hostName + "." + iotHubName + ";SharedAccessKeyName=" + sharedAccessKeyName + ";" + policyName + "=" + sharedAccessKey;
+        IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
+        ServiceClient serviceClient = ServiceClient.createFromConnectionString(connectionString, iotHubServiceClientProtocol);
+        Deencapsulation.setField(serviceClient, "amqpMessageSender", null);
+
+        // Act
+        CompletableFuture<Void> completableFuture = serviceClient.sendAsync("XXX", new Message("HELLO"));
+
+        // Assert
+        try
+        {
+            completableFuture.get();
+            fail("Expected the future to complete exceptionally");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_008: [The function shall send the messages with sendAsync(), keeping at most maxInFlightMessages of them unsettled at any time]
+    // Tests_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_009: [The function shall record the outcome of each message by device identifier]
+    // Tests_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_010: [The future shall complete once every message was settled, with the outcome of each message and the elapsed time]
+    @Test
+    public void sendAllAsync_bounds_in_flight_messages() throws Exception
+    {
+        // Arrange
+        String connectionString = "HostName=HOSTNAME.IOTHUBNAME;SharedAccessKeyName=ACCESSKEYNAME;SharedAccessKey=1234567890abcdefghijklmnopqrstvwxyz=";
+        ServiceClient serviceClient = ServiceClient.createFromConnectionString(connectionString, IotHubServiceClientProtocol.AMQPS);
+        final Map<String, CompletableFuture<Void>> sentMessages = new LinkedHashMap<>();
+        new Expectations()
+        {
+            {
+                amqpSend.sendAsync(anyString, null, (Message) any);
+                result = new Delegate()
+                {
+                    CompletableFuture<Void> sendAsync(String deviceId, String moduleId, Message message)
+                    {
+                        CompletableFuture<Void> future = new CompletableFuture<>();
+                        sentMessages.put(deviceId, future);
+                        return future;
+                    }
+                };
+            }
+        };
+        Map<String, Message> messages = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++)
+        {
+            messages.put("device" + i, new Message("HELLO"));
+        }
+
+        // Act
+        CompletableFuture<SendAllResult> completableFuture = serviceClient.sendAllAsync(messages, 2);
+
+        // Assert
+        assertEquals(2, sentMessages.size());
+        sentMessages.get("device0").complete(null);
+        assertEquals(3, sentMessages.size());
+        sentMessages.get("device1").completeExceptionally(new IotHubNotFoundException());
+        sentMessages.get("device2").complete(null);
+        sentMessages.get("device3").complete(null);
+        assertFalse(completableFuture.isDone());
+        sentMessages.get("device4").complete(null);
+        SendAllResult result = completableFuture.get();
+        assertEquals(4, result.getSucceededDeviceIds().size());
+        assertEquals(1, result.getFailures().size());
+        assertTrue(result.getFailures().get("device1") instanceof IotHubNotFoundException);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_004: [The function shall call sendAll() with DEFAULT_MAX_IN_FLIGHT_MESSAGES]
+    // Tests_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_006: [The function shall wait for the future returned by sendAllAsync() and return its result]
+    @Test
+    public void sendAll_settles_messages_that_complete_right_away() throws Exception
+    {
+        // Arrange
+        String connectionString = "HostName=HOSTNAME.IOTHUBNAME;SharedAccessKeyName=ACCESSKEYNAME;SharedAccessKey=1234567890abcdefghijklmnopqrstvwxyz=";
+        ServiceClient serviceClient = ServiceClient.createFromConnectionString(connectionString, IotHubServiceClientProtocol.AMQPS);
+        new Expectations()
+        {
+            {
+                amqpSend.sendAsync(anyString, null, (Message) any);
+                result = CompletableFuture.completedFuture(null);
+            }
+        };
+        Map<String, Message> messages = new HashMap<>();
+        Message message = new Message("HELLO");
+        for (int i = 0; i < 20000; i++)
+        {
+            messages.put("device" + i, message);
+        }
+
+        // Act
+        SendAllResult result = serviceClient.sendAll(messages);
+
+        // Assert
+        assertTrue(result.isSuccessful());
+        assertEquals(20000, result.getSucceededDeviceIds().size());
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_005: [The function shall throw IOException if the member AMQP sender object has not been initialized]
+    @Test (expected = IOException.class)
+    public void sendAll_sender_null() throws Exception
+    {
+        // Arrange
+        String connectionString = "HostName=HOSTNAME.IOTHUBNAME;SharedAccessKeyName=ACCESSKEYNAME;SharedAccessKey=1234567890abcdefghijklmnopqrstvwxyz=";
+        ServiceClient serviceClient = ServiceClient.createFromConnectionString(connectionString, IotHubServiceClientProtocol.AMQPS);
+        Deencapsulation.setField(serviceClient, "amqpMessageSender", null);
+
+        // Act
+        serviceClient.sendAll(new HashMap<>());
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_007: [The function shall throw IllegalArgumentException if the messages are null, or if maxInFlightMessages is smaller than 1]
+    @Test (expected = IllegalArgumentException.class)
+    public void sendAllAsync_throws_for_no_in_flight_messages() throws Exception
+    {
+        // Arrange
+        String connectionString = "HostName=HOSTNAME.IOTHUBNAME;SharedAccessKeyName=ACCESSKEYNAME;SharedAccessKey=1234567890abcdefghijklmnopqrstvwxyz=";
+        ServiceClient serviceClient = ServiceClient.createFromConnectionString(connectionString, IotHubServiceClientProtocol.AMQPS);
+
+        // Act
+        serviceClient.sendAllAsync(new HashMap<>(), 0);
+    }
+
     // Tests_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_12_017: [The function shall create a FeedbackReceiver object and returns with it]
     @Test
     public void getFeedbackReceiver_good_case() throws Exception
@@ -530,4 +704,25 @@ public class ServiceClientTest
         // Assert
         assertNotEquals(null, feedbackReceiver);
     }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_41_011: [The function shall create a FeedbackReceiver object with the given prefetch credit and return with it]
+    @Test
+    public void getFeedbackReceiver_with_prefetch_credit() throws Exception
+    {
+        // Arrange
+        String connectionString = "HostName=HOSTNAME.IOTHUBNAME;SharedAccessKeyName=ACCESSKEYNAME;SharedAccessKey=1234567890abcdefghijklmnopqrstvwxyz=";
+        IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
+        ServiceClient serviceClient = ServiceClient.createFromConnectionString(connectionString, iotHubServiceClientProtocol);
+        // Assert
+        new Expectations()
+        {
+            {
+                feedbackReceiver = new FeedbackReceiver(anyString, anyString, anyString, iotHubServiceClientProtocol, 10);
+            }
+        };
+        // Act
+        FeedbackReceiver feedbackReceiver = serviceClient.getFeedbackReceiver(10);
+        // Assert
+        assertNotEquals(null, feedbackReceiver);
+    }
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package tests.unit.com.microsoft.azure.sdk.iot.service.auth;
+
+import com.microsoft.azure.sdk.iot.service.IotHubConnectionString;
+import com.microsoft.azure.sdk.iot.service.IotHubConnectionStringBuilder;
+import com.microsoft.azure.sdk.iot.service.auth.IotHubServiceSasTokenCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit tests for IotHubServiceSasTokenCache
+ */
+public class IotHubServiceSasTokenCacheTest
+{
+    private static final String CONNECTION_STRING = "HostName=HOSTNAME.b.c.d;SharedAccessKeyName=ACCESSKEYNAME;SharedAccessKey=1234567890abcdefghijklmnopqrstvwxyz=";
+    private static final String OTHER_CONNECTION_STRING = "HostName=HOSTNAME.b.c.d;SharedAccessKeyName=OTHERKEYNAME;SharedAccessKey=1234567890abcdefghijklmnopqrstvwxyz=";
+
+    private IotHubConnectionString iotHubConnectionString;
+    private IotHubServiceSasTokenCache cache;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        iotHubConnectionString = IotHubConnectionStringBuilder.createConnectionString(CONNECTION_STRING);
+        cache = new IotHubServiceSasTokenCache();
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_IOTHUBSERVICESASTOKENCACHE_41_001: [The function shall throw IllegalArgumentException if the input object is null.]
+    @Test (expected = IllegalArgumentException.class)
+    public void getTokenThrowsOnNullConnectionString()
+    {
+        cache.getToken(null);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_IOTHUBSERVICESASTOKENCACHE_41_002: [The function shall return the string representation of the cached token for the credentials of the connection string.]
+    @Test
+    public void getTokenReusesTokenForSameCredentials() throws Exception
+    {
+        // Arrange
+        String first = cache.getToken(iotHubConnectionString);
+        Thread.sleep(1100);
+
+        // Act
+        String second = cache.getToken(IotHubConnectionStringBuilder.createConnectionString(CONNECTION_STRING));
+
+        // Assert
+        assertSame(first, second);
+        assertEquals(true, first.contains("&skn=ACCESSKEYNAME"));
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_IOTHUBSERVICESASTOKENCACHE_41_003: [If there is no cached token for the credentials, or if it expires within the refresh margin, the function shall create a new IotHubServiceSasToken and cache it.]
+    @Test
+    public void getTokenCreatesTokenPerCredentials() throws Exception
+    {
+        // Act
+        String first = cache.getToken(iotHubConnectionString);
+        String other = cache.getToken(IotHubConnectionStringBuilder.createConnectionString(OTHER_CONNECTION_STRING));
+
+        // Assert
+        assertNotEquals(first, other);
+        assertEquals(true, other.contains("&skn=OTHERKEYNAME"));
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_IOTHUBSERVICESASTOKENCACHE_41_003: [If there is no cached token for the credentials, or if it expires within the refresh margin, the function shall create a new IotHubServiceSasToken and cache it.]
+    @Test
+    public void getTokenReplacesTokenWithinRefreshMargin() throws Exception
+    {
+        // Arrange
+        String first = cache.getToken(iotHubConnectionString);
+        cache.setRefreshMarginSecs(Long.MAX_VALUE / 2);
+
+        // Act
+        String second = cache.getToken(iotHubConnectionString);
+        String third = cache.getToken(iotHubConnectionString);
+
+        // Assert
+        assertNotSame(first, second);
+        assertNotSame(second, third);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_IOTHUBSERVICESASTOKENCACHE_41_002: [The function shall return the string representation of the cached token for the credentials of the connection string.]
+    @Test
+    public void getTokenReturnsSameTokenToConcurrentCallers() throws Exception
+    {
+        // Arrange
+        final String expected = cache.getToken(iotHubConnectionString);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+
+        // Act
+        for (int i = 0; i < 100; i++)
+        {
+            results.add(executor.submit(new Callable<String>()
+            {
+                @Override
+                public String call()
+                {
+                    return cache.getToken(iotHubConnectionString);
+                }
+            }));
+        }
+
+        // Assert
+        for (Future<String> result : results)
+        {
+            assertSame(expected, result.get());
+        }
+        executor.shutdown();
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_IOTHUBSERVICESASTOKENCACHE_41_004: [The function shall throw IllegalArgumentException if the refresh margin is negative.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setRefreshMarginSecsThrowsOnNegative()
+    {
+        cache.setRefreshMarginSecs(-1);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_IOTHUBSERVICESASTOKENCACHE_41_005: [The function shall only reuse the cached token if it was signed for the host name, shared access key name and shared access key of the connection string.]
+    @Test
+    public void getTokenSignsNewTokenWhenCredentialsChange() throws Exception
+    {
+        // Arrange
+        String first = cache.getToken(iotHubConnectionString);
+        String other = cache.getToken(IotHubConnectionStringBuilder.createConnectionString(OTHER_CONNECTION_STRING));
+
+        // Act
+        String second = cache.getToken(iotHubConnectionString);
+
+        // Assert
+        assertNotSame(first, other);
+        assertNotSame(other, second);
+        assertEquals(true, second.contains("&skn=ACCESSKEYNAME"));
+        assertSame(second, cache.getToken(iotHubConnectionString));
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_IOTHUBSERVICESASTOKENCACHE_41_002: [The function shall return the string representation of the cached token for the credentials of the connection string.]
+    @Test
+    public void cachesAreNotSharedBetweenClients() throws Exception
+    {
+        // Arrange
+        IotHubConnectionString otherClientConnectionString = IotHubConnectionStringBuilder.createConnectionString(CONNECTION_STRING);
+        String first = iotHubConnectionString.getSasTokenCache().getToken(iotHubConnectionString);
+        String otherClientFirst = otherClientConnectionString.getSasTokenCache().getToken(otherClientConnectionString);
+
+        // Act
+        otherClientConnectionString.getSasTokenCache().clear();
+        otherClientConnectionString.getSasTokenCache().setRefreshMarginSecs(Long.MAX_VALUE / 2);
+
+        // Assert
+        assertNotSame(iotHubConnectionString.getSasTokenCache(), otherClientConnectionString.getSasTokenCache());
+        assertSame(first, iotHubConnectionString.getSasTokenCache().getToken(iotHubConnectionString));
+        assertNotSame(otherClientFirst, otherClientConnectionString.getSasTokenCache().getToken(otherClientConnectionString));
+    }
+}
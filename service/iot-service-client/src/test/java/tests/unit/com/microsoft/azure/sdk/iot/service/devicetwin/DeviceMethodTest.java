@@ -9,9 +9,11 @@ import com.microsoft.azure.sdk.iot.service.IotHubConnectionStringBuilder;
 import com.microsoft.azure.sdk.iot.service.auth.IotHubServiceSasToken;
 import com.microsoft.azure.sdk.iot.service.devicetwin.DeviceMethod;
 import com.microsoft.azure.sdk.iot.service.devicetwin.DeviceOperations;
+import com.microsoft.azure.sdk.iot.service.devicetwin.InvokeAllResult;
 import com.microsoft.azure.sdk.iot.service.devicetwin.Job;
 import com.microsoft.azure.sdk.iot.service.devicetwin.MethodResult;
 import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
+import com.microsoft.azure.sdk.iot.service.exceptions.IotHubNotFoundException;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpMethod;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpResponse;
 import mockit.*;
@@ -19,15 +21,26 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Unit tests for Device Method
@@ -696,4 +709,241 @@ public class DeviceMethodTest
         testMethod.scheduleDeviceMethod(queryCondition, STANDARD_METHODNAME, STANDARD_TIMEOUT_SECONDS, STANDARD_TIMEOUT_SECONDS, STANDARD_PAYLOAD_MAP, now, maxExecutionTimeInSeconds);
     }
 
+    /* Tests_SRS_DEVICEMETHOD_41_001: [The invokeAsync shall throw IllegalArgumentException if the provided deviceId or methodName is null or empty.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void invokeAsyncThrowsOnEmptyDeviceId() throws Exception
+    {
+        //arrange
+        DeviceMethod testMethod = DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING);
+
+        //act
+        testMethod.invokeAsync("", STANDARD_METHODNAME, null, null, STANDARD_PAYLOAD_MAP);
+    }
+
+    /* Tests_SRS_DEVICEMETHOD_41_002: [The invokeAsync shall invoke the method on a thread of the invocation pool and return a future that completes with its result.] */
+    @Test
+    public void invokeAsyncCompletesWithResult() throws Exception
+    {
+        //arrange
+        final MethodResult methodResult = new MethodResult(200, STANDARD_PAYLOAD_STR);
+        final Thread callerThread = Thread.currentThread();
+        final List<Thread> invocationThreads = new ArrayList<>();
+        new MockUp<DeviceMethod>()
+        {
+            @Mock
+            MethodResult invoke(String deviceId, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload)
+            {
+                invocationThreads.add(Thread.currentThread());
+                return methodResult;
+            }
+        };
+        DeviceMethod testMethod = DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING);
+
+        //act
+        MethodResult result = testMethod.invokeAsync(STANDARD_DEVICEID, STANDARD_METHODNAME, null, null, STANDARD_PAYLOAD_MAP).get(10, TimeUnit.SECONDS);
+
+        //assert
+        assertSame(methodResult, result);
+        assertEquals(1, invocationThreads.size());
+        assertTrue(invocationThreads.get(0) != callerThread);
+    }
+
+    /* Tests_SRS_DEVICEMETHOD_41_003: [If the invocation fails, the future shall complete exceptionally with the exception it failed with.] */
+    @Test
+    public void invokeAsyncCompletesExceptionallyOnFailure() throws Exception
+    {
+        //arrange
+        final IotHubException notFound = new IotHubNotFoundException();
+        new MockUp<DeviceMethod>()
+        {
+            @Mock
+            MethodResult invoke(String deviceId, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload) throws IotHubException
+            {
+                throw notFound;
+            }
+        };
+        DeviceMethod testMethod = DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING);
+
+        //act
+        CompletableFuture<MethodResult> future = testMethod.invokeAsync(STANDARD_DEVICEID, STANDARD_METHODNAME, null, null, STANDARD_PAYLOAD_MAP);
+
+        //assert
+        try
+        {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected the future to complete exceptionally");
+        }
+        catch (ExecutionException e)
+        {
+            assertSame(notFound, e.getCause());
+        }
+    }
+
+    /* Tests_SRS_DEVICEMETHOD_41_004: [The invokeAll shall throw IllegalArgumentException if the provided deviceIds is null or holds a null, empty or repeated device id, if the methodName is null or empty, or if maxConcurrentInvocations is smaller than 1.] */
+    @Test
+    public void invokeAllIllegalParametersFailed() throws Exception
+    {
+        //arrange
+        DeviceMethod testMethod = DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING);
+        List<String> deviceIds = Arrays.asList("device1", "device2");
+
+        //act
+        assertInvokeAllThrows(testMethod, null, STANDARD_METHODNAME, 1);
+        assertInvokeAllThrows(testMethod, Arrays.asList("device1", ""), STANDARD_METHODNAME, 1);
+        assertInvokeAllThrows(testMethod, Arrays.asList("device1", null), STANDARD_METHODNAME, 1);
+        assertInvokeAllThrows(testMethod, Arrays.asList("device1", "device2", "device1"), STANDARD_METHODNAME, 1);
+        assertInvokeAllThrows(testMethod, deviceIds, null, 1);
+        assertInvokeAllThrows(testMethod, deviceIds, STANDARD_METHODNAME, 0);
+    }
+
+    private static void assertInvokeAllThrows(DeviceMethod testMethod, List<String> deviceIds, String methodName, int maxConcurrentInvocations)
+    {
+        try
+        {
+            testMethod.invokeAll(deviceIds, methodName, null, null, STANDARD_PAYLOAD_MAP, maxConcurrentInvocations);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected)
+        {
+            // expected
+        }
+    }
+
+    /* Tests_SRS_DEVICEMETHOD_41_005: [The invokeAll shall invoke the method on each device with invokeAsync, keeping at most maxConcurrentInvocations invocations running at any time.] */
+    /* Tests_SRS_DEVICEMETHOD_41_006: [The invokeAll shall record the result or the exception of each invocation by device id.] */
+    /* Tests_SRS_DEVICEMETHOD_41_007: [The future shall complete once every invocation completed, with the outcome of each invocation and the elapsed time.] */
+    @Test
+    public void invokeAllInvokesEveryDeviceWithinConcurrencyLimit() throws Exception
+    {
+        //arrange
+        final int maxConcurrentInvocations = 4;
+        final AtomicInteger runningInvocations = new AtomicInteger();
+        final AtomicInteger maxRunningInvocations = new AtomicInteger();
+        new MockUp<DeviceMethod>()
+        {
+            @Mock
+            MethodResult invoke(String deviceId, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload) throws IotHubException, InterruptedException
+            {
+                int running = runningInvocations.incrementAndGet();
+                maxRunningInvocations.accumulateAndGet(running, Math::max);
+                Thread.sleep(5);
+                runningInvocations.decrementAndGet();
+                if (deviceId.equals("device7"))
+                {
+                    throw new IotHubNotFoundException();
+                }
+
+                return new MethodResult(200, deviceId);
+            }
+        };
+        DeviceMethod testMethod = DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING);
+        List<String> deviceIds = new ArrayList<>();
+        for (int i = 0; i < 40; i++)
+        {
+            deviceIds.add("device" + i);
+        }
+
+        //act
+        InvokeAllResult result = testMethod.invokeAll(deviceIds, STANDARD_METHODNAME, null, null, STANDARD_PAYLOAD_MAP, maxConcurrentInvocations).get(30, TimeUnit.SECONDS);
+
+        //assert
+        assertFalse(result.isSuccessful());
+        assertEquals(39, result.getResults().size());
+        assertEquals("device3", result.getResults().get("device3").getPayload());
+        assertEquals(1, result.getFailures().size());
+        assertTrue(result.getFailures().get("device7") instanceof IotHubNotFoundException);
+        assertTrue(maxRunningInvocations.get() <= maxConcurrentInvocations);
+        assertTrue(maxRunningInvocations.get() > 1);
+    }
+
+    /* Tests_SRS_DEVICEMETHOD_41_007: [The future shall complete once every invocation completed, with the outcome of each invocation and the elapsed time.] */
+    @Test
+    public void invokeAllCompletesRightAwayForNoDevices() throws Exception
+    {
+        //arrange
+        DeviceMethod testMethod = DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING);
+
+        //act
+        CompletableFuture<InvokeAllResult> future = testMethod.invokeAll(new ArrayList<String>(), STANDARD_METHODNAME, null, null, STANDARD_PAYLOAD_MAP);
+
+        //assert
+        assertTrue(future.isDone());
+        assertTrue(future.get().isSuccessful());
+        assertTrue(future.get().getResults().isEmpty());
+    }
+
+    /* Tests_SRS_DEVICEMETHOD_41_008: [The constructor shall throw IllegalArgumentException if the provided invocationThreads is smaller than 1.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNoInvocationThreads() throws Exception
+    {
+        //act
+        DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING, 0);
+    }
+
+    /* Tests_SRS_DEVICEMETHOD_41_002: [The invokeAsync shall invoke the method on a thread of the invocation pool and return a future that completes with its result.] */
+    @Test
+    public void invokeAsyncRunsOnAtMostInvocationThreads() throws Exception
+    {
+        //arrange
+        final int invocationThreads = 2;
+        final AtomicInteger runningInvocations = new AtomicInteger();
+        final AtomicInteger maxRunningInvocations = new AtomicInteger();
+        new MockUp<DeviceMethod>()
+        {
+            @Mock
+            MethodResult invoke(String deviceId, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload) throws InterruptedException
+            {
+                int running = runningInvocations.incrementAndGet();
+                maxRunningInvocations.accumulateAndGet(running, Math::max);
+                Thread.sleep(5);
+                runningInvocations.decrementAndGet();
+                return new MethodResult(200, deviceId);
+            }
+        };
+        DeviceMethod testMethod = DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING, invocationThreads);
+        List<CompletableFuture<MethodResult>> futures = new ArrayList<>();
+
+        //act
+        for (int i = 0; i < 20; i++)
+        {
+            futures.add(testMethod.invokeAsync("device" + i, STANDARD_METHODNAME, null, null, STANDARD_PAYLOAD_MAP));
+        }
+
+        //assert
+        for (CompletableFuture<MethodResult> future : futures)
+        {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(invocationThreads, maxRunningInvocations.get());
+    }
+
+    /* Tests_SRS_DEVICEMETHOD_41_009: [The close shall shut down the invocation pool, letting the invocations already requested complete.] */
+    @Test
+    public void closeShutsDownInvocationPoolAfterRequestedInvocations() throws Exception
+    {
+        //arrange
+        new MockUp<DeviceMethod>()
+        {
+            @Mock
+            MethodResult invoke(String deviceId, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload) throws InterruptedException
+            {
+                Thread.sleep(5);
+                return new MethodResult(200, deviceId);
+            }
+        };
+        DeviceMethod testMethod = DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING, 1);
+        CompletableFuture<MethodResult> first = testMethod.invokeAsync("device1", STANDARD_METHODNAME, null, null, STANDARD_PAYLOAD_MAP);
+        CompletableFuture<MethodResult> second = testMethod.invokeAsync("device2", STANDARD_METHODNAME, null, null, STANDARD_PAYLOAD_MAP);
+        ExecutorService invocationExecutor = Deencapsulation.getField(testMethod, "invocationExecutor");
+
+        //act
+        testMethod.close();
+
+        //assert
+        assertTrue(invocationExecutor.isShutdown());
+        assertEquals("device1", first.get(10, TimeUnit.SECONDS).getPayload());
+        assertEquals("device2", second.get(10, TimeUnit.SECONDS).getPayload());
+        assertTrue(invocationExecutor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals("device3", testMethod.invokeAsync("device3", STANDARD_METHODNAME, null, null, STANDARD_PAYLOAD_MAP).get(10, TimeUnit.SECONDS).getPayload());
+    }
 }
@@ -749,7 +749,7 @@ public class DeviceOperationsTest
                 STANDARD_REQUEST_ID,
                 0);
 
-        assertNull(Deencapsulation.getField(DeviceOperations.class, "headers"));
+        assertNull(((ThreadLocal) Deencapsulation.getField(DeviceOperations.class, "headers")).get());
 
         //assert
         new Verifications()
@@ -761,6 +761,44 @@ public class DeviceOperationsTest
         };
     }
 
+    //Tests_SRS_DEVICE_OPERATIONS_41_001: [The headers shall only be used by the next request made on the calling thread.]
+    @Test
+    public void setCustomHeadersDoesNotApplyToOtherThreads(@Mocked IotHubServiceSasToken iotHubServiceSasToken,
+                                                           @Mocked HttpRequest httpRequest) throws Exception
+    {
+        //Arrange
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("TestKey", "TestValue");
+        Thread otherThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                DeviceOperations.setHeaders(headers);
+            }
+        });
+        otherThread.start();
+        otherThread.join();
+
+        //act
+        DeviceOperations.request(
+                IOT_HUB_CONNECTION_STRING,
+                new URL(STANDARD_URL),
+                HttpMethod.POST,
+                STANDARD_PAYLOAD,
+                STANDARD_REQUEST_ID,
+                0);
+
+        //assert
+        new Verifications()
+        {
+            {
+                httpRequest.setHeaderField("TestKey", "TestValue");
+                times = 0;
+            }
+        };
+    }
+
     @Test
     public void setCustomHeadersSetsOnlyOnce(@Mocked IotHubServiceSasToken iotHubServiceSasToken,
                                         @Mocked HttpRequest httpRequest) throws Exception
@@ -5,10 +5,12 @@
 
 package tests.unit.com.microsoft.azure.sdk.iot.service.devicetwin;
 
+import com.google.gson.stream.JsonReader;
 import com.microsoft.azure.sdk.iot.deps.twin.*;
 import com.microsoft.azure.sdk.iot.service.IotHubConnectionString;
 import com.microsoft.azure.sdk.iot.service.IotHubConnectionStringBuilder;
 import com.microsoft.azure.sdk.iot.service.auth.IotHubServiceSasToken;
+import com.microsoft.azure.sdk.iot.service.auth.IotHubServiceSasTokenCache;
 import com.microsoft.azure.sdk.iot.service.devicetwin.*;
 import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
 import com.microsoft.azure.sdk.iot.service.exceptions.IotHubExceptionManager;
@@ -20,8 +22,11 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -83,6 +88,15 @@ public class DeviceTwinTest
     {
         VALID_SQL_QUERY = SqlQuery.createSqlQuery("tags.Floor, AVG(properties.reported.temperature) AS AvgTemperature",
                 SqlQuery.FromType.DEVICES, "tags.building = '43'", null).getQuery();
+
+        // connection strings are mocked, so give them a real token cache to sign with
+        new NonStrictExpectations()
+        {
+            {
+                mockedConnectionString.getSasTokenCache();
+                result = new IotHubServiceSasTokenCache();
+            }
+        };
     }
 
     private void assertEqualSetAndMap(Set<Pair> pairSet, Map<String, String> map)
@@ -185,7 +199,7 @@ public class DeviceTwinTest
             {
                 mockedDevice.getDeviceId();
                 result = "SomeDevID";
-                TwinState.createFromTwinJson((String)any);
+                TwinState.createFromTwinJson((InputStream)any);
                 result = mockedTwinState;
                 mockedTwinState.getCapabilities();
                 result = mockCapabilities;
@@ -210,7 +224,7 @@ public class DeviceTwinTest
                 times = 5;
                 mockedHttpRequest.send();
                 times = 1;
-                TwinState.createFromTwinJson((String)any);
+                TwinState.createFromTwinJson((InputStream)any);
                 times = 1;
                 mockedTwinState.getETag();
                 times = 1;
@@ -252,7 +266,7 @@ public class DeviceTwinTest
                 result = "SomeDevID";
                 mockedDevice.getModuleId();
                 result = "SomeModuleID";
-                TwinState.createFromTwinJson((String)any);
+                TwinState.createFromTwinJson((InputStream)any);
                 result = mockedTwinState;
                 mockedTwinState.getCapabilities();
                 result = mockCapabilities;
@@ -274,7 +288,7 @@ public class DeviceTwinTest
                 times = 5;
                 mockedHttpRequest.send();
                 times = 1;
-                TwinState.createFromTwinJson((String)any);
+                TwinState.createFromTwinJson((InputStream)any);
                 times = 1;
                 mockedTwinState.getETag();
                 times = 1;
@@ -855,6 +869,89 @@ public class DeviceTwinTest
         testTwin.queryTwin(VALID_SQL_QUERY);
     }
 
+    //Tests_SRS_DEVICETWIN_41_002: [ The method shall throw IllegalArgumentException if the query is null or empty, or if the page size or maxBufferedPages is zero or negative.]
+    @Test (expected = IllegalArgumentException.class)
+    public void queryTwinStreamThrowsOnEmptyQuery() throws IOException
+    {
+        //arrange
+        DeviceTwin testTwin = DeviceTwin.createFromConnectionString("testString");
+
+        //act
+        testTwin.queryTwinStream("");
+    }
+
+    //Tests_SRS_DEVICETWIN_41_002: [ The method shall throw IllegalArgumentException if the query is null or empty, or if the page size or maxBufferedPages is zero or negative.]
+    @Test (expected = IllegalArgumentException.class)
+    public void queryTwinStreamThrowsOnZeroPageSize() throws IOException
+    {
+        //arrange
+        DeviceTwin testTwin = DeviceTwin.createFromConnectionString("testString");
+
+        //act
+        testTwin.queryTwinStream(VALID_SQL_QUERY, 0, DeviceTwin.DEFAULT_MAX_BUFFERED_PAGES);
+    }
+
+    //Tests_SRS_DEVICETWIN_41_002: [ The method shall throw IllegalArgumentException if the query is null or empty, or if the page size or maxBufferedPages is zero or negative.]
+    @Test (expected = IllegalArgumentException.class)
+    public void queryTwinStreamThrowsOnZeroMaxBufferedPages() throws IOException
+    {
+        //arrange
+        DeviceTwin testTwin = DeviceTwin.createFromConnectionString("testString");
+
+        //act
+        testTwin.queryTwinStream(VALID_SQL_QUERY, 10, 0);
+    }
+
+    //Tests_SRS_DEVICETWIN_41_003: [ The method shall create a new Query Object of Type TWIN and request its pages with a PrefetchingQuerySpliterator holding at most maxBufferedPages pages.]
+    //Tests_SRS_DEVICETWIN_41_004: [ Closing the returned stream shall close the spliterator.]
+    @Test
+    public void queryTwinStreamProvidesTwinOfEveryPage(@Mocked final DeviceTwinDevice mockedDevice) throws IOException, IotHubException
+    {
+        //arrange
+        final QueryResponse firstPage = Deencapsulation.newInstance(QueryResponse.class, new Class[] {byte[].class}, "[{},{}]".getBytes(StandardCharsets.UTF_8));
+        final QueryResponse secondPage = Deencapsulation.newInstance(QueryResponse.class, new Class[] {byte[].class}, "[{}]".getBytes(StandardCharsets.UTF_8));
+        DeviceTwin testTwin = DeviceTwin.createFromConnectionString("testString");
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.newInstance(Query.class, new Class[] {String.class, Integer.class, QueryType.class}, anyString, anyInt, QueryType.TWIN);
+                result = mockedQuery;
+                mockedQuery.sendQueryRequest((IotHubConnectionString) any, (URL) any, HttpMethod.POST, anyLong);
+                result = firstPage;
+                Deencapsulation.invoke(mockedQuery, "sendNextPageRequest");
+                returns(secondPage, null);
+                TwinState.createFromTwinJson((JsonReader) any);
+                result = new Delegate<TwinState>()
+                {
+                    TwinState createFromTwinJson(JsonReader reader) throws IOException
+                    {
+                        reader.skipValue();
+                        return mockedTwinState;
+                    }
+                };
+            }
+        };
+
+        //act
+        long count;
+        try (Stream<DeviceTwinDevice> twins = testTwin.queryTwinStream(VALID_SQL_QUERY))
+        {
+            count = twins.count();
+        }
+
+        //assert
+        assertEquals(3, count);
+        new Verifications()
+        {
+            {
+                TwinState.createFromTwinJson((JsonReader) any);
+                times = 3;
+                TwinState.createFromTwinJson(anyString);
+                times = 0;
+            }
+        };
+    }
+
     //Tests_SRS_DEVICETWIN_25_055: [ If a queryResponse is available, this method shall return true as is to the user. ]
     //Tests_SRS_DEVICETWIN_25_054: [ The method shall check if a response to query is avaliable by calling hasNext on the query object.]
     @Test
@@ -960,7 +1057,7 @@ public class DeviceTwinTest
                 result = mockedQuery;
                 Deencapsulation.invoke(mockedQuery, "hasNext");
                 result = true;
-                Deencapsulation.invoke(mockedQuery, "next");
+                Deencapsulation.invoke(mockedQuery, "nextTwin");
                 result = expectedString;
                 mockedTwinState.getDeviceId();
                 result = "testDeviceID";
@@ -1034,7 +1131,7 @@ public class DeviceTwinTest
                 result = mockedQuery;
                 Deencapsulation.invoke(mockedQuery, "hasNext");
                 result = true;
-                Deencapsulation.invoke(mockedQuery, "next");
+                Deencapsulation.invoke(mockedQuery, "nextTwin");
                 result = expectedString;
                 mockedTwinState.getDeviceId();
                 result = "testDeviceID";
@@ -1085,6 +1182,49 @@ public class DeviceTwinTest
         assertTrue(mockConfigurations == result.getConfigurations());
     }
 
+    //Tests_SRS_DEVICETWIN_41_001: [ If the next element from the query response is a TwinState, the method shall provide it on DeviceTwinDevice without parsing it again.]
+    @Test
+    public void nextRetrievesCorrectDataFromTwinState() throws IotHubException, IOException
+    {
+        //arrange
+        final String connectionString = "testString";
+        DeviceTwin testTwin = DeviceTwin.createFromConnectionString(connectionString);
+
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.newInstance(Query.class, new Class[] {String.class, Integer.class, QueryType.class}, anyString, anyInt, QueryType.TWIN);
+                result = mockedQuery;
+                Deencapsulation.invoke(mockedQuery, "hasNext");
+                result = true;
+                Deencapsulation.invoke(mockedQuery, "nextTwin");
+                result = mockedTwinState;
+                mockedTwinState.getDeviceId();
+                result = "testDeviceID";
+                mockedTwinState.getModuleId();
+                result = null;
+                mockedTwinState.getETag();
+                result = "validEtag";
+            }
+        };
+
+        Query testQuery = testTwin.queryTwin(VALID_SQL_QUERY);
+
+        //act
+        DeviceTwinDevice result = testTwin.getNextDeviceTwin(testQuery);
+
+        //assert
+        assertEquals("testDeviceID", result.getDeviceId());
+        assertEquals("validEtag", result.getETag());
+        new Verifications()
+        {
+            {
+                TwinState.createFromTwinJson(anyString);
+                times = 0;
+            }
+        };
+    }
+
     @Test (expected = IllegalArgumentException.class)
     public void nextThrowsOnNullQuery(@Mocked DeviceTwinDevice mockedDevice) throws IotHubException, IOException
     {
@@ -1118,7 +1258,7 @@ public class DeviceTwinTest
             {
                 Deencapsulation.newInstance(Query.class, new Class[] {String.class, Integer.class, QueryType.class}, anyString, anyInt, QueryType.TWIN);
                 result = mockedQuery;
-                Deencapsulation.invoke(mockedQuery, "next");
+                Deencapsulation.invoke(mockedQuery, "nextTwin");
                 result = new IotHubException();
             }
         };
@@ -1142,7 +1282,7 @@ public class DeviceTwinTest
             {
                 Deencapsulation.newInstance(Query.class, new Class[] {String.class, Integer.class, QueryType.class}, anyString, anyInt, QueryType.TWIN);
                 result = mockedQuery;
-                Deencapsulation.invoke(mockedQuery, "next");
+                Deencapsulation.invoke(mockedQuery, "nextTwin");
                 result = new NoSuchElementException();
             }
         };
@@ -1168,7 +1308,7 @@ public class DeviceTwinTest
                 result = mockedQuery;
                 Deencapsulation.invoke(mockedQuery, "hasNext");
                 result = true;
-                Deencapsulation.invoke(mockedQuery, "next");
+                Deencapsulation.invoke(mockedQuery, "nextTwin");
                 result = 5;
             }
         };
@@ -0,0 +1,65 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.service.devicetwin;
+
+import com.microsoft.azure.sdk.iot.service.devicetwin.InvokeAllResult;
+import com.microsoft.azure.sdk.iot.service.devicetwin.MethodResult;
+import com.microsoft.azure.sdk.iot.service.exceptions.IotHubNotFoundException;
+import mockit.Deencapsulation;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for InvokeAllResult
+ */
+public class InvokeAllResultTest
+{
+    private static InvokeAllResult createResult(Map<String, MethodResult> results, Map<String, Exception> failures, long elapsedTimeNanos)
+    {
+        return Deencapsulation.newInstance(InvokeAllResult.class, new Class[] {Map.class, Map.class, long.class}, results, failures, elapsedTimeNanos);
+    }
+
+    /* Tests_SRS_INVOKEALLRESULT_41_001: [The constructor shall save copies of the provided results, failures and elapsed time.] */
+    /* Tests_SRS_INVOKEALLRESULT_41_002: [The function shall return true if no invocation failed.] */
+    @Test
+    public void constructorSavesOutcomes()
+    {
+        // arrange
+        Map<String, MethodResult> results = new HashMap<>();
+        results.put("device1", new MethodResult(200, "payload"));
+        Map<String, Exception> failures = new HashMap<>();
+        failures.put("device2", new IotHubNotFoundException());
+
+        // act
+        InvokeAllResult result = createResult(results, failures, TimeUnit.MILLISECONDS.toNanos(1500));
+        results.clear();
+
+        // assert
+        assertEquals(1, result.getResults().size());
+        assertEquals(200, (int) result.getResults().get("device1").getStatus());
+        assertTrue(result.getFailures().get("device2") instanceof IotHubNotFoundException);
+        assertFalse(result.isSuccessful());
+        assertEquals(1500, result.getElapsedTimeMillis());
+    }
+
+    /* Tests_SRS_INVOKEALLRESULT_41_002: [The function shall return true if no invocation failed.] */
+    @Test
+    public void isSuccessfulWithoutFailures()
+    {
+        // act
+        InvokeAllResult result = createResult(Collections.<String, MethodResult>emptyMap(), Collections.<String, Exception>emptyMap(), 0);
+
+        // assert
+        assertTrue(result.isSuccessful());
+        assertEquals(0, result.getElapsedTimeMillis());
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ *  Copyright (c) Microsoft. All rights reserved.
+ *  Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package tests.unit.com.microsoft.azure.sdk.iot.service.devicetwin;
+
+import com.microsoft.azure.sdk.iot.service.IotHubConnectionString;
+import com.microsoft.azure.sdk.iot.service.devicetwin.Query;
+import com.microsoft.azure.sdk.iot.service.devicetwin.QueryResponse;
+import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
+import com.microsoft.azure.sdk.iot.service.exceptions.IotHubNotFoundException;
+import com.microsoft.azure.sdk.iot.service.transport.http.HttpMethod;
+import mockit.Deencapsulation;
+import mockit.Delegate;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.*;
+
+/*
+    Unit Tests for PrefetchingQuerySpliterator
+ */
+public class PrefetchingQuerySpliteratorTest
+{
+    private static final Function<QueryResponse, String> AS_STRING = page -> (String) page.next();
+
+    @Mocked
+    Query mockQuery;
+
+    @Mocked
+    IotHubConnectionString mockIotHubConnectionString;
+
+    @Mocked
+    URL mockUrl;
+
+    private static QueryResponse page(String... elements)
+    {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < elements.length; i++)
+        {
+            json.append(i == 0 ? "" : ",").append("{\"id\":\"").append(elements[i]).append("\"}");
+        }
+
+        byte[] body = json.append("]").toString().getBytes(StandardCharsets.UTF_8);
+        return Deencapsulation.newInstance(QueryResponse.class, new Class[] {byte[].class}, body);
+    }
+
+    private static String element(String id)
+    {
+        return "{\"id\":\"" + id + "\"}";
+    }
+
+    private Spliterator<String> createSpliterator(int maxBufferedPages)
+    {
+        return Deencapsulation.newInstance(
+                "com.microsoft.azure.sdk.iot.service.devicetwin.PrefetchingQuerySpliterator",
+                new Class[] {Query.class, IotHubConnectionString.class, URL.class, HttpMethod.class, long.class, int.class, Function.class},
+                mockQuery, mockIotHubConnectionString, mockUrl, HttpMethod.POST, 0L, maxBufferedPages, AS_STRING);
+    }
+
+    private static void close(Spliterator<String> spliterator) throws Exception
+    {
+        ((AutoCloseable) spliterator).close();
+    }
+
+    //Tests_SRS_PREFETCHINGQUERYSPLITERATOR_41_001: [The constructor shall throw IllegalArgumentException if any of the parameters is null, or if maxBufferedPages is smaller than 1.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnZeroMaxBufferedPages()
+    {
+        createSpliterator(0);
+    }
+
+    //Tests_SRS_PREFETCHINGQUERYSPLITERATOR_41_002: [The constructor shall start a daemon thread that requests the pages of the query one after the other, as soon as the continuation token of the previous one is received.]
+    //Tests_SRS_PREFETCHINGQUERYSPLITERATOR_41_006: [The tryAdvance shall return false once every element of every page was provided.]
+    //Tests_SRS_PREFETCHINGQUERYSPLITERATOR_41_007: [The tryAdvance shall provide the next element of the current page, converted with the elementConverter, in the order they were received.]
+    @Test
+    public void providesEveryElementOfEveryPageInOrder() throws Exception
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockQuery.sendQueryRequest(mockIotHubConnectionString, mockUrl, HttpMethod.POST, 0L);
+                result = page("a", "b");
+                Deencapsulation.invoke(mockQuery, "sendNextPageRequest");
+                returns(page(), page("c"), null);
+            }
+        };
+
+        //act
+        Spliterator<String> spliterator = createSpliterator(2);
+        List<String> result = StreamSupport.stream(spliterator, false).collect(Collectors.toList());
+
+        //assert
+        assertEquals(Arrays.asList(element("a"), element("b"), element("c")), result);
+        close(spliterator);
+    }
+
+    //Tests_SRS_PREFETCHINGQUERYSPLITERATOR_41_002: [The constructor shall start a daemon thread that requests the pages of the query one after the other, as soon as the continuation token of the previous one is received.]
+    @Test
+    public void requestsNextPageBeforeCurrentPageIsConsumed() throws Exception
+    {
+        //arrange
+        final CountDownLatch nextPageRequested = new CountDownLatch(1);
+        new NonStrictExpectations()
+        {
+            {
+                mockQuery.sendQueryRequest(mockIotHubConnectionString, mockUrl, HttpMethod.POST, 0L);
+                result = page("a", "b");
+                Deencapsulation.invoke(mockQuery, "sendNextPageRequest");
+                result = new Delegate()
+                {
+                    QueryResponse sendNextPageRequest()
+                    {
+                        nextPageRequested.countDown();
+                        return null;
+                    }
+                };
+            }
+        };
+        Spliterator<String> spliterator = createSpliterator(2);
+
+        //act
+        List<String> consumed = new ArrayList<>();
+        spliterator.tryAdvance(consumed::add);
+
+        //assert
+        assertTrue(nextPageRequested.await(10, TimeUnit.SECONDS));
+        assertEquals(1, consumed.size());
+        close(spliterator);
+    }
+
+    //Tests_SRS_PREFETCHINGQUERYSPLITERATOR_41_003: [The thread shall wait for room before adding a received page if maxBufferedPages pages are already waiting to be consumed.]
+    //Tests_SRS_PREFETCHINGQUERYSPLITERATOR_41_009: [The close shall stop the background thread and drop the received pages.]
+    @Test
+    public void holdsBackRequestsWhileBufferIsFull() throws Exception
+    {
+        //arrange
+        final AtomicInteger nextPageRequests = new AtomicInteger();
+        new NonStrictExpectations()
+        {
+            {
+                mockQuery.sendQueryRequest(mockIotHubConnectionString, mockUrl, HttpMethod.POST, 0L);
+                result = page("a");
+                Deencapsulation.invoke(mockQuery, "sendNextPageRequest");
+                result = new Delegate()
+                {
+                    QueryResponse sendNextPageRequest()
+                    {
+                        nextPageRequests.incrementAndGet();
+                        return page("b");
+                    }
+                };
+            }
+        };
+
+        //act
+        Spliterator<String> spliterator = createSpliterator(1);
+        Thread.sleep(500);
+
+        //assert
+        // the first page fills the buffer, so only the second page can have been requested, and it waits for room
+        assertEquals(1, nextPageRequests.get());
+        close(spliterator);
+        Thread fetchThread = Deencapsulation.getField(spliterator, "fetchThread");
+        fetchThread.join(10000);
+        assertFalse(fetchThread.isAlive());
+    }
+
+    //Tests_SRS_PREFETCHINGQUERYSPLITERATOR_41_004: [If a request fails, the thread shall stop requesting pages and hand the failure to the consumer after the pages received before it.]
+    //Tests_SRS_PREFETCHINGQUERYSPLITERATOR_41_005: [If the next page could not be received, the consumer shall get an UncheckedIOException caused by the failure.]
+    @Test
+    public void failedRequestIsThrownAfterPreviousPages() throws Exception
+    {
+        //arrange
+        final IotHubException failure = new IotHubNotFoundException();
+        new NonStrictExpectations()
+        {
+            {
+                mockQuery.sendQueryRequest(mockIotHubConnectionString, mockUrl, HttpMethod.POST, 0L);
+                result = page("a");
+                Deencapsulation.invoke(mockQuery, "sendNextPageRequest");
+                result = failure;
+            }
+        };
+        Spliterator<String> spliterator = createSpliterator(2);
+        List<String> consumed = new ArrayList<>();
+
+        //act
+        assertTrue(spliterator.tryAdvance(consumed::add));
+        try
+        {
+            spliterator.tryAdvance(consumed::add);
+            fail("Expected UncheckedIOException");
+        }
+        catch (UncheckedIOException e)
+        {
+            //assert
+            assertSame(failure, e.getCause().getCause());
+        }
+
+        assertEquals(Arrays.asList(element("a")), consumed);
+        assertFalse(spliterator.tryAdvance(consumed::add));
+        close(spliterator);
+    }
+
+    //Tests_SRS_PREFETCHINGQUERYSPLITERATOR_41_008: [The trySplit shall return a spliterator over the rest of the current page if it has elements left, or else over the next received page, or null if there is none.]
+    @Test
+    public void trySplitHandsOutWholePages() throws Exception
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockQuery.sendQueryRequest(mockIotHubConnectionString, mockUrl, HttpMethod.POST, 0L);
+                result = page("a", "b");
+                Deencapsulation.invoke(mockQuery, "sendNextPageRequest");
+                returns(page("c", "d"), null);
+            }
+        };
+        Spliterator<String> spliterator = createSpliterator(2);
+        List<String> consumed = new ArrayList<>();
+        spliterator.tryAdvance(consumed::add);
+
+        //act
+        Spliterator<String> restOfFirstPage = spliterator.trySplit();
+        Spliterator<String> secondPage = spliterator.trySplit();
+        Spliterator<String> none = spliterator.trySplit();
+
+        //assert
+        restOfFirstPage.forEachRemaining(consumed::add);
+        secondPage.forEachRemaining(consumed::add);
+        assertEquals(Arrays.asList(element("a"), element("b"), element("c"), element("d")), consumed);
+        assertNull(none);
+        assertFalse(spliterator.tryAdvance(consumed::add));
+        close(spliterator);
+    }
+
+    //Tests_SRS_PREFETCHINGQUERYSPLITERATOR_41_008: [The trySplit shall return a spliterator over the rest of the current page if it has elements left, or else over the next received page, or null if there is none.]
+    @Test
+    public void parallelStreamProvidesEveryElement() throws Exception
+    {
+        //arrange
+        final List<QueryResponse> nextPages = new ArrayList<>();
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+        {
+            nextPages.add(page("p" + i + "a", "p" + i + "b", "p" + i + "c"));
+            expected.add(element("p" + i + "a"));
+            expected.add(element("p" + i + "b"));
+            expected.add(element("p" + i + "c"));
+        }
+
+        new NonStrictExpectations()
+        {
+            {
+                mockQuery.sendQueryRequest(mockIotHubConnectionString, mockUrl, HttpMethod.POST, 0L);
+                result = page();
+                Deencapsulation.invoke(mockQuery, "sendNextPageRequest");
+                result = new Delegate()
+                {
+                    QueryResponse sendNextPageRequest()
+                    {
+                        return nextPages.isEmpty() ? null : nextPages.remove(0);
+                    }
+                };
+            }
+        };
+
+        //act
+        Spliterator<String> spliterator = createSpliterator(4);
+        List<String> result = StreamSupport.stream(spliterator, true).collect(Collectors.toList());
+
+        //assert
+        assertEquals(expected, result);
+        close(spliterator);
+    }
+}
@@ -6,13 +6,16 @@
 package tests.unit.com.microsoft.azure.sdk.iot.service.devicetwin;
 
 import com.microsoft.azure.sdk.iot.deps.serializer.QueryResponseParser;
+import com.microsoft.azure.sdk.iot.deps.twin.TwinState;
 import com.microsoft.azure.sdk.iot.service.devicetwin.QueryResponse;
 import mockit.Deencapsulation;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
+import mockit.Verifications;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -193,4 +196,71 @@ public class QueryResponseTest
         assertFalse(testResponse.hasNext());
         assertNull(testResponse.next());
     }
+
+    //Tests_SRS_QUERY_RESPONSE_41_001: [The constructor shall set the iterator to a QueryResponseReader over the body, which reads each element as a json string as it is iterated.]
+    @Test
+    public void constructorWithBodyReadsElementsLazily()
+    {
+        //arrange
+        final byte[] body = "[{\"a\":1},{\"b\":2}]".getBytes(StandardCharsets.UTF_8);
+
+        //act
+        QueryResponse testResponse = Deencapsulation.newInstance(QueryResponse.class, new Class[] {byte[].class}, body);
+
+        //assert
+        assertTrue(testResponse.hasNext());
+        assertEquals("{\"a\":1}", testResponse.next());
+        assertEquals("{\"b\":2}", testResponse.next());
+        assertFalse(testResponse.hasNext());
+        new Verifications()
+        {
+            {
+                new QueryResponseParser(anyString);
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_41_002: [If the response was created from its body, the method shall read the next element straight into a TwinState.]
+    @Test
+    public void nextTwinStateReadsElementFromBody()
+    {
+        //arrange
+        final byte[] body = "[{\"deviceId\":\"devA\",\"etag\":\"etagA\"},{\"deviceId\":\"devB\"}]".getBytes(StandardCharsets.UTF_8);
+        QueryResponse testResponse = Deencapsulation.newInstance(QueryResponse.class, new Class[] {byte[].class}, body);
+
+        //act
+        TwinState first = Deencapsulation.invoke(testResponse, "nextTwinState");
+        Object second = testResponse.next();
+
+        //assert
+        assertEquals("devA", first.getDeviceId());
+        assertEquals("etagA", first.getETag());
+        assertEquals("{\"deviceId\":\"devB\"}", second);
+        assertFalse(testResponse.hasNext());
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_41_003: [Otherwise, the method shall create a TwinState from the next json element.]
+    @Test
+    public void nextTwinStateParsesJsonElement() throws IOException
+    {
+        //arrange
+        final String jsonString = "[{\"deviceId\":\"devA\"}]";
+        final List<String> testList = new LinkedList<>();
+        testList.add("{\"deviceId\":\"devA\"}");
+        new NonStrictExpectations()
+        {
+            {
+                mockedQueryResponseParser.getJsonItems();
+                result = testList;
+            }
+        };
+        QueryResponse testResponse = Deencapsulation.newInstance(QueryResponse.class, jsonString);
+
+        //act
+        TwinState twin = Deencapsulation.invoke(testResponse, "nextTwinState");
+
+        //assert
+        assertEquals("devA", twin.getDeviceId());
+    }
 }
@@ -5,8 +5,10 @@
 
 package tests.unit.com.microsoft.azure.sdk.iot.service.devicetwin;
 
+import com.microsoft.azure.sdk.iot.deps.twin.TwinState;
 import com.microsoft.azure.sdk.iot.service.IotHubConnectionString;
 import com.microsoft.azure.sdk.iot.service.auth.IotHubServiceSasToken;
+import com.microsoft.azure.sdk.iot.service.auth.IotHubServiceSasTokenCache;
 import com.microsoft.azure.sdk.iot.service.devicetwin.Query;
 import com.microsoft.azure.sdk.iot.service.devicetwin.QueryResponse;
 import com.microsoft.azure.sdk.iot.service.devicetwin.QueryType;
@@ -15,6 +17,7 @@ import com.microsoft.azure.sdk.iot.service.transport.http.HttpMethod;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpRequest;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpResponse;
 import mockit.*;
+import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -58,6 +61,19 @@ public class QueryTest
     @Mocked
     IotHubServiceSasToken mockedSasToken;
 
+    @Before
+    public void setUp()
+    {
+        // connection strings are mocked, so give them a real token cache to sign with
+        new NonStrictExpectations()
+        {
+            {
+                mockIotHubConnectionString.getSasTokenCache();
+                result = new IotHubServiceSasTokenCache();
+            }
+        };
+    }
+
     //Tests_SRS_QUERY_25_001: [The constructor shall validate query and save query, pagesize and request type]
     @Test
     public void constructorWithSQLQuerySucceeds() throws IllegalArgumentException
@@ -263,6 +279,54 @@ public class QueryTest
         };
     }
 
+    //Tests_SRS_QUERY_41_002: [If the last response had no continuation token, this method shall return null without sending a request.]
+    @Test
+    public void sendNextPageRequestReturnsNullWithoutToken() throws IOException, IotHubException
+    {
+        //arrange
+        Query testQuery = Deencapsulation.newInstance(Query.class, DEFAULT_QUERY, DEFAULT_PAGE_SIZE, DEFAULT_QUERY_TYPE);
+
+        //act
+        QueryResponse result = Deencapsulation.invoke(testQuery, "sendNextPageRequest");
+
+        //assert
+        assertNull(result);
+        new Verifications()
+        {
+            {
+                new HttpRequest(mockUrl, mockHttpMethod, (byte[]) any);
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_QUERY_41_003: [This method shall continue the query with the continuation token of the last response and return the new QueryResponse.]
+    @Test
+    public void sendNextPageRequestContinuesWithToken() throws IOException, IotHubException
+    {
+        //arrange
+        final String testToken = UUID.randomUUID().toString();
+        Query testQuery = Deencapsulation.newInstance(Query.class, DEFAULT_QUERY, DEFAULT_PAGE_SIZE, DEFAULT_QUERY_TYPE);
+        setupSendQuery(testQuery, testToken);
+        testQuery.sendQueryRequest(mockIotHubConnectionString, mockUrl, mockHttpMethod, DEFAULT_TIMEOUT);
+
+        //act
+        QueryResponse result = Deencapsulation.invoke(testQuery, "sendNextPageRequest");
+
+        //assert
+        assertNotNull(result);
+        assertEquals(testToken, Deencapsulation.getField(testQuery, "requestContinuationToken"));
+        new Verifications()
+        {
+            {
+                new HttpRequest(mockUrl, mockHttpMethod, (byte[]) any);
+                times = 2;
+                mockHttpRequest.setHeaderField("x-ms-continuation", testToken);
+                times = 1;
+            }
+        };
+    }
+
     @Test
     public void continueQuerySetsPageSize() throws IOException, IotHubException
     {
@@ -485,7 +549,7 @@ public class QueryTest
         assertEquals(DEFAULT_QUERY_TYPE, Deencapsulation.getField(testQuery, "responseQueryType"));
     }
 
-    @Test (expected = IOException.class)
+    @Test (expected = IllegalArgumentException.class)
     public void sendQueryRequestThrowsWhenResponseThrows() throws IotHubException, IOException
     {
 
@@ -502,8 +566,8 @@ public class QueryTest
             {
                 mockHttpResponse.getHeaderFields();
                 result = testHeaderResponseMap;
-                Deencapsulation.newInstance(QueryResponse.class, anyString);
-                result = new IOException("test");
+                Deencapsulation.newInstance(QueryResponse.class, new Class[] {byte[].class}, any);
+                result = new IllegalArgumentException("test");
             }
         };
 
@@ -924,4 +988,104 @@ public class QueryTest
         //act
         Object next = Deencapsulation.invoke(testQuery, "next");
     }
+
+    //Tests_SRS_QUERY_41_005: [The method shall return the next element for this QueryResponse, read into a TwinState if the query type is TWIN.]
+    @Test
+    public void nextTwinReadsTwinStateOnTwinQuery(@Mocked final TwinState mockedTwinState) throws IotHubException, IOException
+    {
+        //arrange
+        final Map<String, String> testHeaderResponseMap = new HashMap<>();
+        testHeaderResponseMap.put("x-ms-item-type", QueryType.TWIN.getValue());
+        Query testQuery = Deencapsulation.newInstance(Query.class, DEFAULT_QUERY, DEFAULT_PAGE_SIZE, QueryType.TWIN);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockHttpResponse.getHeaderFields();
+                result = testHeaderResponseMap;
+                mockedQueryResponse.hasNext();
+                result = true;
+                Deencapsulation.invoke(mockedQueryResponse, "nextTwinState");
+                result = mockedTwinState;
+            }
+        };
+
+        Deencapsulation.invoke(testQuery, "sendQueryRequest", mockIotHubConnectionString, mockUrl, mockHttpMethod, (long) 0);
+
+        //act
+        Object next = Deencapsulation.invoke(testQuery, "nextTwin");
+
+        //assert
+        assertEquals(mockedTwinState, next);
+        new Verifications()
+        {
+            {
+                mockedQueryResponse.next();
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_QUERY_41_005: [The method shall return the next element for this QueryResponse, read into a TwinState if the query type is TWIN.]
+    @Test
+    public void nextTwinReturnsJsonOnOtherQuery() throws IotHubException, IOException
+    {
+        //arrange
+        final String expectedJson = "{\"jobId\":\"job1\"}";
+        final Map<String, String> testHeaderResponseMap = new HashMap<>();
+        testHeaderResponseMap.put("x-ms-item-type", QueryType.JOB_RESPONSE.getValue());
+        Query testQuery = Deencapsulation.newInstance(Query.class, DEFAULT_QUERY, DEFAULT_PAGE_SIZE, QueryType.JOB_RESPONSE);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockHttpResponse.getHeaderFields();
+                result = testHeaderResponseMap;
+                mockedQueryResponse.hasNext();
+                result = true;
+                mockedQueryResponse.next();
+                result = expectedJson;
+            }
+        };
+
+        Deencapsulation.invoke(testQuery, "sendQueryRequest", mockIotHubConnectionString, mockUrl, mockHttpMethod, (long) 0);
+
+        //act
+        Object next = Deencapsulation.invoke(testQuery, "nextTwin");
+
+        //assert
+        assertEquals(expectedJson, next);
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockedQueryResponse, "nextTwinState");
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_QUERY_41_004: [The method shall check if any further elements are available by calling hasNext and if none is available then it shall throw NoSuchElementException.]
+    @Test (expected = NoSuchElementException.class)
+    public void nextTwinThrowsIfNextDoesNotExists() throws IotHubException, IOException
+    {
+        //arrange
+        final Map<String, String> testHeaderResponseMap = new HashMap<>();
+        testHeaderResponseMap.put("x-ms-item-type", DEFAULT_QUERY_TYPE.getValue());
+        Query testQuery = Deencapsulation.newInstance(Query.class, DEFAULT_QUERY, DEFAULT_PAGE_SIZE, DEFAULT_QUERY_TYPE);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockHttpResponse.getHeaderFields();
+                result = testHeaderResponseMap;
+                mockedQueryResponse.hasNext();
+                result = false;
+            }
+        };
+
+        Deencapsulation.invoke(testQuery, "sendQueryRequest", mockIotHubConnectionString, mockUrl, mockHttpMethod, (long) 0);
+
+        //act
+        Deencapsulation.invoke(testQuery, "nextTwin");
+    }
 }
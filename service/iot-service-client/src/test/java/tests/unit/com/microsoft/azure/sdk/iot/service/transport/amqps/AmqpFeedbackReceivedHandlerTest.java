@@ -13,11 +13,13 @@ import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpFeedbackReceivedH
 import mockit.Deencapsulation;
 import mockit.Expectations;
 import mockit.Mocked;
+import mockit.Verifications;
 import mockit.integration.junit4.JMockit;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.Symbol;
 import org.apache.qpid.proton.amqp.UnsignedLong;
 import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Released;
 import org.apache.qpid.proton.amqp.messaging.Source;
 import org.apache.qpid.proton.amqp.messaging.Target;
 import org.apache.qpid.proton.amqp.transport.DeliveryState;
@@ -37,9 +39,12 @@ import javax.net.ssl.SSLHandshakeException;
 import java.io.IOException;
 import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 
 import static com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpFeedbackReceivedHandler.RECEIVE_TAG;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /** Unit tests for AmqpFeedbackReceivedHandler */
@@ -66,11 +71,11 @@ public class AmqpFeedbackReceivedHandlerTest
     @Mocked Source source;
     @Mocked ReadableBuffer readBuf;
 
-    AmqpFeedbackReceivedEvent amqpFeedbackReceivedEvent = feedbackJson -> {};
+    Runnable lastAcknowledgement;
+    AmqpFeedbackReceivedEvent amqpFeedbackReceivedEvent = (feedbackJson, acknowledgement) -> lastAcknowledgement = acknowledgement;
 
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_001: [The constructor shall copy all input parameters to private member variables for event processing]
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_002: [The constructor shall initialize a new Handshaker (Proton) object to handle communication handshake]
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_003: [The constructor shall initialize a new FlowController (Proton) object to handle communication handshake]
     @Test
     public void amqpReceiveHandler_call_flow_and_init_ok()
     {
@@ -84,7 +89,6 @@ public class AmqpFeedbackReceivedHandlerTest
         {
             {
                 handshaker = new Handshaker();
-                flowcontroller = new FlowController();
             }
         };
         // Act
@@ -103,8 +107,7 @@ public class AmqpFeedbackReceivedHandlerTest
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_004: [The event handler shall get the Link, Receiver and Delivery (Proton) objects from the event]
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_005: [The event handler shall read the received buffer]            int size = delivery.pending();
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_006: [The event handler shall create a Message (Proton) object from the decoded buffer]
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_007: [** The event handler shall settle the Delivery with the Accepted outcome **]**
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_008: [The event handler shall close the Session and Connection (Proton)]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_41_002: [The event handler shall keep the Delivery open until the message is consumed, and shall not close the Session or Connection]
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_009: [The event handler shall call the FeedbackReceived callback if it has been initialized]
     @Test
     public void onDelivery_call_flow_and_init_ok()
@@ -130,16 +133,16 @@ public class AmqpFeedbackReceivedHandlerTest
                 byte[] buffer = new byte[1024];
                 receiver.recv(buffer, 0, buffer.length);
                 message.decode(withAny(buffer), 0, anyInt);
-                delivery.disposition(Accepted.getInstance()); // send disposition frame and settle the outcome
-                delivery.settle();
-                session = receiver.getSession();
-                session.close();
-                connection = session.getConnection();
-                connection.close();
             }
         };
         // Act
         amqpReceiveHandler.onDelivery(event);
+
+        // Assert
+        Object receivedDeliveries = Deencapsulation.getField(amqpReceiveHandler, "receivedDeliveries");
+        Set<Delivery> unsettledDeliveries = Deencapsulation.getField(receivedDeliveries, "unsettledDeliveries");
+        assertEquals(1, unsettledDeliveries.size());
+        assertNotNull(lastAcknowledgement);
     }
 
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_009: [The event handler shall set the SASL PLAIN authentication on the Transport using the given user name and sas token]
@@ -241,6 +244,97 @@ public class AmqpFeedbackReceivedHandlerTest
         amqpReceiveHandler.onConnectionInit(event);
     }
 
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_41_001: [The constructor shall throw IllegalArgumentException if the prefetch credit is smaller than 1]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructor_throws_on_zero_prefetch_credit()
+    {
+        new AmqpFeedbackReceivedHandler("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS, amqpFeedbackReceivedEvent, 0);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_41_003: [The event handler shall give the Receiver as much credit as the prefetch credit]
+    @Test
+    public void onConnectionInit_gives_prefetch_credit()
+    {
+        // Arrange
+        AmqpFeedbackReceivedHandler amqpReceiveHandler = new AmqpFeedbackReceivedHandler("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS, amqpFeedbackReceivedEvent, 5);
+
+        // Act
+        amqpReceiveHandler.onConnectionInit(event);;
+
+        // Assert
+        new Verifications()
+        {
+            {
+                receiver.flow(5);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_41_004: [The function shall settle the Deliveries consumed since the last call with the Accepted outcome and give their credit back to the Receiver]
+    @Test
+    public void onReactorWakeup_settles_deliveries_and_replenishes_credit()
+    {
+        // Arrange
+        AmqpFeedbackReceivedHandler amqpReceiveHandler = new AmqpFeedbackReceivedHandler("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS, amqpFeedbackReceivedEvent, 5);
+        Deencapsulation.setField(amqpReceiveHandler, "receiver", receiver);
+        Object receivedDeliveries = Deencapsulation.getField(amqpReceiveHandler, "receivedDeliveries");
+        Deencapsulation.invoke(receivedDeliveries, "add", delivery);
+        Deencapsulation.invoke(receivedDeliveries, "acknowledge", delivery);
+
+        // Act
+        amqpReceiveHandler.onReactorWakeup();
+
+        // Assert
+        new Verifications()
+        {
+            {
+                delivery.disposition(Accepted.getInstance());
+                times = 1;
+                delivery.settle();
+                times = 1;
+                receiver.flow(1);
+                times = 1;
+                receiver.close();
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_41_005: [If a close was requested, the function shall close the Receiver, Session and Connection]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_41_006: [If a close was requested, the function shall settle the Deliveries that were not consumed with the Released outcome]
+    @Test
+    public void onReactorWakeup_closes_connection_on_request()
+    {
+        // Arrange
+        AmqpFeedbackReceivedHandler amqpReceiveHandler = new AmqpFeedbackReceivedHandler("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS, amqpFeedbackReceivedEvent, 5);
+        Deencapsulation.setField(amqpReceiveHandler, "receiver", receiver);
+        Object receivedDeliveries = Deencapsulation.getField(amqpReceiveHandler, "receivedDeliveries");
+        Deencapsulation.invoke(receivedDeliveries, "add", delivery);
+        amqpReceiveHandler.requestClose();
+
+        // Act
+        amqpReceiveHandler.onReactorWakeup();
+
+        // Assert
+        new Verifications()
+        {
+            {
+                delivery.disposition(Released.getInstance());
+                times = 1;
+                delivery.settle();
+                times = 1;
+                receiver.close();
+                times = 1;
+                session.close();
+                times = 1;
+                connection.close();
+                times = 1;
+            }
+        };
+        assertNull(Deencapsulation.getField(amqpReceiveHandler, "receiver"));
+    }
+
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_015: [The event handler shall create a new Target (Proton) object using the given endpoint address]
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFEEDBACKRECEIVEDHANDLER_12_016: [The event handler shall get the Link (Proton) object and set its target to the created Target (Proton) object]
     @Test
@@ -11,6 +11,7 @@ import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
 import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpFileUploadNotificationReceive;
 import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpFileUploadNotificationReceivedHandler;
 import mockit.Deencapsulation;
+import mockit.Delegate;
 import mockit.Expectations;
 import mockit.Mocked;
 import mockit.Verifications;
@@ -24,9 +25,12 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.*;
 
 /** Unit tests for AmqpFileUploadNotificationReceive */
 @RunWith(JMockit.class)
@@ -90,9 +94,17 @@ public class AmqpFileUploadNotificationReceiveTest
         amqpFileUploadNotificationReceive.close();
     }
 
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_41_001: [The constructor shall throw IllegalArgumentException if the prefetch credit is smaller than 1]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnZeroPrefetchCredit()
+    {
+        new AmqpFileUploadNotificationReceive("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS, 0);
+    }
+
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_005: [The function shall initialize the Proton reactor object]
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_006: [The function shall start the Proton reactor object]
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_008: [The function shall stop and free the Proton reactor object ]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_41_006: [Once the reactor stops, the next receive shall open a new connection with a new handler]
     @Test
     public void receiveWithTimoutZeroCallFlowOk(@Mocked AmqpFileUploadNotificationReceivedHandler mockAmqpFileUploadNotificationReceivedHandler) throws IOException, InterruptedException
     {
@@ -102,27 +114,47 @@ public class AmqpFileUploadNotificationReceiveTest
         final String sasToken = "ccc";
         IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
         int timeoutMs = 0;
+        final CountDownLatch reactorFreed = new CountDownLatch(1);
         AmqpFileUploadNotificationReceive amqpFileUploadNotificationReceive = new AmqpFileUploadNotificationReceive(hostName, userName, sasToken, iotHubServiceClientProtocol);
         amqpFileUploadNotificationReceive.open();
-        // Assert
         new Expectations()
         {
             {
-                reactor = proton.reactor(amqpFileUploadNotificationReceive);
-                reactor.start();
-                reactor.stop();
+                proton.reactor(amqpFileUploadNotificationReceive);
+                result = reactor;
                 reactor.process();
+                result = false;
                 reactor.free();
-        
+                result = new Delegate()
+                {
+                    void free()
+                    {
+                        reactorFreed.countDown();
+                    }
+                };
             }
         };
+
         // Act
-        amqpFileUploadNotificationReceive.receive(timeoutMs);
+        FileUploadNotification notification = amqpFileUploadNotificationReceive.receive(timeoutMs);
+
+        // Assert
+        assertNull(notification);
+        assertTrue(reactorFreed.await(10, TimeUnit.SECONDS));
+        new Verifications()
+        {
+            {
+                reactor.start();
+                times = 1;
+                reactor.stop();
+                times = 1;
+            }
+        };
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_005: [The function shall initialize the Proton reactor object]
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_006: [The function shall start the Proton reactor object]
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_008: [The function shall stop and free the Proton reactor object ]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_007: [The function shall wait for specified timeout to check for any feedback message]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_41_004: [The reactor thread shall let the handler settle the received messages and replenish the link credit every time the reactor wakes up, until the connection is closed]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_41_005: [If a connection is open, the function shall ask its handler to close it and wake up the reactor]
     @Test
     public void receiveWithTimeoutNonZeroCallOk(@Mocked AmqpFileUploadNotificationReceivedHandler mockAmqpFileUploadNotificationReceivedHandler) throws IOException, InterruptedException
     {
@@ -132,21 +164,127 @@ public class AmqpFileUploadNotificationReceiveTest
         final String sasToken = "ccc";
         IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
         int timeoutMs = 1;
+        final CountDownLatch connectionClosed = new CountDownLatch(1);
         AmqpFileUploadNotificationReceive amqpFileUploadNotificationReceive = new AmqpFileUploadNotificationReceive(hostName, userName, sasToken, iotHubServiceClientProtocol);
         amqpFileUploadNotificationReceive.open();
-        // Assert
         new Expectations()
         {
             {
-                reactor = proton.reactor(amqpFileUploadNotificationReceive);
-                reactor.start();
-                reactor.stop();
+                proton.reactor(amqpFileUploadNotificationReceive);
+                result = reactor;
+                times = 1;
                 reactor.process();
-                reactor.free();
+                result = new Delegate()
+                {
+                    boolean process() throws InterruptedException
+                    {
+                        // the connection stays open until the test closes it
+                        return !connectionClosed.await(10, TimeUnit.SECONDS);
+                    }
+                };
             }
         };
+
         // Act
         amqpFileUploadNotificationReceive.receive(timeoutMs);
+        amqpFileUploadNotificationReceive.receive(timeoutMs);
+        ExecutorService reactorExecutor = Deencapsulation.getField(amqpFileUploadNotificationReceive, "reactorExecutor");
+        amqpFileUploadNotificationReceive.close();
+        connectionClosed.countDown();
+        assertTrue(reactorExecutor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Assert
+        new Verifications()
+        {
+            {
+                reactor.start();
+                times = 1;
+                Deencapsulation.invoke(mockAmqpFileUploadNotificationReceivedHandler, "requestClose");
+                times = 1;
+                reactor.wakeup();
+                times = 1;
+                reactor.free();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_41_002: [If a notification was received, the function shall acknowledge its message and wake up the reactor]
+    @Test
+    public void receiveReturnsReceivedNotificationAndAcknowledgesIt(@Mocked AmqpFileUploadNotificationReceivedHandler mockAmqpFileUploadNotificationReceivedHandler,
+                                                                    @Mocked FileUploadNotification mockedNotification) throws IOException, InterruptedException
+    {
+        // Arrange
+        final AtomicInteger acknowledgements = new AtomicInteger();
+        AmqpFileUploadNotificationReceive amqpFileUploadNotificationReceive = new AmqpFileUploadNotificationReceive("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpFileUploadNotificationReceive.open();
+        new Expectations()
+        {
+            {
+                proton.reactor(amqpFileUploadNotificationReceive);
+                result = reactor;
+            }
+        };
+        amqpFileUploadNotificationReceive.onFeedbackReceived("{}", acknowledgements::incrementAndGet);
+        assertEquals(0, acknowledgements.get());
+
+        // Act
+        FileUploadNotification notification = amqpFileUploadNotificationReceive.receive(1000);
+
+        // Assert
+        assertNotNull(notification);
+        assertEquals(1, acknowledgements.get());
+        new Verifications()
+        {
+            {
+                reactor.wakeup();
+                minTimes = 1;
+            }
+        };
+        amqpFileUploadNotificationReceive.close();
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_41_007: [If the notification could not be parsed, the function shall acknowledge its message right away]
+    @Test
+    public void onFeedbackReceivedAcknowledgesInvalidNotification(@Mocked AmqpFileUploadNotificationReceivedHandler mockAmqpFileUploadNotificationReceivedHandler) throws IOException
+    {
+        // Arrange
+        final AtomicInteger acknowledgements = new AtomicInteger();
+        AmqpFileUploadNotificationReceive amqpFileUploadNotificationReceive = new AmqpFileUploadNotificationReceive("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpFileUploadNotificationReceive.open();
+        new Expectations()
+        {
+            {
+                new FileUploadNotificationParser(anyString);
+                result = new IOException("invalid notification");
+            }
+        };
+
+        // Act
+        amqpFileUploadNotificationReceive.onFeedbackReceived("{}", acknowledgements::incrementAndGet);
+
+        // Assert
+        assertEquals(1, acknowledgements.get());
+        amqpFileUploadNotificationReceive.close();
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_004: [The function shall invalidate the member AmqpsReceiveHandler object]
+    @Test
+    public void closeLeavesNotificationsThatWereNotReceivedUnacknowledged(@Mocked AmqpFileUploadNotificationReceivedHandler mockAmqpFileUploadNotificationReceivedHandler,
+                                                                          @Mocked FileUploadNotification mockedNotification) throws IOException
+    {
+        // Arrange
+        final AtomicInteger acknowledgements = new AtomicInteger();
+        AmqpFileUploadNotificationReceive amqpFileUploadNotificationReceive = new AmqpFileUploadNotificationReceive("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpFileUploadNotificationReceive.open();
+        amqpFileUploadNotificationReceive.onFeedbackReceived("{}", acknowledgements::incrementAndGet);
+
+        // Act
+        amqpFileUploadNotificationReceive.close();
+        amqpFileUploadNotificationReceive.onFeedbackReceived("{}", acknowledgements::incrementAndGet);
+
+        // Assert
+        assertEquals(0, acknowledgements.get());
     }
 
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_25_008: [The function shall throw IOException if the send handler object is not initialized]
@@ -178,7 +316,7 @@ public class AmqpFileUploadNotificationReceiveTest
         AmqpFileUploadNotificationReceive amqpFileUploadNotificationReceive = new AmqpFileUploadNotificationReceive(hostName, userName, sasToken, iotHubServiceClientProtocol);
 
         // Act
-        amqpFileUploadNotificationReceive.onFeedbackReceived(jsonData);
+        amqpFileUploadNotificationReceive.onFeedbackReceived(jsonData, () -> {});
 
         //assert
         new Verifications()
@@ -13,11 +13,13 @@ import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpFileUploadNotific
 import mockit.Deencapsulation;
 import mockit.Expectations;
 import mockit.Mocked;
+import mockit.Verifications;
 import mockit.integration.junit4.JMockit;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.Symbol;
 import org.apache.qpid.proton.amqp.UnsignedLong;
 import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Released;
 import org.apache.qpid.proton.amqp.messaging.Data;
 import org.apache.qpid.proton.amqp.messaging.Source;
 import org.apache.qpid.proton.amqp.messaging.Target;
@@ -38,8 +40,11 @@ import javax.net.ssl.SSLHandshakeException;
 import java.io.IOException;
 import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /** Unit tests for AmqpFileUploadNotificationReceivedHandler */
@@ -66,11 +71,11 @@ public class AmqpFileUploadNotificationReceivedHandlerTest
     @Mocked Source source;
     @Mocked ReadableBuffer readBuf;
 
-    AmqpFeedbackReceivedEvent amqpFeedbackReceivedEvent = (String feedbackJson) -> {};
+    Runnable lastAcknowledgement;
+    AmqpFeedbackReceivedEvent amqpFeedbackReceivedEvent = (feedbackJson, acknowledgement) -> lastAcknowledgement = acknowledgement;
 
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_001: [The constructor shall copy all input parameters to private member variables for event processing]
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_002: [The constructor shall initialize a new Handshaker (Proton) object to handle communication handshake]
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_003: [The constructor shall initialize a new FlowController (Proton) object to handle communication handshake]
     @Test
     public void amqpReceiveHandlerCallFlowAndInitOk()
     {
@@ -84,7 +89,6 @@ public class AmqpFileUploadNotificationReceivedHandlerTest
         {
             {
                 handshaker = new Handshaker();
-                flowcontroller = new FlowController();
             }
         };
         // Act
@@ -182,8 +186,7 @@ public class AmqpFileUploadNotificationReceivedHandlerTest
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_004: [The event handler shall get the Link, Receiver and Delivery (Proton) objects from the event]
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_005: [The event handler shall read the received buffer]
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_006: [The event handler shall create a Message (Proton) object from the decoded buffer]
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_007: [The event handler shall settle the Delivery with the Accepted outcome ]
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_008: [The event handler shall close the Session and Connection (Proton)]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_41_002: [The event handler shall keep the Delivery open until the notification is consumed, and shall not close the Session or Connection]
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_009: [The event handler shall call the FeedbackReceived callback if it has been initialized]
     @Test
     public void onDeliveryCallFlowAndInitOk(@Mocked Data mockData)
@@ -209,12 +212,6 @@ public class AmqpFileUploadNotificationReceivedHandlerTest
                 byte[] buffer = new byte[1024];
                 receiver.recv(buffer, 0, buffer.length);
                 message.decode(withAny(buffer), 0, anyInt);
-                delivery.disposition(Accepted.getInstance()); // send disposition frame and settle the outcome
-                delivery.settle();
-                session = receiver.getSession();
-                session.close();
-                connection = session.getConnection();
-                connection.close();
                 message.getBody();
                 result = mockData;
 
@@ -222,6 +219,12 @@ public class AmqpFileUploadNotificationReceivedHandlerTest
         };
         // Act
         Deencapsulation.invoke(amqpReceiveHandler, "onDelivery", event);
+
+        // Assert
+        Object receivedDeliveries = Deencapsulation.getField(amqpReceiveHandler, "receivedDeliveries");
+        Set<Delivery> unsettledDeliveries = Deencapsulation.getField(receivedDeliveries, "unsettledDeliveries");
+        assertEquals(1, unsettledDeliveries.size());
+        assertNotNull(lastAcknowledgement);
     }
 
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_009: [The event handler shall set the SASL PLAIN authentication on the Transport using the given user name and sas token]
@@ -324,6 +327,97 @@ public class AmqpFileUploadNotificationReceivedHandlerTest
         Deencapsulation.invoke(amqpReceiveHandler, "onConnectionInit", event);
     }
 
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_41_001: [The constructor shall throw IllegalArgumentException if the prefetch credit is smaller than 1]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnZeroPrefetchCredit()
+    {
+        Deencapsulation.newInstance(AmqpFileUploadNotificationReceivedHandler.class, "aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS, amqpFeedbackReceivedEvent, 0);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_41_003: [The event handler shall give the Receiver as much credit as the prefetch credit]
+    @Test
+    public void onConnectionInitGivesPrefetchCredit()
+    {
+        // Arrange
+        Object amqpReceiveHandler = Deencapsulation.newInstance(AmqpFileUploadNotificationReceivedHandler.class, "aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS, amqpFeedbackReceivedEvent, 5);
+
+        // Act
+        Deencapsulation.invoke(amqpReceiveHandler, "onConnectionInit", event);;
+
+        // Assert
+        new Verifications()
+        {
+            {
+                receiver.flow(5);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_41_004: [The function shall settle the Deliveries consumed since the last call with the Accepted outcome and give their credit back to the Receiver]
+    @Test
+    public void onReactorWakeupSettlesDeliveriesAndReplenishesCredit()
+    {
+        // Arrange
+        Object amqpReceiveHandler = Deencapsulation.newInstance(AmqpFileUploadNotificationReceivedHandler.class, "aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS, amqpFeedbackReceivedEvent, 5);
+        Deencapsulation.setField(amqpReceiveHandler, "notificationReceiver", receiver);
+        Object receivedDeliveries = Deencapsulation.getField(amqpReceiveHandler, "receivedDeliveries");
+        Deencapsulation.invoke(receivedDeliveries, "add", delivery);
+        Deencapsulation.invoke(receivedDeliveries, "acknowledge", delivery);
+
+        // Act
+        Deencapsulation.invoke(amqpReceiveHandler, "onReactorWakeup");
+
+        // Assert
+        new Verifications()
+        {
+            {
+                delivery.disposition(Accepted.getInstance());
+                times = 1;
+                delivery.settle();
+                times = 1;
+                receiver.flow(1);
+                times = 1;
+                receiver.close();
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_41_005: [If a close was requested, the function shall close the Receiver, Session and Connection]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_41_006: [If a close was requested, the function shall settle the Deliveries that were not consumed with the Released outcome]
+    @Test
+    public void onReactorWakeupClosesConnectionOnRequest()
+    {
+        // Arrange
+        Object amqpReceiveHandler = Deencapsulation.newInstance(AmqpFileUploadNotificationReceivedHandler.class, "aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS, amqpFeedbackReceivedEvent, 5);
+        Deencapsulation.setField(amqpReceiveHandler, "notificationReceiver", receiver);
+        Object receivedDeliveries = Deencapsulation.getField(amqpReceiveHandler, "receivedDeliveries");
+        Deencapsulation.invoke(receivedDeliveries, "add", delivery);
+        Deencapsulation.invoke(amqpReceiveHandler, "requestClose");
+
+        // Act
+        Deencapsulation.invoke(amqpReceiveHandler, "onReactorWakeup");
+
+        // Assert
+        new Verifications()
+        {
+            {
+                delivery.disposition(Released.getInstance());
+                times = 1;
+                delivery.settle();
+                times = 1;
+                receiver.close();
+                times = 1;
+                session.close();
+                times = 1;
+                connection.close();
+                times = 1;
+            }
+        };
+        assertNull(Deencapsulation.getField(amqpReceiveHandler, "notificationReceiver"));
+    }
+
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_015: [The event handler shall create a new Target (Proton) object using the given endpoint address]
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVEDHANDLER_25_016: [The event handler shall get the Link (Proton) object and set its target to the created Target (Proton) object]
     @Test
@@ -5,13 +5,16 @@
 
 package tests.unit.com.microsoft.azure.sdk.iot.service.transport.amqps;
 
+import com.microsoft.azure.sdk.iot.service.FeedbackBatch;
 import com.microsoft.azure.sdk.iot.service.FeedbackBatchMessage;
 import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
 import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpFeedbackReceivedHandler;
 import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpReceive;
 import mockit.Deencapsulation;
+import mockit.Delegate;
 import mockit.Expectations;
 import mockit.Mocked;
+import mockit.Verifications;
 import mockit.integration.junit4.JMockit;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.engine.Connection;
@@ -22,9 +25,13 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNull;
+import static org.junit.Assert.*;
 
 /** Unit tests for AmqpReceive */
 @RunWith(JMockit.class)
@@ -84,9 +91,17 @@ public class AmqpReceiveTest
         assertNull(Deencapsulation.getField(amqpReceive, "amqpReceiveHandler"));
     }
 
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_41_001: [The constructor shall throw IllegalArgumentException if the prefetch credit is smaller than 1]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructor_throws_on_zero_prefetch_credit()
+    {
+        new AmqpReceive("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS, 0);
+    }
+
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_005: [The function shall initialize the Proton reactor object]
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_006: [The function shall start the Proton reactor object]
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_008: [The function shall stop and free the Proton reactor object ]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_41_006: [Once the reactor stops, the next receive shall open a new connection with a new handler]
     @Test
     public void receive_with_timout_zero_call_flow_ok(@Mocked AmqpFeedbackReceivedHandler mockAmqpFeedbackReceivedHandler) throws IOException, InterruptedException
     {
@@ -96,27 +111,47 @@ public class AmqpReceiveTest
         String sasToken = "ccc";
         IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
         int timeoutMs = 0;
+        final CountDownLatch reactorFreed = new CountDownLatch(1);
         AmqpReceive amqpReceive = new AmqpReceive(hostName, userName, sasToken, iotHubServiceClientProtocol);
         amqpReceive.open();
-        // Assert
         new Expectations()
         {
             {
-                reactor = proton.reactor(amqpReceive);
-                reactor.start();
-                reactor.stop();
+                proton.reactor(amqpReceive);
+                result = reactor;
                 reactor.process();
+                result = false;
                 reactor.free();
-        
+                result = new Delegate()
+                {
+                    void free()
+                    {
+                        reactorFreed.countDown();
+                    }
+                };
             }
         };
+
         // Act
-        amqpReceive.receive(timeoutMs);
+        FeedbackBatch feedbackBatch = amqpReceive.receive(timeoutMs);
+
+        // Assert
+        assertNull(feedbackBatch);
+        assertTrue(reactorFreed.await(10, TimeUnit.SECONDS));
+        new Verifications()
+        {
+            {
+                reactor.start();
+                times = 1;
+                reactor.stop();
+                times = 1;
+            }
+        };
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_005: [The function shall initialize the Proton reactor object]
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_006: [The function shall start the Proton reactor object]
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_008: [The function shall stop and free the Proton reactor object ]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_007: [The function shall wait for specified timeout to check for any feedback message]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_41_004: [The reactor thread shall let the handler settle the received messages and replenish the link credit every time the reactor wakes up, until the connection is closed]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_41_005: [If a connection is open, the function shall ask its handler to close it and wake up the reactor]
     @Test
     public void receiveWithTimout_non_zero_call_ok(@Mocked AmqpFeedbackReceivedHandler mockAmqpFeedbackReceivedHandler) throws IOException, InterruptedException
     {
@@ -126,24 +161,155 @@ public class AmqpReceiveTest
         String sasToken = "ccc";
         IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
         int timeoutMs = 1;
+        final CountDownLatch connectionClosed = new CountDownLatch(1);
         AmqpReceive amqpReceive = new AmqpReceive(hostName, userName, sasToken, iotHubServiceClientProtocol);
         amqpReceive.open();
-        // Assert
         new Expectations()
         {
             {
-                reactor = proton.reactor(amqpReceive);
+                proton.reactor(amqpReceive);
+                result = reactor;
+                times = 1;
+                reactor.process();
+                result = new Delegate()
+                {
+                    boolean process() throws InterruptedException
+                    {
+                        // the connection stays open until the test closes it
+                        return !connectionClosed.await(10, TimeUnit.SECONDS);
+                    }
+                };
+            }
+        };
+
+        // Act
+        amqpReceive.receive(timeoutMs);
+        amqpReceive.receive(timeoutMs);
+        ExecutorService reactorExecutor = Deencapsulation.getField(amqpReceive, "reactorExecutor");
+        amqpReceive.close();
+        connectionClosed.countDown();
+        assertTrue(reactorExecutor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Assert
+        new Verifications()
+        {
+            {
                 reactor.start();
-                reactor.stop();
+                times = 1;
+                mockAmqpFeedbackReceivedHandler.requestClose();
+                times = 1;
+                reactor.wakeup();
+                times = 1;
+                reactor.free();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_41_002: [If a feedback batch was received, the function shall acknowledge its message and wake up the reactor]
+    @Test
+    public void receive_returns_received_feedback_and_acknowledges_it(@Mocked AmqpFeedbackReceivedHandler mockAmqpFeedbackReceivedHandler, @Mocked FeedbackBatchMessage mockFeedbackBatchMessage) throws IOException, InterruptedException
+    {
+        // Arrange
+        final FeedbackBatch expected = new FeedbackBatch();
+        final AtomicInteger acknowledgements = new AtomicInteger();
+        final CountDownLatch connectionClosed = new CountDownLatch(1);
+        AmqpReceive amqpReceive = new AmqpReceive("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpReceive.open();
+        new Expectations()
+        {
+            {
+                proton.reactor(amqpReceive);
+                result = reactor;
+                reactor.process();
+                result = new Delegate()
+                {
+                    boolean process() throws InterruptedException
+                    {
+                        // the connection stays open until the test closes it, so the batch is not released before receive takes it
+                        return !connectionClosed.await(10, TimeUnit.SECONDS);
+                    }
+                };
+                FeedbackBatchMessage.parse("[]");
+                result = expected;
+            }
+        };
+        amqpReceive.onFeedbackReceived("[]", acknowledgements::incrementAndGet);
+        assertEquals(0, acknowledgements.get());
+
+        // Act
+        FeedbackBatch feedbackBatch = amqpReceive.receive(1000);
+
+        // Assert
+        assertSame(expected, feedbackBatch);
+        assertEquals(1, acknowledgements.get());
+        ExecutorService reactorExecutor = Deencapsulation.getField(amqpReceive, "reactorExecutor");
+        amqpReceive.close();
+        connectionClosed.countDown();
+        assertTrue(reactorExecutor.awaitTermination(10, TimeUnit.SECONDS));
+        new Verifications()
+        {
+            {
+                reactor.wakeup();
+                minTimes = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_41_003: [If no feedback batch was received and the last connection failed, the function shall throw the IOException it failed with]
+    @Test
+    public void receive_throws_exception_of_failed_connection(@Mocked AmqpFeedbackReceivedHandler mockAmqpFeedbackReceivedHandler) throws Exception
+    {
+        // Arrange
+        final IOException failure = new IOException("Connection failed to open");
+        final CountDownLatch firstReceiveReturned = new CountDownLatch(1);
+        final CountDownLatch reactorFreed = new CountDownLatch(1);
+        AmqpReceive amqpReceive = new AmqpReceive("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpReceive.open();
+        new Expectations()
+        {
+            {
+                proton.reactor(amqpReceive);
+                result = reactor;
                 reactor.process();
+                result = new Delegate()
+                {
+                    boolean process() throws InterruptedException
+                    {
+                        // the connection fails only once the receive that opened it returned
+                        firstReceiveReturned.await(10, TimeUnit.SECONDS);
+                        return false;
+                    }
+                };
                 reactor.free();
-                
-                
-                
+                result = new Delegate()
+                {
+                    void free()
+                    {
+                        reactorFreed.countDown();
+                    }
+                };
+                Deencapsulation.invoke(mockAmqpFeedbackReceivedHandler, "receiveComplete");
+                result = failure;
             }
         };
+        amqpReceive.receive(0);
+        firstReceiveReturned.countDown();
+        assertTrue(reactorFreed.await(10, TimeUnit.SECONDS));
+
         // Act
-        amqpReceive.receive(timeoutMs);
+        try
+        {
+            // the failure is recorded right after the reactor is freed, so wait for it rather than for feedback
+            amqpReceive.receive(1000);
+            fail("Expected the connection failure to be thrown");
+        }
+        catch (IOException e)
+        {
+            // Assert
+            assertSame(failure, e);
+        }
+        amqpReceive.close();
     }
 
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_008: [The function shall throw IOException if the send handler object is not initialized]
@@ -182,6 +348,50 @@ public class AmqpReceiveTest
             }
         };
         // Act
-        amqpReceive.onFeedbackReceived(jsonData);
+        amqpReceive.onFeedbackReceived(jsonData, () -> {});
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_41_007: [If the feedback batch could not be parsed, the function shall acknowledge its message right away]
+    @Test
+    public void onFeedbackReceived_acknowledges_feedback_that_could_not_be_parsed(@Mocked FeedbackBatchMessage mockFeedbackBatchMessage)
+    {
+        // Arrange
+        final AtomicInteger acknowledgements = new AtomicInteger();
+        AmqpReceive amqpReceive = new AmqpReceive("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpReceive.open();
+        new Expectations()
+        {
+            {
+                FeedbackBatchMessage.parse("[]");
+                result = null;
+            }
+        };
+
+        // Act
+        amqpReceive.onFeedbackReceived("[]", acknowledgements::incrementAndGet);
+
+        // Assert
+        assertEquals(1, acknowledgements.get());
+        amqpReceive.close();
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_004: [The function shall invalidate the member AmqpsReceiveHandler object]
+    @Test
+    public void close_leaves_feedback_that_was_not_received_unacknowledged(@Mocked FeedbackBatchMessage mockFeedbackBatchMessage)
+    {
+        // Arrange
+        final AtomicInteger acknowledgements = new AtomicInteger();
+        AmqpReceive amqpReceive = new AmqpReceive("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpReceive.open();
+        amqpReceive.onFeedbackReceived("[]", acknowledgements::incrementAndGet);
+
+        // Act
+        amqpReceive.close();
+        amqpReceive.onFeedbackReceived("[]", acknowledgements::incrementAndGet);
+
+        // Assert
+        assertEquals(0, acknowledgements.get());
+        Collection<?> receivedFeedbackBatches = Deencapsulation.getField(amqpReceive, "receivedFeedbackBatches");
+        assertTrue(receivedFeedbackBatches.isEmpty());
     }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package tests.unit.com.microsoft.azure.sdk.iot.service.transport.amqps;
+
+import mockit.Deencapsulation;
+import mockit.Mocked;
+import mockit.Verifications;
+import mockit.integration.junit4.JMockit;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Released;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.Receiver;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for AmqpReceivedDeliveries */
+@RunWith(JMockit.class)
+public class AmqpReceivedDeliveriesTest
+{
+    private static final String AMQP_RECEIVED_DELIVERIES = "com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpReceivedDeliveries";
+
+    @Mocked Delivery consumedDelivery;
+    @Mocked Delivery pendingDelivery;
+    @Mocked Receiver receiver;
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVEDDELIVERIES_41_001: [The function shall keep the delivery unsettled until its message is consumed.]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVEDDELIVERIES_41_002: [The function shall queue the delivery to be accepted at the next settlement.]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVEDDELIVERIES_41_003: [The function shall settle every kept delivery that was acknowledged with the Accepted outcome.]
+    @Test
+    public void settleAndReplenishCreditSettlesOnlyAcknowledgedDeliveriesOnce()
+    {
+        // Arrange
+        Object receivedDeliveries = Deencapsulation.newInstance(AMQP_RECEIVED_DELIVERIES);
+        Deencapsulation.invoke(receivedDeliveries, "add", consumedDelivery);
+        Deencapsulation.invoke(receivedDeliveries, "add", pendingDelivery);
+        Deencapsulation.invoke(receivedDeliveries, "acknowledge", consumedDelivery);
+
+        // Act
+        Deencapsulation.invoke(receivedDeliveries, "settleAndReplenishCredit", receiver);
+        Deencapsulation.invoke(receivedDeliveries, "acknowledge", consumedDelivery);
+        Deencapsulation.invoke(receivedDeliveries, "settleAndReplenishCredit", receiver);
+
+        // Assert
+        new Verifications()
+        {
+            {
+                consumedDelivery.disposition(Accepted.getInstance());
+                times = 1;
+                consumedDelivery.settle();
+                times = 1;
+                pendingDelivery.disposition((org.apache.qpid.proton.amqp.transport.DeliveryState) any);
+                times = 0;
+                pendingDelivery.settle();
+                times = 0;
+                receiver.flow(1);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVEDDELIVERIES_41_004: [If the link is open, the function shall give it one credit for every settled delivery, if any.]
+    @Test
+    public void settleAndReplenishCreditGivesNoCreditWithoutSettledDeliveries()
+    {
+        // Arrange
+        Object receivedDeliveries = Deencapsulation.newInstance(AMQP_RECEIVED_DELIVERIES);
+        Deencapsulation.invoke(receivedDeliveries, "add", pendingDelivery);
+
+        // Act
+        Deencapsulation.invoke(receivedDeliveries, "settleAndReplenishCredit", receiver);
+
+        // Assert
+        new Verifications()
+        {
+            {
+                receiver.flow(anyInt);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVEDDELIVERIES_41_004: [If the link is open, the function shall give it one credit for every settled delivery, if any.]
+    @Test
+    public void settleAndReplenishCreditIgnoresDeliveriesThatWereNotKept()
+    {
+        // Arrange
+        Object receivedDeliveries = Deencapsulation.newInstance(AMQP_RECEIVED_DELIVERIES);
+        Deencapsulation.invoke(receivedDeliveries, "acknowledge", consumedDelivery);
+
+        // Act
+        Deencapsulation.invoke(receivedDeliveries, "settleAndReplenishCredit", receiver);
+
+        // Assert
+        new Verifications()
+        {
+            {
+                consumedDelivery.settle();
+                times = 0;
+                receiver.flow(anyInt);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVEDDELIVERIES_41_005: [The function shall settle every kept delivery that was not acknowledged with the Released outcome.]
+    @Test
+    public void releaseUnsettledReleasesDeliveriesThatWereNotConsumed()
+    {
+        // Arrange
+        Object receivedDeliveries = Deencapsulation.newInstance(AMQP_RECEIVED_DELIVERIES);
+        Deencapsulation.invoke(receivedDeliveries, "add", consumedDelivery);
+        Deencapsulation.invoke(receivedDeliveries, "add", pendingDelivery);
+        Deencapsulation.invoke(receivedDeliveries, "acknowledge", consumedDelivery);
+        Deencapsulation.invoke(receivedDeliveries, "settleAndReplenishCredit", receiver);
+
+        // Act
+        Deencapsulation.invoke(receivedDeliveries, "releaseUnsettled");
+        Deencapsulation.invoke(receivedDeliveries, "releaseUnsettled");
+
+        // Assert
+        new Verifications()
+        {
+            {
+                pendingDelivery.disposition(Released.getInstance());
+                times = 1;
+                pendingDelivery.settle();
+                times = 1;
+                consumedDelivery.disposition(Released.getInstance());
+                times = 0;
+            }
+        };
+    }
+}
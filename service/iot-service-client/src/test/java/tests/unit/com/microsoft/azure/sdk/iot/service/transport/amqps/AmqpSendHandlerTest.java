@@ -8,7 +8,7 @@ package tests.unit.com.microsoft.azure.sdk.iot.service.transport.amqps;
 import com.microsoft.azure.sdk.iot.deps.auth.IotHubSSLContext;
 import com.microsoft.azure.sdk.iot.deps.ws.impl.WebSocketImpl;
 import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
-import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
+import com.microsoft.azure.sdk.iot.service.exceptions.IotHubNotFoundException;
 import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpResponseVerification;
 import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpSendHandler;
 import mockit.Deencapsulation;
@@ -38,7 +38,6 @@ import org.apache.qpid.proton.reactor.Task;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
-import javax.net.ssl.SSLHandshakeException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.BufferOverflowException;
@@ -47,10 +46,13 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /** Unit tests for AmqpSendHandler */
 @RunWith(JMockit.class)
@@ -501,8 +503,8 @@ public class AmqpSendHandlerTest
         IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
         createProtonObjects();
         AmqpSendHandler amqpSendHandler = new AmqpSendHandler(hostName, userName, sasToken, iotHubServiceClientProtocol);
-        Queue<Message> testMessagesToBeSent = new LinkedBlockingQueue<>();
-        testMessagesToBeSent.add(messageWithException);
+        Queue<Object> testMessagesToBeSent = new LinkedBlockingQueue<>();
+        testMessagesToBeSent.add(Deencapsulation.newInstance(AmqpSendHandler.class.getName() + "$OutgoingMessage", messageWithException, new CompletableFuture<Void>()));
         Deencapsulation.setField(amqpSendHandler,"messagesToBeSent", testMessagesToBeSent );
         // Assert
         new Expectations()
@@ -516,23 +518,91 @@ public class AmqpSendHandlerTest
         amqpSendHandler.onLinkFlow(event);
     }
 
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_41_004: [The function shall keep sending queued messages while the Sender has credit]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_41_005: [The function shall remember the future of each sent message by its delivery tag]
+    @Test
+    public void onLinkFlow_sends_all_queued_messages_with_distinct_tags(final @Mocked Event mockedEvent,
+                                                                         final @Mocked Sender mockedSender) throws UnsupportedEncodingException
+    {
+        // Arrange
+        AmqpSendHandler amqpSendHandler = new AmqpSendHandler("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpSendHandler.createProtonMessage("deviceId", new com.microsoft.azure.sdk.iot.service.Message("first"));
+        amqpSendHandler.createProtonMessage("deviceId", "moduleId", new com.microsoft.azure.sdk.iot.service.Message("second"));
+        new Expectations()
+        {
+            {
+                mockedEvent.getLink();
+                result = mockedSender;
+                mockedSender.getCredit();
+                result = 10;
+            }
+        };
+
+        // Act
+        amqpSendHandler.onLinkFlow(mockedEvent);
+
+        // Assert
+        new Verifications()
+        {
+            {
+                mockedSender.delivery("0".getBytes());
+                times = 1;
+                mockedSender.delivery("1".getBytes());
+                times = 1;
+                mockedSender.advance();
+                times = 2;
+            }
+        };
+        Map<String, CompletableFuture<Void>> inFlightDeliveries = Deencapsulation.getField(amqpSendHandler, "inFlightDeliveries");
+        assertEquals(2, inFlightDeliveries.size());
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_41_004: [The function shall keep sending queued messages while the Sender has credit]
+    @Test
+    public void onLinkFlow_keeps_messages_queued_without_credit(final @Mocked Event mockedEvent,
+                                                                final @Mocked Sender mockedSender) throws UnsupportedEncodingException
+    {
+        // Arrange
+        AmqpSendHandler amqpSendHandler = new AmqpSendHandler("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpSendHandler.createProtonMessage("deviceId", new com.microsoft.azure.sdk.iot.service.Message("first"));
+        new Expectations()
+        {
+            {
+                mockedEvent.getLink();
+                result = mockedSender;
+                mockedSender.getCredit();
+                result = 0;
+            }
+        };
+
+        // Act
+        amqpSendHandler.onLinkFlow(mockedEvent);
+
+        // Assert
+        new Verifications()
+        {
+            {
+                mockedSender.delivery((byte[]) any);
+                times = 0;
+            }
+        };
+        Queue<Object> messagesToBeSent = Deencapsulation.getField(amqpSendHandler, "messagesToBeSent");
+        assertEquals(1, messagesToBeSent.size());
+    }
+
     /*
     Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_023: [** The event handler shall get the Delivery from the event only if the event type is DELIVERY **]**
 
     Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_024: [** The event handler shall get the Delivery remote state from the delivery **]**
 
-    Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_025: [** The event handler shall verify the Amqp response and add the response to a queue. **]**
+    Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_025: [** The event handler shall verify the Amqp response and complete the future of the message with the delivery tag of the Delivery. **]**
 
     Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_026: [** The event handler shall settle the delivery. **]**
-
-    Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_027: [** The event handler shall get the Sender (Proton) object from the event **]**
-
-    Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_028: [** The event handler shall close the Sender, Session and Connection **]**
      */
     @Test
     public void onDelivery_flow_ok(final @Mocked Event mockedEvent,
                                    final @Mocked DeliveryState mockedDeliveryState,
-                                   final @Mocked Delivery mockedDelivery) throws UnsupportedEncodingException
+                                   final @Mocked Delivery mockedDelivery) throws Exception
     {
         // Arrange
         String hostName = "aaa";
@@ -540,8 +610,10 @@ public class AmqpSendHandlerTest
         String sasToken = "ccc";
         IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
         AmqpSendHandler amqpSendHandler = new AmqpSendHandler(hostName, userName, sasToken, iotHubServiceClientProtocol);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Map<String, CompletableFuture<Void>> inFlightDeliveries = Deencapsulation.getField(amqpSendHandler, "inFlightDeliveries");
+        inFlightDeliveries.put("7", future);
 
-        // Assert
         new Expectations()
         {
             {
@@ -551,96 +623,104 @@ public class AmqpSendHandlerTest
                 result = mockedDelivery;
                 mockedDelivery.getRemoteState();
                 result = mockedDeliveryState;
-                sender.close();
-                session = sender.getSession();
-                connection = session.getConnection();
-                connection.close();
+                mockedDelivery.getTag();
+                result = "7".getBytes();
+                responseVerification.getException();
+                result = null;
             }
         };
+
         // Act
         amqpSendHandler.onDelivery(mockedEvent);
-    }
-
-    /*
-    Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_029: [** The event handler shall check the status queue to get the response for the sent message **]**
-
-    Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_030: [** The event handler shall remove the response from the queue **]**
-
-    Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_031: [** The event handler shall get the exception from the response and throw is it is not null **]**
-     */
-    @Test
-    public void sendComplete_flow_OK(final @Mocked AmqpResponseVerification mockedVerification) throws IotHubException, IOException
-    {
-        // Arrange
-        String hostName = "aaa";
-        String userName = "bbb";
-        String sasToken = "ccc";
-        IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
-        AmqpSendHandler amqpSendHandler = new AmqpSendHandler(hostName, userName, sasToken, iotHubServiceClientProtocol);
-        Queue<AmqpResponseVerification> testsendStatusQueue = new LinkedBlockingQueue<>();
-        testsendStatusQueue.add(mockedVerification);
-        Deencapsulation.setField(amqpSendHandler,"sendStatusQueue", testsendStatusQueue );
-        Deencapsulation.setField(amqpSendHandler, "connectionWasOpened", true);
 
         // Assert
-        new Expectations()
+        future.get();
+        assertTrue(inFlightDeliveries.isEmpty());
+        new Verifications()
         {
             {
-                mockedVerification.getException();
-                result = null;
+                mockedDelivery.settle();
+                times = 1;
+                sender.close();
+                times = 0;
+                connection.close();
+                times = 0;
             }
         };
-        // Act
-        amqpSendHandler.sendComplete();
     }
 
-    //Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_031: [** The event handler shall get the exception from the response and throw is it is not null **]**
-    @Test (expected = IotHubException.class)
-    public void sendComplete_throws_exception_if_found(final @Mocked AmqpResponseVerification mockedVerification,
-                                                       final @Mocked IotHubException mockedIotHubException) throws IotHubException, IOException
+    //Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_025: [ The event handler shall verify the Amqp response and complete the future of the message with the delivery tag of the Delivery. **]**
+    @Test
+    public void onDelivery_fails_future_with_rejection(final @Mocked Event mockedEvent,
+                                                       final @Mocked Delivery mockedDelivery) throws Exception
     {
         // Arrange
-        String hostName = "aaa";
-        String userName = "bbb";
-        String sasToken = "ccc";
-        IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
-        AmqpSendHandler amqpSendHandler = new AmqpSendHandler(hostName, userName, sasToken, iotHubServiceClientProtocol);
-        Queue<AmqpResponseVerification> testsendStatusQueue = new LinkedBlockingQueue<>();
-        testsendStatusQueue.add(mockedVerification);
-        Deencapsulation.setField(amqpSendHandler,"sendStatusQueue", testsendStatusQueue );
-        Deencapsulation.setField(amqpSendHandler, "connectionWasOpened", true);
+        AmqpSendHandler amqpSendHandler = new AmqpSendHandler("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Map<String, CompletableFuture<Void>> inFlightDeliveries = Deencapsulation.getField(amqpSendHandler, "inFlightDeliveries");
+        inFlightDeliveries.put("7", future);
+        final IotHubNotFoundException rejection = new IotHubNotFoundException("device not found");
 
-        // Assert
         new Expectations()
         {
             {
-                mockedVerification.getException();
-                result = mockedIotHubException;
+                mockedEvent.getType();
+                result = Event.Type.DELIVERY;
+                mockedEvent.getDelivery();
+                result = mockedDelivery;
+                mockedDelivery.getTag();
+                result = "7".getBytes();
+                responseVerification.getException();
+                returns(rejection);
             }
         };
+
         // Act
-        amqpSendHandler.sendComplete();
+        amqpSendHandler.onDelivery(mockedEvent);
 
+        // Assert
+        try
+        {
+            future.get();
+            fail("Expected the future to complete exceptionally");
+        }
+        catch (ExecutionException e)
+        {
+            assertEquals(rejection, e.getCause());
+        }
     }
 
-
-    //Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_25_031: [** The event handler shall get the exception from the response and throw is it is not null **]**
-    @Test (expected = IOException.class)
-    public void sendComplete_throws_Connection_exception_if_found(final @Mocked AmqpResponseVerification mockedVerification,
-                                                                  final @Mocked IotHubException mockedIotHubException,
-                                                                  final @Mocked Event mockedEvent) throws IotHubException, IOException
+    //Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_41_006: [The function shall complete the futures of all the queued and in flight messages with an IOException describing why the connection ended]
+    @Test
+    public void failPendingMessagesFailsQueuedAndInFlightMessages(final @Mocked Event mockedEvent) throws Exception
     {
         // Arrange
-        String hostName = "aaa";
-        String userName = "bbb";
-        String sasToken = "ccc";
-        IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
-        AmqpSendHandler amqpSendHandler = new AmqpSendHandler(hostName, userName, sasToken, iotHubServiceClientProtocol);
+        AmqpSendHandler amqpSendHandler = new AmqpSendHandler("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        CompletableFuture<Void> queued = amqpSendHandler.createProtonMessage("deviceId", new com.microsoft.azure.sdk.iot.service.Message("abc"));
+        CompletableFuture<Void> inFlight = new CompletableFuture<>();
+        Map<String, CompletableFuture<Void>> inFlightDeliveries = Deencapsulation.getField(amqpSendHandler, "inFlightDeliveries");
+        inFlightDeliveries.put("0", inFlight);
+        amqpSendHandler.onLinkRemoteOpen(mockedEvent);
         amqpSendHandler.onTransportError(mockedEvent);
 
         // Act
-        amqpSendHandler.sendComplete();
+        amqpSendHandler.failPendingMessages();
 
+        // Assert
+        for (CompletableFuture<Void> future : Arrays.asList(queued, inFlight))
+        {
+            try
+            {
+                future.get();
+                fail("Expected the future to complete exceptionally");
+            }
+            catch (ExecutionException e)
+            {
+                assertTrue(e.getCause() instanceof IOException);
+                assertTrue(e.getCause().getCause() instanceof IOException);
+            }
+        }
+        assertTrue(inFlightDeliveries.isEmpty());
     }
 
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_34_032: [This function shall close the transport tail]
@@ -693,40 +773,57 @@ public class AmqpSendHandlerTest
         assertTrue(Deencapsulation.getField(amqpSendHandler, "connectionWasOpened"));
     }
 
-    //Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_34_034: [if 'connectionWasOpened' is false, or 'isConnectionError' is true, this function shall throw an IOException]
-    @Test (expected = IOException.class)
-    public void sendCompleteChecksForSavedException() throws IOException, IotHubException
+    //Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_41_006: [The function shall complete the futures of all the queued and in flight messages with an IOException describing why the connection ended]
+    @Test
+    public void failPendingMessagesChecksThatConnectionWasOpened() throws Exception
     {
         // Arrange
-        String hostName = "aaa";
-        String userName = "bbb";
-        String sasToken = "ccc";
-        IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
-        AmqpSendHandler amqpSendHandler = new AmqpSendHandler(hostName, userName, sasToken, iotHubServiceClientProtocol);
-
-        Deencapsulation.setField(amqpSendHandler, "connectionWasOpened", true);
-        Deencapsulation.setField(amqpSendHandler, "savedException", new SSLHandshakeException("some nonsense exception"));
+        AmqpSendHandler amqpSendHandler = new AmqpSendHandler("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        CompletableFuture<Void> queued = amqpSendHandler.createProtonMessage("deviceId", new com.microsoft.azure.sdk.iot.service.Message("abc"));
 
         // Act
-        amqpSendHandler.sendComplete();
+        amqpSendHandler.failPendingMessages();
+
+        // Assert
+        try
+        {
+            queued.get();
+            fail("Expected the future to complete exceptionally");
+        }
+        catch (ExecutionException e)
+        {
+            assertEquals("Connection failed to open", e.getCause().getMessage());
+        }
     }
 
-    //Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_34_034: [if 'connectionWasOpened' is false, or 'isConnectionError' is true, this function shall throw an IOException]
-    @Test (expected = IOException.class)
-    public void sendCompleteChecksThatConnectionWasOpened() throws IOException, IotHubException
+    //Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_41_002: [If a close was requested, the function shall close the Sender, Session and Connection]
+    //Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_41_003: [Otherwise, the function shall send the queued messages]
+    @Test
+    public void onReactorWakeupClosesConnectionOnlyAfterCloseWasRequested(final @Mocked Sender mockedSender) throws UnsupportedEncodingException
     {
         // Arrange
-        String hostName = "aaa";
-        String userName = "bbb";
-        String sasToken = "ccc";
-        IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
-        AmqpSendHandler amqpSendHandler = new AmqpSendHandler(hostName, userName, sasToken, iotHubServiceClientProtocol);
-
-        Deencapsulation.setField(amqpSendHandler, "connectionWasOpened", false);
-        Deencapsulation.setField(amqpSendHandler, "savedException", null);
+        AmqpSendHandler amqpSendHandler = new AmqpSendHandler("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        Deencapsulation.setField(amqpSendHandler, "sender", mockedSender);
+        Deencapsulation.setField(amqpSendHandler, "isConnected", true);
+        amqpSendHandler.onReactorWakeup();
 
         // Act
-        amqpSendHandler.sendComplete();
+        amqpSendHandler.requestClose();
+        amqpSendHandler.onReactorWakeup();
+        amqpSendHandler.onReactorWakeup();
+
+        // Assert
+        new Verifications()
+        {
+            {
+                mockedSender.getCredit();
+                times = 1;
+                mockedSender.close();
+                times = 1;
+                mockedSender.getSession().getConnection().close();
+                times = 1;
+            }
+        };
     }
 
     private void createProtonObjects()
@@ -9,9 +9,12 @@ import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
 import com.microsoft.azure.sdk.iot.service.Message;
 import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpSend;
 import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpSendHandler;
+import com.microsoft.azure.sdk.iot.service.exceptions.IotHubNotFoundException;
 import mockit.Deencapsulation;
+import mockit.Delegate;
 import mockit.Expectations;
 import mockit.Mocked;
+import mockit.Verifications;
 import mockit.integration.junit4.JMockit;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.engine.Connection;
@@ -22,9 +25,18 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /** Unit tests for AmqpSend */
 @RunWith(JMockit.class)
@@ -279,8 +291,8 @@ public class AmqpSendTest
         amqpSend.send(deviceId, moduleId, message);
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_002: [The event handler shall initialize the Proton reactor object]
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_003: [The event handler shall start the Proton reactor object]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_002: [The function shall initialize the Proton reactor object if there is no open connection]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_41_001: [The function shall wake up the reactor so that it sends the queued message]
     @Test
     public void sendToModule_initializes_Reactor(@Mocked AmqpSendHandler mockAmqpSendHandler) throws Exception
     {
@@ -300,13 +312,199 @@ public class AmqpSendTest
         {
             {
                 reactor = proton.reactor(amqpSend);
-                reactor.run();
+                reactor.wakeup();
             }
         };
         // Act
         amqpSend.send(deviceId, moduleId, message);
     }
 
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_002: [The function shall initialize the Proton reactor object if there is no open connection]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_003: [The function shall start the Proton reactor object on a dedicated thread]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_41_002: [The reactor thread shall let the handler send the queued messages every time the reactor wakes up, until the connection is closed]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_41_004: [Once the reactor stops, the messages that were not acknowledged shall fail]
+    @Test
+    public void sendAsync_reuses_open_connection(@Mocked AmqpSendHandler mockAmqpSendHandler) throws Exception
+    {
+        // Arrange
+        final CountDownLatch connectionClosed = new CountDownLatch(1);
+        AmqpSend amqpSend = new AmqpSend("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpSend.open();
+        new Expectations()
+        {
+            {
+                proton.reactor(amqpSend);
+                result = reactor;
+                times = 1;
+                reactor.process();
+                result = new Delegate()
+                {
+                    boolean process() throws InterruptedException
+                    {
+                        // the connection stays open until the test closes it
+                        return !connectionClosed.await(10, TimeUnit.SECONDS);
+                    }
+                };
+            }
+        };
+
+        // Act
+        amqpSend.sendAsync("deviceId", null, new Message("first"));
+        amqpSend.sendAsync("deviceId", "moduleId", new Message("second"));
+        ExecutorService reactorExecutor = Deencapsulation.getField(amqpSend, "reactorExecutor");
+        amqpSend.close();
+        connectionClosed.countDown();
+        assertTrue(reactorExecutor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Assert
+        new Verifications()
+        {
+            {
+                reactor.start();
+                times = 1;
+                reactor.wakeup();
+                times = 3;
+                mockAmqpSendHandler.failPendingMessages();
+                times = 1;
+                reactor.free();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_41_006: [If a connection is open, the function shall keep it and its handler, so that the next send still goes through it]
+    @Test
+    public void open_keeps_open_connection(@Mocked AmqpSendHandler mockAmqpSendHandler) throws Exception
+    {
+        // Arrange
+        final CountDownLatch connectionClosed = new CountDownLatch(1);
+        AmqpSend amqpSend = new AmqpSend("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        new Expectations()
+        {
+            {
+                proton.reactor(amqpSend);
+                result = reactor;
+                times = 1;
+                reactor.process();
+                result = new Delegate()
+                {
+                    boolean process() throws InterruptedException
+                    {
+                        // the connection stays open until the test closes it
+                        return !connectionClosed.await(10, TimeUnit.SECONDS);
+                    }
+                };
+            }
+        };
+
+        // Act
+        amqpSend.open();
+        amqpSend.sendAsync("deviceId", null, new Message("first"));
+        AmqpSendHandler handler = Deencapsulation.getField(amqpSend, "amqpSendHandler");
+        amqpSend.open();
+        amqpSend.sendAsync("deviceId", null, new Message("second"));
+        AmqpSendHandler handlerOfSecondSend = Deencapsulation.getField(amqpSend, "amqpSendHandler");
+        ExecutorService reactorExecutor = Deencapsulation.getField(amqpSend, "reactorExecutor");
+        amqpSend.close();
+        connectionClosed.countDown();
+        assertTrue(reactorExecutor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Assert
+        assertSame(handler, handlerOfSecondSend);
+        new Verifications()
+        {
+            {
+                reactor.start();
+                times = 1;
+                handler.createProtonMessage("deviceId", (Message) any);
+                times = 2;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_41_003: [Once the reactor stops, the next send shall open a new connection with a new handler]
+    @Test
+    public void sendAsync_opens_new_connection_after_connection_dropped() throws Exception
+    {
+        // Arrange
+        AmqpSend amqpSend = new AmqpSend("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpSend.open();
+        AmqpSendHandler firstHandler = Deencapsulation.getField(amqpSend, "amqpSendHandler");
+        new Expectations()
+        {
+            {
+                proton.reactor(amqpSend);
+                result = reactor;
+                times = 2;
+                reactor.process();
+                result = false;
+            }
+        };
+        CompletableFuture<Void> future = amqpSend.sendAsync("deviceId", null, new Message("first"));
+
+        // Act
+        try
+        {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected the message to fail when the connection dropped");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        amqpSend.sendAsync("deviceId", null, new Message("second"));
+
+        // Assert
+        assertNotSame(firstHandler, Deencapsulation.getField(amqpSend, "amqpSendHandler"));
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_004: [The function shall wait for the sent message to be acknowledged and throw the exception it failed with, if any]
+    @Test (expected = IotHubNotFoundException.class)
+    public void send_throws_exception_of_rejected_message(@Mocked AmqpSendHandler mockAmqpSendHandler) throws Exception
+    {
+        // Arrange
+        AmqpSend amqpSend = new AmqpSend("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpSend.open();
+        CompletableFuture<Void> rejected = new CompletableFuture<>();
+        rejected.completeExceptionally(new IotHubNotFoundException("device not found"));
+        new Expectations()
+        {
+            {
+                mockAmqpSendHandler.createProtonMessage(anyString, (Message) any);
+                result = rejected;
+            }
+        };
+
+        // Act
+        amqpSend.send("deviceId", null, new Message("abc"));
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_41_005: [If a connection is open, the function shall ask its handler to close it and wake up the reactor]
+    @Test
+    public void close_closes_open_connection(@Mocked AmqpSendHandler mockAmqpSendHandler) throws Exception
+    {
+        // Arrange
+        AmqpSend amqpSend = new AmqpSend("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpSend.open();
+        AmqpSendHandler handler = Deencapsulation.getField(amqpSend, "amqpSendHandler");
+        Deencapsulation.setField(amqpSend, "reactor", reactor);
+
+        // Act
+        amqpSend.close();
+
+        // Assert
+        new Verifications()
+        {
+            {
+                handler.requestClose();
+                times = 1;
+                reactor.wakeup();
+                times = 1;
+            }
+        };
+        assertNull(Deencapsulation.getField(amqpSend, "reactor"));
+    }
+
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_005: [The event handler shall throw IOException if the send handler object is not initialized]
     // Assert
     @Test (expected = IOException.class)
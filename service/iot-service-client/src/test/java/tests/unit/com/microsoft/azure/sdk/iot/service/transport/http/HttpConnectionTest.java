@@ -7,6 +7,7 @@ package tests.unit.com.microsoft.azure.sdk.iot.service.transport.http;
 
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpConnection;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpMethod;
+import mockit.Delegate;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
 import mockit.Verifications;
@@ -409,8 +410,21 @@ public class HttpConnectionTest
                 result = httpsMethod.name();
                 mockUrlConn.getInputStream();
                 result = mockIs;
+                mockUrlConn.getContentLengthLong();
+                result = 3;
+                mockIs.read((byte[]) any, 0, 3);
+                result = new Delegate()
+                {
+                    int read(byte[] buffer, int offset, int length)
+                    {
+                        buffer[0] = 1;
+                        buffer[1] = 2;
+                        buffer[2] = 3;
+                        return 3;
+                    }
+                };
                 mockIs.read();
-                returns(1, 2, 3, -1);
+                result = -1;
             }
         };
         HttpConnection conn = new HttpConnection(mockUrl, httpsMethod);
@@ -441,6 +455,8 @@ public class HttpConnectionTest
                 result = mockIs;
                 mockIs.read();
                 result = new TransportException("This is a test exception");
+                mockIs.read((byte[]) any, anyInt, anyInt);
+                result = new TransportException("This is a test exception");
             }
         };
         HttpConnection conn = new HttpConnection(mockUrl, httpsMethod);
@@ -512,6 +528,8 @@ public class HttpConnectionTest
                 result = mockIs;
                 mockIs.read();
                 result = -1;
+                mockIs.read((byte[]) any, anyInt, anyInt);
+                result = -1;
             }
         };
         HttpConnection conn = new HttpConnection(mockUrl, httpsMethod);
@@ -545,8 +563,21 @@ public class HttpConnectionTest
                 result = httpsMethod.name();
                 mockUrlConn.getErrorStream();
                 result = mockIs;
+                mockUrlConn.getContentLengthLong();
+                result = 3;
+                mockIs.read((byte[]) any, 0, 3);
+                result = new Delegate()
+                {
+                    int read(byte[] buffer, int offset, int length)
+                    {
+                        buffer[0] = 1;
+                        buffer[1] = 2;
+                        buffer[2] = 3;
+                        return 3;
+                    }
+                };
                 mockIs.read();
-                returns(1, 2, 3, -1);
+                result = -1;
             }
         };
         HttpConnection conn = new HttpConnection(mockUrl, httpsMethod);
@@ -577,6 +608,8 @@ public class HttpConnectionTest
                 result = mockIs;
                 mockIs.read();
                 result = new TransportException("This is a test exception");
+                mockIs.read((byte[]) any, anyInt, anyInt);
+                result = new TransportException("This is a test exception");
             }
         };
         HttpConnection conn = new HttpConnection(mockUrl, httpsMethod);
@@ -675,6 +708,8 @@ public class HttpConnectionTest
                 result = mockIs;
                 mockIs.read();
                 result = -1;
+                mockIs.read((byte[]) any, anyInt, anyInt);
+                result = -1;
             }
         };
         HttpConnection conn = new HttpConnection(mockUrl, httpsMethod);